@@ -0,0 +1,100 @@
+package mr.func.ingest;
+
+import mr.func.topn.AccessLogLines;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures compression and decompression of access logs by the hadoop codecs.
+ * <p>
+ * The codecs are the pure java ones, {@code snappy} and {@code lz4} need the native hadoop library.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompressionCodecBenchmark {
+  private static final int LINES = 20000;
+
+  @Param({"default", "gzip", "bzip2"})
+  public String codec;
+
+  private CompressionCodec compressionCodec;
+  private Compressor compressor;
+  private Decompressor decompressor;
+  private byte[] logs;
+  private byte[] compressed;
+  private ByteArrayOutputStream sink;
+  private final byte[] buffer = new byte[64 * 1024];
+
+  @Setup
+  public void setup() throws IOException {
+    compressionCodec = new CompressionCodecFactory(new Configuration()).getCodecByName(codec);
+    compressor = CodecPool.getCompressor(compressionCodec);
+    decompressor = CodecPool.getDecompressor(compressionCodec);
+    StringBuilder text = new StringBuilder(LINES * 256);
+    for (String line : AccessLogLines.generate(LINES, 5000, 42)) {
+      text.append(line).append('\n');
+    }
+    logs = text.toString().getBytes(StandardCharsets.UTF_8);
+    sink = new ByteArrayOutputStream(logs.length);
+    compressed = compress();
+  }
+
+  @TearDown
+  public void tearDown() {
+    CodecPool.returnCompressor(compressor);
+    CodecPool.returnDecompressor(decompressor);
+  }
+
+  @Benchmark
+  public byte[] compress() throws IOException {
+    sink.reset();
+    // codecs without the native library, e.g. gzip, have no pooled compressor
+    if (compressor != null) {
+      compressor.reset();
+    }
+    try (CompressionOutputStream out = compressor == null
+      ? compressionCodec.createOutputStream(sink) : compressionCodec.createOutputStream(sink, compressor)) {
+      out.write(logs);
+    }
+    return sink.toByteArray();
+  }
+
+  @Benchmark
+  public long decompress() throws IOException {
+    if (decompressor != null) {
+      decompressor.reset();
+    }
+    long total = 0;
+    ByteArrayInputStream source = new ByteArrayInputStream(compressed);
+    try (CompressionInputStream in = decompressor == null
+      ? compressionCodec.createInputStream(source) : compressionCodec.createInputStream(source, decompressor)) {
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        total += read;
+      }
+    }
+    return total;
+  }
+}
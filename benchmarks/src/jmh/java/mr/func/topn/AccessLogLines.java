@@ -0,0 +1,75 @@
+package mr.func.topn;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates access log lines in the format of the production logs.
+ * <p>
+ * Users activity is skewed, a few users send most of the requests. Some lines are sent by anonymous users.
+ */
+public final class AccessLogLines {
+  public static final LocalDate FIRST_DAY = LocalDate.of(2015, 7, 1);
+  public static final int DAYS = 30;
+
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd/MMM/yyyy", Locale.ENGLISH);
+  private static final String[] PATHS = {
+    "/nmo/images/default/grid/grid3-special-col-bg__v1436564077871.gif",
+    "/nmo/app/dashboard.html",
+    "/nmo/api/accounts/summary",
+    "/nmo/api/transfers?page=2",
+    "/nmo/css/ext-all__v1436564077871.css"
+  };
+  private static final int[] STATUSES = {200, 200, 200, 200, 302, 304, 404, 500};
+
+  private AccessLogLines() {
+  }
+
+  /**
+   * Generates the lines.
+   * @param count a number of lines
+   * @param users a number of distinct users
+   * @param seed a seed of the random generator, the same seed generates the same lines
+   * @return the lines
+   */
+  public static String[] generate(int count, int users, long seed) {
+    Random random = new Random(seed);
+    String[] days = new String[DAYS];
+    for (int i = 0; i < DAYS; i++) {
+      days[i] = FIRST_DAY.plusDays(i).format(DATE_FORMAT);
+    }
+    String[] lines = new String[count];
+    StringBuilder line = new StringBuilder(320);
+    for (int i = 0; i < count; i++) {
+      line.setLength(0);
+      line.append('[').append(days[random.nextInt(DAYS)])
+        .append(String.format(":%02d:%02d:%02d +0200] ", random.nextInt(24), random.nextInt(60), random.nextInt(60)))
+        .append(random.nextInt(4) == 0 ? "POST " : "GET ")
+        .append(PATHS[random.nextInt(PATHS.length)])
+        .append(" 10.187.").append(random.nextInt(256)).append('.').append(random.nextInt(256))
+        .append(" 10.156.15.25 bsentnohead=").append(random.nextInt(100000))
+        .append(" qry= stat=").append(STATUSES[random.nextInt(STATUSES.length)])
+        .append(" sess=BCE7E9AE09201750653E802A4001090A thr=http-bio-9443-exec-").append(random.nextInt(200));
+      if (random.nextInt(20) == 0) {
+        line.append(" usr=-");
+      } else {
+        // cubic skew: the lowest user ids are the most active ones
+        int user = (int) (Math.pow(random.nextDouble(), 3) * users);
+        line.append(" usr=User{id=").append(user).append(", username='").append(username(user)).append("'}");
+      }
+      line.append(" scenId=- time=").append(random.nextInt(1000));
+      lines[i] = line.toString();
+    }
+    return lines;
+  }
+
+  /**
+   * @param user a user id
+   * @return the 8 characters long username of the user
+   */
+  public static String username(int user) {
+    return String.format("N%07d", user % 10000000);
+  }
+}
@@ -0,0 +1,116 @@
+package mr.func.topn;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.util.Progress;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+/**
+ * Creates in-memory map and reduce task contexts, so the functions run without the hadoop's task runner.
+ * Records written by the functions are consumed by the JMH {@link Blackhole}.
+ */
+final class TaskContexts {
+  private TaskContexts() {
+  }
+
+  static <K> org.apache.hadoop.mapreduce.Mapper<Object, Text, K, IntWritable>.Context mapContext(
+    Configuration conf, Blackhole blackhole) {
+    return new WrappedMapper<Object, Text, K, IntWritable>().getMapContext(
+      new MapContextImpl<>(conf, new TaskAttemptID(), null, writer(blackhole), null, new Reporter(), null));
+  }
+
+  @SuppressWarnings("unchecked")
+  static <K> org.apache.hadoop.mapreduce.Reducer<K, IntWritable, Text, IntWritable>.Context reduceContext(
+    Configuration conf, Class<K> keyClass, Blackhole blackhole) throws IOException, InterruptedException {
+    Reporter reporter = new Reporter();
+    // values are passed to the reduce() directly, the input iterator is empty
+    return new WrappedReducer<K, IntWritable, Text, IntWritable>().getReducerContext(
+      new ReduceContextImpl<>(conf, new TaskAttemptID(), new EmptyIterator(),
+        reporter.getCounter("reduce", "keys"), reporter.getCounter("reduce", "values"), writer(blackhole), null, reporter,
+        (RawComparator<K>) WritableComparator.get(keyClass.asSubclass(WritableComparable.class)), keyClass, IntWritable.class));
+  }
+
+  private static <K> RecordWriter<K, IntWritable> writer(Blackhole blackhole) {
+    return new RecordWriter<K, IntWritable>() {
+      @Override
+      public void write(K key, IntWritable value) {
+        blackhole.consume(key);
+        blackhole.consume(value);
+      }
+
+      @Override
+      public void close(TaskAttemptContext context) {
+      }
+    };
+  }
+
+  private static class Reporter extends StatusReporter {
+    private final Counters counters = new Counters();
+
+    @Override
+    public Counter getCounter(Enum<?> name) {
+      return counters.findCounter(name);
+    }
+
+    @Override
+    public Counter getCounter(String group, String name) {
+      return counters.findCounter(group, name);
+    }
+
+    @Override
+    public void progress() {
+    }
+
+    @Override
+    public float getProgress() {
+      return 0;
+    }
+
+    @Override
+    public void setStatus(String status) {
+    }
+  }
+
+  private static class EmptyIterator implements RawKeyValueIterator {
+    @Override
+    public org.apache.hadoop.io.DataInputBuffer getKey() {
+      return null;
+    }
+
+    @Override
+    public org.apache.hadoop.io.DataInputBuffer getValue() {
+      return null;
+    }
+
+    @Override
+    public boolean next() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Progress getProgress() {
+      return new Progress();
+    }
+  }
+}
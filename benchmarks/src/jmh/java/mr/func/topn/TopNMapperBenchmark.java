@@ -0,0 +1,65 @@
+package mr.func.topn;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link TopNFunc.Mapper#map} per log line, with and without the date filter and in-mapper combining.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TopNMapperBenchmark {
+  private static final int LINES = 100000;
+
+  @Param({"false", "true"})
+  public boolean dateFilter;
+
+  @Param({"false", "true"})
+  public boolean inMapperCombining;
+
+  private Text[] lines;
+  private Configuration conf;
+
+  @Setup
+  public void setup() {
+    String[] generated = AccessLogLines.generate(LINES, 50000, 42);
+    lines = new Text[LINES];
+    for (int i = 0; i < LINES; i++) {
+      lines[i] = new Text(generated[i]);
+    }
+    conf = new Configuration(false);
+    if (dateFilter) {
+      // a third of the generated days
+      conf.set("dateFrom", AccessLogLines.FIRST_DAY.plusDays(10).toString());
+      conf.set("dateTo", AccessLogLines.FIRST_DAY.plusDays(19).toString());
+    }
+    conf.setBoolean(TopNFunc.IN_MAPPER_COMBINING, inMapperCombining);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LINES)
+  public void map(Blackhole blackhole) throws Exception {
+    org.apache.hadoop.mapreduce.Mapper<Object, Text, UsernameKey, IntWritable>.Context context =
+      TaskContexts.mapContext(conf, blackhole);
+    TopNFunc.Mapper mapper = new TopNFunc.Mapper();
+    mapper.setup(context);
+    for (Text line : lines) {
+      mapper.map(null, line, context);
+    }
+    mapper.cleanup(context);
+  }
+}
@@ -0,0 +1,73 @@
+package mr.func.topn;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link TopNFunc.Reducer} reduce of all distinct users and cleanup writing the top-n users.
+ * <p>
+ * Keys arrive sorted, as from the shuffle, every key with its combined counter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TopNReducerBenchmark {
+  @Param({"1000", "100000", "10000000"})
+  public int users;
+
+  @Param({"10", "1000"})
+  public int limit;
+
+  private int[] counts;
+  private Configuration conf;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    counts = new int[users];
+    for (int i = 0; i < users; i++) {
+      // cubic skew: few users with large counters
+      counts[i] = 1 + (int) (Math.pow(random.nextDouble(), 3) * 100000);
+    }
+    conf = new Configuration(false);
+    conf.setInt("limit", limit);
+  }
+
+  @Benchmark
+  public void reduce(Blackhole blackhole) throws Exception {
+    org.apache.hadoop.mapreduce.Reducer<UsernameKey, IntWritable, Text, IntWritable>.Context context =
+      TaskContexts.reduceContext(conf, UsernameKey.class, blackhole);
+    TopNFunc.Reducer reducer = new TopNFunc.Reducer();
+    reducer.setup(context);
+    UsernameKey key = new UsernameKey();
+    byte[] username = new byte[AccessLogParser.USERNAME_LENGTH];
+    username[0] = 'N';
+    IntWritable value = new IntWritable();
+    List<IntWritable> values = Collections.singletonList(value);
+    for (int i = 0; i < users; i++) {
+      // N0000000, N0000001, ... sorted as the shuffle output
+      for (int j = username.length - 1, user = i; j > 0; j--, user /= 10) {
+        username[j] = (byte) ('0' + user % 10);
+      }
+      key.set(username, 0, username.length);
+      value.set(counts[i]);
+      reducer.reduce(key, values, context);
+    }
+    reducer.cleanup(context);
+  }
+}
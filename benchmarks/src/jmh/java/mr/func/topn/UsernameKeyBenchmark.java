@@ -0,0 +1,87 @@
+package mr.func.topn;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.util.IndexedSortable;
+import org.apache.hadoop.util.QuickSort;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the sort of the serialized map output keys, as in the map side sort of the shuffle,
+ * with {@link Text} and {@link UsernameKey} keys and their registered raw comparators.
+ * <p>
+ * The {@link Text} key of the 8 character username takes 9 bytes with its length prefix, the packed
+ * {@link UsernameKey} takes 8 bytes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UsernameKeyBenchmark {
+  private static final int KEYS = 100000;
+
+  @Param({"text", "packed"})
+  public String keyType;
+
+  private byte[] buffer;
+  private int[] offsets;
+  private int[] lengths;
+  private int[] indices;
+  private RawComparator<?> comparator;
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(42);
+    DataOutputBuffer out = new DataOutputBuffer();
+    offsets = new int[KEYS];
+    lengths = new int[KEYS];
+    Class<? extends WritableComparable> keyClass = "text".equals(keyType) ? Text.class : UsernameKey.class;
+    for (int i = 0; i < KEYS; i++) {
+      String username = AccessLogLines.username(random.nextInt(1000000));
+      Writable key = "text".equals(keyType) ? new Text(username) : new UsernameKey(username);
+      offsets[i] = out.getLength();
+      key.write(out);
+      lengths[i] = out.getLength() - offsets[i];
+    }
+    buffer = out.getData();
+    indices = new int[KEYS];
+    comparator = WritableComparator.get(keyClass);
+  }
+
+  @Benchmark
+  public int[] sort() {
+    for (int i = 0; i < KEYS; i++) {
+      indices[i] = i;
+    }
+    new QuickSort().sort(new IndexedSortable() {
+      @Override
+      public int compare(int i, int j) {
+        int a = indices[i];
+        int b = indices[j];
+        return comparator.compare(buffer, offsets[a], lengths[a], buffer, offsets[b], lengths[b]);
+      }
+
+      @Override
+      public void swap(int i, int j) {
+        int tmp = indices[i];
+        indices[i] = indices[j];
+        indices[j] = tmp;
+      }
+    }, 0, KEYS);
+    return indices;
+  }
+}
@@ -0,0 +1,73 @@
+package rpex.hadoop.mr.topn.internal;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading of the top-n job output, the (username, counter) {@link SequenceFile}s of the reducers,
+ * from the local file system.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TopNResultReaderBenchmark {
+  @Param({"1", "4"})
+  public int parts;
+
+  @Param({"10", "10000"})
+  public int countersPerPart;
+
+  private FileSystem fileSystem;
+  private Path outputPath;
+  private TopNResultReader reader;
+
+  @Setup
+  public void setup() throws IOException {
+    Configuration conf = new Configuration();
+    fileSystem = FileSystem.getLocal(conf);
+    outputPath = new Path(Files.createTempDirectory("topn-output").toUri());
+    Text username = new Text();
+    IntWritable counter = new IntWritable();
+    for (int part = 0; part < parts; part++) {
+      Path partPath = new Path(outputPath, String.format("part-r-%05d", part));
+      try (SequenceFile.Writer writer = SequenceFile.createWriter(conf, SequenceFile.Writer.file(partPath),
+        SequenceFile.Writer.keyClass(Text.class), SequenceFile.Writer.valueClass(IntWritable.class))) {
+        for (int i = 0; i < countersPerPart; i++) {
+          username.set(String.format("N%07d", part * countersPerPart + i));
+          counter.set(countersPerPart - i);
+          writer.append(username, counter);
+        }
+      }
+    }
+    reader = new TopNResultReader(fileSystem);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    fileSystem.delete(outputPath, true);
+  }
+
+  @Benchmark
+  public List<UserActivityCounter> read() throws IOException {
+    return reader.read(outputPath);
+  }
+}
@@ -0,0 +1,52 @@
+package rpex.hadoop.mr.topn.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ratpack.exec.Result;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Jackson rendering of the top-n result as done by the endpoints: {@link Result} of the
+ * {@link UserActivityCounter} list, with the pretty printing writer registered by the application and
+ * with the compact writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserActivityCounterJsonBenchmark {
+  @Param({"10", "1000"})
+  public int size;
+
+  @Param({"false", "true"})
+  public boolean pretty;
+
+  private ObjectWriter writer;
+  private Result<List<UserActivityCounter>> result;
+
+  @Setup
+  public void setup() {
+    ObjectMapper objectMapper = new ObjectMapper();
+    writer = pretty ? objectMapper.writerWithDefaultPrettyPrinter() : objectMapper.writer();
+    List<UserActivityCounter> counters = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      counters.add(new UserActivityCounter(String.format("N%07d", i), size - i));
+    }
+    result = Result.success(counters);
+  }
+
+  @Benchmark
+  public byte[] render() throws Exception {
+    return writer.writeValueAsBytes(result);
+  }
+}
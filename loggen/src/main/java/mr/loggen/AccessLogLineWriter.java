@@ -0,0 +1,188 @@
+package mr.loggen;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Writes access log lines of a single day in the format parsed by {@code mr.func.topn.AccessLogParser}:
+ * <pre>
+ * [13/Jul/2015:07:57:03 +0200] GET /nmo/api/transfers 10.187.98.36 10.156.15.25 bsentnohead=837 qry=... stat=200
+ * sess=... thr=http-bio-9443-exec-8 usr=User{id=782444, username='U000GZ4K'} scenId=- time=12
+ * </pre>
+ * The {@code qry} field is padded, so line lengths follow the normal distribution with the given mean and standard
+ * deviation, bounded by the length of the unpadded line and the maximal length.
+ * <p>
+ * Lines are formatted into a reused byte buffer, without creating objects per line. Not thread safe.
+ */
+class AccessLogLineWriter {
+  /**
+   * Maximal supported line length.
+   */
+  static final int MAX_LINE_LENGTH = 32 * 1024;
+
+  private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("'['dd/MMM/yyyy':'", Locale.ENGLISH);
+  private static final byte[] ALPHANUMERIC = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
+    .getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[][] PATHS = {ascii("/nmo/api/transfers"), ascii("/nmo/api/accounts"),
+    ascii("/nmo/api/payments"), ascii("/nmo/api/cards"), ascii("/nmo/app"), ascii("/nmo/login")};
+  private static final byte[] ZONE = ascii(" +0200] ");
+  private static final byte[] GET = ascii("GET ");
+  private static final byte[] POST = ascii("POST ");
+  private static final byte[] IP_PREFIX = ascii(" 10.");
+  private static final byte[] SERVER = ascii(" 10.156.15.25 bsentnohead=");
+  private static final byte[] QUERY = ascii(" qry=");
+  private static final byte[] STATUS = ascii(" stat=");
+  private static final byte[] SESSION = ascii(" sess=");
+  private static final byte[] THREAD = ascii(" thr=http-bio-9443-exec-");
+  private static final byte[] USER_ID = ascii(" usr=User{id=");
+  private static final byte[] USERNAME = ascii(", username='");
+  private static final byte[] USER_END = ascii("'} scenId=- time=");
+
+  private static final byte[] PADDING = new byte[MAX_LINE_LENGTH];
+
+  static {
+    SplittableRandom random = new SplittableRandom(0);
+    for (int i = 0; i < PADDING.length; i++) {
+      PADDING[i] = ALPHANUMERIC[random.nextInt(ALPHANUMERIC.length)];
+    }
+  }
+
+  private final OutputStream out;
+  private final byte[] dayPrefix;
+  private final double lengthMean;
+  private final double lengthStdDev;
+  private final int lengthMax;
+  private final byte[] line;
+  private int position;
+
+  /**
+   * Creates the writer.
+   * @param out an output stream, buffered by the caller
+   * @param day a day of the lines
+   * @param lengthMean a mean of the line length, without the line terminator
+   * @param lengthStdDev a standard deviation of the line length
+   * @param lengthMax a maximal line length, at most {@link #MAX_LINE_LENGTH}
+   */
+  AccessLogLineWriter(OutputStream out, LocalDate day, double lengthMean, double lengthStdDev, int lengthMax) {
+    this.out = out;
+    this.dayPrefix = day.format(DAY_FORMAT).getBytes(StandardCharsets.US_ASCII);
+    this.lengthMean = lengthMean;
+    this.lengthStdDev = lengthStdDev;
+    this.lengthMax = Math.min(lengthMax, MAX_LINE_LENGTH);
+    this.line = new byte[MAX_LINE_LENGTH + 512];
+  }
+
+  /**
+   * Writes the line of the user.
+   * @param random a random generator of the other fields
+   * @param secondOfDay a time of the request
+   * @param user a user index, see {@link #username(int)}
+   * @return the number of written bytes, with the line terminator
+   */
+  int write(SplittableRandom random, int secondOfDay, int user) throws IOException {
+    position = 0;
+    append(dayPrefix);
+    appendTwoDigits(secondOfDay / 3600);
+    line[position++] = ':';
+    appendTwoDigits(secondOfDay / 60 % 60);
+    line[position++] = ':';
+    appendTwoDigits(secondOfDay % 60);
+    append(ZONE);
+    append(random.nextInt(5) == 0 ? POST : GET);
+    append(PATHS[random.nextInt(PATHS.length)]);
+    append(IP_PREFIX);
+    appendInt(random.nextInt(256));
+    line[position++] = '.';
+    appendInt(random.nextInt(256));
+    line[position++] = '.';
+    appendInt(random.nextInt(256));
+    append(SERVER);
+    appendInt(random.nextInt(10000));
+    append(QUERY);
+    int padAt = position;
+    append(STATUS);
+    appendInt(status(random));
+    append(SESSION);
+    for (int i = 0; i < 32; i++) {
+      line[position++] = HEX[random.nextInt(HEX.length)];
+    }
+    append(THREAD);
+    appendInt(random.nextInt(200) + 1);
+    append(USER_ID);
+    appendInt(user + 1);
+    append(USERNAME);
+    username(user, line, position);
+    position += 8;
+    append(USER_END);
+    appendInt(random.nextInt(1000));
+
+    int padding = paddingLength(random, position);
+    if (padding > 0) {
+      System.arraycopy(line, padAt, line, padAt + padding, position - padAt);
+      System.arraycopy(PADDING, random.nextInt(PADDING.length - padding + 1), line, padAt, padding);
+      position += padding;
+    }
+    line[position++] = '\n';
+    out.write(line, 0, position);
+    return position;
+  }
+
+  /**
+   * Formats the username of the user: {@code U} and the user index in 7 base-36 digits.
+   * @param user a user index, from 0
+   * @return the 8 characters username
+   */
+  static String username(int user) {
+    byte[] bytes = new byte[8];
+    username(user, bytes, 0);
+    return new String(bytes, StandardCharsets.US_ASCII);
+  }
+
+  private static void username(int user, byte[] bytes, int offset) {
+    bytes[offset] = 'U';
+    int value = user;
+    for (int i = offset + 7; i > offset; i--) {
+      bytes[i] = ALPHANUMERIC[value % 36];
+      value /= 36;
+    }
+  }
+
+  private int paddingLength(SplittableRandom random, int unpadded) {
+    // Box-Muller transform, SplittableRandom has no gaussian
+    double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    long length = Math.round(lengthMean + lengthStdDev * gaussian);
+    return (int) Math.max(0, Math.min(length, lengthMax) - unpadded);
+  }
+
+  private static int status(SplittableRandom random) {
+    int p = random.nextInt(100);
+    return p < 94 ? 200 : p < 97 ? 302 : p < 99 ? 404 : 500;
+  }
+
+  private void append(byte[] bytes) {
+    System.arraycopy(bytes, 0, line, position, bytes.length);
+    position += bytes.length;
+  }
+
+  private void appendTwoDigits(int value) {
+    line[position++] = (byte) ('0' + value / 10);
+    line[position++] = (byte) ('0' + value % 10);
+  }
+
+  private void appendInt(int value) {
+    if (value >= 10) {
+      appendInt(value / 10);
+    }
+    line[position++] = (byte) ('0' + value % 10);
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+}
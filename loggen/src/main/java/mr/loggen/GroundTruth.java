@@ -0,0 +1,173 @@
+package mr.loggen;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The expected top-n users of the generated logs, written next to them as {@value #FILE_NAME}.
+ * <p>
+ * The file starts with a {@code #} comment of the totals, followed by {@code username<TAB>count} lines from the most
+ * active user; users with equal counts are ordered by username. The name starts with {@code _}, so map-reduce input
+ * formats skip it.
+ * <p>
+ * Immutable value object.
+ */
+public class GroundTruth {
+  /**
+   * Name of the ground truth file in the output directory.
+   */
+  public static final String FILE_NAME = "_topn.tsv";
+
+  private final long lines;
+  private final long bytes;
+  private final List<UserCount> top;
+
+  /**
+   * Creates the ground truth.
+   * @param lines a number of generated lines
+   * @param bytes a number of generated bytes, before compression
+   * @param top the most active users, from the highest count
+   */
+  public GroundTruth(long lines, long bytes, List<UserCount> top) {
+    this.lines = lines;
+    this.bytes = bytes;
+    this.top = Collections.unmodifiableList(new ArrayList<>(top));
+  }
+
+  /**
+   * @return the number of generated lines
+   */
+  public long getLines() {
+    return lines;
+  }
+
+  /**
+   * @return the number of generated bytes, before compression
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return the most active users, from the highest count
+   */
+  public List<UserCount> getTop() {
+    return top;
+  }
+
+  /**
+   * Writes the ground truth into the directory. It is blocking operation.
+   * @param fileSystem a hadoop file system
+   * @param dir an output directory of the logs
+   */
+  public void write(FileSystem fileSystem, Path dir) throws IOException {
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(fileSystem.create(new Path(dir, FILE_NAME), true),
+      StandardCharsets.UTF_8))) {
+      out.write("# lines=" + lines + " bytes=" + bytes + "\n");
+      for (UserCount user : top) {
+        out.write(user.getUsername() + "\t" + user.getCount() + "\n");
+      }
+    }
+  }
+
+  /**
+   * Reads the ground truth of the directory. It is blocking operation.
+   * @param fileSystem a hadoop file system
+   * @param dir an output directory of the logs
+   * @return the ground truth
+   */
+  public static GroundTruth read(FileSystem fileSystem, Path dir) throws IOException {
+    long lines = 0;
+    long bytes = 0;
+    List<UserCount> top = new ArrayList<>();
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(fileSystem.open(new Path(dir, FILE_NAME)),
+      StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith("#")) {
+          for (String total : line.substring(1).trim().split(" ")) {
+            String[] keyValue = total.split("=");
+            if ("lines".equals(keyValue[0])) {
+              lines = Long.parseLong(keyValue[1]);
+            } else if ("bytes".equals(keyValue[0])) {
+              bytes = Long.parseLong(keyValue[1]);
+            }
+          }
+        } else if (!line.isEmpty()) {
+          String[] fields = line.split("\t");
+          top.add(new UserCount(fields[0], Long.parseLong(fields[1])));
+        }
+      }
+    }
+    return new GroundTruth(lines, bytes, top);
+  }
+
+  @Override
+  public String toString() {
+    return "GroundTruth(lines=" + lines + ", bytes=" + bytes + ", top=" + top + ")";
+  }
+
+  /**
+   * Number of lines of the user.
+   * <p>
+   * Immutable value object.
+   */
+  public static class UserCount {
+    private final String username;
+    private final long count;
+
+    /**
+     * Creates the user count.
+     * @param username a username
+     * @param count a number of the user's lines
+     */
+    public UserCount(String username, long count) {
+      this.username = username;
+      this.count = count;
+    }
+
+    /**
+     * @return the username
+     */
+    public String getUsername() {
+      return username;
+    }
+
+    /**
+     * @return the number of the user's lines
+     */
+    public long getCount() {
+      return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof UserCount)) {
+        return false;
+      }
+      UserCount other = (UserCount) o;
+      return count == other.count && username.equals(other.username);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * username.hashCode() + Long.hashCode(count);
+    }
+
+    @Override
+    public String toString() {
+      return username + "=" + count;
+    }
+  }
+}
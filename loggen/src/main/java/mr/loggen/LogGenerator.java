@@ -0,0 +1,349 @@
+package mr.loggen;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates synthetic access logs for benchmarking and capacity planning, on the local file system or HDFS.
+ * <p>
+ * Usage: {@code loggen [-D loggen.<option>=<value> ...] <output directory>}, the options are the configuration keys
+ * of this class. The logs of every day are rotated into files of {@link #FILE_SIZE} bytes, optionally compressed,
+ * in the {@code dt=yyyy-MM-dd} partitions read by the top-n jobs, or flat for the ingestion job. User activity
+ * follows the Zipf distribution, line lengths the normal distribution. The files are generated in parallel, each
+ * from its own seed, so the same options generate the same logs whatever the number of threads.
+ * The expected top-n users are written as {@link GroundTruth#FILE_NAME}.
+ * <p>
+ * Every thread counts the lines of all users, so the memory needed is {@code threads * users * 4} bytes.
+ */
+public class LogGenerator extends Configured implements Tool {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LogGenerator.class);
+
+  /**
+   * Configuration key with the number of distinct users.
+   */
+  public static final String USERS = "loggen.users";
+
+  /**
+   * Configuration key with the exponent of the Zipf distribution of the users activity, see {@link ZipfSampler}.
+   */
+  public static final String ZIPF_EXPONENT = "loggen.zipfExponent";
+
+  /**
+   * Configuration key with the first day of the logs, {@code yyyy-MM-dd}.
+   */
+  public static final String DATE_FROM = "loggen.dateFrom";
+
+  /**
+   * Configuration key with the last day of the logs, inclusive.
+   */
+  public static final String DATE_TO = "loggen.dateTo";
+
+  /**
+   * Configuration key with the approximate total size of the logs before compression, e.g. {@code 10g}.
+   * Ignored if {@link #LINES} is set.
+   */
+  public static final String SIZE = "loggen.size";
+
+  /**
+   * Configuration key with the total number of lines.
+   */
+  public static final String LINES = "loggen.lines";
+
+  /**
+   * Configuration key with the mean line length in bytes.
+   */
+  public static final String LINE_LENGTH_MEAN = "loggen.lineLength.mean";
+
+  /**
+   * Configuration key with the standard deviation of the line length.
+   */
+  public static final String LINE_LENGTH_STD_DEV = "loggen.lineLength.stdDev";
+
+  /**
+   * Configuration key with the maximal line length.
+   */
+  public static final String LINE_LENGTH_MAX = "loggen.lineLength.max";
+
+  /**
+   * Configuration key with the size of a log file before compression, e.g. {@code 128m}. Every day has at least one file.
+   */
+  public static final String FILE_SIZE = "loggen.fileSize";
+
+  /**
+   * Configuration key with the compression codec alias, e.g. {@code gzip}, {@code bzip2}, or class name.
+   * Only {@code bzip2} files are splittable. No compression by default.
+   */
+  public static final String CODEC = "loggen.codec";
+
+  /**
+   * Configuration key enabling {@code dt=yyyy-MM-dd} partitions. If false, the files are written flat into the
+   * output directory, named by the day.
+   */
+  public static final String PARTITIONED = "loggen.partitioned";
+
+  /**
+   * Configuration key with the number of generating threads, the available processors by default.
+   */
+  public static final String THREADS = "loggen.threads";
+
+  /**
+   * Configuration key with the seed of the random generators.
+   */
+  public static final String SEED = "loggen.seed";
+
+  /**
+   * Configuration key with the number of users in the ground truth.
+   */
+  public static final String TOP_N = "loggen.topN";
+
+  private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+  @Override
+  public int run(String[] args) throws Exception {
+    if (args.length != 1) {
+      System.err.println("Usage: loggen [-D " + USERS + "=100000] [-D " + SIZE + "=1g] [-D " + CODEC + "=gzip] ... <output directory>");
+      ToolRunner.printGenericCommandUsage(System.err);
+      return 2;
+    }
+    long start = System.nanoTime();
+    GroundTruth groundTruth = generate(getConf(), new Path(args[0]));
+    System.out.printf("Generated %d lines, %d bytes in %d s%n", groundTruth.getLines(), groundTruth.getBytes(),
+      TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+    return 0;
+  }
+
+  /**
+   * Generates the logs and their ground truth into the output directory, which must not exist.
+   * It is blocking operation.
+   * @param conf a configuration with the file system and the {@code loggen.*} options
+   * @param output an output directory
+   * @return the ground truth of the logs
+   */
+  public static GroundTruth generate(Configuration conf, Path output) throws IOException, InterruptedException {
+    FileSystem fileSystem = output.getFileSystem(conf);
+    if (fileSystem.exists(output)) {
+      throw new FileAlreadyExistsException("LOGGEN_OUTPUT_EXISTS: " + output);
+    }
+    int users = conf.getInt(USERS, 100000);
+    ZipfSampler sampler = new ZipfSampler(users, conf.getDouble(ZIPF_EXPONENT, 1.0));
+    LocalDate dateFrom = LocalDate.parse(conf.get(DATE_FROM, "2015-07-01"));
+    LocalDate dateTo = LocalDate.parse(conf.get(DATE_TO, "2015-07-30"));
+    if (dateTo.isBefore(dateFrom)) {
+      throw new IllegalArgumentException("LOGGEN_INVALID_DATES: " + dateFrom + " - " + dateTo);
+    }
+    double lengthMean = conf.getDouble(LINE_LENGTH_MEAN, 280);
+    long lines = conf.getLong(LINES, 0);
+    if (lines <= 0) {
+      lines = (long) (conf.getLongBytes(SIZE, 1L << 30) / (lengthMean + 1));
+    }
+    CompressionCodec codec = codec(conf);
+    Queue<FileTask> tasks = tasks(conf, output, dateFrom, dateTo, lines, lengthMean, codec);
+    int threads = Math.min(tasks.size(), conf.getInt(THREADS, Runtime.getRuntime().availableProcessors()));
+    LOGGER.info("STARTING generation of {} lines in {} files by {} threads into {}", lines, tasks.size(), threads, output);
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("loggen-%d").build());
+    try {
+      List<Future<Worker>> workers = new ArrayList<>(threads);
+      for (int i = 0; i < threads; i++) {
+        workers.add(executor.submit(new Worker(fileSystem, conf, sampler, tasks, codec)));
+      }
+      long[] counts = new long[users];
+      long bytes = 0;
+      for (Future<Worker> future : workers) {
+        Worker worker = future.get();
+        for (int user = 0; user < users; user++) {
+          counts[user] += worker.counts[user];
+        }
+        bytes += worker.bytes;
+      }
+      GroundTruth groundTruth = new GroundTruth(lines, bytes, top(counts, conf.getInt(TOP_N, 100)));
+      groundTruth.write(fileSystem, output);
+      LOGGER.info("END OF generation: {} lines, {} bytes", lines, bytes);
+      return groundTruth;
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw new IOException("LOGGEN_FAILED", ex.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new Configuration(), new LogGenerator(), args));
+  }
+
+  /**
+   * Splits the lines into the days and the days into the files, each covering a part of the day.
+   */
+  private static Queue<FileTask> tasks(Configuration conf, Path output, LocalDate dateFrom, LocalDate dateTo, long lines,
+                                       double lengthMean, CompressionCodec codec) {
+    int days = (int) (dateTo.toEpochDay() - dateFrom.toEpochDay()) + 1;
+    long linesPerFile = Math.max(1, (long) (conf.getLongBytes(FILE_SIZE, 128L << 20) / (lengthMean + 1)));
+    boolean partitioned = conf.getBoolean(PARTITIONED, true);
+    String extension = codec == null ? "" : codec.getDefaultExtension();
+    long seed = conf.getLong(SEED, 42);
+
+    Queue<FileTask> tasks = new ConcurrentLinkedQueue<>();
+    for (int day = 0; day < days; day++) {
+      LocalDate date = dateFrom.plusDays(day);
+      long dayLines = lines / days + (day < lines % days ? 1 : 0);
+      int files = (int) Math.max(1, (dayLines + linesPerFile - 1) / linesPerFile);
+      for (int part = 0; part < files; part++) {
+        String name = String.format("%04d.log%s", part, extension);
+        Path path = partitioned ? new Path(output, "dt=" + date + "/access-" + name) : new Path(output, "access-" + date + "-" + name);
+        tasks.add(new FileTask(path, date, dayLines / files + (part < dayLines % files ? 1 : 0),
+          part * SECONDS_PER_DAY / files, SECONDS_PER_DAY / files, mix(seed, date.toEpochDay(), part)));
+      }
+    }
+    return tasks;
+  }
+
+  private static CompressionCodec codec(Configuration conf) {
+    String name = conf.get(CODEC);
+    if (name == null || name.isEmpty() || "none".equals(name)) {
+      return null;
+    }
+    CompressionCodec codec = new CompressionCodecFactory(conf).getCodecByName(name);
+    if (codec == null) {
+      throw new IllegalArgumentException("LOGGEN_UNKNOWN_CODEC: " + name);
+    }
+    return codec;
+  }
+
+  /**
+   * Selects the users with the highest counts; equal counts are ordered by username, which is the order of the indexes.
+   */
+  private static List<GroundTruth.UserCount> top(long[] counts, int n) {
+    PriorityQueue<Integer> heap = new PriorityQueue<>(n + 1, (a, b) -> counts[a] != counts[b]
+      ? Long.compare(counts[a], counts[b]) : Integer.compare(b, a));
+    for (int user = 0; user < counts.length; user++) {
+      if (counts[user] == 0) {
+        continue;
+      }
+      heap.add(user);
+      if (heap.size() > n) {
+        heap.poll();
+      }
+    }
+    List<GroundTruth.UserCount> top = new ArrayList<>(heap.size());
+    while (!heap.isEmpty()) {
+      int user = heap.poll();
+      top.add(0, new GroundTruth.UserCount(AccessLogLineWriter.username(user), counts[user]));
+    }
+    return top;
+  }
+
+  // stafford variant 13 of the 64-bit finalizer, decorrelates the seeds of the neighbouring files
+  private static long mix(long seed, long day, int part) {
+    long z = seed + day * 0x9E3779B97F4A7C15L + part * 0xC2B2AE3D27D4EB4FL;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * A log file: its lines cover a part of the day, in time order.
+   */
+  private static class FileTask {
+    private final Path path;
+    private final LocalDate date;
+    private final long lines;
+    private final int firstSecond;
+    private final int seconds;
+    private final long seed;
+
+    FileTask(Path path, LocalDate date, long lines, int firstSecond, int seconds, long seed) {
+      this.path = path;
+      this.date = date;
+      this.lines = lines;
+      this.firstSecond = firstSecond;
+      this.seconds = seconds;
+      this.seed = seed;
+    }
+  }
+
+  /**
+   * Writes the files taken from the shared queue and counts the lines of the users.
+   */
+  private static class Worker implements Callable<Worker> {
+    private final FileSystem fileSystem;
+    private final ZipfSampler sampler;
+    private final Queue<FileTask> tasks;
+    private final CompressionCodec codec;
+    private final double lengthMean;
+    private final double lengthStdDev;
+    private final int lengthMax;
+    private final int[] counts;
+    private long bytes;
+
+    Worker(FileSystem fileSystem, Configuration conf, ZipfSampler sampler, Queue<FileTask> tasks, CompressionCodec codec) {
+      this.fileSystem = fileSystem;
+      this.sampler = sampler;
+      this.tasks = tasks;
+      this.codec = codec;
+      this.lengthMean = conf.getDouble(LINE_LENGTH_MEAN, 280);
+      this.lengthStdDev = conf.getDouble(LINE_LENGTH_STD_DEV, 40);
+      this.lengthMax = conf.getInt(LINE_LENGTH_MAX, 4096);
+      this.counts = new int[conf.getInt(USERS, 100000)];
+    }
+
+    @Override
+    public Worker call() throws IOException {
+      FileTask task;
+      while ((task = tasks.poll()) != null) {
+        write(task);
+      }
+      return this;
+    }
+
+    private void write(FileTask task) throws IOException {
+      SplittableRandom random = new SplittableRandom(task.seed);
+      Compressor compressor = codec == null ? null : CodecPool.getCompressor(codec);
+      try (OutputStream out = new BufferedOutputStream(codec == null ? fileSystem.create(task.path, false)
+        : codec.createOutputStream(fileSystem.create(task.path, false), compressor), 256 * 1024)) {
+        AccessLogLineWriter writer = new AccessLogLineWriter(out, task.date, lengthMean, lengthStdDev, lengthMax);
+        for (long i = 0; i < task.lines; i++) {
+          int user = sampler.sample(random) - 1;
+          counts[user]++;
+          bytes += writer.write(random, task.firstSecond + (int) (i * task.seconds / task.lines), user);
+        }
+      } finally {
+        if (compressor != null) {
+          CodecPool.returnCompressor(compressor);
+        }
+      }
+      LOGGER.debug("GENERATED {}: {} lines", task.path, task.lines);
+    }
+  }
+}
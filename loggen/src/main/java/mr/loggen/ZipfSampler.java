@@ -0,0 +1,85 @@
+package mr.loggen;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples ranks {@code 1..n} from the Zipf distribution, the probability of rank {@code k} is proportional to
+ * {@code 1 / k^exponent}.
+ * <p>
+ * Uses the rejection-inversion method of W. Hormann and G. Derflinger, "Rejection-inversion to generate variates
+ * from monotone discrete distributions", so sampling takes constant time and memory whatever {@code n}.
+ * The sampler is immutable and may be shared by threads, each with its own random generator.
+ */
+public class ZipfSampler {
+  private final int n;
+  private final double exponent;
+  private final double hIntegralX1;
+  private final double hIntegralN;
+  private final double s;
+
+  /**
+   * Creates the sampler.
+   * @param n a number of ranks, e.g. users
+   * @param exponent a skew of the distribution, greater than 0. With {@code 1} the top rank is twice as frequent
+   *                 as the second one
+   */
+  public ZipfSampler(int n, double exponent) {
+    if (n < 1 || exponent <= 0) {
+      throw new IllegalArgumentException("LOGGEN_INVALID_ZIPF: n=" + n + ", exponent=" + exponent);
+    }
+    this.n = n;
+    this.exponent = exponent;
+    this.hIntegralX1 = hIntegral(1.5) - 1;
+    this.hIntegralN = hIntegral(n + 0.5);
+    this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+  }
+
+  /**
+   * @param random a random generator of the calling thread
+   * @return the rank between 1 and n, 1 is the most frequent
+   */
+  public int sample(SplittableRandom random) {
+    while (true) {
+      double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+      double x = hIntegralInverse(u);
+      int k = (int) (x + 0.5);
+      if (k < 1) {
+        k = 1;
+      } else if (k > n) {
+        k = n;
+      }
+      if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+        return k;
+      }
+    }
+  }
+
+  // integral of h(x) = 1 / x^exponent, shifted so it is continuous at exponent 1
+  private double hIntegral(double x) {
+    double logX = Math.log(x);
+    return helper2((1 - exponent) * logX) * logX;
+  }
+
+  private double h(double x) {
+    return Math.exp(-exponent * Math.log(x));
+  }
+
+  private double hIntegralInverse(double x) {
+    double t = x * (1 - exponent);
+    if (t < -1) {
+      // numerical limit, the result is close to the lower bound
+      t = -1;
+    }
+    return Math.exp(helper1(t) * x);
+  }
+
+  // log(1 + x) / x, accurate near 0
+  private static double helper1(double x) {
+    return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+  }
+
+  // (exp(x) - 1) / x, accurate near 0
+  private static double helper2(double x) {
+    return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+  }
+}
@@ -0,0 +1,155 @@
+package mr.loggen;
+
+import mr.func.topn.AccessLogParser;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogGeneratorTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Configuration conf;
+
+  @Before
+  public void setup() {
+    conf = new Configuration(false);
+    conf.set("fs.defaultFS", "file:///");
+    conf.setInt(LogGenerator.USERS, 500);
+    conf.setLong(LogGenerator.LINES, 6000);
+    conf.set(LogGenerator.DATE_FROM, "2015-07-01");
+    conf.set(LogGenerator.DATE_TO, "2015-07-03");
+    conf.set(LogGenerator.FILE_SIZE, "160k");
+    conf.setInt(LogGenerator.THREADS, 4);
+    conf.setInt(LogGenerator.TOP_N, 20);
+  }
+
+  @Test
+  public void testLinesAreParsedAndMatchGroundTruth() throws Exception {
+    Path output = output("plain");
+    GroundTruth groundTruth = LogGenerator.generate(conf, output);
+
+    Map<String, Long> counts = new HashMap<>();
+    long bytes = 0;
+    List<Path> files = files(output);
+    // 2000 lines of about 281 bytes a day, rotated into 160k files
+    assertEquals(12, files.size());
+    for (Path file : files) {
+      assertTrue(file.toString(), file.getParent().getName().matches("dt=2015-07-0[1-3]"));
+      LocalDate day = LocalDate.parse(file.getParent().getName().substring(3));
+      for (String line : lines(file)) {
+        byte[] bytesOfLine = line.getBytes(StandardCharsets.UTF_8);
+        bytes += bytesOfLine.length + 1;
+        assertEquals(line, day.toEpochDay(), AccessLogParser.parseDay(bytesOfLine, bytesOfLine.length));
+        int username = AccessLogParser.findUsername(bytesOfLine, bytesOfLine.length);
+        assertNotEquals(line, AccessLogParser.NO_USERNAME, username);
+        counts.merge(new String(bytesOfLine, username, AccessLogParser.USERNAME_LENGTH, StandardCharsets.UTF_8), 1L, Long::sum);
+      }
+    }
+    assertEquals(6000, counts.values().stream().mapToLong(Long::longValue).sum());
+    assertEquals(6000, groundTruth.getLines());
+    assertEquals(bytes, groundTruth.getBytes());
+    assertEquals(280, bytes / 6000.0 - 1, 8);
+
+    assertEquals(20, groundTruth.getTop().size());
+    long previous = Long.MAX_VALUE;
+    for (GroundTruth.UserCount user : groundTruth.getTop()) {
+      assertEquals(user.getUsername(), counts.get(user.getUsername()).longValue(), user.getCount());
+      assertTrue(user.getCount() <= previous);
+      previous = user.getCount();
+    }
+    long maxCount = counts.values().stream().mapToLong(Long::longValue).max().getAsLong();
+    assertEquals(maxCount, groundTruth.getTop().get(0).getCount());
+
+    assertEquals(groundTruth.getTop(), GroundTruth.read(FileSystem.getLocal(conf), output).getTop());
+  }
+
+  @Test
+  public void testSameLogsWhateverTheNumberOfThreads() throws Exception {
+    GroundTruth parallel = LogGenerator.generate(conf, output("parallel"));
+    conf.setInt(LogGenerator.THREADS, 1);
+    GroundTruth sequential = LogGenerator.generate(conf, output("sequential"));
+
+    assertEquals(parallel.getTop(), sequential.getTop());
+    assertEquals(parallel.getBytes(), sequential.getBytes());
+    assertEquals(lines(new Path(output("parallel"), "dt=2015-07-02/access-0001.log")),
+      lines(new Path(output("sequential"), "dt=2015-07-02/access-0001.log")));
+  }
+
+  @Test
+  public void testCompressedFlatLayout() throws Exception {
+    conf.set(LogGenerator.CODEC, "gzip");
+    conf.setBoolean(LogGenerator.PARTITIONED, false);
+    Path output = output("gzip");
+    GroundTruth groundTruth = LogGenerator.generate(conf, output);
+
+    List<Path> files = files(output);
+    assertEquals(12, files.size());
+    long lines = 0;
+    for (Path file : files) {
+      assertEquals(output, file.getParent());
+      assertTrue(file.getName(), file.getName().matches("access-2015-07-0[1-3]-000[0-3]\\.log\\.gz"));
+      lines += lines(file).size();
+    }
+    assertEquals(groundTruth.getLines(), lines);
+  }
+
+  @Test(expected = FileAlreadyExistsException.class)
+  public void testExistingOutputIsNotOverwritten() throws Exception {
+    LogGenerator.generate(conf, new Path(folder.getRoot().toURI()));
+  }
+
+  private Path output(String name) {
+    return new Path(new Path(folder.getRoot().toURI()), name);
+  }
+
+  private List<Path> files(Path output) throws IOException {
+    List<Path> files = new ArrayList<>();
+    RemoteIterator<LocatedFileStatus> it = FileSystem.getLocal(conf).listFiles(output, true);
+    while (it.hasNext()) {
+      Path path = it.next().getPath();
+      if (!path.getName().startsWith("_") && !path.getName().startsWith(".")) {
+        files.add(path);
+      }
+    }
+    return files;
+  }
+
+  private List<String> lines(Path file) throws IOException {
+    FileSystem fileSystem = FileSystem.getLocal(conf);
+    CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+    List<String> lines = new ArrayList<>();
+    try (InputStream in = codec == null ? fileSystem.open(file) : codec.createInputStream(fileSystem.open(file));
+         BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+}
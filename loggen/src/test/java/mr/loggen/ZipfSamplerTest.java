@@ -0,0 +1,62 @@
+package mr.loggen;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ZipfSamplerTest {
+  @Test
+  public void testRanksFollowZipfDistribution() {
+    int n = 1000;
+    ZipfSampler sampler = new ZipfSampler(n, 1.0);
+    SplittableRandom random = new SplittableRandom(42);
+    int samples = 1000000;
+    int[] counts = new int[n + 1];
+    for (int i = 0; i < samples; i++) {
+      int rank = sampler.sample(random);
+      assertTrue("rank " + rank, rank >= 1 && rank <= n);
+      counts[rank]++;
+    }
+    double harmonic = 0;
+    for (int k = 1; k <= n; k++) {
+      harmonic += 1.0 / k;
+    }
+    for (int k : new int[] {1, 2, 10, 100}) {
+      double expected = samples / (k * harmonic);
+      assertEquals("rank " + k, expected, counts[k], expected * 0.05);
+    }
+  }
+
+  @Test
+  public void testHigherExponentIsMoreSkewed() {
+    SplittableRandom random = new SplittableRandom(42);
+    ZipfSampler flat = new ZipfSampler(1000, 0.5);
+    ZipfSampler steep = new ZipfSampler(1000, 2.0);
+    int flatTop = 0;
+    int steepTop = 0;
+    for (int i = 0; i < 100000; i++) {
+      flatTop += flat.sample(random) == 1 ? 1 : 0;
+      steepTop += steep.sample(random) == 1 ? 1 : 0;
+    }
+    // P(1) is about 0.016 with exponent 0.5 and 0.61 with exponent 2
+    assertTrue(flatTop < 3000);
+    assertTrue(steepTop > 55000);
+  }
+
+  @Test
+  public void testSingleRank() {
+    ZipfSampler sampler = new ZipfSampler(1, 1.0);
+    SplittableRandom random = new SplittableRandom(1);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(1, sampler.sample(random));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidExponent() {
+    new ZipfSampler(10, 0);
+  }
+}
@@ -0,0 +1,167 @@
+package mr.func.ingest;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.io.compress.SplittableCompressionCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileRecordReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Reads access log lines from plain, compressed and re-packed log files.
+ * <p>
+ * Text files are read line by line, decompressed by the codec matching their extension, e.g. {@code .gz}
+ * or {@code .bz2}. Files starting with the {@link SequenceFile} header are re-packed logs, with the lines stored
+ * as {@link Text} values. Plain text, bzip2 and sequence files are split, other compressed files are read
+ * by a single mapper. The codecs are resolved once per listing of the input files, only the files without a codec
+ * extension are opened to read their header.
+ */
+public class AccessLogInputFormat extends FileInputFormat<Object, Text> {
+  private static final byte[] SEQUENCE_FILE_MAGIC = {'S', 'E', 'Q'};
+
+  // codecs of the current listing of the input files or of the task
+  private CompressionCodecFactory codecs;
+
+  @Override
+  public RecordReader<Object, Text> createRecordReader(InputSplit split, TaskAttemptContext context) {
+    return new AccessLogRecordReader(codecs(context.getConfiguration()));
+  }
+
+  @Override
+  public List<InputSplit> getSplits(JobContext job) throws IOException {
+    codecs = new CompressionCodecFactory(job.getConfiguration());
+    return super.getSplits(job);
+  }
+
+  @Override
+  protected boolean isSplitable(JobContext context, Path file) {
+    return isSplitable(codecs(context.getConfiguration()), file);
+  }
+
+  private CompressionCodecFactory codecs(Configuration conf) {
+    if (codecs == null) {
+      codecs = new CompressionCodecFactory(conf);
+    }
+    return codecs;
+  }
+
+  /**
+   * Checks if the log file can be split. Only files compressed with a splittable codec, e.g. bzip2, are split.
+   * @param codecs the codecs of the job configuration
+   * @param file a log file
+   * @return true if the file is not compressed or its codec is splittable
+   */
+  static boolean isSplitable(CompressionCodecFactory codecs, Path file) {
+    CompressionCodec codec = codecs.getCodec(file);
+    return codec == null || codec instanceof SplittableCompressionCodec;
+  }
+
+  /**
+   * Checks if the file is a {@link SequenceFile}. Compressed text files are recognized by their extension,
+   * other files by their header.
+   * @param file a log file
+   * @param conf a job configuration
+   * @return true if the file starts with the sequence file header
+   */
+  public static boolean isSequenceFile(Path file, Configuration conf) throws IOException {
+    return isSequenceFile(file, conf, new CompressionCodecFactory(conf));
+  }
+
+  /**
+   * Checks if the file is a {@link SequenceFile}, see {@link #isSequenceFile(Path, Configuration)}.
+   * @param file a log file
+   * @param conf a job configuration
+   * @param codecs the codecs of the job configuration, reused for many files
+   * @return true if the file starts with the sequence file header
+   */
+  public static boolean isSequenceFile(Path file, Configuration conf, CompressionCodecFactory codecs) throws IOException {
+    return codecs.getCodec(file) == null && hasSequenceFileHeader(file, conf);
+  }
+
+  private static boolean hasSequenceFileHeader(Path file, Configuration conf) throws IOException {
+    byte[] header = new byte[SEQUENCE_FILE_MAGIC.length];
+    try (FSDataInputStream in = file.getFileSystem(conf).open(file)) {
+      int read = 0;
+      while (read < header.length) {
+        int n = in.read(header, read, header.length - read);
+        if (n < 0) {
+          return false;
+        }
+        read += n;
+      }
+    }
+    for (int i = 0; i < header.length; i++) {
+      if (header[i] != SEQUENCE_FILE_MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Delegates to the line reader or the sequence file reader, chosen when the split is opened.
+   */
+  private static class AccessLogRecordReader extends RecordReader<Object, Text> {
+    private final CompressionCodecFactory codecs;
+    private RecordReader<?, Text> delegate;
+
+    AccessLogRecordReader(CompressionCodecFactory codecs) {
+      this.codecs = codecs;
+    }
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+      Configuration conf = context.getConfiguration();
+      Path file = ((FileSplit) split).getPath();
+      // a file with a codec extension is a compressed text file, it is not opened to read its header
+      if (isSequenceFile(file, conf, codecs)) {
+        delegate = new SequenceFileRecordReader<Object, Text>();
+      } else {
+        String delimiter = conf.get("textinputformat.record.delimiter");
+        delegate = new LineRecordReader(delimiter == null ? null : delimiter.getBytes(StandardCharsets.UTF_8));
+      }
+      delegate.initialize(split, context);
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException, InterruptedException {
+      return delegate.nextKeyValue();
+    }
+
+    @Override
+    public Object getCurrentKey() throws IOException, InterruptedException {
+      return delegate.getCurrentKey();
+    }
+
+    @Override
+    public Text getCurrentValue() throws IOException, InterruptedException {
+      return delegate.getCurrentValue();
+    }
+
+    @Override
+    public float getProgress() throws IOException, InterruptedException {
+      return delegate.getProgress();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (delegate != null) {
+        delegate.close();
+      }
+    }
+  }
+}
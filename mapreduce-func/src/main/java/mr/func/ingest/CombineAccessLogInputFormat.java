@@ -0,0 +1,57 @@
+package mr.func.ingest;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReaderWrapper;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Packs many small log files into splits of {@code mapreduce.input.fileinputformat.split.maxsize} bytes,
+ * so a single map task reads many files.
+ * <p>
+ * Blocks are grouped by node first, then by rack, so the splits keep data locality. Every file of the split
+ * is read by the {@link AccessLogInputFormat} record reader, plain, compressed and re-packed log files alike.
+ */
+public class CombineAccessLogInputFormat extends CombineFileInputFormat<Object, Text> {
+  // codecs of the current listing of the input files
+  private CompressionCodecFactory codecs;
+
+  @Override
+  public RecordReader<Object, Text> createRecordReader(InputSplit split, TaskAttemptContext context) throws IOException {
+    return new CombineFileRecordReader<>((CombineFileSplit) split, context, AccessLogRecordReaderWrapper.class);
+  }
+
+  @Override
+  public List<InputSplit> getSplits(JobContext job) throws IOException {
+    codecs = new CompressionCodecFactory(job.getConfiguration());
+    return super.getSplits(job);
+  }
+
+  @Override
+  protected boolean isSplitable(JobContext context, Path file) {
+    if (codecs == null) {
+      codecs = new CompressionCodecFactory(context.getConfiguration());
+    }
+    return AccessLogInputFormat.isSplitable(codecs, file);
+  }
+
+  /**
+   * Reads one file of the combined split, created by {@link CombineFileRecordReader} for every file.
+   */
+  private static class AccessLogRecordReaderWrapper extends CombineFileRecordReaderWrapper<Object, Text> {
+    public AccessLogRecordReaderWrapper(CombineFileSplit split, TaskAttemptContext context, Integer index)
+      throws IOException, InterruptedException {
+      super(new AccessLogInputFormat(), split, context, index);
+    }
+  }
+}
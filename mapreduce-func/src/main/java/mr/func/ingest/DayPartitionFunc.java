@@ -0,0 +1,91 @@
+package mr.func.ingest;
+
+import mr.func.topn.AccessLogParser;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Map-only function laying out raw access logs by day.
+ * <p>
+ * Every line is written, unchanged, into the {@code dt=yyyy-MM-dd} subdirectory of the job output,
+ * according to the {@code [dd/MMM/yyyy} prefix of the line. Lines without valid date go to {@code dt=unknown}.
+ */
+public class DayPartitionFunc {
+  /**
+   * Prefix of the day partition directory name.
+   */
+  public static final String PARTITION_PREFIX = "dt=";
+
+  /**
+   * Name of the partition directory for lines without valid date.
+   */
+  public static final String UNKNOWN_PARTITION = PARTITION_PREFIX + "unknown";
+
+  /**
+   * Counters reported by the {@link Mapper}.
+   */
+  public enum Counter {
+    /**
+     * Number of lines written into day partitions.
+     */
+    LINES_PARTITIONED,
+    /**
+     * Number of lines written into {@link #UNKNOWN_PARTITION}.
+     */
+    LINES_UNKNOWN_DAY
+  }
+
+  /**
+   * Returns the name of the partition directory for the day.
+   * @param date a day
+   * @return the partition directory name, e.g. {@code dt=2015-07-13}
+   */
+  public static String partitionName(LocalDate date) {
+    return PARTITION_PREFIX + date.toString();
+  }
+
+  /**
+   * Writes every line into its day partition.
+   */
+  public static class Mapper extends org.apache.hadoop.mapreduce.Mapper<Object, Text, NullWritable, Text> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Mapper.class);
+
+    private MultipleOutputs<NullWritable, Text> outputs;
+
+    // logs are ordered by time, so the output path is calculated again only when the day changes
+    private int lastDay = AccessLogParser.NO_DAY;
+    private String lastPath = UNKNOWN_PARTITION + "/part";
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      outputs = new MultipleOutputs<>(context);
+    }
+
+    @Override
+    protected void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+      int day = AccessLogParser.parseDay(value.getBytes(), value.getLength());
+      if (day == AccessLogParser.NO_DAY) {
+        context.getCounter(Counter.LINES_UNKNOWN_DAY).increment(1);
+        outputs.write(NullWritable.get(), value, UNKNOWN_PARTITION + "/part");
+        return;
+      }
+      if (day != lastDay) {
+        lastDay = day;
+        lastPath = partitionName(LocalDate.ofEpochDay(day)) + "/part";
+      }
+      context.getCounter(Counter.LINES_PARTITIONED).increment(1);
+      outputs.write(NullWritable.get(), value, lastPath);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      outputs.close();
+    }
+  }
+}
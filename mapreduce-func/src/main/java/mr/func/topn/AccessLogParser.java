@@ -0,0 +1,322 @@
+package mr.func.topn;
+
+/**
+ * Byte level parser of the access log lines.
+ * <p>
+ * Scans raw line bytes (e.g. {@link org.apache.hadoop.io.Text#getBytes()}) without decoding them to {@code String},
+ * so parsing does not create any objects per record.
+ * <p>
+ * The line format is:
+ * <pre>
+ * [13/Jul/2015:07:57:03 +0200] GET /path 10.187.98.36 ... stat=200 ... usr=User{id=782444, username='N1408201'} scenId=- time=1
+ * </pre>
+ * The request fields following the timestamp are the method, the path and the client IP.
+ */
+public final class AccessLogParser {
+  /**
+   * Returned by {@link #parseDay(byte[], int)} when the line does not start with a valid {@code [dd/MMM/yyyy} prefix.
+   */
+  public static final int NO_DAY = Integer.MIN_VALUE;
+
+  /**
+   * Returned by {@link #findUsername(byte[], int)} when the line does not contain a valid username token.
+   */
+  public static final int NO_USERNAME = -1;
+
+  /**
+   * Returned by {@link #parseMinuteOfDay(byte[], int)} when the line does not start with a valid {@code [dd/MMM/yyyy:HH:mm} prefix.
+   */
+  public static final int NO_MINUTE = -1;
+
+  /**
+   * Length of the username, as defined by {@code username='[A-Za-z0-9]{8}'}
+   */
+  public static final int USERNAME_LENGTH = 8;
+
+  /**
+   * Returned by {@link #findField(byte[], int, int)} and {@link #findStatus(byte[], int)} when the line
+   * does not contain the field.
+   */
+  public static final int NO_FIELD = -1;
+
+  /**
+   * Index of the request method field for {@link #findField(byte[], int, int)}.
+   */
+  public static final int METHOD_FIELD = 0;
+
+  /**
+   * Index of the request path field for {@link #findField(byte[], int, int)}.
+   */
+  public static final int PATH_FIELD = 1;
+
+  /**
+   * Index of the client IP field for {@link #findField(byte[], int, int)}.
+   */
+  public static final int CLIENT_IP_FIELD = 2;
+
+  /**
+   * Length of the HTTP status code.
+   */
+  public static final int STATUS_LENGTH = 3;
+
+  private static final byte[] USERNAME_TOKEN = {'u', 's', 'e', 'r', 'n', 'a', 'm', 'e', '=', '\''};
+  private static final byte[] STATUS_TOKEN = {' ', 's', 't', 'a', 't', '='};
+
+  // the timestamp ends within the first bytes of the line
+  private static final int TIMESTAMP_MAX_LENGTH = 64;
+
+  // length of the "[dd/MMM/yyyy" prefix
+  private static final int DAY_PREFIX_LENGTH = 12;
+  // length of the "[dd/MMM/yyyy:HH:mm" prefix
+  private static final int MINUTE_PREFIX_LENGTH = 18;
+
+  private AccessLogParser() {
+  }
+
+  /**
+   * Parses the {@code [dd/MMM/yyyy} prefix of the line into the epoch day number
+   * (the same number as {@link java.time.LocalDate#toEpochDay()}).
+   *
+   * @param bytes a line bytes
+   * @param length a number of valid bytes in {@code bytes}
+   * @return the epoch day or {@link #NO_DAY} if the prefix is missing or malformed
+   */
+  public static int parseDay(byte[] bytes, int length) {
+    if (length < DAY_PREFIX_LENGTH || bytes[0] != '[' || bytes[3] != '/' || bytes[7] != '/') {
+      return NO_DAY;
+    }
+    int day = digits(bytes, 1, 2);
+    int month = month(bytes[4], bytes[5], bytes[6]);
+    int year = digits(bytes, 8, 4);
+    if (day < 1 || month < 1 || year < 0 || day > daysInMonth(year, month)) {
+      return NO_DAY;
+    }
+    return (int) epochDay(year, month, day);
+  }
+
+  /**
+   * Parses the {@code HH:mm} time of the {@code [dd/MMM/yyyy:HH:mm} prefix of the line, the day is parsed
+   * by {@link #parseDay(byte[], int)}. The time zone offset is ignored.
+   *
+   * @param bytes a line bytes
+   * @param length a number of valid bytes in {@code bytes}
+   * @return the minute of the day, from 0 to 1439, or {@link #NO_MINUTE} if the time is missing or malformed
+   */
+  public static int parseMinuteOfDay(byte[] bytes, int length) {
+    if (length < MINUTE_PREFIX_LENGTH || bytes[DAY_PREFIX_LENGTH] != ':' || bytes[15] != ':') {
+      return NO_MINUTE;
+    }
+    int hour = digits(bytes, 13, 2);
+    int minute = digits(bytes, 16, 2);
+    if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+      return NO_MINUTE;
+    }
+    return hour * 60 + minute;
+  }
+
+  /**
+   * Looks for the first {@code username='XXXXXXXX'} token where {@code X} is an alphanumeric character.
+   *
+   * @param bytes a line bytes
+   * @param length a number of valid bytes in {@code bytes}
+   * @return the offset of the first username character or {@link #NO_USERNAME}
+   */
+  public static int findUsername(byte[] bytes, int length) {
+    int last = length - USERNAME_TOKEN.length - USERNAME_LENGTH - 1;
+    for (int i = 0; i <= last; i++) {
+      if (bytes[i] != 'u' || !startsWith(bytes, i, USERNAME_TOKEN)) {
+        continue;
+      }
+      int start = i + USERNAME_TOKEN.length;
+      if (isUsername(bytes, start) && bytes[start + USERNAME_LENGTH] == '\'') {
+        return start;
+      }
+    }
+    return NO_USERNAME;
+  }
+
+  /**
+   * Looks for the space separated request field following the {@code [timestamp]} of the line.
+   *
+   * @param bytes a line bytes
+   * @param length a number of valid bytes in {@code bytes}
+   * @param index an index of the field, e.g. {@link #PATH_FIELD}
+   * @return the offset of the first field character or {@link #NO_FIELD}
+   */
+  public static int findField(byte[] bytes, int length, int index) {
+    int i = 0;
+    int last = Math.min(length, TIMESTAMP_MAX_LENGTH);
+    while (i < last && bytes[i] != ']') {
+      i++;
+    }
+    if (i == last) {
+      return NO_FIELD;
+    }
+    int start = i + 2;
+    for (int field = 0; field < index && start < length; field++) {
+      start = fieldEnd(bytes, start, length) + 1;
+    }
+    return start < length && bytes[start] != ' ' ? start : NO_FIELD;
+  }
+
+  /**
+   * Finds the end of the field starting at {@code offset}.
+   *
+   * @param bytes a line bytes
+   * @param offset an offset of the field
+   * @param length a number of valid bytes in {@code bytes}
+   * @return the offset of the first space after the field or {@code length}
+   */
+  public static int fieldEnd(byte[] bytes, int offset, int length) {
+    int i = offset;
+    while (i < length && bytes[i] != ' ') {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Finds the end of the request path starting at {@code offset}, without its query string.
+   *
+   * @param bytes a line bytes
+   * @param offset an offset of the path, see {@link #PATH_FIELD}
+   * @param length a number of valid bytes in {@code bytes}
+   * @return the offset of the first space or {@code ?} after the path or {@code length}
+   */
+  public static int pathEnd(byte[] bytes, int offset, int length) {
+    int i = offset;
+    while (i < length && bytes[i] != ' ' && bytes[i] != '?') {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Looks for the first {@code stat=NNN} token where {@code N} is a digit.
+   *
+   * @param bytes a line bytes
+   * @param length a number of valid bytes in {@code bytes}
+   * @return the offset of the first status digit or {@link #NO_FIELD}
+   */
+  public static int findStatus(byte[] bytes, int length) {
+    int last = length - STATUS_TOKEN.length - STATUS_LENGTH;
+    for (int i = 0; i <= last; i++) {
+      if (bytes[i] != ' ' || !startsWith(bytes, i, STATUS_TOKEN)) {
+        continue;
+      }
+      int start = i + STATUS_TOKEN.length;
+      if (digits(bytes, start, STATUS_LENGTH) >= 0 && (start + STATUS_LENGTH == length || bytes[start + STATUS_LENGTH] == ' ')) {
+        return start;
+      }
+    }
+    return NO_FIELD;
+  }
+
+  /**
+   * Converts date to the epoch day number without creating any {@link java.time.LocalDate}.
+   * The algorithm is the same as in {@link java.time.LocalDate#toEpochDay()}.
+   *
+   * @param year a year
+   * @param month a month, from 1 to 12
+   * @param day a day of month, from 1 to 31
+   * @return the epoch day
+   */
+  public static long epochDay(int year, int month, int day) {
+    long y = year;
+    long total = 365 * y;
+    if (y >= 0) {
+      total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+    } else {
+      total -= y / -4 - y / -100 + y / -400;
+    }
+    total += (367 * month - 362) / 12;
+    total += day - 1;
+    if (month > 2) {
+      total--;
+      if (!isLeapYear(year)) {
+        total--;
+      }
+    }
+    return total - 719528L; // days from year 0 to 1970
+  }
+
+  private static boolean startsWith(byte[] bytes, int offset, byte[] prefix) {
+    for (int i = 0; i < prefix.length; i++) {
+      if (bytes[offset + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isUsername(byte[] bytes, int offset) {
+    for (int i = offset; i < offset + USERNAME_LENGTH; i++) {
+      byte b = bytes[i];
+      if (!((b >= '0' && b <= '9') || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z'))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int digits(byte[] bytes, int offset, int count) {
+    int value = 0;
+    for (int i = offset; i < offset + count; i++) {
+      int d = bytes[i] - '0';
+      if (d < 0 || d > 9) {
+        return -1;
+      }
+      value = value * 10 + d;
+    }
+    return value;
+  }
+
+  // English month abbreviations as formatted by "MMM" pattern with Locale.ENGLISH
+  private static int month(byte b1, byte b2, byte b3) {
+    switch (b1) {
+      case 'J':
+        if (b2 == 'a' && b3 == 'n') return 1;
+        if (b2 == 'u' && b3 == 'n') return 6;
+        if (b2 == 'u' && b3 == 'l') return 7;
+        return -1;
+      case 'F':
+        return b2 == 'e' && b3 == 'b' ? 2 : -1;
+      case 'M':
+        if (b2 == 'a' && b3 == 'r') return 3;
+        if (b2 == 'a' && b3 == 'y') return 5;
+        return -1;
+      case 'A':
+        if (b2 == 'p' && b3 == 'r') return 4;
+        if (b2 == 'u' && b3 == 'g') return 8;
+        return -1;
+      case 'S':
+        return b2 == 'e' && b3 == 'p' ? 9 : -1;
+      case 'O':
+        return b2 == 'c' && b3 == 't' ? 10 : -1;
+      case 'N':
+        return b2 == 'o' && b3 == 'v' ? 11 : -1;
+      case 'D':
+        return b2 == 'e' && b3 == 'c' ? 12 : -1;
+      default:
+        return -1;
+    }
+  }
+
+  private static int daysInMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        return isLeapYear(year) ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  private static boolean isLeapYear(int year) {
+    return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+  }
+}
@@ -0,0 +1,98 @@
+package mr.func.topn;
+
+import com.google.common.base.Strings;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Map-reduce functions for approximate counting of the most active users out of the access logs.
+ * <p>
+ * Every mapper counts users of its split in the {@link SpaceSavingSketch} and writes only the sketch.
+ * The single reducer merges the sketches, so the shuffle transfers one small sketch per split instead of
+ * the counters of all users.
+ */
+public class ApproxTopNFunc {
+  /**
+   * Configuration key with the number of users monitored by the sketches.
+   */
+  public static final String CAPACITY = "approxCapacity";
+
+  /**
+   * Default value for {@link #CAPACITY}.
+   */
+  public static final int DEFAULT_CAPACITY = 1000;
+
+  /**
+   * Counts users of the split in the sketch and writes the sketch in {@code cleanup()}.
+   */
+  public static class Mapper extends org.apache.hadoop.mapreduce.Mapper<Object, Text, NullWritable, SpaceSavingSketch> {
+    // date filter bounds as epoch days, inclusive
+    private boolean filterByDate;
+    private int dayFrom;
+    private int dayTo;
+
+    private SpaceSavingSketch sketch;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      sketch = new SpaceSavingSketch(context.getConfiguration().getInt(CAPACITY, DEFAULT_CAPACITY));
+      String df = context.getConfiguration().get("dateFrom");
+      String dt = context.getConfiguration().get("dateTo");
+      filterByDate = !Strings.isNullOrEmpty(df) && !Strings.isNullOrEmpty(dt);
+      if (filterByDate) {
+        dayFrom = (int) LocalDate.parse(df).toEpochDay();
+        dayTo = (int) LocalDate.parse(dt).toEpochDay();
+      }
+    }
+
+    @Override
+    protected void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+      byte[] bytes = value.getBytes();
+      int length = value.getLength();
+      if (filterByDate) {
+        int day = AccessLogParser.parseDay(bytes, length);
+        if (day == AccessLogParser.NO_DAY || day < dayFrom || day > dayTo) {
+          return;
+        }
+      }
+      int username = AccessLogParser.findUsername(bytes, length);
+      if (username != AccessLogParser.NO_USERNAME) {
+        sketch.offer(bytes, username, AccessLogParser.USERNAME_LENGTH, 1);
+      }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      if (sketch.size() > 0) {
+        context.write(NullWritable.get(), sketch);
+      }
+    }
+  }
+
+  /**
+   * Merges the sketches of all mappers into a single sketch. It has to be the only reducer of the job.
+   */
+  public static class Reducer extends org.apache.hadoop.mapreduce.Reducer<NullWritable, SpaceSavingSketch, NullWritable, SpaceSavingSketch> {
+    private SpaceSavingSketch merged;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      merged = new SpaceSavingSketch(context.getConfiguration().getInt(CAPACITY, DEFAULT_CAPACITY));
+    }
+
+    @Override
+    protected void reduce(NullWritable key, Iterable<SpaceSavingSketch> values, Context context) throws IOException, InterruptedException {
+      for (SpaceSavingSketch sketch : values) {
+        merged.merge(sketch);
+      }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      context.write(NullWritable.get(), merged);
+    }
+  }
+}
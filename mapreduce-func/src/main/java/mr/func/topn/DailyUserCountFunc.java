@@ -0,0 +1,94 @@
+package mr.func.topn;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Map-reduce functions counting users activity per day, the source of the daily aggregates.
+ * <p>
+ * The key is a binary {@link Text}: the epoch day as 4 bytes big-endian int followed by the username bytes.
+ * Use {@link #day(Text)} and {@link #username(Text)} to decode it. {@link TopNFunc.Combiner} sums the counters,
+ * both as the combiner and as the reducer.
+ */
+public class DailyUserCountFunc {
+  private static final int DAY_BYTES = 4;
+
+  /**
+   * Decodes the epoch day of the key.
+   * @param key a key written by the {@link Mapper}
+   * @return the epoch day
+   */
+  public static int day(Text key) {
+    byte[] b = key.getBytes();
+    return (b[0] & 0xff) << 24 | (b[1] & 0xff) << 16 | (b[2] & 0xff) << 8 | (b[3] & 0xff);
+  }
+
+  /**
+   * Decodes the username of the key.
+   * @param key a key written by the {@link Mapper}
+   * @return the username
+   */
+  public static String username(Text key) {
+    return new String(key.getBytes(), DAY_BYTES, key.getLength() - DAY_BYTES, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Counts (day, username) pairs in the {@link UserCounterTable} and writes them in {@code cleanup()},
+   * flushing partial counters when the table is full.
+   */
+  public static class Mapper extends org.apache.hadoop.mapreduce.Mapper<Object, Text, Text, IntWritable> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Mapper.class);
+
+    private final byte[] keyBytes = new byte[DAY_BYTES + AccessLogParser.USERNAME_LENGTH];
+    private final Text keyWord = new Text();
+    private final IntWritable countWord = new IntWritable();
+    private UserCounterTable counters;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      counters = new UserCounterTable(context.getConfiguration().getInt(TopNFunc.IN_MAPPER_MAX_USERS, TopNFunc.DEFAULT_IN_MAPPER_MAX_USERS));
+    }
+
+    @Override
+    protected void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+      byte[] bytes = value.getBytes();
+      int length = value.getLength();
+      int day = AccessLogParser.parseDay(bytes, length);
+      if (day == AccessLogParser.NO_DAY) {
+        return;
+      }
+      int username = AccessLogParser.findUsername(bytes, length);
+      if (username == AccessLogParser.NO_USERNAME) {
+        return;
+      }
+      keyBytes[0] = (byte) (day >>> 24);
+      keyBytes[1] = (byte) (day >>> 16);
+      keyBytes[2] = (byte) (day >>> 8);
+      keyBytes[3] = (byte) day;
+      System.arraycopy(bytes, username, keyBytes, DAY_BYTES, AccessLogParser.USERNAME_LENGTH);
+      counters.increment(keyBytes, 0, keyBytes.length, 1);
+      if (counters.isFull()) {
+        flush(context);
+      }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      flush(context);
+    }
+
+    private void flush(Context context) throws IOException, InterruptedException {
+      counters.forEach((bytes, offset, length, count) -> {
+        keyWord.set(bytes, offset, length);
+        countWord.set(count);
+        context.write(keyWord, countWord);
+      });
+      counters.clear();
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package mr.func.topn;
+
+/**
+ * Dimensions of the access log lines counted by the {@link MultiTopNFunc}.
+ * <p>
+ * Map output keys of all dimensions share one key space, every key starts with the {@link #getTag()} byte
+ * of its dimension followed by the value bytes.
+ */
+public enum Dimension {
+  USER('u', "user"),
+  CLIENT_IP('i', "ip"),
+  PATH('p', "path"),
+  STATUS('s', "status");
+
+  private final byte tag;
+  private final String outputName;
+
+  Dimension(char tag, String outputName) {
+    this.tag = (byte) tag;
+    this.outputName = outputName;
+  }
+
+  /**
+   * @return the first byte of the map output keys of the dimension
+   */
+  public byte getTag() {
+    return tag;
+  }
+
+  /**
+   * @return the name of the dimension in the requests and of its named output, alphanumeric
+   */
+  public String getOutputName() {
+    return outputName;
+  }
+
+  /**
+   * Finds the dimension of the map output key.
+   * @param tag a first byte of the key
+   * @return the dimension or {@code null} if the tag is unknown
+   */
+  public static Dimension ofTag(byte tag) {
+    for (Dimension dimension : values()) {
+      if (dimension.tag == tag) {
+        return dimension;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the dimension by its output name.
+   * @param outputName a name of the dimension, e.g. {@code ip}
+   * @return the dimension or {@code null} if the name is unknown
+   */
+  public static Dimension ofOutputName(String outputName) {
+    for (Dimension dimension : values()) {
+      if (dimension.outputName.equals(outputName)) {
+        return dimension;
+      }
+    }
+    return null;
+  }
+}
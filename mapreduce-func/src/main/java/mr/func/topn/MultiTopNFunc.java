@@ -0,0 +1,235 @@
+package mr.func.topn;
+
+import com.google.common.base.Strings;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Map-reduce functions counting several {@link Dimension}s of the access logs in a single scan.
+ * <p>
+ * The mapper extracts every requested dimension of the line into the key tagged with the dimension.
+ * The reducer keeps a separate {@link TopNHeap} per dimension and writes the top values of every dimension
+ * into its own named output, e.g. {@code ip-r-00000}.
+ */
+public class MultiTopNFunc {
+  /**
+   * Configuration key with the comma separated output names of the counted dimensions. All dimensions by default.
+   */
+  public static final String DIMENSIONS = "dimensions";
+
+  // longer values, e.g. paths, are truncated on the UTF-8 character boundary
+  private static final int MAX_VALUE_LENGTH = 512;
+
+  /**
+   * Adds the named outputs of all dimensions to the job.
+   * @param job a multi-dimension top-n job
+   */
+  public static void addNamedOutputs(Job job) {
+    for (Dimension dimension : Dimension.values()) {
+      MultipleOutputs.addNamedOutput(job, dimension.getOutputName(), SequenceFileOutputFormat.class, Text.class, IntWritable.class);
+    }
+  }
+
+  /**
+   * Reads the dimensions configured with {@link #DIMENSIONS}.
+   * @param conf a job configuration
+   * @return the dimensions, all of them if not configured
+   */
+  public static List<Dimension> dimensions(Configuration conf) {
+    String names = conf.get(DIMENSIONS);
+    if (Strings.isNullOrEmpty(names)) {
+      return Arrays.asList(Dimension.values());
+    }
+    List<Dimension> dimensions = new ArrayList<>();
+    for (String name : names.split(",")) {
+      Dimension dimension = Dimension.ofOutputName(name.trim());
+      if (dimension == null) {
+        throw new IllegalArgumentException("unknown dimension: " + name);
+      }
+      dimensions.add(dimension);
+    }
+    return dimensions;
+  }
+
+  /**
+   * Counts the dimensions of the split in the {@link UserCounterTable} and writes (tagged value, count) records
+   * when the table is full and in {@code cleanup()}.
+   */
+  public static class Mapper extends org.apache.hadoop.mapreduce.Mapper<Object, Text, Text, IntWritable> {
+    // date filter bounds as epoch days, inclusive
+    private boolean filterByDate;
+    private int dayFrom;
+    private int dayTo;
+
+    private Dimension[] dimensions;
+    private UserCounterTable counters;
+    // the tag byte followed by the value bytes
+    private final byte[] keyBytes = new byte[1 + MAX_VALUE_LENGTH];
+    private final Text keyWord = new Text();
+    private final IntWritable countWord = new IntWritable();
+
+    // counters are reported in cleanup(), not per line
+    private long linesRead;
+    private long linesOutsideDateInterval;
+    private long linesMalformed;
+    private long outputRecords;
+    private long partialFlushes;
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      dimensions = dimensions(context.getConfiguration()).toArray(new Dimension[0]);
+      counters = new UserCounterTable(context.getConfiguration().getInt(TopNFunc.IN_MAPPER_MAX_USERS, TopNFunc.DEFAULT_IN_MAPPER_MAX_USERS));
+      String df = context.getConfiguration().get("dateFrom");
+      String dt = context.getConfiguration().get("dateTo");
+      filterByDate = !Strings.isNullOrEmpty(df) && !Strings.isNullOrEmpty(dt);
+      if (filterByDate) {
+        dayFrom = (int) LocalDate.parse(df).toEpochDay();
+        dayTo = (int) LocalDate.parse(dt).toEpochDay();
+      }
+    }
+
+    @Override
+    protected void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+      byte[] bytes = value.getBytes();
+      int length = value.getLength();
+      linesRead++;
+      if (filterByDate) {
+        int day = AccessLogParser.parseDay(bytes, length);
+        if (day == AccessLogParser.NO_DAY) {
+          linesMalformed++;
+          return;
+        }
+        if (day < dayFrom || day > dayTo) {
+          linesOutsideDateInterval++;
+          return;
+        }
+      }
+      for (Dimension dimension : dimensions) {
+        count(dimension, bytes, length);
+      }
+      if (counters.isFull()) {
+        partialFlushes++;
+        flush(context);
+      }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      flush(context);
+      context.getCounter(TopNCounter.MAP_LINES_READ).increment(linesRead);
+      context.getCounter(TopNCounter.MAP_LINES_OUTSIDE_DATE_INTERVAL).increment(linesOutsideDateInterval);
+      context.getCounter(TopNCounter.MAP_LINES_MALFORMED).increment(linesMalformed);
+      context.getCounter(TopNCounter.MAP_OUTPUT_RECORDS).increment(outputRecords);
+      context.getCounter(TopNCounter.MAP_PARTIAL_FLUSHES).increment(partialFlushes);
+    }
+
+    private void count(Dimension dimension, byte[] bytes, int length) {
+      int start, end;
+      switch (dimension) {
+        case USER:
+          start = AccessLogParser.findUsername(bytes, length);
+          end = start + AccessLogParser.USERNAME_LENGTH;
+          break;
+        case CLIENT_IP:
+          start = AccessLogParser.findField(bytes, length, AccessLogParser.CLIENT_IP_FIELD);
+          end = start < 0 ? start : AccessLogParser.fieldEnd(bytes, start, length);
+          break;
+        case PATH:
+          start = AccessLogParser.findField(bytes, length, AccessLogParser.PATH_FIELD);
+          end = start < 0 ? start : AccessLogParser.pathEnd(bytes, start, length);
+          break;
+        case STATUS:
+          start = AccessLogParser.findStatus(bytes, length);
+          end = start + AccessLogParser.STATUS_LENGTH;
+          break;
+        default:
+          return;
+      }
+      if (start < 0) {
+        return;
+      }
+      int valueLength = Math.min(end - start, MAX_VALUE_LENGTH);
+      // the truncated value ends before the first byte of the split multibyte UTF-8 character
+      while (valueLength < end - start && valueLength > 0 && (bytes[start + valueLength] & 0xC0) == 0x80) {
+        valueLength--;
+      }
+      keyBytes[0] = dimension.getTag();
+      System.arraycopy(bytes, start, keyBytes, 1, valueLength);
+      counters.increment(keyBytes, 0, valueLength + 1, 1);
+    }
+
+    private void flush(Context context) throws IOException, InterruptedException {
+      outputRecords += counters.size();
+      counters.forEach((bytes, offset, length, count) -> {
+        keyWord.set(bytes, offset, length);
+        countWord.set(count);
+        context.write(keyWord, countWord);
+      });
+      counters.clear();
+    }
+  }
+
+  /**
+   * Sums the counters of the tagged values and keeps the top {@code limit} values of every dimension.
+   * <p>
+   * With several reduce tasks every reducer writes the top values of its partition, sorted from the most
+   * frequent one. The global top-n of the dimension is the top-n of the merged outputs of the dimension.
+   */
+  public static class Reducer extends org.apache.hadoop.mapreduce.Reducer<Text, IntWritable, Text, IntWritable> {
+    private int limit;
+    private final TopNHeap[] topN = new TopNHeap[Dimension.values().length];
+    private MultipleOutputs<Text, IntWritable> outputs;
+    private final Text valueWord = new Text();
+    private final IntWritable countWord = new IntWritable();
+
+    @Override
+    protected void setup(Context context) throws IOException, InterruptedException {
+      String limit = context.getConfiguration().get("limit");
+      this.limit = Strings.isNullOrEmpty(limit) ? 10 : Integer.parseInt(limit);
+      outputs = new MultipleOutputs<>(context);
+    }
+
+    @Override
+    protected void reduce(Text key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
+      Dimension dimension = key.getLength() > 0 ? Dimension.ofTag(key.getBytes()[0]) : null;
+      if (dimension == null) {
+        return;
+      }
+      int sum = 0;
+      for (IntWritable value : values) {
+        sum += value.get();
+      }
+      TopNHeap heap = topN[dimension.ordinal()];
+      if (heap == null) {
+        heap = topN[dimension.ordinal()] = new TopNHeap(limit);
+      }
+      heap.offer(key.getBytes(), 1, key.getLength() - 1, sum);
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      for (Dimension dimension : Dimension.values()) {
+        TopNHeap heap = topN[dimension.ordinal()];
+        if (heap == null) {
+          continue;
+        }
+        heap.drainDescending((bytes, offset, length, count) -> {
+          valueWord.set(bytes, offset, length);
+          countWord.set(count);
+          outputs.write(dimension.getOutputName(), valueWord, countWord);
+        });
+      }
+      outputs.close();
+    }
+  }
+}
@@ -0,0 +1,324 @@
+package mr.func.topn;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving sketch of the most frequent users, with memory bounded by its capacity.
+ * <p>
+ * The sketch monitors at most {@code capacity} users. A user not monitored yet replaces the user with the smallest
+ * counter and inherits its counter as the error. So every counter overestimates the true count by at most its error,
+ * and every user with the true count above {@link #minCount()} is monitored. The error is at most
+ * {@code totalCount / capacity}.
+ * <p>
+ * Sketches are mergeable: sketches of the splits merged into one sketch keep the same guarantees for all splits.
+ * <p>
+ * The sketch is not thread safe.
+ */
+public final class SpaceSavingSketch implements Writable {
+  private int capacity;
+  private long totalCount;
+  // min-heap by counters
+  private Entry[] heap = new Entry[0];
+  private int size;
+  private final Map<Key, Entry> index = new HashMap<>();
+  private final Key probe = new Key();
+
+  /**
+   * Creates empty sketch for deserialization.
+   */
+  public SpaceSavingSketch() {
+  }
+
+  /**
+   * Creates the sketch monitoring at most {@code capacity} users.
+   * @param capacity a number of monitored users
+   */
+  public SpaceSavingSketch(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.heap = new Entry[Math.min(capacity, 1024)];
+  }
+
+  /**
+   * Counts the user occurrences.
+   * @param bytes a buffer with the username bytes
+   * @param offset an offset of the username in the {@code bytes}
+   * @param length a length of the username
+   * @param count a number of occurrences
+   */
+  public void offer(byte[] bytes, int offset, int length, long count) {
+    totalCount += count;
+    probe.set(bytes, offset, length);
+    Entry entry = index.get(probe);
+    if (entry != null) {
+      entry.count += count;
+      siftDown(entry.heapIndex);
+      return;
+    }
+    if (size < capacity) {
+      add(new Entry(Arrays.copyOfRange(bytes, offset, offset + length), count, 0));
+      return;
+    }
+    // replaces the user with the smallest counter
+    Entry min = heap[0];
+    index.remove(min);
+    min.set(Arrays.copyOfRange(bytes, offset, offset + length));
+    min.error = min.count;
+    min.count += count;
+    index.put(min, min);
+    siftDown(0);
+  }
+
+  /**
+   * Merges the other sketch into this sketch. A user missing in one of the sketches is counted with the smallest
+   * counter of that sketch, which is the upper bound of its true count there.
+   * @param other a sketch to merge
+   */
+  public void merge(SpaceSavingSketch other) {
+    long thisMin = minCount();
+    long otherMin = other.minCount();
+    List<Entry> merged = new ArrayList<>(size + other.size);
+    for (int i = 0; i < size; i++) {
+      Entry entry = heap[i];
+      Entry otherEntry = other.index.get(entry);
+      merged.add(otherEntry == null
+        ? new Entry(entry.bytes, entry.count + otherMin, entry.error + otherMin)
+        : new Entry(entry.bytes, entry.count + otherEntry.count, entry.error + otherEntry.error));
+    }
+    for (int i = 0; i < other.size; i++) {
+      Entry otherEntry = other.heap[i];
+      if (!index.containsKey(otherEntry)) {
+        merged.add(new Entry(otherEntry.bytes.clone(), otherEntry.count + thisMin, otherEntry.error + thisMin));
+      }
+    }
+    merged.sort(DESCENDING);
+    long total = totalCount + other.totalCount;
+    clear();
+    totalCount = total;
+    for (int i = 0; i < merged.size() && i < capacity; i++) {
+      add(merged.get(i));
+    }
+  }
+
+  /**
+   * @return the upper bound of the true count of every user not monitored by the sketch
+   */
+  public long minCount() {
+    return size < capacity ? 0 : heap[0].count;
+  }
+
+  /**
+   * @return the number of all counted occurrences
+   */
+  public long totalCount() {
+    return totalCount;
+  }
+
+  /**
+   * @return the maximal number of monitored users
+   */
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of monitored users
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Passes all monitored users to the {@code consumer}, from the highest counter to the lowest.
+   * @param consumer a consumer of the users
+   */
+  public void forEachDescending(EntryConsumer consumer) throws IOException, InterruptedException {
+    Entry[] entries = Arrays.copyOf(heap, size);
+    Arrays.sort(entries, DESCENDING);
+    for (Entry entry : entries) {
+      consumer.accept(entry.bytes, 0, entry.length, entry.count, entry.error);
+    }
+  }
+
+  /**
+   * Removes all users.
+   */
+  public void clear() {
+    Arrays.fill(heap, 0, size, null);
+    size = 0;
+    totalCount = 0;
+    index.clear();
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, capacity);
+    WritableUtils.writeVLong(out, totalCount);
+    WritableUtils.writeVInt(out, size);
+    for (int i = 0; i < size; i++) {
+      Entry entry = heap[i];
+      WritableUtils.writeVInt(out, entry.length);
+      out.write(entry.bytes, 0, entry.length);
+      WritableUtils.writeVLong(out, entry.count);
+      WritableUtils.writeVLong(out, entry.error);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    clear();
+    capacity = WritableUtils.readVInt(in);
+    totalCount = WritableUtils.readVLong(in);
+    int entries = WritableUtils.readVInt(in);
+    heap = new Entry[Math.max(entries, Math.min(capacity, 1024))];
+    for (int i = 0; i < entries; i++) {
+      byte[] bytes = new byte[WritableUtils.readVInt(in)];
+      in.readFully(bytes);
+      add(new Entry(bytes, WritableUtils.readVLong(in), WritableUtils.readVLong(in)));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SpaceSavingSketch(capacity=" + capacity + ", size=" + size + ", totalCount=" + totalCount + ")";
+  }
+
+  /**
+   * Consumer of the monitored users.
+   */
+  public interface EntryConsumer {
+    /**
+     * @param bytes a buffer with the username bytes
+     * @param offset an offset of the username in the {@code bytes}
+     * @param length a length of the username
+     * @param count an estimated count, never lower than the true count
+     * @param error a maximal overestimation of the {@code count}
+     */
+    void accept(byte[] bytes, int offset, int length, long count, long error) throws IOException, InterruptedException;
+  }
+
+  private void add(Entry entry) {
+    if (size == heap.length) {
+      heap = Arrays.copyOf(heap, Math.min(capacity, Math.max(1, size * 2)));
+    }
+    heap[size] = entry;
+    entry.heapIndex = size;
+    index.put(entry, entry);
+    siftUp(size++);
+  }
+
+  private void siftUp(int i) {
+    Entry entry = heap[i];
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (heap[parent].count <= entry.count) {
+        break;
+      }
+      place(heap[parent], i);
+      i = parent;
+    }
+    place(entry, i);
+  }
+
+  private void siftDown(int i) {
+    Entry entry = heap[i];
+    int half = size >>> 1;
+    while (i < half) {
+      int child = 2 * i + 1;
+      if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+        child++;
+      }
+      if (entry.count <= heap[child].count) {
+        break;
+      }
+      place(heap[child], i);
+      i = child;
+    }
+    place(entry, i);
+  }
+
+  private void place(Entry entry, int i) {
+    heap[i] = entry;
+    entry.heapIndex = i;
+  }
+
+  private static final Comparator<Entry> DESCENDING = (a, b) -> {
+    int result = Long.compare(b.count, a.count);
+    return result != 0 ? result : compareBytes(a, b);
+  };
+
+  private static int compareBytes(Key a, Key b) {
+    int length = Math.min(a.length, b.length);
+    for (int i = 0; i < length; i++) {
+      int result = (a.bytes[a.offset + i] & 0xff) - (b.bytes[b.offset + i] & 0xff);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return a.length - b.length;
+  }
+
+  /**
+   * Username bytes used as the index key. The probe key refers to the caller's buffer, so lookups do not copy bytes.
+   */
+  private static class Key {
+    byte[] bytes;
+    int offset;
+    int length;
+    int hash;
+
+    void set(byte[] bytes, int offset, int length) {
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+      int h = 1;
+      for (int i = offset; i < offset + length; i++) {
+        h = 31 * h + bytes[i];
+      }
+      this.hash = h;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash && length == other.length && compareBytes(this, other) == 0;
+    }
+  }
+
+  private static class Entry extends Key {
+    long count;
+    long error;
+    int heapIndex;
+
+    Entry(byte[] bytes, long count, long error) {
+      set(bytes);
+      this.count = count;
+      this.error = error;
+    }
+
+    void set(byte[] bytes) {
+      set(bytes, 0, bytes.length);
+    }
+  }
+}
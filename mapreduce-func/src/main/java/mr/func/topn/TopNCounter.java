@@ -0,0 +1,39 @@
+package mr.func.topn;
+
+/**
+ * Custom hadoop counters reported by the {@link TopNFunc} map-reduce functions.
+ */
+public enum TopNCounter {
+  /**
+   * Number of log lines read by the mapper.
+   */
+  MAP_LINES_READ,
+  /**
+   * Number of log lines with the username, within the date interval if given.
+   */
+  MAP_LINES_MATCHED,
+  /**
+   * Number of log lines dropped by the date filter.
+   */
+  MAP_LINES_OUTSIDE_DATE_INTERVAL,
+  /**
+   * Number of log lines without the username, or without the date when filtered by date.
+   */
+  MAP_LINES_MALFORMED,
+  /**
+   * Number of (username, 1) records the mapper would write without in-mapper combining.
+   */
+  MAP_AGGREGATED_RECORDS,
+  /**
+   * Number of records written by the mapper, with and without in-mapper combining.
+   */
+  MAP_OUTPUT_RECORDS,
+  /**
+   * Number of map output records saved by in-mapper combining.
+   */
+  MAP_OUTPUT_RECORDS_SAVED,
+  /**
+   * Number of flushes of the in-mapper counter table caused by reaching its size limit.
+   */
+  MAP_PARTIAL_FLUSHES
+}
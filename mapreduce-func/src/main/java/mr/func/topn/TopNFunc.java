@@ -3,68 +3,163 @@ package mr.func.topn;
 import com.google.common.base.Strings;
 import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * Map-reduce functions for counting users activity out of the access logs.
+ * <p>
+ * Usernames are shuffled as {@link UsernameKey}s, a single long per username, and written as {@link Text} by the reducer.
  */
 public class TopNFunc {
+  /**
+   * Configuration key enabling in-mapper combining of the user counters.
+   */
+  public static final String IN_MAPPER_COMBINING = "inMapperCombining";
+
+  /**
+   * Configuration key with the maximal number of users counted by the mapper before it flushes partial counters.
+   */
+  public static final String IN_MAPPER_MAX_USERS = "inMapperMaxUsers";
+
+  /**
+   * Default value for {@link #IN_MAPPER_MAX_USERS}.
+   */
+  public static final int DEFAULT_IN_MAPPER_MAX_USERS = 100000;
+
+  /**
+   * Configures the functions, the shuffle and the output format of the top-n job, with in-mapper combining enabled.
+   * The jar, the input, the output path and the number of reducers are configured by the caller.
+   * @param job a top-n job
+   * @param limit a number of the most active users
+   */
+  public static void configure(Job job, int limit) {
+    job.setMapperClass(Mapper.class);
+    job.setCombinerClass(Combiner.class);
+    job.setReducerClass(Reducer.class);
+    // usernames are shuffled packed into longs, sorted by the raw comparator registered by UsernameKey
+    job.setPartitionerClass(UsernameKey.Partitioner.class);
+    job.setMapOutputKeyClass(UsernameKey.class);
+    job.setMapOutputValueClass(IntWritable.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(IntWritable.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    job.getConfiguration().setInt("limit", limit);
+    job.getConfiguration().setBoolean(IN_MAPPER_COMBINING, true);
+  }
+
   /**
    * As the Map operation is parallelized the input file set is first split to several pieces.
    * <p>
    * Mapper is run for the the split - the input file is split into several splits (of size 64MB).
    * Mapper works with a record - each line from the split is a record
+   * <p>
+   * If {@link #IN_MAPPER_COMBINING} is enabled, mapper counts users in the {@link UserCounterTable} and writes
+   * a single (username, count) record per user in {@code cleanup()}. If the table reaches {@link #IN_MAPPER_MAX_USERS}
+   * entries, its partial counters are written and the table is cleared.
    */
-  public static class Mapper extends org.apache.hadoop.mapreduce.Mapper<Object, Text, Text, IntWritable> {
+  public static class Mapper extends org.apache.hadoop.mapreduce.Mapper<Object, Text, UsernameKey, IntWritable> {
     private static final Logger LOGGER = LoggerFactory.getLogger(Mapper.class);
 
-    private static final String TIME_AND_USER_REGEX = "^(\\[)([0-9]{2}\\/[A-Za-z]{3}\\/[0-9]{4})(.)+(username=')([A-Za-z0-9]{8}+)(')";
-    private static final Pattern TIME_AND_USER_PATTERN = Pattern.compile(TIME_AND_USER_REGEX);
+    private static final IntWritable one = new IntWritable(1);
+    private final UsernameKey usernameKey = new UsernameKey();
+
+    // date filter bounds as epoch days, inclusive
+    private boolean filterByDate;
+    private int dayFrom;
+    private int dayTo;
 
-    private static final String USER_REGEX = "(username=')([A-Za-z0-9]{8}+)(')";
-    private static final Pattern USER_PATTERN = Pattern.compile(USER_REGEX);
+    // counters are reported in cleanup(), not per line
+    private long linesRead;
+    private long linesMatched;
+    private long linesOutsideDateInterval;
+    private long linesMalformed;
+    private long outputRecords;
 
-    private static final IntWritable one = new IntWritable(1);
-    private Text usernameWord = new Text();
+    // in-mapper combining
+    private UserCounterTable counters;
+    private long aggregatedRecords;
+    private long partialFlushes;
+    private final IntWritable countWord = new IntWritable();
 
     @Override
-    protected void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+    protected void setup(Context context) throws IOException, InterruptedException {
+      if (context.getConfiguration().getBoolean(IN_MAPPER_COMBINING, false)) {
+        counters = new UserCounterTable(context.getConfiguration().getInt(IN_MAPPER_MAX_USERS, DEFAULT_IN_MAPPER_MAX_USERS));
+      }
       String df = context.getConfiguration().get("dateFrom");
       String dt = context.getConfiguration().get("dateTo");
-      if (!Strings.isNullOrEmpty(df) && !Strings.isNullOrEmpty(dt)) {
-        Matcher matcher = TIME_AND_USER_PATTERN.matcher(value.toString());
-        if (matcher.find()) {
-          String d = matcher.group(2);
-          LocalDate dateFrom = LocalDate.parse(df), dateTo = LocalDate.parse(dt);
-          LocalDate date = LocalDate.parse(d, DateTimeFormatter.ofPattern("dd/MMM/yyyy").withLocale(Locale.ENGLISH));
-          if (date.isBefore(dateFrom) || date.isAfter(dateTo)) {
-            return;
-          }
-          String username = matcher.group(5);
-          usernameWord.set(username);
-          context.write(usernameWord, one);
+      filterByDate = !Strings.isNullOrEmpty(df) && !Strings.isNullOrEmpty(dt);
+      if (filterByDate) {
+        dayFrom = (int) LocalDate.parse(df).toEpochDay();
+        dayTo = (int) LocalDate.parse(dt).toEpochDay();
+      }
+    }
+
+    @Override
+    protected void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+      byte[] bytes = value.getBytes();
+      int length = value.getLength();
+      linesRead++;
+      if (filterByDate) {
+        int day = AccessLogParser.parseDay(bytes, length);
+        if (day == AccessLogParser.NO_DAY) {
+          linesMalformed++;
+          return;
         }
-      } else {
-        Matcher matcher = USER_PATTERN.matcher(value.toString());
-        if (matcher.find()) {
-          String username = matcher.group(2);
-          usernameWord.set(username);
-          context.write(usernameWord, one);
+        if (day < dayFrom || day > dayTo) {
+          linesOutsideDateInterval++;
+          return;
         }
       }
+      int username = AccessLogParser.findUsername(bytes, length);
+      if (username == AccessLogParser.NO_USERNAME) {
+        linesMalformed++;
+        return;
+      }
+      linesMatched++;
+      if (counters == null) {
+        usernameKey.set(bytes, username, AccessLogParser.USERNAME_LENGTH);
+        context.write(usernameKey, one);
+        outputRecords++;
+        return;
+      }
+      counters.increment(bytes, username, AccessLogParser.USERNAME_LENGTH, 1);
+      aggregatedRecords++;
+      if (counters.isFull()) {
+        partialFlushes++;
+        flush(context);
+      }
+    }
+
+    @Override
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+      if (counters != null) {
+        flush(context);
+        context.getCounter(TopNCounter.MAP_AGGREGATED_RECORDS).increment(aggregatedRecords);
+        context.getCounter(TopNCounter.MAP_OUTPUT_RECORDS_SAVED).increment(aggregatedRecords - outputRecords);
+        context.getCounter(TopNCounter.MAP_PARTIAL_FLUSHES).increment(partialFlushes);
+      }
+      context.getCounter(TopNCounter.MAP_LINES_READ).increment(linesRead);
+      context.getCounter(TopNCounter.MAP_LINES_MATCHED).increment(linesMatched);
+      context.getCounter(TopNCounter.MAP_LINES_OUTSIDE_DATE_INTERVAL).increment(linesOutsideDateInterval);
+      context.getCounter(TopNCounter.MAP_LINES_MALFORMED).increment(linesMalformed);
+      context.getCounter(TopNCounter.MAP_OUTPUT_RECORDS).increment(outputRecords);
+    }
+
+    private void flush(Context context) throws IOException, InterruptedException {
+      outputRecords += counters.size();
+      counters.forEach((bytes, offset, length, count) -> {
+        usernameKey.set(bytes, offset, length);
+        countWord.set(count);
+        context.write(usernameKey, countWord);
+      });
+      counters.clear();
     }
   }
 
@@ -77,12 +172,14 @@ public class TopNFunc {
    * <p>
    * If a combiner is used then the map key-value pairs are not immediately written to the output.
    * Instead they will be collected in lists, one list per each key value.
+   * <p>
+   * Sums the counters of any key type, {@link UsernameKey}s of the top-n job and {@link Text} keys of the daily counts.
    */
-  public static class Combiner extends org.apache.hadoop.mapreduce.Reducer<Text, IntWritable, Text, IntWritable> {
+  public static class Combiner<K> extends org.apache.hadoop.mapreduce.Reducer<K, IntWritable, K, IntWritable> {
     private static final Logger LOGGER = LoggerFactory.getLogger(Combiner.class);
 
     @Override
-    protected void reduce(Text key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
+    protected void reduce(K key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
       int sum = 0;
       for (IntWritable value : values) {
         sum += value.get();
@@ -93,53 +190,42 @@ public class TopNFunc {
 
   /**
    * Combines partitions globally, for all mappers.
+   * <p>
+   * Keeps only the top {@code limit} users in the {@link TopNHeap}, so the reducer memory depends on the limit,
+   * not on the number of users. With several reduce tasks every reducer writes the top users of its partition,
+   * sorted from the most active one. The global top-n is the top-n of the merged reducers outputs.
    */
-  public static class Reducer extends org.apache.hadoop.mapreduce.Reducer<Text, IntWritable, Text, IntWritable> {
+  public static class Reducer extends org.apache.hadoop.mapreduce.Reducer<UsernameKey, IntWritable, Text, IntWritable> {
     private static final Logger LOGGER = LoggerFactory.getLogger(Reducer.class);
 
-    Map<String, Integer> counters = new ConcurrentHashMap<String, Integer>();
+    private TopNHeap topN;
+    private final Text usernameWord = new Text();
+    private final IntWritable countWord = new IntWritable();
 
     @Override
-    protected void reduce(Text key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
+    protected void setup(Context context) throws IOException, InterruptedException {
+      // get parameters
+      String limit = context.getConfiguration().get("limit");
+      topN = new TopNHeap(Strings.isNullOrEmpty(limit) ? 10 : Integer.parseInt(limit));
+    }
+
+    @Override
+    protected void reduce(UsernameKey key, Iterable<IntWritable> values, Context context) throws IOException, InterruptedException {
       int sum = 0;
       for (IntWritable value : values) {
         sum += value.get();
       }
-      counters.put(key.toString(), sum);
+      // packed usernames are decoded here, once per user
+      topN.offer(key.getBytes(), 0, key.getLength(), sum);
     }
 
     @Override
     protected void cleanup(Context context) throws IOException, InterruptedException {
-      // get parameters
-      String limit = context.getConfiguration().get("limit");
-      Integer n = Strings.isNullOrEmpty(limit) ? 10 : Integer.valueOf(limit);
-
-      // sort the users by counters
-      List<String> keys = new ArrayList<String>(counters.keySet());
-      try {
-        keys
-          .stream()
-          .sorted((k1, k2) -> counters.get(k2).compareTo(counters.get(k1)))
-          .limit(n)
-          .collect(Collectors.toList())
-          .forEach(k -> {
-            try {
-              context.write(new Text(k), new IntWritable(counters.get(k)));
-            } catch (Exception ex) {
-              throw new RuntimeException(ex);
-            }
-          });
-      } catch (RuntimeException ex) {
-        if (ex.getCause() != null) {
-          if (ex.getCause() instanceof IOException) {
-            throw (IOException)ex.getCause();
-          } else if (ex.getCause() instanceof InterruptedException) {
-            throw (InterruptedException)ex.getCause();
-          }
-        } else {
-          throw ex;
-        }
-      }
+      topN.drainDescending((bytes, offset, length, count) -> {
+        usernameWord.set(bytes, offset, length);
+        countWord.set(count);
+        context.write(usernameWord, countWord);
+      });
     }
   }
 }
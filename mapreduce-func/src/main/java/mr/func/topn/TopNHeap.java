@@ -0,0 +1,164 @@
+package mr.func.topn;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keeps the {@code n} users with the highest counters in the bounded min-heap.
+ * <p>
+ * Counters are kept as primitive {@code int}s and usernames are copied into byte buffers owned by the heap,
+ * so memory depends on {@code n} only, not on the number of offered users.
+ * Users with equal counters are ordered by their usernames.
+ * <p>
+ * The heap is not thread safe.
+ */
+public final class TopNHeap {
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final int limit;
+
+  private int[] counts;
+  private byte[][] keys;
+  private int[] lengths;
+  private int size;
+
+  /**
+   * Creates the heap keeping at most {@code limit} users.
+   * @param limit a number of users to keep. It is {@code n} in top-n
+   */
+  public TopNHeap(int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("limit must be positive: " + limit);
+    }
+    this.limit = limit;
+    int capacity = Math.min(limit, INITIAL_CAPACITY);
+    counts = new int[capacity];
+    keys = new byte[capacity][];
+    lengths = new int[capacity];
+  }
+
+  /**
+   * Offers the user to the heap. The user is kept if the heap is not full or if it beats the smallest user kept so far.
+   * @param bytes a buffer with the username bytes
+   * @param offset an offset of the username in the {@code bytes}
+   * @param length a length of the username
+   * @param count a counter of the user
+   * @return true if the user was kept
+   */
+  public boolean offer(byte[] bytes, int offset, int length, int count) {
+    if (size < limit) {
+      if (size == counts.length) {
+        grow();
+      }
+      copy(size, bytes, offset, length, count);
+      siftUp(size++);
+      return true;
+    }
+    if (compare(count, bytes, offset, length, 0) <= 0) {
+      return false;
+    }
+    copy(0, bytes, offset, length, count);
+    siftDown(0, size);
+    return true;
+  }
+
+  /**
+   * @return the number of users kept in the heap
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Passes all kept users to the {@code consumer}, from the highest counter to the lowest, and empties the heap.
+   * @param consumer a consumer of the users
+   */
+  public void drainDescending(UserCounterTable.EntryConsumer consumer) throws IOException, InterruptedException {
+    // heap sort in place: the smallest element is moved to the end of the array
+    int n = size;
+    for (int last = n - 1; last > 0; last--) {
+      swap(0, last);
+      siftDown(0, last);
+    }
+    size = 0;
+    for (int i = 0; i < n; i++) {
+      consumer.accept(keys[i], 0, lengths[i], counts[i]);
+    }
+  }
+
+  private void grow() {
+    int capacity = (int) Math.min((long) counts.length << 1, limit);
+    counts = Arrays.copyOf(counts, capacity);
+    keys = Arrays.copyOf(keys, capacity);
+    lengths = Arrays.copyOf(lengths, capacity);
+  }
+
+  private void copy(int slot, byte[] bytes, int offset, int length, int count) {
+    if (keys[slot] == null || keys[slot].length < length) {
+      keys[slot] = new byte[Math.max(length, AccessLogParser.USERNAME_LENGTH)];
+    }
+    System.arraycopy(bytes, offset, keys[slot], 0, length);
+    lengths[slot] = length;
+    counts[slot] = count;
+  }
+
+  private void siftUp(int slot) {
+    while (slot > 0) {
+      int parent = (slot - 1) >>> 1;
+      if (compare(slot, parent) >= 0) {
+        return;
+      }
+      swap(slot, parent);
+      slot = parent;
+    }
+  }
+
+  private void siftDown(int slot, int end) {
+    while (true) {
+      int child = 2 * slot + 1;
+      if (child >= end) {
+        return;
+      }
+      if (child + 1 < end && compare(child + 1, child) < 0) {
+        child++;
+      }
+      if (compare(child, slot) >= 0) {
+        return;
+      }
+      swap(slot, child);
+      slot = child;
+    }
+  }
+
+  private void swap(int i, int j) {
+    int count = counts[i];
+    counts[i] = counts[j];
+    counts[j] = count;
+    byte[] key = keys[i];
+    keys[i] = keys[j];
+    keys[j] = key;
+    int length = lengths[i];
+    lengths[i] = lengths[j];
+    lengths[j] = length;
+  }
+
+  private int compare(int i, int j) {
+    return compare(counts[i], keys[i], 0, lengths[i], j);
+  }
+
+  // orders by counter ascending and then by username descending, so the root is the first user to drop
+  private int compare(int count, byte[] bytes, int offset, int length, int slot) {
+    if (count != counts[slot]) {
+      return count < counts[slot] ? -1 : 1;
+    }
+    byte[] key = keys[slot];
+    int n = Math.min(length, lengths[slot]);
+    for (int i = 0; i < n; i++) {
+      int a = bytes[offset + i] & 0xff, b = key[i] & 0xff;
+      if (a != b) {
+        return b - a;
+      }
+    }
+    return lengths[slot] - length;
+  }
+}
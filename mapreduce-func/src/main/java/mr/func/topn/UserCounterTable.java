@@ -0,0 +1,174 @@
+package mr.func.topn;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Counts occurrences of the usernames in the primitive open-addressing hash table.
+ * <p>
+ * Usernames are kept as raw bytes in one shared array, counters are kept as primitive {@code int}s.
+ * Incrementing a counter for already known username does not create any objects.
+ * <p>
+ * The table is not thread safe.
+ */
+public final class UserCounterTable {
+  private static final int MIN_CAPACITY = 16;
+
+  /**
+   * Receives entries of the table.
+   */
+  public interface EntryConsumer {
+    /**
+     * Accepts single entry of the table.
+     * @param bytes a buffer with the username bytes
+     * @param offset an offset of the username in the {@code bytes}
+     * @param length a length of the username
+     * @param count a counter of the username
+     */
+    void accept(byte[] bytes, int offset, int length, int count) throws IOException, InterruptedException;
+  }
+
+  private final int maxEntries;
+
+  // slot arrays, slot is empty when its counter is 0
+  private int[] counts;
+  private int[] hashes;
+  private int[] offsets;
+  private int[] lengths;
+  private int mask;
+  private int size;
+
+  // usernames storage
+  private byte[] keys;
+  private int keysLength;
+
+  /**
+   * Creates the table limited to the given number of entries.
+   * @param maxEntries a number of entries after which the table reports it is full
+   */
+  public UserCounterTable(int maxEntries) {
+    this.maxEntries = maxEntries;
+    int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.min(maxEntries, 1 << 10)) << 1);
+    allocate(capacity);
+    keys = new byte[capacity * AccessLogParser.USERNAME_LENGTH];
+  }
+
+  /**
+   * Adds {@code delta} to the counter of the username.
+   * @param bytes a buffer with the username bytes
+   * @param offset an offset of the username in the {@code bytes}
+   * @param length a length of the username
+   * @param delta a value to add to the counter, must be positive
+   */
+  public void increment(byte[] bytes, int offset, int length, int delta) {
+    int hash = hash(bytes, offset, length);
+    int slot = hash & mask;
+    while (counts[slot] != 0) {
+      if (hashes[slot] == hash && equals(slot, bytes, offset, length)) {
+        counts[slot] += delta;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    counts[slot] = delta;
+    hashes[slot] = hash;
+    offsets[slot] = store(bytes, offset, length);
+    lengths[slot] = length;
+    if (++size * 2 > counts.length) {
+      rehash(counts.length << 1);
+    }
+  }
+
+  /**
+   * @return the number of distinct usernames in the table
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return true if the table reached its maximal number of entries and should be flushed
+   */
+  public boolean isFull() {
+    return size >= maxEntries;
+  }
+
+  /**
+   * Iterates over all entries of the table.
+   * @param consumer a consumer of the entries
+   */
+  public void forEach(EntryConsumer consumer) throws IOException, InterruptedException {
+    for (int slot = 0; slot < counts.length; slot++) {
+      if (counts[slot] != 0) {
+        consumer.accept(keys, offsets[slot], lengths[slot], counts[slot]);
+      }
+    }
+  }
+
+  /**
+   * Removes all entries, keeping allocated memory for reuse.
+   */
+  public void clear() {
+    Arrays.fill(counts, 0);
+    size = 0;
+    keysLength = 0;
+  }
+
+  private void allocate(int capacity) {
+    counts = new int[capacity];
+    hashes = new int[capacity];
+    offsets = new int[capacity];
+    lengths = new int[capacity];
+    mask = capacity - 1;
+  }
+
+  private void rehash(int capacity) {
+    int[] oldCounts = counts, oldHashes = hashes, oldOffsets = offsets, oldLengths = lengths;
+    allocate(capacity);
+    for (int i = 0; i < oldCounts.length; i++) {
+      if (oldCounts[i] != 0) {
+        int slot = oldHashes[i] & mask;
+        while (counts[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        counts[slot] = oldCounts[i];
+        hashes[slot] = oldHashes[i];
+        offsets[slot] = oldOffsets[i];
+        lengths[slot] = oldLengths[i];
+      }
+    }
+  }
+
+  private int store(byte[] bytes, int offset, int length) {
+    if (keysLength + length > keys.length) {
+      keys = Arrays.copyOf(keys, Math.max(keys.length << 1, keysLength + length));
+    }
+    System.arraycopy(bytes, offset, keys, keysLength, length);
+    int stored = keysLength;
+    keysLength += length;
+    return stored;
+  }
+
+  private boolean equals(int slot, byte[] bytes, int offset, int length) {
+    if (lengths[slot] != length) {
+      return false;
+    }
+    int keyOffset = offsets[slot];
+    for (int i = 0; i < length; i++) {
+      if (keys[keyOffset + i] != bytes[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(byte[] bytes, int offset, int length) {
+    int h = 1;
+    for (int i = offset; i < offset + length; i++) {
+      h = 31 * h + bytes[i];
+    }
+    // spread higher bits, as the slot is taken from the lower ones
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
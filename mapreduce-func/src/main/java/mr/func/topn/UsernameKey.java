@@ -0,0 +1,230 @@
+package mr.func.topn;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Username key of the shuffle, an alphanumeric username of {@link AccessLogParser#USERNAME_LENGTH} characters
+ * packed into a single base-62 long.
+ * <p>
+ * The digits are ordered as the ASCII characters {@code 0-9A-Za-z}, so packed keys sort as their usernames.
+ * Other usernames fall back to the bytes, as {@link org.apache.hadoop.io.Text}, after the {@link #UNPACKED} marker
+ * and sort after all packed keys. {@link Comparator} compares the serialized keys without deserializing them.
+ */
+public class UsernameKey implements WritableComparable<UsernameKey> {
+  /**
+   * Serialized in place of the packed username when the username does not fit.
+   */
+  public static final long UNPACKED = -1;
+
+  private static final int RADIX = 62;
+  private static final int PACKED_BYTES = 8;
+
+  static {
+    WritableComparator.define(UsernameKey.class, new Comparator());
+  }
+
+  private long packed = UNPACKED;
+  // the username bytes, decoded lazily for packed keys
+  private byte[] bytes = new byte[AccessLogParser.USERNAME_LENGTH];
+  private int length;
+  private boolean decoded = true;
+
+  public UsernameKey() {
+  }
+
+  public UsernameKey(String username) {
+    set(username);
+  }
+
+  /**
+   * Sets the username, packed if it fits.
+   * @param username a username bytes
+   * @param offset an offset of the username in {@code username}
+   * @param length a length of the username
+   */
+  public void set(byte[] username, int offset, int length) {
+    packed = pack(username, offset, length);
+    if (packed == UNPACKED) {
+      if (bytes.length < length) {
+        bytes = Arrays.copyOf(bytes, length);
+      }
+      System.arraycopy(username, offset, bytes, 0, length);
+      decoded = true;
+    } else {
+      decoded = false;
+    }
+    this.length = length;
+  }
+
+  /**
+   * Sets the username, packed if it fits.
+   * @param username a username
+   */
+  public void set(String username) {
+    byte[] utf8 = username.getBytes(StandardCharsets.UTF_8);
+    set(utf8, 0, utf8.length);
+  }
+
+  /**
+   * @return true if the username is packed into a long
+   */
+  public boolean isPacked() {
+    return packed != UNPACKED;
+  }
+
+  /**
+   * Gets the username bytes, decoded from the packed long on the first call. Only the first {@link #getLength()}
+   * bytes are valid.
+   * @return the username bytes
+   */
+  public byte[] getBytes() {
+    if (!decoded) {
+      long value = packed;
+      for (int i = AccessLogParser.USERNAME_LENGTH - 1; i >= 0; i--) {
+        bytes[i] = character((int) (value % RADIX));
+        value /= RADIX;
+      }
+      decoded = true;
+    }
+    return bytes;
+  }
+
+  /**
+   * @return the number of the username bytes
+   */
+  public int getLength() {
+    return length;
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    out.writeLong(packed);
+    if (packed == UNPACKED) {
+      WritableUtils.writeVInt(out, length);
+      out.write(bytes, 0, length);
+    }
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    packed = in.readLong();
+    if (packed == UNPACKED) {
+      length = WritableUtils.readVInt(in);
+      if (bytes.length < length) {
+        bytes = new byte[length];
+      }
+      in.readFully(bytes, 0, length);
+      decoded = true;
+    } else {
+      length = AccessLogParser.USERNAME_LENGTH;
+      decoded = false;
+    }
+  }
+
+  @Override
+  public int compareTo(UsernameKey other) {
+    if (packed != other.packed || packed != UNPACKED) {
+      // packed usernames are positive, so the unsigned order puts UNPACKED last, as the bytes order
+      return Long.compareUnsigned(packed, other.packed);
+    }
+    return WritableComparator.compareBytes(bytes, 0, length, other.bytes, 0, other.length);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof UsernameKey && compareTo((UsernameKey) o) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return packed == UNPACKED ? WritableComparator.hashBytes(bytes, length) : hash(packed);
+  }
+
+  @Override
+  public String toString() {
+    return new String(getBytes(), 0, length, StandardCharsets.UTF_8);
+  }
+
+  private static int hash(long packed) {
+    // spreads the last characters of the username over all bits
+    return Long.hashCode(packed * 0x9E3779B97F4A7C15L);
+  }
+
+  private static long pack(byte[] username, int offset, int length) {
+    if (length != AccessLogParser.USERNAME_LENGTH) {
+      return UNPACKED;
+    }
+    long value = 0;
+    for (int i = offset; i < offset + length; i++) {
+      int digit = digit(username[i]);
+      if (digit < 0) {
+        return UNPACKED;
+      }
+      value = value * RADIX + digit;
+    }
+    return value;
+  }
+
+  private static int digit(byte c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    }
+    if (c >= 'A' && c <= 'Z') {
+      return c - 'A' + 10;
+    }
+    if (c >= 'a' && c <= 'z') {
+      return c - 'a' + 36;
+    }
+    return -1;
+  }
+
+  private static byte character(int digit) {
+    if (digit < 10) {
+      return (byte) ('0' + digit);
+    }
+    if (digit < 36) {
+      return (byte) ('A' + digit - 10);
+    }
+    return (byte) ('a' + digit - 36);
+  }
+
+  /**
+   * Compares the serialized keys, packed keys by their leading 8 bytes only. The bytes are compared at once,
+   * as the unsigned long, assembling the longs with {@code readLong()} is slower than comparing {@code Text}s.
+   */
+  public static class Comparator extends WritableComparator {
+    public Comparator() {
+      super(UsernameKey.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+      int c = compareBytes(b1, s1, PACKED_BYTES, b2, s2, PACKED_BYTES);
+      // packed usernames are below 2^48, only UNPACKED starts with 0xff
+      if (c != 0 || b1[s1] != (byte) 0xff) {
+        return c;
+      }
+      int n1 = WritableUtils.decodeVIntSize(b1[s1 + PACKED_BYTES]) + PACKED_BYTES;
+      int n2 = WritableUtils.decodeVIntSize(b2[s2 + PACKED_BYTES]) + PACKED_BYTES;
+      return compareBytes(b1, s1 + n1, l1 - n1, b2, s2 + n2, l2 - n2);
+    }
+  }
+
+  /**
+   * Partitions the keys by {@link #hashCode()}, the packed keys without decoding the username.
+   */
+  public static class Partitioner<V> extends org.apache.hadoop.mapreduce.Partitioner<UsernameKey, V> {
+    @Override
+    public int getPartition(UsernameKey key, V value, int numPartitions) {
+      return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package mr.func.ingest;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AccessLogInputFormatTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final List<String> LINES = Arrays.asList(
+    "[13/Jul/2015:07:57:03 +0200] GET /nmo/app 10.187.98.36 usr=User{id=782444, username='N1408201'} time=1",
+    "[13/Jul/2015:07:57:04 +0200] GET /nmo/app 10.187.98.36 usr=User{id=782445, username='N1408202'} time=1",
+    "[14/Jul/2015:07:57:05 +0200] GET /nmo/app 10.187.98.36 usr=- time=1");
+
+  private Configuration conf;
+
+  @Before
+  public void setup() {
+    conf = new Configuration(false);
+    conf.set("fs.defaultFS", "file:///");
+    conf.set("io.compression.codecs", DefaultCodec.class.getName() + "," + GzipCodec.class.getName() + "," + BZip2Codec.class.getName());
+  }
+
+  @Test
+  public void testPlainText() throws Exception {
+    Path file = writeText("access.log", null);
+    assertFalse(AccessLogInputFormat.isSequenceFile(file, conf));
+    assertEquals(LINES, read(file));
+  }
+
+  @Test
+  public void testGzipText() throws Exception {
+    Path file = writeText("access.log.gz", new GzipCodec());
+    assertFalse(AccessLogInputFormat.isSequenceFile(file, conf));
+    assertFalse(new AccessLogInputFormat().isSplitable(Job.getInstance(conf), file));
+    assertEquals(LINES, read(file));
+  }
+
+  @Test
+  public void testBzip2TextIsSplitable() throws Exception {
+    Path file = writeText("access.log.bz2", new BZip2Codec());
+    assertTrue(new AccessLogInputFormat().isSplitable(Job.getInstance(conf), file));
+    assertEquals(LINES, read(file));
+  }
+
+  @Test
+  public void testBlockCompressedSequenceFile() throws Exception {
+    Path file = new Path(new File(folder.getRoot(), "part-m-00000").toURI());
+    try (SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+      SequenceFile.Writer.file(file),
+      SequenceFile.Writer.keyClass(NullWritable.class),
+      SequenceFile.Writer.valueClass(Text.class),
+      SequenceFile.Writer.compression(SequenceFile.CompressionType.BLOCK, new DefaultCodec()))) {
+      for (String line : LINES) {
+        writer.append(NullWritable.get(), new Text(line));
+      }
+    }
+    assertTrue(AccessLogInputFormat.isSequenceFile(file, conf));
+    assertTrue(new AccessLogInputFormat().isSplitable(Job.getInstance(conf), file));
+    assertEquals(LINES, read(file));
+  }
+
+  private Path writeText(String name, CompressionCodec codec) throws IOException {
+    File file = new File(folder.getRoot(), name);
+    try (OutputStream out = codec == null ? new FileOutputStream(file) : codec(codec).createOutputStream(new FileOutputStream(file))) {
+      for (String line : LINES) {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    return new Path(file.toURI());
+  }
+
+  private CompressionCodec codec(CompressionCodec codec) {
+    return ReflectionUtils.newInstance(codec.getClass(), conf);
+  }
+
+  private List<String> read(Path file) throws Exception {
+    Job job = Job.getInstance(conf);
+    FileInputFormat.addInputPath(job, file);
+    AccessLogInputFormat inputFormat = new AccessLogInputFormat();
+    List<String> lines = new ArrayList<>();
+    for (InputSplit split : inputFormat.getSplits(job)) {
+      TaskAttemptContext context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+      try (RecordReader<Object, Text> reader = inputFormat.createRecordReader(split, context)) {
+        reader.initialize(split, context);
+        while (reader.nextKeyValue()) {
+          lines.add(reader.getCurrentValue().toString());
+        }
+      }
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,117 @@
+package mr.func.ingest;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CombineAccessLogInputFormatTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final String LOG_LINE = "[13/Jul/2015:07:57:03 +0200] GET /nmo/app usr=User{id=782444, username='%s'} time=1";
+
+  private Configuration conf;
+  private List<String> expected;
+
+  @Before
+  public void setup() throws Exception {
+    conf = new Configuration(false);
+    conf.set("fs.defaultFS", "file:///");
+    conf.set("io.compression.codecs", DefaultCodec.class.getName() + "," + GzipCodec.class.getName());
+    expected = new ArrayList<>();
+    // hourly files: plain text, gzip and re-packed
+    for (int hour = 0; hour < 10; hour++) {
+      File file = new File(folder.getRoot(), "access-" + hour + ".log");
+      try (OutputStream out = new FileOutputStream(file)) {
+        for (int i = 0; i < 5; i++) {
+          out.write(line("N" + hour + "0" + i, (hour * 10) + i).getBytes(StandardCharsets.UTF_8));
+        }
+      }
+    }
+    GzipCodec gzip = ReflectionUtils.newInstance(GzipCodec.class, conf);
+    try (OutputStream out = gzip.createOutputStream(new FileOutputStream(new File(folder.getRoot(), "access-10.log.gz")))) {
+      out.write(line("N1000", 1000).getBytes(StandardCharsets.UTF_8));
+    }
+    try (SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+      SequenceFile.Writer.file(new Path(new File(folder.getRoot(), "part-m-00000").toURI())),
+      SequenceFile.Writer.keyClass(NullWritable.class),
+      SequenceFile.Writer.valueClass(Text.class),
+      SequenceFile.Writer.compression(SequenceFile.CompressionType.BLOCK, new DefaultCodec()))) {
+      writer.append(NullWritable.get(), new Text(line("N1100", 1100).trim()));
+    }
+    Collections.sort(expected);
+  }
+
+  @Test
+  public void testFilesPackedIntoSingleSplit() throws Exception {
+    Job job = job(1024 * 1024);
+    List<InputSplit> splits = new CombineAccessLogInputFormat().getSplits(job);
+    assertEquals(1, splits.size());
+    assertEquals(expected, read(job, splits));
+  }
+
+  @Test
+  public void testSplitsLimitedByMaxSize() throws Exception {
+    Job job = job(1024);
+    List<InputSplit> splits = new CombineAccessLogInputFormat().getSplits(job);
+    assertTrue(splits.size() > 1);
+    assertTrue(splits.size() < 12);
+    assertEquals(expected, read(job, splits));
+  }
+
+  private String line(String username, int index) {
+    String line = String.format(LOG_LINE, username);
+    expected.add(line);
+    return line + "\n";
+  }
+
+  private Job job(long maxSplitSize) throws Exception {
+    Job job = Job.getInstance(conf);
+    FileInputFormat.addInputPath(job, new Path(folder.getRoot().toURI()));
+    FileInputFormat.setMaxInputSplitSize(job, maxSplitSize);
+    return job;
+  }
+
+  private List<String> read(Job job, List<InputSplit> splits) throws Exception {
+    CombineAccessLogInputFormat inputFormat = new CombineAccessLogInputFormat();
+    List<String> lines = new ArrayList<>();
+    for (InputSplit split : splits) {
+      TaskAttemptContext context = new TaskAttemptContextImpl(job.getConfiguration(), new TaskAttemptID());
+      try (RecordReader<Object, Text> reader = inputFormat.createRecordReader(split, context)) {
+        reader.initialize(split, context);
+        while (reader.nextKeyValue()) {
+          lines.add(reader.getCurrentValue().toString());
+        }
+      }
+    }
+    Collections.sort(lines);
+    return lines;
+  }
+}
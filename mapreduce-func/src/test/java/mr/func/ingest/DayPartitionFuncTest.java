@@ -0,0 +1,62 @@
+package mr.func.ingest;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mrunit.mapreduce.MapDriver;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+
+// MRUnit mocks MultipleOutputs of the mapper with PowerMock
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(DayPartitionFunc.Mapper.class)
+public class DayPartitionFuncTest {
+  MapDriver<Object, Text, NullWritable, Text> mapDriver;
+
+  private static final String LOG_LINE =
+    "[%s:07:57:03 +0200] GET /nmo/api/transfers?page=1 10.187.98.36 10.156.15.25 bsentnohead=837 qry= stat=200 sess=BCE7E9AE09201750653E802A4001090A thr=http-bio-9443-exec-8 usr=User{id=782444, username='N1408201'} scenId=- time=1";
+
+  @Before
+  public void setup() {
+    mapDriver = MapDriver.newMapDriver(new DayPartitionFunc.Mapper());
+  }
+
+  @Test
+  public void testMapperWritesLinesIntoDayPartitions() throws IOException {
+    Text first = line("13/Jul/2015"), second = line("14/Jul/2015"), third = line("13/Jul/2015");
+    Text malformed = new Text("[32/Jul/2015:07:57:03 +0200] GET /nmo"), empty = new Text("");
+    mapDriver.withInput(new LongWritable(0), first);
+    mapDriver.withInput(new LongWritable(1), second);
+    mapDriver.withInput(new LongWritable(2), malformed);
+    mapDriver.withInput(new LongWritable(3), third);
+    mapDriver.withInput(new LongWritable(4), empty);
+
+    // the lines are written unchanged
+    mapDriver.withPathOutput(NullWritable.get(), first, "dt=2015-07-13/part");
+    mapDriver.withPathOutput(NullWritable.get(), second, "dt=2015-07-14/part");
+    mapDriver.withPathOutput(NullWritable.get(), malformed, "dt=unknown/part");
+    mapDriver.withPathOutput(NullWritable.get(), third, "dt=2015-07-13/part");
+    mapDriver.withPathOutput(NullWritable.get(), empty, "dt=unknown/part");
+    mapDriver.withCounter(DayPartitionFunc.Counter.LINES_PARTITIONED, 3);
+    mapDriver.withCounter(DayPartitionFunc.Counter.LINES_UNKNOWN_DAY, 2);
+    mapDriver.runTest();
+  }
+
+  @Test
+  public void testPartitionName() {
+    assertEquals("dt=2015-07-13", DayPartitionFunc.partitionName(LocalDate.of(2015, 7, 13)));
+    assertEquals("dt=unknown", DayPartitionFunc.UNKNOWN_PARTITION);
+  }
+
+  private static Text line(String day) {
+    return new Text(String.format(LOG_LINE, day));
+  }
+}
@@ -0,0 +1,82 @@
+package mr.func.topn;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+
+public class AccessLogParserTest {
+  @Test
+  public void testParseDay() {
+    Text line = new Text("[13/Jul/2015:07:57:03 +0200] GET /nmo");
+    assertEquals(LocalDate.of(2015, 7, 13).toEpochDay(), AccessLogParser.parseDay(line.getBytes(), line.getLength()));
+  }
+
+  @Test
+  public void testParseDayMatchesLocalDate() {
+    for (LocalDate date = LocalDate.of(1999, 12, 1); date.isBefore(LocalDate.of(2001, 3, 31)); date = date.plusDays(1)) {
+      assertEquals(date.toEpochDay(), AccessLogParser.epochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+    }
+  }
+
+  @Test
+  public void testParseMalformedDay() {
+    Text line = new Text("[31/Feb/2015:07:57:03 +0200] GET /nmo");
+    assertEquals(AccessLogParser.NO_DAY, AccessLogParser.parseDay(line.getBytes(), line.getLength()));
+    line = new Text("[13/JUL/2015:07:57:03 +0200] GET /nmo");
+    assertEquals(AccessLogParser.NO_DAY, AccessLogParser.parseDay(line.getBytes(), line.getLength()));
+  }
+
+  @Test
+  public void testParseMinuteOfDay() {
+    Text line = new Text("[13/Jul/2015:07:57:03 +0200] GET /nmo");
+    assertEquals(7 * 60 + 57, AccessLogParser.parseMinuteOfDay(line.getBytes(), line.getLength()));
+    line = new Text("[13/Jul/2015:23:59:59 +0200] GET /nmo");
+    assertEquals(1439, AccessLogParser.parseMinuteOfDay(line.getBytes(), line.getLength()));
+  }
+
+  @Test
+  public void testParseMalformedMinuteOfDay() {
+    Text line = new Text("[13/Jul/2015:24:00:00 +0200] GET /nmo");
+    assertEquals(AccessLogParser.NO_MINUTE, AccessLogParser.parseMinuteOfDay(line.getBytes(), line.getLength()));
+    line = new Text("[13/Jul/2015 07:57:03 +0200] GET /nmo");
+    assertEquals(AccessLogParser.NO_MINUTE, AccessLogParser.parseMinuteOfDay(line.getBytes(), line.getLength()));
+    line = new Text("[13/Jul/2015:07:5");
+    assertEquals(AccessLogParser.NO_MINUTE, AccessLogParser.parseMinuteOfDay(line.getBytes(), line.getLength()));
+  }
+
+  @Test
+  public void testFindUsername() {
+    Text line = new Text("usr=User{id=1, username='N14082'} usr=User{id=782444, username='N1408201'} time=1");
+    int offset = AccessLogParser.findUsername(line.getBytes(), line.getLength());
+    assertEquals("N1408201", new String(line.getBytes(), offset, AccessLogParser.USERNAME_LENGTH));
+    line = new Text("usr=User{id=782444, username='N1408201");
+    assertEquals(AccessLogParser.NO_USERNAME, AccessLogParser.findUsername(line.getBytes(), line.getLength()));
+  }
+
+  @Test
+  public void testFindFields() {
+    Text line = new Text("[13/Jul/2015:07:57:03 +0200] GET /nmo/api/transfers?page=2 10.187.98.36 10.156.15.25 qry= stat=200 sess=BCE7");
+    byte[] bytes = line.getBytes();
+    int length = line.getLength();
+    int method = AccessLogParser.findField(bytes, length, AccessLogParser.METHOD_FIELD);
+    assertEquals("GET", new String(bytes, method, AccessLogParser.fieldEnd(bytes, method, length) - method));
+    int path = AccessLogParser.findField(bytes, length, AccessLogParser.PATH_FIELD);
+    assertEquals("/nmo/api/transfers", new String(bytes, path, AccessLogParser.pathEnd(bytes, path, length) - path));
+    int ip = AccessLogParser.findField(bytes, length, AccessLogParser.CLIENT_IP_FIELD);
+    assertEquals("10.187.98.36", new String(bytes, ip, AccessLogParser.fieldEnd(bytes, ip, length) - ip));
+    int status = AccessLogParser.findStatus(bytes, length);
+    assertEquals("200", new String(bytes, status, AccessLogParser.STATUS_LENGTH));
+  }
+
+  @Test
+  public void testFindMissingFields() {
+    Text line = new Text("13/Jul/2015:07:57:03 +0200 GET /nmo stat=2xx");
+    assertEquals(AccessLogParser.NO_FIELD, AccessLogParser.findField(line.getBytes(), line.getLength(), AccessLogParser.PATH_FIELD));
+    assertEquals(AccessLogParser.NO_FIELD, AccessLogParser.findStatus(line.getBytes(), line.getLength()));
+    line = new Text("[13/Jul/2015:07:57:03 +0200] GET");
+    assertEquals(AccessLogParser.NO_FIELD, AccessLogParser.findField(line.getBytes(), line.getLength(), AccessLogParser.PATH_FIELD));
+  }
+}
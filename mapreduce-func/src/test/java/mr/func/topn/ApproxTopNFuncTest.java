@@ -0,0 +1,83 @@
+package mr.func.topn;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mrunit.mapreduce.MapDriver;
+import org.apache.hadoop.mrunit.mapreduce.ReduceDriver;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ApproxTopNFuncTest {
+  MapDriver<Object, Text, NullWritable, SpaceSavingSketch> mapDriver;
+  ReduceDriver<NullWritable, SpaceSavingSketch, NullWritable, SpaceSavingSketch> reduceDriver;
+
+  private static final String LOG_LINE =
+    "[13/Jul/2015:07:57:03 +0200] GET /nmo/images/default/grid/grid3-special-col-bg__v1436564077871.gif 10.187.98.36 10.156.15.25 bsentnohead=837 qry= stat=200 sess=BCE7E9AE09201750653E802A4001090A thr=http-bio-9443-exec-8 usr=User{id=782444, username='%s'} scenId=- time=1";
+
+  @Before
+  public void setup() {
+    mapDriver = MapDriver.newMapDriver(new ApproxTopNFunc.Mapper());
+    reduceDriver = ReduceDriver.newReduceDriver(new ApproxTopNFunc.Reducer());
+  }
+
+  @Test
+  public void testMapperWritesSingleSketch() throws IOException {
+    mapDriver.getConfiguration().setInt(ApproxTopNFunc.CAPACITY, 2);
+    mapDriver.withInput(new LongWritable(), new Text(String.format(LOG_LINE, "N1408201")));
+    mapDriver.withInput(new LongWritable(), new Text(String.format(LOG_LINE, "N1408202")));
+    mapDriver.withInput(new LongWritable(), new Text(String.format(LOG_LINE, "N1408201")));
+    mapDriver.withInput(new LongWritable(), new Text(String.format(LOG_LINE, "N1408203")));
+
+    List<Pair<NullWritable, SpaceSavingSketch>> output = mapDriver.run();
+    assertEquals(1, output.size());
+    assertEquals(Arrays.asList("N1408201=2+0", "N1408203=2+1"), entries(output.get(0).getSecond()));
+  }
+
+  @Test
+  public void testMapperOutsideDateInterval() throws IOException {
+    mapDriver.getConfiguration().set("dateFrom", "2015-07-14");
+    mapDriver.getConfiguration().set("dateTo", "2015-07-15");
+    mapDriver.withInput(new LongWritable(), new Text(String.format(LOG_LINE, "N1408201")));
+    mapDriver.runTest();
+  }
+
+  @Test
+  public void testReducerMergesSketches() throws IOException {
+    SpaceSavingSketch first = new SpaceSavingSketch(10);
+    offer(first, "N1408201", 5);
+    offer(first, "N1408202", 1);
+    SpaceSavingSketch second = new SpaceSavingSketch(10);
+    offer(second, "N1408202", 7);
+    reduceDriver.withInput(NullWritable.get(), Arrays.asList(first, second));
+
+    List<Pair<NullWritable, SpaceSavingSketch>> output = reduceDriver.run();
+    assertEquals(1, output.size());
+    assertEquals(Arrays.asList("N1408202=8+0", "N1408201=5+0"), entries(output.get(0).getSecond()));
+  }
+
+  private static void offer(SpaceSavingSketch sketch, String username, long count) {
+    byte[] bytes = username.getBytes(StandardCharsets.US_ASCII);
+    sketch.offer(bytes, 0, bytes.length, count);
+  }
+
+  private static List<String> entries(SpaceSavingSketch sketch) throws IOException {
+    List<String> entries = new ArrayList<>();
+    try {
+      sketch.forEachDescending((bytes, offset, length, count, error) ->
+        entries.add(new String(bytes, offset, length, StandardCharsets.US_ASCII) + "=" + count + "+" + error));
+    } catch (InterruptedException ex) {
+      throw new IOException(ex);
+    }
+    return entries;
+  }
+}
@@ -0,0 +1,37 @@
+package mr.func.topn;
+
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mrunit.mapreduce.MapReduceDriver;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DailyUserCountFuncTest {
+  private static final String LOG_LINE =
+    "[13/Jul/2015:07:57:03 +0200] GET /nmo/images/default/grid/grid3-special-col-bg__v1436564077871.gif 10.187.98.36 10.156.15.25 bsentnohead=837 qry= stat=200 sess=BCE7E9AE09201750653E802A4001090A thr=http-bio-9443-exec-8 usr=User{id=782444, username='N1408201'} scenId=- time=1";
+
+  @Test
+  public void testDailyCounts() throws IOException {
+    MapReduceDriver<Object, Text, Text, IntWritable, Text, IntWritable> driver =
+      MapReduceDriver.newMapReduceDriver(new DailyUserCountFunc.Mapper(), new TopNFunc.Combiner<Text>());
+    driver
+      .withInput(new LongWritable(), new Text(LOG_LINE))
+      .withInput(new LongWritable(), new Text(LOG_LINE))
+      .withInput(new LongWritable(), new Text(LOG_LINE.replace("13/Jul/2015", "14/Jul/2015")));
+    List<Pair<Text, IntWritable>> output = driver.run();
+
+    assertEquals(2, output.size());
+    assertEquals(LocalDate.of(2015, 7, 13).toEpochDay(), DailyUserCountFunc.day(output.get(0).getFirst()));
+    assertEquals("N1408201", DailyUserCountFunc.username(output.get(0).getFirst()));
+    assertEquals(2, output.get(0).getSecond().get());
+    assertEquals(LocalDate.of(2015, 7, 14).toEpochDay(), DailyUserCountFunc.day(output.get(1).getFirst()));
+    assertEquals(1, output.get(1).getSecond().get());
+  }
+}
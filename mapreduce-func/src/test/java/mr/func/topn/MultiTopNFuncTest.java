@@ -0,0 +1,118 @@
+package mr.func.topn;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mrunit.mapreduce.MapDriver;
+import org.apache.hadoop.mrunit.mapreduce.ReduceDriver;
+import org.apache.hadoop.mrunit.types.Pair;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+// MRUnit mocks MultipleOutputs of the reducer with PowerMock
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(MultiTopNFunc.Reducer.class)
+public class MultiTopNFuncTest {
+  MapDriver<Object, Text, Text, IntWritable> mapDriver;
+  ReduceDriver<Text, IntWritable, Text, IntWritable> reduceDriver;
+
+  private static final String LOG_LINE =
+    "[13/Jul/2015:07:57:03 +0200] GET /nmo/api/transfers?page=%d 10.187.98.36 10.156.15.25 bsentnohead=837 qry= stat=%d sess=BCE7E9AE09201750653E802A4001090A thr=http-bio-9443-exec-8 usr=User{id=782444, username='N1408201'} scenId=- time=1";
+
+  @Before
+  public void setup() {
+    mapDriver = MapDriver.newMapDriver(new MultiTopNFunc.Mapper());
+    reduceDriver = ReduceDriver.newReduceDriver(new MultiTopNFunc.Reducer());
+  }
+
+  @Test
+  public void testMapperCountsAllDimensions() throws IOException {
+    mapDriver.withInput(new LongWritable(), new Text(String.format(LOG_LINE, 1, 200)));
+    mapDriver.withInput(new LongWritable(), new Text(String.format(LOG_LINE, 2, 404)));
+    mapDriver.withInput(new LongWritable(), new Text(String.format(LOG_LINE, 3, 200)));
+
+    assertEquals(new HashSet<>(Arrays.asList(
+      "uN1408201=3", "i10.187.98.36=3", "p/nmo/api/transfers=3", "s200=2", "s404=1")), output(mapDriver.run()));
+  }
+
+  @Test
+  public void testMapperCountsSelectedDimensions() throws IOException {
+    mapDriver.getConfiguration().set(MultiTopNFunc.DIMENSIONS, "ip,status");
+    mapDriver.withInput(new LongWritable(), new Text(String.format(LOG_LINE, 1, 200)));
+
+    assertEquals(new HashSet<>(Arrays.asList("i10.187.98.36=1", "s200=1")), output(mapDriver.run()));
+  }
+
+  @Test
+  public void testMapperOutsideDateInterval() throws IOException {
+    mapDriver.getConfiguration().set("dateFrom", "2015-07-14");
+    mapDriver.getConfiguration().set("dateTo", "2015-07-15");
+    mapDriver.withInput(new LongWritable(), new Text(String.format(LOG_LINE, 1, 200)));
+    mapDriver.runTest();
+  }
+
+  @Test
+  public void testMapperTruncatesOnCharacterBoundary() throws IOException {
+    // the 512th byte of the path is the first byte of the 2-byte character
+    StringBuilder path = new StringBuilder("/");
+    for (int i = 0; i < 510; i++) {
+      path.append('a');
+    }
+    path.append("\u00e9\u00e9");
+    mapDriver.getConfiguration().set(MultiTopNFunc.DIMENSIONS, "path");
+    mapDriver.withInput(new LongWritable(), new Text(LOG_LINE.replace("/nmo/api/transfers", path)));
+
+    List<Pair<Text, IntWritable>> output = mapDriver.run();
+    assertEquals(1, output.size());
+    byte[] key = Arrays.copyOf(output.get(0).getFirst().getBytes(), output.get(0).getFirst().getLength());
+    assertEquals(1 + 511, key.length);
+    assertEquals("p" + path.substring(0, 511), new String(key, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testReducerWritesTopNOfEveryDimension() throws IOException {
+    reduceDriver.getConfiguration().set("limit", "2");
+    reduceDriver.withInput(new Text("uA0000001"), Arrays.asList(new IntWritable(3), new IntWritable(2)));
+    reduceDriver.withInput(new Text("uB0000002"), Arrays.asList(new IntWritable(4)));
+    reduceDriver.withInput(new Text("uC0000003"), Arrays.asList(new IntWritable(1)));
+    reduceDriver.withInput(new Text("i10.0.0.1"), Arrays.asList(new IntWritable(7)));
+    reduceDriver.withInput(new Text("s200"), Arrays.asList(new IntWritable(9), new IntWritable(1)));
+    reduceDriver.withInput(new Text("s404"), Arrays.asList(new IntWritable(2)));
+    reduceDriver.withInput(new Text("s500"), Arrays.asList(new IntWritable(1)));
+
+    reduceDriver.withMultiOutput("user", new Text("A0000001"), new IntWritable(5));
+    reduceDriver.withMultiOutput("user", new Text("B0000002"), new IntWritable(4));
+    reduceDriver.withMultiOutput("ip", new Text("10.0.0.1"), new IntWritable(7));
+    reduceDriver.withMultiOutput("status", new Text("200"), new IntWritable(10));
+    reduceDriver.withMultiOutput("status", new Text("404"), new IntWritable(2));
+    reduceDriver.runTest();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownDimension() {
+    Configuration conf = new Configuration(false);
+    conf.set(MultiTopNFunc.DIMENSIONS, "user,referer");
+    MultiTopNFunc.dimensions(conf);
+  }
+
+  private static Set<String> output(List<Pair<Text, IntWritable>> output) {
+    Set<String> records = new HashSet<>();
+    for (Pair<Text, IntWritable> record : output) {
+      records.add(record.getFirst() + "=" + record.getSecond());
+    }
+    return records;
+  }
+}
@@ -0,0 +1,125 @@
+package mr.func.topn;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpaceSavingSketchTest {
+  @Test
+  public void testExactBelowCapacity() throws Exception {
+    SpaceSavingSketch sketch = new SpaceSavingSketch(10);
+    offer(sketch, "N0000001", 3);
+    offer(sketch, "N0000002", 5);
+    offer(sketch, "N0000001", 4);
+
+    assertEquals(2, sketch.size());
+    assertEquals(12, sketch.totalCount());
+    assertEquals(0, sketch.minCount());
+    assertEquals(entries("N0000001=7+0", "N0000002=5+0"), entries(sketch));
+  }
+
+  @Test
+  public void testErrorBounds() throws Exception {
+    Random random = new Random(42);
+    int users = 5000;
+    long[] counts = new long[users];
+    SpaceSavingSketch sketch = new SpaceSavingSketch(100);
+    for (int i = 0; i < 200000; i++) {
+      // cubic skew: the lowest user ids are the most active ones
+      int user = (int) (Math.pow(random.nextDouble(), 3) * users);
+      counts[user]++;
+      offer(sketch, String.format("N%07d", user), 1);
+    }
+    assertBounds(sketch, counts);
+  }
+
+  @Test
+  public void testMerge() throws Exception {
+    Random random = new Random(7);
+    int users = 2000;
+    long[] counts = new long[users];
+    SpaceSavingSketch merged = new SpaceSavingSketch(50);
+    for (int split = 0; split < 4; split++) {
+      SpaceSavingSketch sketch = new SpaceSavingSketch(50);
+      for (int i = 0; i < 20000; i++) {
+        int user = (int) (Math.pow(random.nextDouble(), 3) * users);
+        counts[user]++;
+        offer(sketch, String.format("N%07d", user), 1);
+      }
+      merged.merge(sketch);
+    }
+    assertEquals(80000, merged.totalCount());
+    assertEquals(50, merged.size());
+    assertBounds(merged, counts);
+  }
+
+  @Test
+  public void testWritable() throws Exception {
+    SpaceSavingSketch sketch = new SpaceSavingSketch(2);
+    offer(sketch, "N0000001", 3);
+    offer(sketch, "N0000002", 5);
+    offer(sketch, "N0000003", 1);
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    sketch.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    SpaceSavingSketch copy = new SpaceSavingSketch();
+    copy.readFields(in);
+
+    assertEquals(2, copy.capacity());
+    assertEquals(9, copy.totalCount());
+    assertEquals(entries("N0000002=5+0", "N0000003=4+3"), entries(copy));
+  }
+
+  /**
+   * Every monitored user is overestimated by at most its error, and every user more active than the smallest
+   * counter is monitored.
+   */
+  private static void assertBounds(SpaceSavingSketch sketch, long[] counts) throws Exception {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    long maxError = total / sketch.capacity();
+    boolean[] monitored = new boolean[counts.length];
+    sketch.forEachDescending((bytes, offset, length, count, error) -> {
+      int user = Integer.parseInt(new String(bytes, offset + 1, length - 1, StandardCharsets.US_ASCII));
+      monitored[user] = true;
+      assertTrue(count >= counts[user]);
+      assertTrue(count - error <= counts[user]);
+      assertTrue(error <= maxError);
+    });
+    for (int user = 0; user < counts.length; user++) {
+      assertTrue(monitored[user] || counts[user] <= sketch.minCount());
+    }
+  }
+
+  private static void offer(SpaceSavingSketch sketch, String username, long count) {
+    byte[] bytes = ("usr=" + username).getBytes(StandardCharsets.US_ASCII);
+    sketch.offer(bytes, 4, username.length(), count);
+  }
+
+  private static List<String> entries(SpaceSavingSketch sketch) throws Exception {
+    List<String> entries = new ArrayList<>();
+    sketch.forEachDescending((bytes, offset, length, count, error) ->
+      entries.add(new String(bytes, offset, length, StandardCharsets.US_ASCII) + "=" + count + "+" + error));
+    return entries;
+  }
+
+  private static List<String> entries(String... entries) {
+    List<String> list = new ArrayList<>();
+    for (String entry : entries) {
+      list.add(entry);
+    }
+    return list;
+  }
+}
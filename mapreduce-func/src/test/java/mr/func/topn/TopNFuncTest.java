@@ -10,11 +10,15 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class TopNFuncTest {
-  MapDriver<Object, Text, Text, IntWritable> mapDriver;
-  ReduceDriver<Text, IntWritable, Text, IntWritable> reduceDriver;
+  MapDriver<Object, Text, UsernameKey, IntWritable> mapDriver;
+  ReduceDriver<UsernameKey, IntWritable, Text, IntWritable> reduceDriver;
+
+  private static final String LOG_LINE =
+    "[13/Jul/2015:07:57:03 +0200] GET /nmo/images/default/grid/grid3-special-col-bg__v1436564077871.gif 10.187.98.36 10.156.15.25 bsentnohead=837 qry= stat=200 sess=BCE7E9AE09201750653E802A4001090A thr=http-bio-9443-exec-8 usr=User{id=782444, username='N1408201'} scenId=- time=1";
 
   @Before
   public void setup() {
@@ -29,7 +33,68 @@ public class TopNFuncTest {
     mapDriver.withInput(new LongWritable(), new Text(
       "[13/Jul/2015:07:57:03 +0200] GET /nmo/images/default/grid/grid3-special-col-bg__v1436564077871.gif 10.187.98.36 10.156.15.25 bsentnohead=837 qry= stat=200 sess=BCE7E9AE09201750653E802A4001090A thr=http-bio-9443-exec-8 usr=User{id=782444, username='N1408201'} scenId=- time=1"
     ));
-    mapDriver.withOutput(new Text("N1408201"), new IntWritable(1));
+    mapDriver.withOutput(new UsernameKey("N1408201"), new IntWritable(1));
+    mapDriver.runTest();
+  }
+
+  @Test
+  public void testMapperWithinDateInterval() throws IOException {
+    mapDriver.getConfiguration().set("dateFrom", "2015-07-13");
+    mapDriver.getConfiguration().set("dateTo", "2015-07-14");
+    mapDriver.withInput(new LongWritable(), new Text(LOG_LINE));
+    mapDriver.withOutput(new UsernameKey("N1408201"), new IntWritable(1));
+    mapDriver.runTest();
+  }
+
+  @Test
+  public void testMapperOutsideDateInterval() throws IOException {
+    mapDriver.getConfiguration().set("dateFrom", "2015-07-14");
+    mapDriver.getConfiguration().set("dateTo", "2015-07-15");
+    mapDriver.withInput(new LongWritable(), new Text(LOG_LINE));
+    mapDriver.runTest();
+  }
+
+  @Test
+  public void testMapperCounters() throws IOException {
+    mapDriver.getConfiguration().set("dateFrom", "2015-07-13");
+    mapDriver.getConfiguration().set("dateTo", "2015-07-14");
+    mapDriver.withInput(new LongWritable(), new Text(LOG_LINE));
+    mapDriver.withInput(new LongWritable(), new Text(LOG_LINE.replace("13/Jul/2015", "12/Jul/2015")));
+    mapDriver.withInput(new LongWritable(), new Text(LOG_LINE.replace("usr=User{id=782444, username='N1408201'}", "usr=-")));
+    mapDriver.withInput(new LongWritable(), new Text("GET /nmo/app/dashboard.html"));
+    mapDriver
+      .withOutput(new UsernameKey("N1408201"), new IntWritable(1))
+      .withCounter(TopNCounter.MAP_LINES_READ, 4)
+      .withCounter(TopNCounter.MAP_LINES_MATCHED, 1)
+      .withCounter(TopNCounter.MAP_LINES_OUTSIDE_DATE_INTERVAL, 1)
+      .withCounter(TopNCounter.MAP_LINES_MALFORMED, 2)
+      .withCounter(TopNCounter.MAP_OUTPUT_RECORDS, 1);
+    mapDriver.runTest();
+  }
+
+  @Test
+  public void testMapperWithInMapperCombining() throws IOException {
+    mapDriver.getConfiguration().setBoolean(TopNFunc.IN_MAPPER_COMBINING, true);
+    mapDriver.withInput(new LongWritable(), new Text(LOG_LINE));
+    mapDriver.withInput(new LongWritable(), new Text(LOG_LINE.replace("N1408201", "N1408202")));
+    mapDriver.withInput(new LongWritable(), new Text(LOG_LINE));
+    mapDriver
+      .withOutput(new UsernameKey("N1408201"), new IntWritable(2))
+      .withOutput(new UsernameKey("N1408202"), new IntWritable(1))
+      .withCounter(TopNCounter.MAP_OUTPUT_RECORDS_SAVED, 1);
+    mapDriver.runTest(false);
+  }
+
+  @Test
+  public void testMapperWithInMapperCombiningPartialFlush() throws IOException {
+    mapDriver.getConfiguration().setBoolean(TopNFunc.IN_MAPPER_COMBINING, true);
+    mapDriver.getConfiguration().setInt(TopNFunc.IN_MAPPER_MAX_USERS, 1);
+    mapDriver.withInput(new LongWritable(), new Text(LOG_LINE));
+    mapDriver.withInput(new LongWritable(), new Text(LOG_LINE));
+    mapDriver
+      .withOutput(new UsernameKey("N1408201"), new IntWritable(1))
+      .withOutput(new UsernameKey("N1408201"), new IntWritable(1))
+      .withCounter(TopNCounter.MAP_PARTIAL_FLUSHES, 2);
     mapDriver.runTest();
   }
 
@@ -38,12 +103,37 @@ public class TopNFuncTest {
     List<IntWritable> values = new ArrayList<>();
     values.add(new IntWritable(1));
     values.add(new IntWritable(2));
-    reduceDriver.withInput(new Text("N1"), values);
+    reduceDriver.withInput(new UsernameKey("N1"), values);
     values.add(new IntWritable(4));
-    reduceDriver.withInput(new Text("N2"), values);
+    reduceDriver.withInput(new UsernameKey("N2"), values);
     reduceDriver
       .withOutput(new Text("N2"), new IntWritable(7))
       .withOutput(new Text("N1"), new IntWritable(3));
     reduceDriver.runTest();
   }
+
+  @Test
+  public void testReducerWithLimit() throws IOException {
+    reduceDriver.getConfiguration().set("limit", "2");
+    reduceDriver
+      .withInput(new UsernameKey("N1"), Arrays.asList(new IntWritable(3)))
+      .withInput(new UsernameKey("N2"), Arrays.asList(new IntWritable(5)))
+      .withInput(new UsernameKey("N3"), Arrays.asList(new IntWritable(1), new IntWritable(4)))
+      .withInput(new UsernameKey("N4"), Arrays.asList(new IntWritable(5)));
+    reduceDriver
+      .withOutput(new Text("N2"), new IntWritable(5))
+      .withOutput(new Text("N3"), new IntWritable(5));
+    reduceDriver.runTest();
+  }
+
+  @Test
+  public void testReducerDecodesPackedUsernames() throws IOException {
+    reduceDriver
+      .withInput(new UsernameKey("N1408201"), Arrays.asList(new IntWritable(2)))
+      .withInput(new UsernameKey("n1408202"), Arrays.asList(new IntWritable(1)));
+    reduceDriver
+      .withOutput(new Text("N1408201"), new IntWritable(2))
+      .withOutput(new Text("n1408202"), new IntWritable(1));
+    reduceDriver.runTest();
+  }
 }
@@ -0,0 +1,40 @@
+package mr.func.topn;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class TopNHeapTest {
+  @Test
+  public void testDrainDescending() throws Exception {
+    Random random = new Random(42);
+    int[] counts = IntStream.range(0, 5000).map(i -> 1 + random.nextInt(100)).toArray();
+
+    TopNHeap heap = new TopNHeap(100);
+    for (int i = 0; i < counts.length; i++) {
+      byte[] username = String.format("U%07d", i).getBytes(StandardCharsets.US_ASCII);
+      heap.offer(username, 0, username.length, counts[i]);
+    }
+    assertEquals(100, heap.size());
+
+    List<String> expected = IntStream.range(0, counts.length)
+      .boxed()
+      .sorted(Comparator.<Integer>comparingInt(i -> -counts[i]).thenComparing(i -> i))
+      .limit(100)
+      .map(i -> String.format("U%07d=%d", i, counts[i]))
+      .collect(Collectors.toList());
+    List<String> actual = new ArrayList<>();
+    heap.drainDescending((bytes, offset, length, count) ->
+      actual.add(new String(bytes, offset, length, StandardCharsets.US_ASCII) + "=" + count));
+    assertEquals(expected, actual);
+    assertEquals(0, heap.size());
+  }
+}
@@ -0,0 +1,42 @@
+package mr.func.topn;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserCounterTableTest {
+  @Test
+  public void testIncrement() throws Exception {
+    UserCounterTable table = new UserCounterTable(100000);
+    for (int i = 0; i < 5000; i++) {
+      byte[] username = String.format("U%07d", i % 1000).getBytes(StandardCharsets.US_ASCII);
+      table.increment(username, 0, username.length, 1);
+    }
+    assertEquals(1000, table.size());
+    assertFalse(table.isFull());
+
+    Map<String, Integer> counters = new HashMap<>();
+    table.forEach((bytes, offset, length, count) -> counters.put(new String(bytes, offset, length, StandardCharsets.US_ASCII), count));
+    assertEquals(1000, counters.size());
+    assertEquals(Integer.valueOf(5), counters.get("U0000999"));
+  }
+
+  @Test
+  public void testFullAndClear() throws Exception {
+    UserCounterTable table = new UserCounterTable(2);
+    byte[] line = "xxN1408201N1408202".getBytes(StandardCharsets.US_ASCII);
+    table.increment(line, 2, 8, 1);
+    table.increment(line, 10, 8, 3);
+    assertTrue(table.isFull());
+    table.clear();
+    assertEquals(0, table.size());
+    table.increment(line, 10, 8, 1);
+    table.forEach((bytes, offset, length, count) -> assertEquals(1, count));
+  }
+}
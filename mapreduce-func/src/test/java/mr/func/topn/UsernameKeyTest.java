@@ -0,0 +1,84 @@
+package mr.func.topn;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.WritableComparator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UsernameKeyTest {
+  private static final List<String> SORTED =
+    Arrays.asList("00000000", "0000000z", "N1408201", "N1408202", "Zzzzzzzz", "a0000000", "zzzzzzzz", "N1", "user-0001");
+
+  @Test
+  public void testPacked() throws IOException {
+    UsernameKey key = new UsernameKey("N1408201");
+    assertTrue(key.isPacked());
+    assertEquals(8, serialize(key).getLength());
+    assertEquals("N1408201", deserialize(serialize(key)).toString());
+    assertEquals("zzzzzzzz", deserialize(serialize(new UsernameKey("zzzzzzzz"))).toString());
+  }
+
+  @Test
+  public void testFallback() throws IOException {
+    UsernameKey key = new UsernameKey("user-0001");
+    assertFalse(key.isPacked());
+    assertFalse(new UsernameKey("N140820").isPacked());
+    assertEquals("user-0001", deserialize(serialize(key)).toString());
+    // reused for a packed username
+    key.set("N1408201");
+    assertEquals("N1408201", key.toString());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testRawComparatorOrder() throws IOException {
+    RawComparator<UsernameKey> comparator = (RawComparator<UsernameKey>) WritableComparator.get(UsernameKey.class);
+    assertTrue(comparator instanceof UsernameKey.Comparator);
+    for (int i = 0; i < SORTED.size(); i++) {
+      for (int j = 0; j < SORTED.size(); j++) {
+        DataOutputBuffer a = serialize(new UsernameKey(SORTED.get(i)));
+        DataOutputBuffer b = serialize(new UsernameKey(SORTED.get(j)));
+        int expected = Integer.compare(i, j);
+        assertEquals(expected, Integer.signum(comparator.compare(a.getData(), 0, a.getLength(), b.getData(), 0, b.getLength())));
+        assertEquals(expected, Integer.signum(new UsernameKey(SORTED.get(i)).compareTo(new UsernameKey(SORTED.get(j)))));
+      }
+    }
+  }
+
+  @Test
+  public void testPartitioner() throws IOException {
+    UsernameKey.Partitioner<Object> partitioner = new UsernameKey.Partitioner<>();
+    int[] partitions = new int[4];
+    for (int i = 0; i < 1000; i++) {
+      partitions[partitioner.getPartition(new UsernameKey(String.format("N%07d", i)), null, partitions.length)]++;
+    }
+    for (int partition : partitions) {
+      assertTrue(partition > 150);
+    }
+    assertEquals(partitioner.getPartition(new UsernameKey("N1408201"), null, 7),
+      partitioner.getPartition(deserialize(serialize(new UsernameKey("N1408201"))), null, 7));
+  }
+
+  private static DataOutputBuffer serialize(UsernameKey key) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    key.write(out);
+    return out;
+  }
+
+  private static UsernameKey deserialize(DataOutputBuffer serialized) throws IOException {
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(serialized.getData(), serialized.getLength());
+    UsernameKey key = new UsernameKey();
+    key.readFields(in);
+    return key;
+  }
+}
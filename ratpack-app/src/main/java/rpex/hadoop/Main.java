@@ -22,6 +22,7 @@ import com.google.common.io.Resources;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import ratpack.func.Action;
 import ratpack.guice.Guice;
 import ratpack.handling.Context;
 import ratpack.handling.Handler;
@@ -31,9 +32,13 @@ import ratpack.handling.internal.UuidBasedRequestIdGenerator;
 import ratpack.jackson.Jackson;
 import ratpack.server.BaseDir;
 import ratpack.server.RatpackServer;
+import ratpack.server.RatpackServerSpec;
+import ratpack.server.ServerConfigBuilder;
 import rpex.hadoop.mr.MapReduceConfig;
 import rpex.hadoop.mr.MapReduceEndpoints;
+import rpex.hadoop.mr.MapReduceMetrics;
 import rpex.hadoop.mr.MapReduceModule;
+import rpex.hadoop.mr.ReadinessHandler;
 
 /**
  * Starting point for the hadoop analysis server.
@@ -44,14 +49,26 @@ public class Main {
 
   public static void main(String... args) throws Exception {
     LOGGER.debug("STARTING...");
+    RatpackServer.start(serverSpec(config -> {}));
+  }
+
+  /**
+   * Defines the server: its configuration, registry and handlers.
+   * @param overrides overrides of the server configuration, applied after the properties, environment variables
+   *                  and system properties, e.g. the ports of the embedded clusters in the performance tests
+   * @return the server definition
+   */
+  public static Action<RatpackServerSpec> serverSpec(Action<? super ServerConfigBuilder> overrides) {
     ObjectMapper objectMapper = new ObjectMapper();
-    RatpackServer.start(spec -> spec
-      .serverConfig(builder -> builder
+    return spec -> spec
+      .serverConfig(builder -> {
+        builder
           .baseDir(BaseDir.find("application.properties"))
           .props(Main.class.getClassLoader().getResource("application.properties"))
-          .env().sysProps()
-          .require("/hadoop", MapReduceConfig.class)
-      )
+          .env().sysProps();
+        overrides.execute(builder);
+        builder.require("/hadoop", MapReduceConfig.class);
+      })
       .registry(Guice.registry(bindingsSpec -> {
         bindingsSpec
           .bindInstance(ResponseTimer.decorator())
@@ -80,9 +97,14 @@ public class Main {
               LOGGER.debug("GET API_DEF.JSON");
               ctx.render(ctx.file("public/apidef/api-def.json"));
             })
+            .get("ready", new ReadinessHandler())
+            .get("metrics", ctx -> {
+              // Prometheus text exposition format
+              ctx.getResponse().contentType("text/plain; version=0.0.4");
+              ctx.render(ctx.get(MapReduceMetrics.class).scrape());
+            })
             .prefix("mr", MapReduceEndpoints.class)
         )
-      )
-    );
+      );
   }
 }
@@ -0,0 +1,51 @@
+package rpex.hadoop.mr;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.hadoop.fs.FileStatus;
+
+import java.util.List;
+
+/**
+ * Fingerprint of the map-reduce input: the number of files, their total length and the latest modification time.
+ * <p>
+ * The fingerprint changes when files are added, removed, appended or rewritten.
+ * <p>
+ * Immutable value object.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class InputFingerprint {
+  private final int fileCount;
+  private final long totalLength;
+  private final long maxModificationTime;
+
+  private InputFingerprint(int fileCount, long totalLength, long maxModificationTime) {
+    this.fileCount = fileCount;
+    this.totalLength = totalLength;
+    this.maxModificationTime = maxModificationTime;
+  }
+
+  /**
+   * Calculates fingerprint of the files.
+   * @param files a status of the input files, e.g. from {@link MapReduceService#listFiles(String, String)}
+   * @return the fingerprint of the input
+   */
+  public static InputFingerprint of(List<FileStatus> files) {
+    long totalLength = 0, maxModificationTime = 0;
+    for (FileStatus file : files) {
+      totalLength += file.getLen();
+      maxModificationTime = Math.max(maxModificationTime, file.getModificationTime());
+    }
+    return new InputFingerprint(files.size(), totalLength, maxModificationTime);
+  }
+
+  /**
+   * @return the compact text form of the fingerprint, usable as part of the cache key
+   */
+  public String asKey() {
+    return fileCount + "-" + totalLength + "-" + maxModificationTime;
+  }
+}
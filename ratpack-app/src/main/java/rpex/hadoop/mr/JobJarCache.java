@@ -0,0 +1,159 @@
+package rpex.hadoop.mr;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.util.ClassUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the jars of the map-reduce functions on the hadoop file system, so jobs do not upload them on every submission.
+ * <p>
+ * A jar is uploaded once, named by the SHA-1 of its content, and added to the classpath of the jobs
+ * through the distributed cache. A new jar, e.g. after a deploy, gets a new name. The jars are readable
+ * by all users, so the node managers localize them once and share them by all jobs.
+ * Jobs fall back to {@link Job#setJarByClass(Class)} if the class is not in a jar or the upload fails.
+ * <p>
+ * The cached copy may be deleted, e.g. by a cleanup of the cache directory. It is checked once per verify interval
+ * and uploaded again if missing, and {@link #evictMissing(FileSystem)} evicts the missing copies after a job
+ * submission has failed, so the next submission uploads them again.
+ */
+public class JobJarCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobJarCache.class);
+
+  private static final FsPermission DIR_PERMISSION = new FsPermission((short) 0755);
+  private static final FsPermission JAR_PERMISSION = new FsPermission((short) 0644);
+
+  private static final long DEFAULT_VERIFY_MILLIS = 60000;
+
+  private final Path cacheDir;
+  private final long verifyMillis;
+  // local jar path -> cached copy
+  private final Map<String, CachedJar> jars = new ConcurrentHashMap<>();
+
+  /**
+   * Creates the cache verifying the cached copies once per minute.
+   * @param cacheDir a directory of the cached jars on the hadoop file system
+   */
+  public JobJarCache(Path cacheDir) {
+    this(cacheDir, DEFAULT_VERIFY_MILLIS);
+  }
+
+  /**
+   * Creates the cache.
+   * @param cacheDir a directory of the cached jars on the hadoop file system
+   * @param verifyMillis an interval of checking that the cached copy of a jar still exists, 0 to check it for every job
+   */
+  public JobJarCache(Path cacheDir, long verifyMillis) {
+    this.cacheDir = cacheDir;
+    this.verifyMillis = verifyMillis;
+  }
+
+  /**
+   * Adds the cached copy of the jar containing the class to the job classpath, uploading the jar if it is not cached yet.
+   * It is blocking operation.
+   * @param job a job to configure
+   * @param fileSystem a hadoop file system of the cache
+   * @param cls a class of the map-reduce function
+   */
+  public void setJarByClass(Job job, FileSystem fileSystem, Class<?> cls) {
+    String localJar = ClassUtil.findContainingJar(cls);
+    if (localJar == null) {
+      job.setJarByClass(cls);
+      return;
+    }
+    try {
+      CachedJar cached = jars.get(localJar);
+      if (cached == null || !verified(fileSystem, localJar, cached)) {
+        cached = cache(fileSystem, localJar);
+      }
+      job.addFileToClassPath(cached.path);
+    } catch (IOException ex) {
+      LOGGER.warn("JOB_JAR_CACHE_FAILED: {}", ex.getMessage());
+      job.setJarByClass(cls);
+    }
+  }
+
+  /**
+   * Evicts the cached copies deleted from the file system, the next jobs upload them again.
+   * It is blocking operation.
+   * @param fileSystem a hadoop file system of the cache
+   */
+  public void evictMissing(FileSystem fileSystem) {
+    for (Map.Entry<String, CachedJar> entry : jars.entrySet()) {
+      try {
+        verify(fileSystem, entry.getKey(), entry.getValue());
+      } catch (IOException ex) {
+        LOGGER.warn("JOB_JAR_CACHE_VERIFY_FAILED: {}", ex.getMessage());
+        jars.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Verifies the cached copy if it was not verified within the interval.
+   * @return false if the copy is missing, it is evicted
+   */
+  private boolean verified(FileSystem fileSystem, String localJar, CachedJar cached) throws IOException {
+    if (System.currentTimeMillis() - cached.verifiedAt < verifyMillis) {
+      return true;
+    }
+    return verify(fileSystem, localJar, cached);
+  }
+
+  private boolean verify(FileSystem fileSystem, String localJar, CachedJar cached) throws IOException {
+    if (fileSystem.exists(cached.path)) {
+      cached.verifiedAt = System.currentTimeMillis();
+      return true;
+    }
+    LOGGER.warn("CACHED JOB JAR MISSING, uploading it again: {}", cached.path);
+    jars.remove(localJar, cached);
+    return false;
+  }
+
+  private synchronized CachedJar cache(FileSystem fileSystem, String localJar) throws IOException {
+    CachedJar cached = jars.get(localJar);
+    if (cached != null) {
+      return cached;
+    }
+    File file = new File(localJar);
+    String name = file.getName().replaceFirst("\\.jar$", "") + "-" + Files.hash(file, Hashing.sha1()) + ".jar";
+    Path jar = fileSystem.makeQualified(new Path(cacheDir, name));
+    if (!fileSystem.exists(jar)) {
+      fileSystem.mkdirs(cacheDir, DIR_PERMISSION);
+      // other instances may upload the same jar, the complete copy is renamed into place
+      Path tmp = new Path(cacheDir, "." + name + "-" + UUID.randomUUID());
+      fileSystem.copyFromLocalFile(false, true, new Path(file.toURI()), tmp);
+      fileSystem.setPermission(tmp, JAR_PERMISSION);
+      if (!fileSystem.rename(tmp, jar)) {
+        fileSystem.delete(tmp, false);
+        if (!fileSystem.exists(jar)) {
+          throw new IOException("job jar not cached: " + jar);
+        }
+      }
+      LOGGER.debug("JOB JAR CACHED: {}", jar);
+    }
+    cached = new CachedJar(jar);
+    jars.put(localJar, cached);
+    return cached;
+  }
+
+  private static class CachedJar {
+    private final Path path;
+    private volatile long verifiedAt = System.currentTimeMillis();
+
+    private CachedJar(Path path) {
+      this.path = path;
+    }
+  }
+}
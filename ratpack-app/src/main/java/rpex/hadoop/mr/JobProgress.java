@@ -0,0 +1,47 @@
+package rpex.hadoop.mr;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobStatus;
+
+/**
+ * Progress of the submitted map-reduce job.
+ * <p>
+ * Immutable value object.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class JobProgress {
+  private final String id;
+  private final String hadoopJobId;
+  private final String state;
+  private final float mapProgress;
+  private final float reduceProgress;
+  private final boolean complete;
+  private final boolean successful;
+
+  /**
+   * Reads the current progress of the job from hadoop. It is blocking operation.
+   * @param submittedJob a submitted job
+   * @return the progress of the job
+   * @throws Exception if the job status could not be retrieved
+   */
+  public static JobProgress of(SubmittedJob submittedJob) throws Exception {
+    if (submittedJob.isEmpty()) {
+      return new JobProgress(submittedJob.getId(), null, JobStatus.State.SUCCEEDED.name(), 1, 1, true, true);
+    }
+    Job job = submittedJob.getMrJob().getJob();
+    boolean complete = job.isComplete();
+    return new JobProgress(
+      submittedJob.getId(),
+      job.getJobID() == null ? null : job.getJobID().toString(),
+      job.getJobState().name(),
+      job.mapProgress(),
+      job.reduceProgress(),
+      complete,
+      complete && job.isSuccessful());
+  }
+}
@@ -0,0 +1,241 @@
+package rpex.hadoop.mr;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormatCounter;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.server.Service;
+import ratpack.server.StopEvent;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes progress of the jobs tracked by the {@link JobRegistry} to their subscribers.
+ * <p>
+ * A single poller reads the status of every job with subscribers once per interval, whatever the number of
+ * its subscribers, and pushes the same {@link JobProgressEvent} to all of them. A subscriber without demand
+ * gets only the latest event when it requests more. The stream completes after the event of the completed job.
+ * The poller is shut down with the server.
+ */
+public class JobProgressBroadcaster implements Service {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobProgressBroadcaster.class);
+
+  private static final Enum<?>[] COUNTERS = {
+    FileInputFormatCounter.BYTES_READ,
+    TaskCounter.MAP_INPUT_RECORDS,
+    TaskCounter.MAP_OUTPUT_RECORDS,
+    TaskCounter.REDUCE_INPUT_RECORDS,
+    TaskCounter.REDUCE_OUTPUT_RECORDS
+  };
+
+  private final JobRegistry jobRegistry;
+  private final ScheduledExecutorService poller;
+  private final Map<String, Set<ProgressSubscription>> subscriptions = new ConcurrentHashMap<>();
+  private final Map<String, JobProgressEvent> lastEvents = new ConcurrentHashMap<>();
+
+  /**
+   * Creates the broadcaster.
+   * @param jobRegistry a registry of the submitted jobs
+   * @param interval an interval between progress events, positive
+   * @param unit a time unit of the {@code interval}
+   */
+  public JobProgressBroadcaster(JobRegistry jobRegistry, long interval, TimeUnit unit) {
+    this.jobRegistry = jobRegistry;
+    this.poller = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("job-progress-poller").setDaemon(true).build());
+    poller.scheduleWithFixedDelay(this::poll, interval, interval, unit);
+  }
+
+  /**
+   * Creates the stream of progress events of the job.
+   * @param jobId an id of the submitted job
+   * @return the publisher of the progress events or empty if the job is unknown or expired
+   */
+  public Optional<Publisher<JobProgressEvent>> events(String jobId) {
+    if (!jobRegistry.get(jobId).isPresent()) {
+      return Optional.empty();
+    }
+    return Optional.of(subscriber -> {
+      ProgressSubscription subscription = new ProgressSubscription(jobId, subscriber);
+      // added atomically with the removal of the empty set in poll(), so the subscription is not added to a removed set
+      subscriptions.compute(jobId, (id, jobSubscriptions) -> {
+        Set<ProgressSubscription> result = jobSubscriptions == null ? new CopyOnWriteArraySet<>() : jobSubscriptions;
+        result.add(subscription);
+        return result;
+      });
+      subscriber.onSubscribe(subscription);
+    });
+  }
+
+  /**
+   * @return the number of jobs with subscribers
+   */
+  public int watchedJobs() {
+    return subscriptions.size();
+  }
+
+  @Override
+  public void onStop(StopEvent event) throws Exception {
+    if (event.isReload()) {
+      return;
+    }
+    stop();
+  }
+
+  /**
+   * Stops the poller, the subscribers get no more events. It is blocking operation.
+   */
+  void stop() throws InterruptedException {
+    poller.shutdownNow();
+    if (!poller.awaitTermination(10, TimeUnit.SECONDS)) {
+      LOGGER.warn("JOB_PROGRESS_POLLER_NOT_STOPPED");
+    }
+    LOGGER.debug("END OF job progress poller");
+  }
+
+  /**
+   * Pushes the progress of every job with subscribers. It is called periodically by the poller.
+   */
+  void poll() {
+    for (Map.Entry<String, Set<ProgressSubscription>> entry : subscriptions.entrySet()) {
+      String jobId = entry.getKey();
+      Set<ProgressSubscription> jobSubscriptions = entry.getValue();
+      if (jobSubscriptions.isEmpty()) {
+        // the set is removed only if it is still empty, a subscriber may have been added since
+        if (subscriptions.computeIfPresent(jobId, (id, current) -> current.isEmpty() ? null : current) == null) {
+          lastEvents.remove(jobId);
+        }
+        continue;
+      }
+      try {
+        Optional<SubmittedJob> submittedJob = jobRegistry.get(jobId);
+        if (!submittedJob.isPresent()) {
+          complete(jobId);
+          continue;
+        }
+        JobProgressEvent event = event(submittedJob.get(), lastEvents.get(jobId));
+        lastEvents.put(jobId, event);
+        for (ProgressSubscription subscription : jobSubscriptions) {
+          subscription.offer(event);
+        }
+        if (event.getProgress().isComplete()) {
+          complete(jobId);
+        }
+      } catch (Exception ex) {
+        LOGGER.warn("JOB_PROGRESS_POLL_FAILED: {}, {}", jobId, ex.getMessage());
+      }
+    }
+  }
+
+  private void complete(String jobId) {
+    Set<ProgressSubscription> jobSubscriptions = subscriptions.remove(jobId);
+    lastEvents.remove(jobId);
+    if (jobSubscriptions != null) {
+      jobSubscriptions.forEach(ProgressSubscription::complete);
+    }
+  }
+
+  /**
+   * Reads the progress and the counters of the job. It is blocking operation.
+   */
+  private static JobProgressEvent event(SubmittedJob submittedJob, JobProgressEvent previous) throws Exception {
+    JobProgress progress = JobProgress.of(submittedJob);
+    long now = System.currentTimeMillis();
+    ImmutableMap.Builder<String, Long> counters = ImmutableMap.builder();
+    Job job = submittedJob.isEmpty() ? null : submittedJob.getMrJob().getJob();
+    Counters jobCounters = job == null || job.getJobID() == null ? null : job.getCounters();
+    if (jobCounters != null) {
+      for (Enum<?> counter : COUNTERS) {
+        counters.put(counter.name(), jobCounters.findCounter(counter).getValue());
+      }
+    }
+    boolean stateChanged = previous == null || !previous.getProgress().getState().equals(progress.getState());
+    boolean progressed = previous == null
+      || previous.getProgress().getMapProgress() != progress.getMapProgress()
+      || previous.getProgress().getReduceProgress() != progress.getReduceProgress();
+    long millisSinceProgress = progressed ? 0 : previous.getMillisSinceProgress() + now - previous.getTimestamp();
+    return new JobProgressEvent(progress, counters.build(), stateChanged, millisSinceProgress, now);
+  }
+
+  private class ProgressSubscription implements Subscription {
+    private final String jobId;
+    private final Subscriber<? super JobProgressEvent> subscriber;
+    private long demand;
+    private JobProgressEvent pending;
+    private boolean completed;
+    private boolean done;
+
+    ProgressSubscription(String jobId, Subscriber<? super JobProgressEvent> subscriber) {
+      this.jobId = jobId;
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public synchronized void request(long n) {
+      if (done) {
+        return;
+      }
+      if (n <= 0) {
+        cancel();
+        subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+        return;
+      }
+      demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+      if (pending != null) {
+        JobProgressEvent event = pending;
+        pending = null;
+        offer(event);
+      }
+    }
+
+    @Override
+    public synchronized void cancel() {
+      done = true;
+      Set<ProgressSubscription> jobSubscriptions = subscriptions.get(jobId);
+      if (jobSubscriptions != null) {
+        jobSubscriptions.remove(this);
+      }
+    }
+
+    synchronized void offer(JobProgressEvent event) {
+      if (done) {
+        return;
+      }
+      if (demand == 0) {
+        // only the latest event is kept for the slow subscriber
+        pending = event;
+        return;
+      }
+      demand--;
+      subscriber.onNext(event);
+      if (completed) {
+        complete();
+      }
+    }
+
+    synchronized void complete() {
+      if (done) {
+        return;
+      }
+      completed = true;
+      if (pending == null) {
+        done = true;
+        subscriber.onComplete();
+      }
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package rpex.hadoop.mr;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Map;
+
+/**
+ * Progress event of the submitted map-reduce job, pushed to the progress subscribers.
+ * <p>
+ * Immutable value object.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class JobProgressEvent {
+  private final JobProgress progress;
+  // selected hadoop counters by their names
+  private final Map<String, Long> counters;
+  // true if the job state differs from the previous event
+  private final boolean stateChanged;
+  // time since the map or reduce progress changed, grows while the job stalls
+  private final long millisSinceProgress;
+  private final long timestamp;
+}
@@ -0,0 +1,149 @@
+package rpex.hadoop.mr;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListeners;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.server.Service;
+import ratpack.server.StopEvent;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks map-reduce jobs submitted for asynchronous execution.
+ * <p>
+ * Jobs not accessed for the time-to-live are removed from the registry. Removed jobs are killed if still running
+ * and their output is deleted. The cleaner thread is shut down with the server.
+ */
+public class JobRegistry implements Service {
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobRegistry.class);
+
+  private final Cache<String, SubmittedJob> jobs;
+  private final ScheduledExecutorService cleaner;
+
+  /**
+   * Creates the registry.
+   * @param ttl a time-to-live of the job since its last access
+   * @param unit a time unit of the {@code ttl}
+   */
+  public JobRegistry(long ttl, TimeUnit unit) {
+    this(ttl, unit, Ticker.systemTicker());
+  }
+
+  /**
+   * Creates the registry.
+   * @param ttl a time-to-live of the job since its last access
+   * @param unit a time unit of the {@code ttl}
+   * @param ticker a source of the time of the job accesses
+   */
+  JobRegistry(long ttl, TimeUnit unit, Ticker ticker) {
+    this.cleaner = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("job-registry-cleaner").setDaemon(true).build());
+    this.jobs = CacheBuilder.newBuilder()
+      .expireAfterAccess(ttl, unit)
+      .ticker(ticker)
+      .removalListener(RemovalListeners.<String, SubmittedJob>asynchronous(notification -> {
+        if (notification.getCause() != RemovalCause.REPLACED) {
+          cleanup(notification.getValue());
+        }
+      }, cleaner))
+      .build();
+    cleaner.scheduleWithFixedDelay(this::cleanUp, 1, 1, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Generates unique id for the job to be registered.
+   * @return the new job id
+   */
+  public String newId() {
+    return UUID.randomUUID().toString();
+  }
+
+  /**
+   * Registers submitted job.
+   * @param id a job id generated by {@link #newId()}
+   * @param mrJob a submitted map-reduce job, {@code null} if the query selected no input
+   * @param outputPath an output path of the job, {@code null} if the query selected no input
+   * @return the registered job
+   */
+  public SubmittedJob register(String id, MapReduceJob mrJob, Path outputPath) {
+    SubmittedJob submittedJob = new SubmittedJob(id, mrJob, outputPath, System.currentTimeMillis());
+    jobs.put(submittedJob.getId(), submittedJob);
+    return submittedJob;
+  }
+
+  /**
+   * Finds the job by its id.
+   * @param id an id of the job
+   * @return the job or empty if the job is unknown or expired
+   */
+  public Optional<SubmittedJob> get(String id) {
+    return Optional.ofNullable(jobs.getIfPresent(id));
+  }
+
+  /**
+   * @return all jobs tracked by the registry
+   */
+  public Collection<SubmittedJob> all() {
+    return jobs.asMap().values();
+  }
+
+  /**
+   * Removes the job from the registry, killing it if still running and deleting its output.
+   * @param id an id of the job
+   */
+  public void remove(String id) {
+    jobs.invalidate(id);
+  }
+
+  /**
+   * Removes the expired jobs, their cleanup is executed by the cleaner. It is called periodically by the cleaner.
+   */
+  void cleanUp() {
+    jobs.cleanUp();
+  }
+
+  @Override
+  public void onStop(StopEvent event) throws Exception {
+    if (event.isReload()) {
+      return;
+    }
+    stop();
+  }
+
+  /**
+   * Stops the cleaner, the jobs removed before are cleaned up first. It is blocking operation.
+   */
+  void stop() throws InterruptedException {
+    cleaner.shutdown();
+    if (!cleaner.awaitTermination(10, TimeUnit.SECONDS)) {
+      LOGGER.warn("JOB_REGISTRY_CLEANER_NOT_STOPPED");
+    }
+    LOGGER.debug("END OF job registry cleaner");
+  }
+
+  private static void cleanup(SubmittedJob submittedJob) {
+    LOGGER.debug("REMOVING JOB: {}", submittedJob.getId());
+    if (submittedJob.isEmpty()) {
+      return;
+    }
+    try {
+      if (!submittedJob.getMrJob().getJob().isComplete()) {
+        submittedJob.getMrJob().getJob().killJob();
+      }
+      submittedJob.getMrJob().getFileSystem().delete(submittedJob.getOutputPath(), true);
+    } catch (Exception ex) {
+      LOGGER.warn("JOB_CLEANUP_FAILED: {}, {}", submittedJob.getId(), ex.getMessage());
+    }
+  }
+}
@@ -35,6 +35,28 @@ public class MapReduceConfig {
   private String mapReduceType;
   private String fileSystemHost;
   private String fileSystemPort;
+  private int reduceTasks = 1;
+  private int topNCacheMaxEntries = 100;
+  private String topNCacheDir;
+  private int topNCacheDiskMaxEntries = 1000;
+  private int jobTtlMinutes = 60;
+  private int jobPoolSize = 2;
+  private boolean useDailyAggregates = true;
+  private String topNEngine = "mapreduce";
+  private String localDataDir;
+  private int jobProgressIntervalMillis = 1000;
+  private int jobCompletionPollMillis = 5000;
+  private String mapOutputCodec;
+  private String outputCodec;
+  private int smallFileThresholdMb = 32;
+  private int combineSplitSizeMb = 256;
+  private boolean warmUp = true;
+  private String jobJarCacheDir;
+  private String streamDirs;
+  private int streamWindowMinutes = 60;
+  private int streamMaxUsers = 500000;
+  private int streamMaxClockSkewMinutes = 5;
+  private String streamCheckpointFile;
 
   /**
    * Hadoop's users used in map reduce execution.
@@ -205,6 +227,407 @@ public class MapReduceConfig {
     return "hdfs://" + getFileSystemHost() + (Strings.isNullOrEmpty(getFileSystemPort()) ? "" : ":" + getFileSystemPort());
   }
 
+  /**
+   * Number of reduce tasks used by the map reduce jobs.
+   * @return the number of reduce tasks
+   */
+  public int getReduceTasks() {
+    return reduceTasks;
+  }
+
+  /**
+   * Sets number of reduce tasks. The users are distributed among reducers by the hash of their names.
+   * @param reduceTasks the number of reduce tasks
+   * @return this
+   */
+  public MapReduceConfig reduceTasks(int reduceTasks) {
+    this.reduceTasks = reduceTasks;
+    return this;
+  }
+
+  /**
+   * Maximal number of top-n results kept in the memory cache. {@code 0} disables the cache.
+   * @return the maximal number of cached results
+   */
+  public int getTopNCacheMaxEntries() {
+    return topNCacheMaxEntries;
+  }
+
+  /**
+   * Sets maximal number of top-n results kept in the memory cache
+   * @param topNCacheMaxEntries the maximal number of cached results
+   * @return this
+   */
+  public MapReduceConfig topNCacheMaxEntries(int topNCacheMaxEntries) {
+    this.topNCacheMaxEntries = topNCacheMaxEntries;
+    return this;
+  }
+
+  /**
+   * Local directory of the disk tier of the top-n results cache. Disk tier is disabled if not set.
+   * @return the local cache directory
+   */
+  public String getTopNCacheDir() {
+    return topNCacheDir;
+  }
+
+  /**
+   * Sets local directory of the disk tier of the top-n results cache
+   * @param topNCacheDir the local cache directory
+   * @return this
+   */
+  public MapReduceConfig topNCacheDir(String topNCacheDir) {
+    this.topNCacheDir = topNCacheDir;
+    return this;
+  }
+
+  /**
+   * Maximal number of top-n results kept in the disk cache.
+   * @return the maximal number of results on disk
+   */
+  public int getTopNCacheDiskMaxEntries() {
+    return topNCacheDiskMaxEntries;
+  }
+
+  /**
+   * Sets maximal number of top-n results kept in the disk cache
+   * @param topNCacheDiskMaxEntries the maximal number of results on disk
+   * @return this
+   */
+  public MapReduceConfig topNCacheDiskMaxEntries(int topNCacheDiskMaxEntries) {
+    this.topNCacheDiskMaxEntries = topNCacheDiskMaxEntries;
+    return this;
+  }
+
+  /**
+   * Time-to-live in minutes of the asynchronously submitted job since its last access.
+   * @return the job time-to-live in minutes
+   */
+  public int getJobTtlMinutes() {
+    return jobTtlMinutes;
+  }
+
+  /**
+   * Sets time-to-live in minutes of the asynchronously submitted jobs
+   * @param jobTtlMinutes the job time-to-live in minutes
+   * @return this
+   */
+  public MapReduceConfig jobTtlMinutes(int jobTtlMinutes) {
+    this.jobTtlMinutes = jobTtlMinutes;
+    return this;
+  }
+
+  /**
+   * Number of pre-created map reduce jobs kept ready for the requests.
+   * @return the job pool size
+   */
+  public int getJobPoolSize() {
+    return jobPoolSize;
+  }
+
+  /**
+   * Sets number of pre-created map reduce jobs. {@code 0} disables the pool
+   * @param jobPoolSize the job pool size
+   * @return this
+   */
+  public MapReduceConfig jobPoolSize(int jobPoolSize) {
+    this.jobPoolSize = jobPoolSize;
+    return this;
+  }
+
+  /**
+   * Use daily aggregates for top-n queries when they cover the whole time interval.
+   * @return true if daily aggregates are used
+   */
+  public boolean isUseDailyAggregates() {
+    return useDailyAggregates;
+  }
+
+  /**
+   * Sets if daily aggregates are used for top-n queries
+   * @param useDailyAggregates true if daily aggregates are used
+   * @return this
+   */
+  public MapReduceConfig useDailyAggregates(boolean useDailyAggregates) {
+    this.useDailyAggregates = useDailyAggregates;
+    return this;
+  }
+
+  /**
+   * Gets the engine calculating synchronous top-n queries, {@code mapreduce} or {@code local}.
+   * @return the top-n engine name
+   */
+  public String getTopNEngine() {
+    return topNEngine;
+  }
+
+  /**
+   * Sets the engine calculating synchronous top-n queries.
+   * @param topNEngine a top-n engine name, {@code local} counts memory-mapped local files in-process
+   * @return this
+   */
+  public MapReduceConfig topNEngine(String topNEngine) {
+    this.topNEngine = topNEngine;
+    return this;
+  }
+
+  /**
+   * Gets the local directory with the input of the {@code local} top-n engine.
+   * @return the local data directory
+   */
+  public String getLocalDataDir() {
+    return localDataDir;
+  }
+
+  /**
+   * Sets the local directory with the input of the {@code local} top-n engine.
+   * @param localDataDir a local directory resolving input names of the {@code local} engine
+   * @return this
+   */
+  public MapReduceConfig localDataDir(String localDataDir) {
+    this.localDataDir = localDataDir;
+    return this;
+  }
+
+  /**
+   * Gets the interval between progress events pushed to the job progress subscribers.
+   * @return the interval in milliseconds
+   */
+  public int getJobProgressIntervalMillis() {
+    return jobProgressIntervalMillis;
+  }
+
+  /**
+   * Sets the interval between progress events pushed to the job progress subscribers.
+   * @param jobProgressIntervalMillis an interval in milliseconds
+   * @return this
+   */
+  public MapReduceConfig jobProgressIntervalMillis(int jobProgressIntervalMillis) {
+    this.jobProgressIntervalMillis = jobProgressIntervalMillis;
+    return this;
+  }
+
+  /**
+   * Gets the interval between the status checks of the job the request waits for. Hadoop's default is 5 seconds,
+   * which is added to the latency of the short jobs.
+   * @return the interval in milliseconds
+   */
+  public int getJobCompletionPollMillis() {
+    return jobCompletionPollMillis;
+  }
+
+  /**
+   * Sets the interval between the status checks of the job the request waits for.
+   * @param jobCompletionPollMillis an interval in milliseconds
+   * @return this
+   */
+  public MapReduceConfig jobCompletionPollMillis(int jobCompletionPollMillis) {
+    this.jobCompletionPollMillis = jobCompletionPollMillis;
+    return this;
+  }
+
+  /**
+   * Gets the codec compressing the map output spilled to disk and shuffled to the reducers.
+   * Empty disables the compression.
+   * @return the map output codec
+   */
+  public String getMapOutputCodec() {
+    return mapOutputCodec;
+  }
+
+  /**
+   * Sets the codec compressing the map output spilled to disk and shuffled to the reducers.
+   * @param mapOutputCodec a codec alias, e.g. {@code default}, {@code gzip}, {@code snappy}, {@code lz4}, or class name
+   * @return this
+   */
+  public MapReduceConfig mapOutputCodec(String mapOutputCodec) {
+    this.mapOutputCodec = mapOutputCodec;
+    return this;
+  }
+
+  /**
+   * Gets the codec compressing the job outputs. Sequence files are block-compressed and the ingested logs
+   * are re-packed into them. Empty disables the compression.
+   * @return the job output codec
+   */
+  public String getOutputCodec() {
+    return outputCodec;
+  }
+
+  /**
+   * Sets the codec compressing the job outputs.
+   * @param outputCodec a codec alias, e.g. {@code default}, {@code bzip2}, {@code snappy}, or class name
+   * @return this
+   */
+  public MapReduceConfig outputCodec(String outputCodec) {
+    this.outputCodec = outputCodec;
+    return this;
+  }
+
+  /**
+   * Gets the average input file size below which the files are packed into combined splits. {@code 0} disables combining.
+   * @return the threshold in megabytes
+   */
+  public int getSmallFileThresholdMb() {
+    return smallFileThresholdMb;
+  }
+
+  /**
+   * Sets the average input file size below which the files are packed into combined splits.
+   * @param smallFileThresholdMb a threshold in megabytes
+   * @return this
+   */
+  public MapReduceConfig smallFileThresholdMb(int smallFileThresholdMb) {
+    this.smallFileThresholdMb = smallFileThresholdMb;
+    return this;
+  }
+
+  /**
+   * Gets the target size of the combined split of small input files.
+   * @return the split size in megabytes
+   */
+  public int getCombineSplitSizeMb() {
+    return combineSplitSizeMb;
+  }
+
+  /**
+   * Sets the target size of the combined split of small input files.
+   * @param combineSplitSizeMb a split size in megabytes
+   * @return this
+   */
+  public MapReduceConfig combineSplitSizeMb(int combineSplitSizeMb) {
+    this.combineSplitSizeMb = combineSplitSizeMb;
+    return this;
+  }
+
+  /**
+   * Warm up the hadoop client and the job submission with a tiny local job when the server starts.
+   * @return true if the server is warmed up before it gets ready
+   */
+  public boolean isWarmUp() {
+    return warmUp;
+  }
+
+  /**
+   * Sets if the hadoop client is warmed up when the server starts
+   * @param warmUp true if the server is warmed up before it gets ready
+   * @return this
+   */
+  public MapReduceConfig warmUp(boolean warmUp) {
+    this.warmUp = warmUp;
+    return this;
+  }
+
+  /**
+   * Gets the directory of the job jars cached on the file system, relative to the user's home directory. Jobs ship their jars with every submission if empty.
+   * @return the job jars cache directory
+   */
+  public String getJobJarCacheDir() {
+    return jobJarCacheDir;
+  }
+
+  /**
+   * Sets the directory of the job jars cached on the file system
+   * @param jobJarCacheDir the job jars cache directory, empty to ship the jars with every job
+   * @return this
+   */
+  public MapReduceConfig jobJarCacheDir(String jobJarCacheDir) {
+    this.jobJarCacheDir = jobJarCacheDir;
+    return this;
+  }
+
+  /**
+   * Local directories of the access logs tailed by the streaming top-n, comma separated. Streaming is disabled if empty.
+   * @return the comma separated directories
+   */
+  public String getStreamDirs() {
+    return streamDirs;
+  }
+
+  /**
+   * Sets local directories of the access logs tailed by the streaming top-n
+   * @param streamDirs the comma separated directories
+   * @return this
+   */
+  public MapReduceConfig streamDirs(String streamDirs) {
+    this.streamDirs = streamDirs;
+    return this;
+  }
+
+  /**
+   * Length of the streaming top-n sliding window, in one minute buckets.
+   * @return the window length in minutes
+   */
+  public int getStreamWindowMinutes() {
+    return streamWindowMinutes;
+  }
+
+  /**
+   * Sets length of the streaming top-n sliding window
+   * @param streamWindowMinutes the window length in minutes
+   * @return this
+   */
+  public MapReduceConfig streamWindowMinutes(int streamWindowMinutes) {
+    this.streamWindowMinutes = streamWindowMinutes;
+    return this;
+  }
+
+  /**
+   * Maximal number of distinct users counted by the streaming top-n, lines of other users are dropped.
+   * @return the maximal number of users
+   */
+  public int getStreamMaxUsers() {
+    return streamMaxUsers;
+  }
+
+  /**
+   * Sets maximal number of distinct users counted by the streaming top-n
+   * @param streamMaxUsers the maximal number of users
+   * @return this
+   */
+  public MapReduceConfig streamMaxUsers(int streamMaxUsers) {
+    this.streamMaxUsers = streamMaxUsers;
+    return this;
+  }
+
+  /**
+   * Number of minutes the tailed lines may be ahead of the clock of the server. Later lines are dropped, so they
+   * do not move the end of the streaming top-n window.
+   * @return the maximal clock skew in minutes
+   */
+  public int getStreamMaxClockSkewMinutes() {
+    return streamMaxClockSkewMinutes;
+  }
+
+  /**
+   * Sets number of minutes the tailed lines may be ahead of the clock of the server
+   * @param streamMaxClockSkewMinutes the maximal clock skew in minutes
+   * @return this
+   */
+  public MapReduceConfig streamMaxClockSkewMinutes(int streamMaxClockSkewMinutes) {
+    this.streamMaxClockSkewMinutes = streamMaxClockSkewMinutes;
+    return this;
+  }
+
+  /**
+   * Local file with the streaming top-n checkpoint: the offsets of the tailed files and the window counters.
+   * No checkpoints if empty.
+   * @return the checkpoint file
+   */
+  public String getStreamCheckpointFile() {
+    return streamCheckpointFile;
+  }
+
+  /**
+   * Sets local file of the streaming top-n checkpoint
+   * @param streamCheckpointFile the checkpoint file
+   * @return this
+   */
+  public MapReduceConfig streamCheckpointFile(String streamCheckpointFile) {
+    this.streamCheckpointFile = streamCheckpointFile;
+    return this;
+  }
+
   public MapReduceConfig copyOf(final MapReduceConfig config) {
     return this
       .user(config.getUser())
@@ -214,6 +637,28 @@ public class MapReduceConfig {
       .yarnRMSchedulerPort(config.yarnRMSchedulerPort)
       .mapReduceType(config.getMapReduceType())
       .fileSystemHost(config.getFileSystemHost())
-      .fileSystemPort(config.getFileSystemPort());
+      .fileSystemPort(config.getFileSystemPort())
+      .reduceTasks(config.getReduceTasks())
+      .topNCacheMaxEntries(config.getTopNCacheMaxEntries())
+      .topNCacheDir(config.getTopNCacheDir())
+      .topNCacheDiskMaxEntries(config.getTopNCacheDiskMaxEntries())
+      .jobTtlMinutes(config.getJobTtlMinutes())
+      .jobPoolSize(config.getJobPoolSize())
+      .useDailyAggregates(config.isUseDailyAggregates())
+      .topNEngine(config.getTopNEngine())
+      .localDataDir(config.getLocalDataDir())
+      .jobProgressIntervalMillis(config.getJobProgressIntervalMillis())
+      .jobCompletionPollMillis(config.getJobCompletionPollMillis())
+      .mapOutputCodec(config.getMapOutputCodec())
+      .outputCodec(config.getOutputCodec())
+      .smallFileThresholdMb(config.getSmallFileThresholdMb())
+      .combineSplitSizeMb(config.getCombineSplitSizeMb())
+      .warmUp(config.isWarmUp())
+      .jobJarCacheDir(config.getJobJarCacheDir())
+      .streamDirs(config.getStreamDirs())
+      .streamWindowMinutes(config.getStreamWindowMinutes())
+      .streamMaxUsers(config.getStreamMaxUsers())
+      .streamMaxClockSkewMinutes(config.getStreamMaxClockSkewMinutes())
+      .streamCheckpointFile(config.getStreamCheckpointFile());
   }
 }
@@ -17,20 +17,38 @@
 
 package rpex.hadoop.mr;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.primitives.Ints;
+import mr.func.topn.ApproxTopNFunc;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ratpack.func.Action;
 import ratpack.handling.Chain;
 import ratpack.handling.Context;
 import ratpack.handling.Handler;
+import ratpack.handling.RequestId;
+import ratpack.http.ResponseChunks;
+import ratpack.sse.ServerSentEvents;
+import ratpack.stream.Streams;
+import rpex.hadoop.mr.ingest.IngestionService;
+import rpex.hadoop.mr.stream.StreamingTopNService;
 import rpex.hadoop.mr.topn.TopNService;
+import rpex.hadoop.mr.topn.dto.CalcMultiTopN;
 import rpex.hadoop.mr.topn.dto.CalcTopN;
+import rpex.hadoop.mr.topn.internal.DailyAggregates;
+import rpex.hadoop.mr.topn.internal.TopNResultCache;
 import rpex.hadoop.mr.topn.model.TimeInterval;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
 
 import javax.inject.Inject;
+import java.io.Closeable;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalUnit;
+import java.util.List;
+import java.util.Optional;
 
 import static ratpack.jackson.Jackson.json;
 import static ratpack.jackson.Jackson.fromJson;
@@ -42,15 +60,89 @@ public class MapReduceEndpoints implements Action<Chain> {
   private static final Logger LOGGER = LoggerFactory.getLogger(MapReduceEndpoints.class);
 
   private final TopNService topNService;
+  private final TopNResultCache topNResultCache;
+  private final IngestionService ingestionService;
+  private final DailyAggregates dailyAggregates;
+  private final JobProgressBroadcaster jobProgressBroadcaster;
+  private final StreamingTopNService streamingTopNService;
 
   @Inject
-  public MapReduceEndpoints(TopNService topNService) {
+  public MapReduceEndpoints(TopNService topNService, TopNResultCache topNResultCache, IngestionService ingestionService,
+                            DailyAggregates dailyAggregates, JobProgressBroadcaster jobProgressBroadcaster,
+                            StreamingTopNService streamingTopNService) {
     this.topNService = topNService;
+    this.topNResultCache = topNResultCache;
+    this.ingestionService = ingestionService;
+    this.dailyAggregates = dailyAggregates;
+    this.jobProgressBroadcaster = jobProgressBroadcaster;
+    this.streamingTopNService = streamingTopNService;
   }
 
   @Override
   public void execute(Chain chain) throws Exception {
     chain
+      .post("top/stream", ctx -> {
+        // streams results as newline delimited JSON, without keeping the whole result in memory
+        ctx.parse(fromJson(CalcTopN.class))
+          .onNull(() -> {
+            ctx.render(json(Integer.valueOf(-1)));
+          })
+          .then(ctn -> {
+            LOGGER.debug("Streaming mapreduce: TopN for N={}", ctn.getLimit());
+            ObjectWriter writer = ctx.get(ObjectMapper.class).writer();
+            topNService
+              .stream(ctn.getLimit(), ctn.getTimeInterval(), "input", "output", requestId(ctx))
+              .then(r -> {
+                if (!r.isSuccess()) {
+                  ctx.getResponse().status(500);
+                  ctx.render(json(r));
+                  return;
+                }
+                Publisher<List<UserActivityCounter>> publisher = r.getValue();
+                if (publisher instanceof Closeable) {
+                  // releases the job output if the response never subscribes the publisher
+                  ctx.onClose(outcome -> ((Closeable) publisher).close());
+                }
+                ctx.render(ResponseChunks.stringChunks("application/x-ndjson", Streams.map(publisher, batch -> {
+                  StringBuilder chunk = new StringBuilder(batch.size() * 48);
+                  for (UserActivityCounter userActivityCounter : batch) {
+                    chunk.append(writer.writeValueAsString(userActivityCounter)).append('\n');
+                  }
+                  return chunk;
+                })));
+              });
+          });
+      })
+      .post("top/dimensions", ctx -> {
+        // rankings of several dimensions out of a single scan of the logs
+        ctx.parse(fromJson(CalcMultiTopN.class))
+          .onNull(() -> {
+            ctx.render(json(Integer.valueOf(-1)));
+          })
+          .then(cmtn -> {
+            LOGGER.debug("Starting mapreduce: multi-dimension TopN for N={}, dimensions={}", cmtn.getLimit(), cmtn.getDimensions());
+            topNService
+              .multiDimension(cmtn.getLimit(), cmtn.getDimensions(), cmtn.getTimeInterval(), "input", "output", requestId(ctx))
+              .map(r -> json(r))
+              .then(ctx::render);
+          });
+      })
+      .get("stream/top/:n?", ctx -> {
+        // real-time top-n of the tailed logs over the last minutes, answered from memory
+        if (!streamingTopNService.isEnabled()) {
+          ctx.clientError(404);
+          return;
+        }
+        Integer topN = Ints.tryParse(ctx.getPathTokens().getOrDefault("n", "10"));
+        Integer minutes = Ints.tryParse(ctx.getRequest().getQueryParams()
+          .getOrDefault("minutes", String.valueOf(streamingTopNService.getWindowMinutes())));
+        if (topN == null || topN < 1 || minutes == null || minutes < 1) {
+          ctx.clientError(400);
+          return;
+        }
+        // windows longer than the configured one are shortened to it
+        ctx.render(json(streamingTopNService.top(topN, minutes)));
+      })
       .path("top/:n?", new Handler() {  // :n? means :n parameter is optional
         @Override
         public void handle(Context ctx) throws Exception {
@@ -66,8 +158,17 @@ public class MapReduceEndpoints implements Action<Chain> {
                   ctx.render(json(Integer.valueOf(-1)));
                 })
                 .then(ctn -> {
+                  if (ctn.isApproximate()) {
+                    topNService
+                      .approximate(ctn.getLimit(),
+                        ctn.getCapacity() == null ? ApproxTopNFunc.DEFAULT_CAPACITY : ctn.getCapacity(),
+                        ctn.getTimeInterval(), "input", "output", requestId(ctx))
+                      .map(r -> json(r))
+                      .then(ctx::render);
+                    return;
+                  }
                   topNService
-                    .apply(ctn.getLimit(), ctn.getTimeInterval(), "input", "output")
+                    .apply(ctn.getLimit(), ctn.getTimeInterval(), "input", "output", requestId(ctx))
                     .map(r -> json(r))
                     .then(ctx::render);
                   //ctx.render(json(ctn.getLimit()));
@@ -75,6 +176,77 @@ public class MapReduceEndpoints implements Action<Chain> {
             })
           );
         }
+      })
+      .post("jobs/top", ctx -> {
+        // submit-and-return mode: responds with the job id, the result is available at jobs/:id/result
+        ctx.parse(fromJson(CalcTopN.class))
+          .onNull(() -> {
+            ctx.render(json(Integer.valueOf(-1)));
+          })
+          .then(ctn -> {
+            LOGGER.debug("Submitting mapreduce: TopN for N={}", ctn.getLimit());
+            topNService
+              .submit(ctn.getLimit(), ctn.getTimeInterval(), "input", "output", requestId(ctx))
+              .then(r -> {
+                ctx.getResponse().status(r.isSuccess() ? 202 : 500);
+                ctx.render(json(r));
+              });
+          });
+      })
+      .get("jobs/:id", ctx -> {
+        topNService
+          .status(ctx.getPathTokens().get("id"))
+          .then(progress -> {
+            if (progress.isPresent()) {
+              ctx.render(json(progress.get()));
+            } else {
+              ctx.clientError(404);
+            }
+          });
+      })
+      .get("jobs/:id/result", ctx -> {
+        topNService
+          .result(ctx.getPathTokens().get("id"), requestId(ctx))
+          .map(r -> json(r))
+          .then(ctx::render);
+      })
+      .get("jobs/:id/events", ctx -> {
+        // server-sent events with the job progress, until the job completes
+        ObjectWriter writer = ctx.get(ObjectMapper.class).writer();
+        Optional<Publisher<JobProgressEvent>> events = jobProgressBroadcaster.events(ctx.getPathTokens().get("id"));
+        if (!events.isPresent()) {
+          ctx.clientError(404);
+          return;
+        }
+        ctx.render(ServerSentEvents.serverSentEvents(events.get(), event -> event
+          .id(progressEvent -> String.valueOf(progressEvent.getTimestamp()))
+          .event(progressEvent -> progressEvent.isStateChanged() ? "state" : "progress")
+          .data(writer::writeValueAsString)));
+      })
+      .get("top-cache/stats", ctx -> ctx.render(json(topNResultCache.stats())))
+      .post("ingest", ctx -> {
+        // lays out raw access logs by day, so top-n queries read only the days of their time interval
+        LOGGER.debug("Starting mapreduce: partition by day");
+        ingestionService
+          .partitionByDay("raw", "input", requestId(ctx))
+          .map(r -> json(r))
+          .then(ctx::render);
+      })
+      .post("aggregates/update", ctx -> {
+        // processes only the log files added since the last update
+        LOGGER.debug("Starting mapreduce: daily aggregates update");
+        dailyAggregates
+          .update("input", requestId(ctx))
+          .map(r -> json(r))
+          .then(ctx::render);
       });
   }
+
+  /**
+   * Gets the id of the request. The MDC of the event loop thread may hold the id of another request
+   * once the handler has resumed asynchronously, so the id is taken from the request.
+   */
+  private static String requestId(Context ctx) {
+    return ctx.getRequest().get(RequestId.class).getId();
+  }
 }
@@ -6,6 +6,8 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.Job;
 
+import java.io.IOException;
+
 /**
  * Wrapper for hadoop's mapreduce {@link org.apache.hadoop.mapreduce.Job} and {@link org.apache.hadoop.fs.FileSystem}.
  */
@@ -15,14 +17,54 @@ public class MapReduceJob {
   private final MapReduceConfig config;
   private final Job job;
   private final FileSystem fileSystem;
+  // null if the jars are shipped with every job
+  private final JobJarCache jarCache;
+
+  /**
+   * Sets the jar of the map-reduce functions of the job, the cached copy if the {@link JobJarCache} is enabled.
+   * It is blocking operation.
+   * @param cls a class of the map-reduce function
+   */
+  public void setJarByClass(Class<?> cls) {
+    if (jarCache == null) {
+      job.setJarByClass(cls);
+    } else {
+      jarCache.setJarByClass(job, fileSystem, cls);
+    }
+  }
+
+  /**
+   * Submits the job. If the submission fails, the missing cached jars are evicted, so the next jobs upload them again.
+   * It is blocking operation.
+   */
+  public void submit() throws IOException, InterruptedException, ClassNotFoundException {
+    try {
+      job.submit();
+    } catch (IOException ex) {
+      if (jarCache != null) {
+        jarCache.evictMissing(fileSystem);
+      }
+      throw ex;
+    }
+  }
+
+  /**
+   * Hadoop file system path for this job's configuration, see {@link #getJobPath(MapReduceConfig, String)}
+   * @param fsName a name of file or directory on hadoop file system
+   * @return the path to hadoop file system
+   */
+  public Path getJobPath(String fsName) {
+    return getJobPath(config, fsName);
+  }
 
   /**
    * Hadoop file system path calculated out of {@link MapReduceConfig#getFileSystemAddress()},
    * {@link MapReduceConfig#getUser()} and input {@code fsName}
+   * @param config a mapreduce configuration
    * @param fsName a name of file or directory on hadoop file system
    * @return the path to hadoop file system
    */
-  public Path getJobPath(String fsName) {
+  public static Path getJobPath(MapReduceConfig config, String fsName) {
     StringBuilder b = new StringBuilder();
     b.append(config.getFileSystemAddress())
       .append("/user/")
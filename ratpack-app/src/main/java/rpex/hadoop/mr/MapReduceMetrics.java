@@ -0,0 +1,193 @@
+package rpex.hadoop.mr;
+
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms of the map-reduce phases and totals of the hadoop job counters.
+ * <p>
+ * Every phase sample is tagged with the {@code requestId} of the request that caused it. The id is logged with
+ * every sample, so slow phases can be traced to their requests. It is not exported as a label, every request
+ * would create a new time series.
+ * <p>
+ * Metrics are exposed by {@link #scrape()} in the Prometheus text format.
+ */
+public class MapReduceMetrics {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MapReduceMetrics.class);
+
+  /**
+   * Phase of provisioning the map-reduce job.
+   */
+  public static final String PROVISION = "provision";
+  /**
+   * Phase of configuring and submitting the job.
+   */
+  public static final String SUBMIT = "submit";
+  /**
+   * Phase of waiting for the job completion.
+   */
+  public static final String RUN = "run";
+  /**
+   * Phase of listing files, the job input or its output.
+   */
+  public static final String LIST = "list";
+  /**
+   * Phase of reading and merging the job results.
+   */
+  public static final String PARSE = "parse";
+  /**
+   * Phase of warming up the hadoop client when the server starts.
+   */
+  public static final String WARM_UP = "warmup";
+
+  // upper bounds of the histogram buckets in seconds
+  private static final double[] BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600};
+
+  private final ConcurrentMap<String, Histogram> phases = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> jobCounters = new ConcurrentHashMap<>();
+  private final LongAdder topNRequests = new LongAdder();
+  private final LongAdder topNCoalesced = new LongAdder();
+
+  /**
+   * Executes the block and records its latency.
+   * @param phase a phase name
+   * @param requestId an id of the request, {@code null} if the phase is not caused by a request
+   * @param block a measured block
+   * @return the result of the block
+   * @throws Exception if the block failed, the latency is recorded anyway
+   */
+  public <T> T time(String phase, String requestId, Callable<T> block) throws Exception {
+    long start = System.nanoTime();
+    try {
+      return block.call();
+    } finally {
+      record(phase, requestId, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Records the latency of the phase.
+   * @param phase a phase name
+   * @param requestId an id of the request, {@code null} if the phase is not caused by a request
+   * @param nanos a latency in nanoseconds
+   */
+  public void record(String phase, String requestId, long nanos) {
+    phases.computeIfAbsent(phase, name -> new Histogram()).record(nanos);
+    LOGGER.debug("PHASE {} took {} ms, requestId: {}", phase, TimeUnit.NANOSECONDS.toMillis(nanos), requestId);
+  }
+
+  /**
+   * Adds the values of the counters of the completed job to the totals.
+   * @param group a counter group, e.g. the class name of the counter enum
+   * @param counters the job counters
+   */
+  public void addJobCounters(String group, Counters counters) {
+    if (counters == null) {
+      return;
+    }
+    for (Counter counter : counters.getGroup(group)) {
+      jobCounters.computeIfAbsent(counter.getName(), name -> new LongAdder()).add(counter.getValue());
+    }
+  }
+
+  /**
+   * Counts the top-n request reaching the coalescing of the identical requests.
+   * @param coalesced true if the request is served by an already running job
+   */
+  public void recordTopNRequest(boolean coalesced) {
+    topNRequests.increment();
+    if (coalesced) {
+      topNCoalesced.increment();
+    }
+  }
+
+  /**
+   * @return the metrics in the Prometheus text exposition format
+   */
+  public String scrape() {
+    StringBuilder out = new StringBuilder(4096);
+    out.append("# HELP mapreduce_phase_seconds Latency of the map-reduce phases.\n");
+    out.append("# TYPE mapreduce_phase_seconds histogram\n");
+    Map<String, Histogram> sortedPhases = new TreeMap<>(phases);
+    for (Map.Entry<String, Histogram> entry : sortedPhases.entrySet()) {
+      entry.getValue().scrape(entry.getKey(), out);
+    }
+    out.append("# HELP mapreduce_phase_last_seconds Latency of the latest sample of the phase.\n");
+    out.append("# TYPE mapreduce_phase_last_seconds gauge\n");
+    for (Map.Entry<String, Histogram> entry : sortedPhases.entrySet()) {
+      long last = entry.getValue().lastNanos;
+      if (last >= 0) {
+        out.append("mapreduce_phase_last_seconds{phase=\"").append(entry.getKey()).append("\"} ")
+          .append(seconds(last)).append('\n');
+      }
+    }
+    out.append("# HELP mapreduce_job_counter_total Totals of the custom counters of the completed jobs.\n");
+    out.append("# TYPE mapreduce_job_counter_total counter\n");
+    for (Map.Entry<String, LongAdder> entry : new TreeMap<>(jobCounters).entrySet()) {
+      out.append("mapreduce_job_counter_total{counter=\"").append(entry.getKey()).append("\"} ")
+        .append(entry.getValue().sum()).append('\n');
+    }
+    long requests = topNRequests.sum();
+    long coalesced = topNCoalesced.sum();
+    out.append("# HELP mapreduce_topn_requests_total Top-n requests, coalesced or running their own jobs.\n");
+    out.append("# TYPE mapreduce_topn_requests_total counter\n");
+    out.append("mapreduce_topn_requests_total ").append(requests).append('\n');
+    out.append("# HELP mapreduce_topn_coalesced_total Top-n requests served by the jobs of the identical requests.\n");
+    out.append("# TYPE mapreduce_topn_coalesced_total counter\n");
+    out.append("mapreduce_topn_coalesced_total ").append(coalesced).append('\n');
+    out.append("# HELP mapreduce_topn_coalescing_ratio Share of the top-n requests served without their own jobs.\n");
+    out.append("# TYPE mapreduce_topn_coalescing_ratio gauge\n");
+    out.append("mapreduce_topn_coalescing_ratio ")
+      .append(String.format(Locale.ROOT, "%.6f", requests == 0 ? 0 : (double) coalesced / requests)).append('\n');
+    return out.toString();
+  }
+
+  private static String seconds(long nanos) {
+    return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+  }
+
+  private static class Histogram {
+    private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+    private volatile long lastNanos = -1;
+
+    Histogram() {
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    void record(long nanos) {
+      double seconds = nanos / 1e9;
+      int bucket = 0;
+      while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+        bucket++;
+      }
+      buckets[bucket].increment();
+      sumNanos.add(nanos);
+      lastNanos = nanos;
+    }
+
+    void scrape(String phase, StringBuilder out) {
+      long cumulative = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        cumulative += buckets[i].sum();
+        out.append("mapreduce_phase_seconds_bucket{phase=\"").append(phase).append("\",le=\"")
+          .append(i < BUCKETS.length ? String.valueOf(BUCKETS[i]) : "+Inf").append("\"} ").append(cumulative).append('\n');
+      }
+      out.append("mapreduce_phase_seconds_sum{phase=\"").append(phase).append("\"} ").append(seconds(sumNanos.sum())).append('\n');
+      out.append("mapreduce_phase_seconds_count{phase=\"").append(phase).append("\"} ").append(cumulative).append('\n');
+    }
+  }
+}
@@ -17,14 +17,27 @@
 
 package rpex.hadoop.mr;
 
+import com.google.common.base.Strings;
 import com.google.inject.Provides;
 import com.google.inject.Scopes;
 import ratpack.guice.ConfigurableModule;
+import rpex.hadoop.mr.ingest.IngestionService;
+import rpex.hadoop.mr.ingest.internal.DefaultIngestionService;
 import rpex.hadoop.mr.internal.DefaultMapReduceService;
+import rpex.hadoop.mr.stream.StreamingTopNService;
 import rpex.hadoop.mr.topn.TopNService;
+import rpex.hadoop.mr.topn.internal.CachingTopNService;
+import rpex.hadoop.mr.topn.internal.CoalescingTopNService;
+import rpex.hadoop.mr.topn.internal.DailyAggregates;
 import rpex.hadoop.mr.topn.internal.DefaultTopNService;
+import rpex.hadoop.mr.topn.internal.LocalTopNService;
+import rpex.hadoop.mr.topn.internal.TopNResultCache;
 
 import javax.inject.Singleton;
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides configuration for Hadoop's map reduce services, endpoints.
@@ -37,25 +50,190 @@ public class MapReduceModule extends ConfigurableModule<MapReduceConfig> {
   }
 
   /**
-   * Provides default implementation of the {@link MapReduceService} interface.
+   * Provides the registry of the map-reduce phase latencies and job counters.
+   *
+   * @return the singleton for {@link MapReduceMetrics}
+   */
+  @Provides
+  @Singleton
+  public MapReduceMetrics mapReduceMetrics() {
+    return new MapReduceMetrics();
+  }
+
+  /**
+   * Provides the default map-reduce infrastructure.
+   * It is bound by its own type, so its job pool filler is shut down with the server.
+   *
    * @param config a mapreduce configuration
+   * @param metrics a registry of the phase latencies
+   * @return the singleton for {@link DefaultMapReduceService}
+   */
+  @Provides
+  @Singleton
+  public DefaultMapReduceService defaultMapReduceService(final MapReduceConfig config, MapReduceMetrics metrics) {
+    return new DefaultMapReduceService(config, metrics);
+  }
+
+  /**
+   * Provides default implementation of the {@link MapReduceService} interface.
+   * @param defaultMapReduceService the default map-reduce infrastructure
    * @return the singleton for {@link MapReduceService} default implementation
    */
   @Provides
   @Singleton
-  public MapReduceService mapReduceService(final MapReduceConfig config) {
-    return new DefaultMapReduceService(config);
+  public MapReduceService mapReduceService(DefaultMapReduceService defaultMapReduceService) {
+    return defaultMapReduceService;
+  }
+
+  /**
+   * Provides the warm-up of the hadoop client, started with the server.
+   *
+   * @param config a mapreduce configuration
+   * @param mapReduceService a map reduce service providing map-reduce infrastructure
+   * @param metrics a registry of the phase latencies
+   * @return the singleton for {@link MapReduceWarmUp}
+   */
+  @Provides
+  @Singleton
+  public MapReduceWarmUp mapReduceWarmUp(final MapReduceConfig config, MapReduceService mapReduceService, MapReduceMetrics metrics) {
+    return new MapReduceWarmUp(mapReduceService, metrics, config.isWarmUp());
+  }
+
+  /**
+   * Provides default implementation of the {@link IngestionService} interface.
+   *
+   * @param mapReduceService a map reduce service providing map-reduce infrastructure
+   * @return the singleton for {@link IngestionService} implementation
+   */
+  @Provides
+  @Singleton
+  public IngestionService ingestionService(MapReduceService mapReduceService) {
+    return new DefaultIngestionService(mapReduceService);
+  }
+
+  /**
+   * Provides the registry of asynchronously submitted jobs.
+   *
+   * @param config a mapreduce configuration
+   * @return the singleton for {@link JobRegistry}
+   */
+  @Provides
+  @Singleton
+  public JobRegistry jobRegistry(final MapReduceConfig config) {
+    return new JobRegistry(config.getJobTtlMinutes(), TimeUnit.MINUTES);
+  }
+
+  /**
+   * Provides the single poller pushing progress of the submitted jobs to their subscribers.
+   *
+   * @param config a mapreduce configuration
+   * @param jobRegistry a registry of asynchronously submitted jobs
+   * @return the singleton for {@link JobProgressBroadcaster}
+   */
+  @Provides
+  @Singleton
+  public JobProgressBroadcaster jobProgressBroadcaster(final MapReduceConfig config, JobRegistry jobRegistry) {
+    return new JobProgressBroadcaster(jobRegistry, Math.max(1, config.getJobProgressIntervalMillis()), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Provides the store of daily users activity aggregates.
+   *
+   * @param mapReduceService a map reduce service providing map-reduce infrastructure
+   * @return the singleton for {@link DailyAggregates}
+   */
+  @Provides
+  @Singleton
+  public DailyAggregates dailyAggregates(MapReduceService mapReduceService) {
+    return new DailyAggregates(mapReduceService, "aggregates");
+  }
+
+  /**
+   * Provides the cache of top-n results.
+   *
+   * @param config a mapreduce configuration
+   * @return the singleton for {@link TopNResultCache}
+   */
+  @Provides
+  @Singleton
+  public TopNResultCache topNResultCache(final MapReduceConfig config) {
+    return new TopNResultCache(
+      config.getTopNCacheMaxEntries(),
+      Strings.isNullOrEmpty(config.getTopNCacheDir()) ? null : Paths.get(config.getTopNCacheDir()),
+      config.getTopNCacheDiskMaxEntries());
+  }
+
+  /**
+   * Provides the streaming top-n of the tailed access logs, started with the server.
+   *
+   * @param config a mapreduce configuration
+   * @return the singleton for {@link StreamingTopNService}, disabled if {@link MapReduceConfig#getStreamDirs()} is empty
+   */
+  @Provides
+  @Singleton
+  public StreamingTopNService streamingTopNService(final MapReduceConfig config) {
+    return new StreamingTopNService(
+      Stream.of(Strings.nullToEmpty(config.getStreamDirs()).split(","))
+        .map(String::trim).filter(dir -> !dir.isEmpty()).map(Paths::get).collect(Collectors.toList()),
+      config.getStreamWindowMinutes(),
+      config.getStreamMaxUsers(),
+      config.getStreamMaxClockSkewMinutes(),
+      Strings.isNullOrEmpty(config.getStreamCheckpointFile()) ? null : Paths.get(config.getStreamCheckpointFile()));
+  }
+
+  /**
+   * Provides the in-process top-n engine of the {@code local} {@link MapReduceConfig#getTopNEngine()}.
+   * It is bound by its own type, so its fork-join pool is shut down with the server.
+   *
+   * @param config a mapreduce configuration
+   * @param mapReduceService a map reduce service providing map-reduce infrastructure
+   * @param jobRegistry a registry of asynchronously submitted jobs
+   * @param dailyAggregates a store of daily aggregates
+   * @param metrics a registry of the phase latencies and job counters
+   * @return the singleton for {@link LocalTopNService}, its pool is created by the first query
+   */
+  @Provides
+  @Singleton
+  public LocalTopNService localTopNService(final MapReduceConfig config, MapReduceService mapReduceService,
+                                           JobRegistry jobRegistry, DailyAggregates dailyAggregates, MapReduceMetrics metrics) {
+    return new LocalTopNService(Paths.get(Strings.isNullOrEmpty(config.getLocalDataDir()) ? "." : config.getLocalDataDir()),
+      mapReduceTopNService(config, mapReduceService, jobRegistry, dailyAggregates, metrics));
   }
 
   /**
    * Provides default implementation of the {@link TopNService} interface.
+   * <p>
+   * Results are cached in {@link TopNResultCache} unless {@link MapReduceConfig#getTopNCacheMaxEntries()} is {@code 0}.
+   * With the {@code local} engine synchronous queries are calculated in-process from {@link MapReduceConfig#getLocalDataDir()},
+   * not cached, and asynchronous jobs are still executed by map-reduce.
    *
+   * @param config a mapreduce configuration
    * @param mapReduceService a map reduce service providing map-reduce infrastructure
+   * @param jobRegistry a registry of asynchronously submitted jobs
+   * @param dailyAggregates a store of daily aggregates
+   * @param cache a cache of top-n results
+   * @param metrics a registry of the phase latencies and job counters
+   * @param localTopNService the in-process engine
    * @return the singleton for {@link TopNService} implementation.
    */
   @Provides
   @Singleton
-  public TopNService topNService(MapReduceService mapReduceService) {
-    return new DefaultTopNService(mapReduceService);
+  public TopNService topNService(final MapReduceConfig config, MapReduceService mapReduceService, JobRegistry jobRegistry,
+                                 DailyAggregates dailyAggregates, TopNResultCache cache, MapReduceMetrics metrics,
+                                 LocalTopNService localTopNService) {
+    if ("local".equals(config.getTopNEngine())) {
+      return localTopNService;
+    }
+    TopNService topNService = mapReduceTopNService(config, mapReduceService, jobRegistry, dailyAggregates, metrics);
+    if (config.getTopNCacheMaxEntries() > 0) {
+      topNService = new CachingTopNService(topNService, mapReduceService, cache);
+    }
+    return topNService;
+  }
+
+  private static TopNService mapReduceTopNService(MapReduceConfig config, MapReduceService mapReduceService,
+                                                  JobRegistry jobRegistry, DailyAggregates dailyAggregates, MapReduceMetrics metrics) {
+    return new CoalescingTopNService(new DefaultTopNService(mapReduceService, jobRegistry,
+      config.isUseDailyAggregates() ? dailyAggregates : null, metrics), metrics);
   }
 }
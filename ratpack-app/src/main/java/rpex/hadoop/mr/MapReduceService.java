@@ -1,7 +1,10 @@
 package rpex.hadoop.mr;
 
+import org.apache.hadoop.fs.FileStatus;
 import ratpack.exec.Promise;
 
+import java.util.List;
+
 /**
  * Infrastructure for executing map-reduce jobs.
  */
@@ -9,7 +12,16 @@ public interface MapReduceService {
   /**
    * Provides execution infrastructure for hadoop's map-reduce based on the {@link MapReduceConfig}
    * @param jobName job name
+   * @param requestId an id of the request tagging the phase metrics, {@code null} if there is no request
    * @return the promise for map-reduce execution infrastructure
    */
-  Promise<MapReduceJob> provide(String jobName);
+  Promise<MapReduceJob> provide(String jobName, String requestId);
+
+  /**
+   * Lists recursively all files of the file or directory on hadoop file system.
+   * @param fsName a name of file or directory on hadoop file system, relative to the user's home directory
+   * @param requestId an id of the request tagging the phase metrics, {@code null} if there is no request
+   * @return the promise for the status of the files, empty if {@code fsName} does not exist
+   */
+  Promise<List<FileStatus>> listFiles(String fsName, String requestId);
 }
@@ -0,0 +1,159 @@
+package rpex.hadoop.mr;
+
+import mr.func.topn.TopNFunc;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Cluster;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.exec.Blocking;
+import ratpack.exec.ExecController;
+import ratpack.server.Service;
+import ratpack.server.StartEvent;
+import rpex.hadoop.mr.ingest.LogInputs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms up the hadoop client when the server starts, so the first user request does not pay for it.
+ * <p>
+ * The warm-up provisions a job that is never submitted, which loads the hadoop configuration, the user group
+ * information and the file system client, checks the user's home directory and runs a tiny top-n job
+ * with the local runner, which loads the job submission path and the map-reduce functions.
+ * The jar of the functions is put into the {@link JobJarCache}. The cluster clients of both jobs are closed afterwards.
+ * The server reports not ready by {@link #getReadiness()} until the warm-up has finished, whatever its result.
+ * Its duration is recorded as the {@link MapReduceMetrics#WARM_UP} phase.
+ */
+public class MapReduceWarmUp implements Service {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MapReduceWarmUp.class);
+
+  private static final String JOB_NAME = "warm-up";
+  private static final String LOG_LINE =
+    "[13/Jul/2015:07:57:03 +0200] GET /warm-up 127.0.0.1 127.0.0.1 stat=200 usr=User{id=1, username='W%07d'} time=1";
+
+  private final MapReduceService mapReduceService;
+  private final MapReduceMetrics metrics;
+  private final boolean enabled;
+  private volatile Readiness readiness;
+
+  /**
+   * Creates the warm-up.
+   * @param mapReduceService a map reduce service providing map-reduce infrastructure
+   * @param metrics a registry of the phase latencies
+   * @param enabled false if the server is ready without the warm-up
+   */
+  public MapReduceWarmUp(MapReduceService mapReduceService, MapReduceMetrics metrics, boolean enabled) {
+    this.mapReduceService = mapReduceService;
+    this.metrics = metrics;
+    this.enabled = enabled;
+    this.readiness = new Readiness(!enabled, null, null);
+  }
+
+  @Override
+  public void onStart(StartEvent event) throws Exception {
+    if (!enabled || event.isReload()) {
+      return;
+    }
+    LOGGER.debug("STARTING warm-up");
+    long start = System.nanoTime();
+    // runs in the background, the server accepts requests and reports not ready meanwhile
+    event.getRegistry().get(ExecController.class).fork()
+      .onError(error -> finish(start, error))
+      .start(execution -> mapReduceService.provide(JOB_NAME, null)
+        .flatMap(mrJob -> Blocking.get(() -> {
+          try {
+            mrJob.getFileSystem().exists(mrJob.getFileSystem().getHomeDirectory());
+            runLocalJob(mrJob.getJob().getConfiguration(), mrJob.getConfig());
+            // uploads the jar of the functions to the job jar cache, if it is enabled
+            mrJob.setJarByClass(TopNFunc.class);
+            return mrJob;
+          } finally {
+            // the provisioned job is never submitted, the pool is refilled with a new one
+            closeCluster(mrJob.getJob());
+          }
+        }))
+        .then(mrJob -> finish(start, null)));
+  }
+
+  /**
+   * @return the current readiness of the server
+   */
+  public Readiness getReadiness() {
+    return readiness;
+  }
+
+  private void finish(long start, Throwable error) {
+    long nanos = System.nanoTime() - start;
+    metrics.record(MapReduceMetrics.WARM_UP, null, nanos);
+    if (error != null) {
+      LOGGER.warn("WARM_UP_FAILED: {}", error.getMessage());
+    }
+    LOGGER.debug("END OF warm-up");
+    readiness = new Readiness(true, TimeUnit.NANOSECONDS.toMillis(nanos), error == null ? null : error.getMessage());
+  }
+
+  /**
+   * Runs the top-n job on a few lines with the local runner and the local file system. It is blocking operation.
+   * The job is configured by {@link TopNFunc#configure(Job, int)} and {@link LogInputs}, as the top-n queries.
+   * @param template a configuration of the provisioned job, copied with the codecs and other settings
+   * @param config a mapreduce configuration
+   */
+  private static void runLocalJob(Configuration template, MapReduceConfig config) throws Exception {
+    java.nio.file.Path dir = Files.createTempDirectory("mr-warm-up");
+    try {
+      List<String> lines = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        lines.add(String.format(LOG_LINE, i % 3));
+      }
+      java.nio.file.Path input = Files.write(dir.resolve("access.log"), lines, StandardCharsets.UTF_8);
+
+      Configuration conf = new Configuration(template);
+      conf.set("mapreduce.framework.name", "local");
+      conf.set("fs.defaultFS", "file:///");
+      // the job completes in milliseconds, the default poll interval is 5 seconds
+      conf.setInt(Job.COMPLETION_POLL_INTERVAL_KEY, 50);
+      Job job = Job.getInstance(conf, JOB_NAME);
+      try {
+        TopNFunc.configure(job, 10);
+        Path inputPath = new Path(input.toUri());
+        FileInputFormat.addInputPath(job, inputPath);
+        LogInputs.configure(job, config, FileSystem.getLocal(conf), Collections.singletonList(inputPath));
+        FileOutputFormat.setOutputPath(job, new Path(dir.resolve("output").toUri()));
+        if (!job.waitForCompletion(false)) {
+          throw new IllegalStateException("MAPREDUCE_WARM_UP_JOB_FAILED");
+        }
+      } finally {
+        // the submission connected the job to the local runner
+        closeCluster(job);
+      }
+    } finally {
+      FileUtil.fullyDelete(dir.toFile());
+    }
+  }
+
+  /**
+   * Closes the cluster client of the job, if the job has connected to the cluster.
+   */
+  private static void closeCluster(Job job) {
+    Cluster cluster = job.getCluster();
+    if (cluster == null) {
+      return;
+    }
+    try {
+      cluster.close();
+    } catch (IOException ex) {
+      LOGGER.warn("WARM_UP_CLUSTER_CLOSE_FAILED: {}", ex.getMessage());
+    }
+  }
+}
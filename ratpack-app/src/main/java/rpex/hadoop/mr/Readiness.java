@@ -0,0 +1,21 @@
+package rpex.hadoop.mr;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Readiness of the server to serve map-reduce requests, reported by {@link MapReduceWarmUp}.
+ * <p>
+ * Immutable value object.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class Readiness {
+  private final boolean ready;
+  // null until the warm-up has finished or if it is disabled
+  private final Long warmUpMillis;
+  // null if the warm-up has succeeded
+  private final String warmUpError;
+}
@@ -0,0 +1,19 @@
+package rpex.hadoop.mr;
+
+import ratpack.handling.Context;
+import ratpack.handling.Handler;
+import ratpack.jackson.Jackson;
+
+/**
+ * Renders the {@link Readiness} of the server, for the load balancer health checks.
+ * <p>
+ * Answers {@code 503} until the {@link MapReduceWarmUp} has finished, whatever its result, and {@code 200} afterwards.
+ */
+public class ReadinessHandler implements Handler {
+  @Override
+  public void handle(Context ctx) throws Exception {
+    Readiness readiness = ctx.get(MapReduceWarmUp.class).getReadiness();
+    ctx.getResponse().status(readiness.isReady() ? 200 : 503);
+    ctx.render(Jackson.json(readiness));
+  }
+}
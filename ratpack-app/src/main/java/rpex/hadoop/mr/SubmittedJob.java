@@ -0,0 +1,27 @@
+package rpex.hadoop.mr;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * Map-reduce job submitted for asynchronous execution and tracked by the {@link JobRegistry}.
+ * <p>
+ * The map-reduce job and its output path are {@code null} if the query selected no input: the job is complete
+ * with the empty result without being submitted.
+ */
+@Getter
+@AllArgsConstructor
+public class SubmittedJob {
+  private final String id;
+  private final MapReduceJob mrJob;
+  private final Path outputPath;
+  private final long submittedAt;
+
+  /**
+   * @return true if the query selected no input and no map-reduce job was submitted
+   */
+  public boolean isEmpty() {
+    return mrJob == null;
+  }
+}
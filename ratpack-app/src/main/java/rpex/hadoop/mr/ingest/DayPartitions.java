@@ -0,0 +1,75 @@
+package rpex.hadoop.mr.ingest;
+
+import mr.func.ingest.DayPartitionFunc;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Selects day partitions ({@code dt=yyyy-MM-dd} subdirectories) of the input directory.
+ */
+public final class DayPartitions {
+  private DayPartitions() {
+  }
+
+  /**
+   * Returns the date of the partition directory.
+   * @param name a directory name
+   * @return the date or {@code null} if the name is not a day partition
+   */
+  public static LocalDate dateOf(String name) {
+    if (!name.startsWith(DayPartitionFunc.PARTITION_PREFIX)) {
+      return null;
+    }
+    try {
+      return LocalDate.parse(name.substring(DayPartitionFunc.PARTITION_PREFIX.length()));
+    } catch (DateTimeParseException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * Selects the input paths needed for the query between {@code dateFrom} and {@code dateTo}, both inclusive.
+   * <p>
+   * If the input is partitioned by day, only the partitions within the dates are selected, together with
+   * not partitioned files, so no path is selected if the query covers no partition. Otherwise the whole input
+   * is selected.
+   * @param fileSystem a hadoop file system
+   * @param input a path to the input directory
+   * @param dateFrom a first day of the query, {@code null} selects the whole input
+   * @param dateTo a last day of the query, {@code null} selects the whole input
+   * @return the input paths, empty if the result of the query is empty
+   */
+  public static List<Path> select(FileSystem fileSystem, Path input, LocalDate dateFrom, LocalDate dateTo) throws IOException {
+    if (dateFrom == null || dateTo == null || !fileSystem.isDirectory(input)) {
+      return Collections.singletonList(input);
+    }
+    FileStatus[] children = fileSystem.listStatus(input);
+    List<Path> paths = new ArrayList<>();
+    boolean partitioned = false;
+    for (FileStatus child : children) {
+      String name = child.getPath().getName();
+      if (name.startsWith("_") || name.startsWith(".")) {
+        continue;
+      }
+      if (name.startsWith(DayPartitionFunc.PARTITION_PREFIX)) {
+        partitioned = true;
+        LocalDate date = dateOf(name);
+        // lines without valid date never match the date filter of the query
+        if (date != null && !date.isBefore(dateFrom) && !date.isAfter(dateTo)) {
+          paths.add(child.getPath());
+        }
+      } else {
+        paths.add(child.getPath());
+      }
+    }
+    return partitioned ? paths : Collections.singletonList(input);
+  }
+}
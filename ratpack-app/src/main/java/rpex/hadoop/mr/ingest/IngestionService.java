@@ -0,0 +1,20 @@
+package rpex.hadoop.mr.ingest;
+
+import ratpack.exec.Promise;
+import ratpack.exec.Result;
+
+/**
+ * Runner for the ingestion of raw access logs.
+ */
+public interface IngestionService {
+  /**
+   * Executes map-reduce laying out raw access logs by day, into {@code dt=yyyy-MM-dd} subdirectories of {@code inputFS}.
+   * <p>
+   * The raw log files are removed once their lines are stored in the day partitions.
+   * @param rawFS a hadoop file system where raw access logs are uploaded
+   * @param inputFS a hadoop file system where partitioned access logs are stored
+   * @param requestId an id of the request tagging the phase metrics, {@code null} if there is no request
+   * @return the promise for the summary of the ingestion, an error if another ingestion is running
+   */
+  Promise<Result<IngestionSummary>> partitionByDay(String rawFS, String inputFS, String requestId);
+}
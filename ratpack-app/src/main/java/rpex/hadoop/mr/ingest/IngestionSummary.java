@@ -0,0 +1,20 @@
+package rpex.hadoop.mr.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Summary of the ingestion of raw access logs.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class IngestionSummary {
+  private final int filesIngested;
+  private final long linesPartitioned;
+  private final long linesWithUnknownDay;
+  private final List<String> partitions;
+}
@@ -0,0 +1,80 @@
+package rpex.hadoop.mr.ingest;
+
+import mr.func.ingest.AccessLogInputFormat;
+import mr.func.ingest.CombineAccessLogInputFormat;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rpex.hadoop.mr.MapReduceConfig;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Chooses the input format of the jobs reading access logs.
+ * <p>
+ * Every file gets at least one map task with {@link AccessLogInputFormat}. If the average file size is below
+ * {@link MapReduceConfig#getSmallFileThresholdMb()}, the task startup dominates the job, so the files are packed
+ * into splits of {@link MapReduceConfig#getCombineSplitSizeMb()} with {@link CombineAccessLogInputFormat}.
+ */
+public final class LogInputs {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LogInputs.class);
+
+  private static final long MB = 1024 * 1024;
+
+  private LogInputs() {
+  }
+
+  /**
+   * Sets the input format for the input paths, directories read recursively. It is blocking operation.
+   * @param job a job with the input paths added
+   * @param config a mapreduce configuration
+   * @param fileSystem a hadoop file system
+   * @param inputPaths the input paths of the job
+   * @return true if the small files are combined
+   */
+  public static boolean configure(Job job, MapReduceConfig config, FileSystem fileSystem, List<Path> inputPaths) throws IOException {
+    long files = 0, length = 0;
+    for (Path path : inputPaths) {
+      if (fileSystem.exists(path)) {
+        // a single call to the name node per path, whatever the number of files
+        ContentSummary summary = fileSystem.getContentSummary(path);
+        files += summary.getFileCount();
+        length += summary.getLength();
+      }
+    }
+    return configure(job, config, files, length);
+  }
+
+  /**
+   * Sets the input format for the input files.
+   * @param job a job with the input files added
+   * @param config a mapreduce configuration
+   * @param inputFiles the input files of the job
+   * @return true if the small files are combined
+   */
+  public static boolean configure(Job job, MapReduceConfig config, List<? extends FileStatus> inputFiles) {
+    long length = 0;
+    for (FileStatus file : inputFiles) {
+      length += file.getLen();
+    }
+    return configure(job, config, inputFiles.size(), length);
+  }
+
+  private static boolean configure(Job job, MapReduceConfig config, long files, long length) {
+    boolean combine = files > 1 && length / files < config.getSmallFileThresholdMb() * MB;
+    LOGGER.debug("INPUT FILES: {}, BYTES: {}, COMBINED: {}", files, length, combine);
+    if (combine) {
+      job.setInputFormatClass(CombineAccessLogInputFormat.class);
+      FileInputFormat.setMaxInputSplitSize(job, Math.max(1, config.getCombineSplitSizeMb()) * MB);
+    } else {
+      job.setInputFormatClass(AccessLogInputFormat.class);
+    }
+    return combine;
+  }
+}
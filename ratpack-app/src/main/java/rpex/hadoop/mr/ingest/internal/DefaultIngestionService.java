@@ -0,0 +1,168 @@
+package rpex.hadoop.mr.ingest.internal;
+
+import com.google.common.collect.ImmutableList;
+import mr.func.ingest.DayPartitionFunc;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.exec.Blocking;
+import ratpack.exec.Promise;
+import ratpack.exec.Result;
+import rpex.hadoop.mr.MapReduceService;
+import rpex.hadoop.mr.ingest.IngestionService;
+import rpex.hadoop.mr.ingest.IngestionSummary;
+import rpex.hadoop.mr.ingest.LogInputs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes map-reduce laying out raw access logs by day.
+ * <p>
+ * The job writes into a hidden {@code _ingest-*} directory of the input, so queries running at the same time
+ * do not see partial results. Once the job succeeds, its files are moved into the day partitions of the input.
+ * If a file cannot be moved, the moved files are moved back and the raw files are kept for the next run.
+ * One run at a time, so the raw files are partitioned once. A request arriving during a run is answered at once
+ * with {@code MAPREDUCE_INGESTION_ALREADY_RUNNING}, instead of holding a blocking thread until the run ends.
+ * <p>
+ * Raw logs may be plain text, gzip or bzip2 files. With the job output compression enabled, the lines are re-packed
+ * into block-compressed sequence files, which stay splittable whatever the codec. Otherwise they are written as text.
+ */
+public class DefaultIngestionService implements IngestionService {
+  private final Logger LOGGER = LoggerFactory.getLogger(DefaultIngestionService.class);
+
+  private final MapReduceService mapReduceService;
+  // concurrent runs would list and partition the same raw files
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  public DefaultIngestionService(MapReduceService mapReduceService) {
+    this.mapReduceService = mapReduceService;
+  }
+
+  @Override
+  public Promise<Result<IngestionSummary>> partitionByDay(String rawFS, String inputFS, String requestId) {
+    // does not take a job of the pool if the run is going to be rejected anyway
+    if (running.get()) {
+      return Promise.value(alreadyRunning());
+    }
+    return mapReduceService.provide("partition-by-day", requestId)
+      .onNull(() -> Result.error(new IllegalArgumentException("MAPREDUCE_JOB_CREATION_FAILED")))
+      .flatMap(mrJob -> Blocking.get(() -> {
+        if (!running.compareAndSet(false, true)) {
+          return alreadyRunning();
+        }
+        try {
+          FileSystem fileSystem = mrJob.getFileSystem();
+          Path rawPath = mrJob.getJobPath(rawFS), inputPath = mrJob.getJobPath(inputFS);
+          if (!fileSystem.exists(rawPath)) {
+            return Result.success(new IngestionSummary(0, 0, 0, ImmutableList.of()));
+          }
+          // only files existing now are ingested, files uploaded during the job wait for the next run
+          FileStatus[] rawFiles = fileSystem.listStatus(rawPath, path -> !path.getName().startsWith("_") && !path.getName().startsWith("."));
+          if (rawFiles.length == 0) {
+            return Result.success(new IngestionSummary(0, 0, 0, ImmutableList.of()));
+          }
+          String runId = Long.toString(System.currentTimeMillis());
+          Path tmpPath = new Path(inputPath, "_ingest-" + runId);
+
+          Job job = mrJob.getJob();
+          mrJob.setJarByClass(DayPartitionFunc.class);
+          job.setMapperClass(DayPartitionFunc.Mapper.class);
+          job.setNumReduceTasks(0);
+          job.setOutputKeyClass(NullWritable.class);
+          job.setOutputValueClass(Text.class);
+          LogInputs.configure(job, mrJob.getConfig(), Arrays.asList(rawFiles));
+          LazyOutputFormat.setOutputFormatClass(job,
+            FileOutputFormat.getCompressOutput(job) ? SequenceFileOutputFormat.class : TextOutputFormat.class);
+          for (FileStatus rawFile : rawFiles) {
+            FileInputFormat.addInputPath(job, rawFile.getPath());
+          }
+          FileOutputFormat.setOutputPath(job, tmpPath);
+
+          LOGGER.debug("STARTING ingestion of {} files into {}", rawFiles.length, inputPath);
+          mrJob.submit();
+          if (!job.waitForCompletion(false)) {
+            fileSystem.delete(tmpPath, true);
+            return Result.error(new RuntimeException("MAPREDUCE_INGESTION_FAILED"));
+          }
+
+          ImmutableList.Builder<String> partitions = ImmutableList.builder();
+          List<Path[]> moved = new ArrayList<>();
+          for (FileStatus partition : fileSystem.listStatus(tmpPath, path -> path.getName().startsWith(DayPartitionFunc.PARTITION_PREFIX))) {
+            Path target = new Path(inputPath, partition.getPath().getName());
+            fileSystem.mkdirs(target);
+            for (FileStatus file : fileSystem.listStatus(partition.getPath())) {
+              // files of every run get unique names, so they never overwrite files of previous runs
+              Path targetFile = new Path(target, runId + "-" + file.getPath().getName());
+              if (!rename(fileSystem, file.getPath(), targetFile)) {
+                // the raw files and the job output are kept, the moved files go back so the next run does not count them twice
+                rollback(fileSystem, moved);
+                return Result.error(new RuntimeException("MAPREDUCE_INGEST_RENAME_FAILED"));
+              }
+              moved.add(new Path[]{file.getPath(), targetFile});
+            }
+            partitions.add(partition.getPath().getName());
+          }
+          fileSystem.delete(tmpPath, true);
+          for (FileStatus rawFile : rawFiles) {
+            if (!fileSystem.delete(rawFile.getPath(), true)) {
+              LOGGER.warn("INGEST_RAW_DELETE_FAILED, the file is ingested again by the next run: {}", rawFile.getPath());
+            }
+          }
+
+          List<String> partitionNames = partitions.build();
+          LOGGER.debug("END OF ingestion, partitions: {}", partitionNames);
+          return Result.success(new IngestionSummary(
+            rawFiles.length,
+            job.getCounters().findCounter(DayPartitionFunc.Counter.LINES_PARTITIONED).getValue(),
+            job.getCounters().findCounter(DayPartitionFunc.Counter.LINES_UNKNOWN_DAY).getValue(),
+            partitionNames));
+        } finally {
+          running.set(false);
+        }
+      }));
+  }
+
+  private static Result<IngestionSummary> alreadyRunning() {
+    return Result.error(new IllegalStateException("MAPREDUCE_INGESTION_ALREADY_RUNNING"));
+  }
+
+  /**
+   * Moves the partitioned files back into the job output directory. It is blocking operation.
+   * @param moved pairs of the job output file and its partition file
+   */
+  private void rollback(FileSystem fileSystem, List<Path[]> moved) {
+    for (Path[] files : moved) {
+      rename(fileSystem, files[1], files[0]);
+    }
+  }
+
+  /**
+   * Renames the file, a failure is logged. It is blocking operation.
+   * @return true if the file has been renamed
+   */
+  private boolean rename(FileSystem fileSystem, Path source, Path target) {
+    try {
+      if (fileSystem.rename(source, target)) {
+        return true;
+      }
+      LOGGER.warn("INGEST_RENAME_FAILED: {} -> {}", source, target);
+    } catch (IOException ex) {
+      LOGGER.warn("INGEST_RENAME_FAILED: {} -> {}, {}", source, target, ex.getMessage());
+    }
+    return false;
+  }
+}
@@ -1,57 +1,234 @@
 package rpex.hadoop.mr.internal;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.Cluster;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ratpack.exec.Blocking;
 import ratpack.exec.Promise;
+import ratpack.server.Service;
+import ratpack.server.StopEvent;
 import rpex.hadoop.Main;
+import rpex.hadoop.mr.JobJarCache;
 import rpex.hadoop.mr.MapReduceConfig;
 import rpex.hadoop.mr.MapReduceJob;
+import rpex.hadoop.mr.MapReduceMetrics;
 import rpex.hadoop.mr.MapReduceService;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Provides infrastructure for Hadoop's map-reduce execution.
+ * <p>
+ * The hadoop {@link Configuration} is built once, as a template copied by every job. The {@link FileSystem} handle
+ * is shared by all jobs. {@link Job} instances are created in advance and kept in a small pool,
+ * refilled in the background, so a request gets a ready job without parsing configuration resources.
+ * <p>
+ * Compression of the map output and of the job outputs is set in the template, with the codecs
+ * of {@link MapReduceConfig#getMapOutputCodec()} and {@link MapReduceConfig#getOutputCodec()}.
+ * <p>
+ * Jars of the map-reduce functions are cached in {@link MapReduceConfig#getJobJarCacheDir()} by the {@link JobJarCache}.
+ * <p>
+ * The pool filler is shut down with the server and the clusters of the pooled jobs are closed.
  */
-public class DefaultMapReduceService implements MapReduceService {
+public class DefaultMapReduceService implements MapReduceService, Service {
   private final Logger LOGGER = LoggerFactory.getLogger(DefaultMapReduceService.class);
 
   private final MapReduceConfig config;
+  private final MapReduceMetrics metrics;
+  private final Configuration template;
+  private final BlockingQueue<Job> jobPool;
+  private final ExecutorService jobPoolFiller;
+  private final JobJarCache jarCache;
+  private volatile FileSystem fileSystem;
 
-  public DefaultMapReduceService(final MapReduceConfig config) {
+  public DefaultMapReduceService(final MapReduceConfig config, final MapReduceMetrics metrics) {
     this.config = config;
+    this.metrics = metrics;
+    this.template = configuration();
+    // parses default resources once, copies of the template reuse the parsed properties
+    this.template.size();
+    this.jobPool = new ArrayBlockingQueue<>(Math.max(1, config.getJobPoolSize()));
+    this.jobPoolFiller = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("job-pool-filler").setDaemon(true).build());
+    for (int i = 0; i < config.getJobPoolSize(); i++) {
+      refill();
+    }
+    // the local runner loads the functions from the application classpath
+    this.jarCache = Strings.isNullOrEmpty(config.getJobJarCacheDir()) || "local".equals(config.getMapReduceType())
+      ? null : new JobJarCache(MapReduceJob.getJobPath(config, config.getJobJarCacheDir()));
   }
 
   @Override
-  public Promise<MapReduceJob> provide(String jobName) {
+  public Promise<MapReduceJob> provide(String jobName, String requestId) {
     if (Strings.isNullOrEmpty(jobName)) {
       return Promise.value(null);
     }
-    return Promise.of(f -> {
+    return Blocking.get(() -> metrics.time(MapReduceMetrics.PROVISION, requestId, () -> {
       LOGGER.debug("STARTING providing MapReduceJob, config: {}", config.toString());
-      Configuration configuration = new Configuration();
-      if (!Strings.isNullOrEmpty(config.getUser())) {
-        configuration.set("hadoop.job.ugi", config.getUser());
+      Job job = jobPool.poll();
+      if (job == null) {
+        LOGGER.debug("JOB POOL EMPTY, creating job");
+        job = newJob();
       }
-      LOGGER.debug("YARN RM ADDRESS: {}", config.getYarnRMAddress());
-      LOGGER.debug("YARN RM SCHEDULER ADDRESS: {}", config.getYarnRMSchedulerAddress());
-      LOGGER.debug("HDFS: {}", config.getFileSystemAddress());
+      refill();
+      job.setJobName(jobName);
 
-      configuration.set("yarn.resourcemanager.address", config.getYarnRMAddress());
-      configuration.set("yarn.resourcemanager.scheduler.address", config.getYarnRMSchedulerAddress());
-      configuration.set("mapreduce.framework.name", config.getMapReduceType());
+      MapReduceJob mrJob = new MapReduceJob(config, job, fileSystem(), jarCache);
+      LOGGER.debug("END OF providing MapReduceJob");
+      return mrJob;
+    }));
+  }
 
-//      configuration.set("mapreduce.map.cpu.vcores", "16");
-//      configuration.set("mapreduce.reduce.cpu.vcores", "16");
+  @Override
+  public Promise<List<FileStatus>> listFiles(String fsName, String requestId) {
+    return Blocking.get(() -> metrics.time(MapReduceMetrics.LIST, requestId, () -> {
+      Path path = MapReduceJob.getJobPath(config, fsName);
+      FileSystem fileSystem = fileSystem();
+      List<FileStatus> files = new ArrayList<>();
+      if (!fileSystem.exists(path)) {
+        return files;
+      }
+      RemoteIterator<LocatedFileStatus> iterator = fileSystem.listFiles(path, true);
+      while (iterator.hasNext()) {
+        files.add(iterator.next());
+      }
+      return files;
+    }));
+  }
 
-      configuration.set("fs.default.name", config.getFileSystemAddress());
+  @Override
+  public void onStop(StopEvent event) throws Exception {
+    if (event.isReload()) {
+      return;
+    }
+    stop();
+  }
 
-      Job job = Job.getInstance(configuration, jobName);
+  /**
+   * Stops the pool filler and closes the clusters of the pooled jobs. It is blocking operation.
+   */
+  void stop() throws InterruptedException {
+    jobPoolFiller.shutdown();
+    if (!jobPoolFiller.awaitTermination(10, TimeUnit.SECONDS)) {
+      LOGGER.warn("JOB_POOL_FILLER_NOT_STOPPED");
+    }
+    List<Job> jobs = new ArrayList<>();
+    jobPool.drainTo(jobs);
+    for (Job job : jobs) {
+      Cluster cluster = job.getCluster();
+      if (cluster == null) {
+        continue;
+      }
+      try {
+        cluster.close();
+      } catch (IOException ex) {
+        LOGGER.warn("JOB_CLUSTER_CLOSE_FAILED: {}", ex.getMessage());
+      }
+    }
+    LOGGER.debug("END OF job pool filler");
+  }
 
-      f.success(new MapReduceJob(config, job, FileSystem.get(configuration)));
-      LOGGER.debug("END OF providing MapReduceJob");
+  /**
+   * Shared file system handle, created on first use. It is blocking operation.
+   */
+  private FileSystem fileSystem() throws IOException {
+    if (fileSystem == null) {
+      synchronized (this) {
+        if (fileSystem == null) {
+          fileSystem = FileSystem.get(template);
+        }
+      }
+    }
+    return fileSystem;
+  }
+
+  /**
+   * Creates job with its own copy of the template configuration. It is blocking operation.
+   */
+  private Job newJob() throws IOException {
+    return Job.getInstance(new Configuration(template));
+  }
+
+  private void refill() {
+    // the jobs provided after the stop are created on demand
+    if (config.getJobPoolSize() < 1 || jobPoolFiller.isShutdown()) {
+      return;
+    }
+    jobPoolFiller.execute(() -> {
+      try {
+        if (jobPool.remainingCapacity() > 0) {
+          jobPool.offer(newJob());
+        }
+      } catch (Exception ex) {
+        LOGGER.warn("JOB_POOL_REFILL_FAILED: {}", ex.getMessage());
+      }
     });
   }
+
+  private Configuration configuration() {
+    Configuration configuration = new Configuration();
+    if (!Strings.isNullOrEmpty(config.getUser())) {
+      configuration.set("hadoop.job.ugi", config.getUser());
+    }
+    LOGGER.debug("YARN RM ADDRESS: {}", config.getYarnRMAddress());
+    LOGGER.debug("YARN RM SCHEDULER ADDRESS: {}", config.getYarnRMSchedulerAddress());
+    LOGGER.debug("HDFS: {}", config.getFileSystemAddress());
+
+    configuration.set("yarn.resourcemanager.address", config.getYarnRMAddress());
+    configuration.set("yarn.resourcemanager.scheduler.address", config.getYarnRMSchedulerAddress());
+    configuration.set("mapreduce.framework.name", config.getMapReduceType());
+
+//    configuration.set("mapreduce.map.cpu.vcores", "16");
+//    configuration.set("mapreduce.reduce.cpu.vcores", "16");
+
+    configuration.set("fs.default.name", config.getFileSystemAddress());
+    // Job.waitForCompletion() checks the job status once per interval
+    configuration.setInt(Job.COMPLETION_POLL_INTERVAL_KEY, config.getJobCompletionPollMillis());
+
+    if (!Strings.isNullOrEmpty(config.getMapOutputCodec())) {
+      LOGGER.debug("MAP OUTPUT CODEC: {}", config.getMapOutputCodec());
+      configuration.setBoolean(MRJobConfig.MAP_OUTPUT_COMPRESS, true);
+      configuration.setClass(MRJobConfig.MAP_OUTPUT_COMPRESS_CODEC, codec(configuration, config.getMapOutputCodec()), CompressionCodec.class);
+    }
+    if (!Strings.isNullOrEmpty(config.getOutputCodec())) {
+      LOGGER.debug("OUTPUT CODEC: {}", config.getOutputCodec());
+      configuration.setBoolean(FileOutputFormat.COMPRESS, true);
+      configuration.setClass(FileOutputFormat.COMPRESS_CODEC, codec(configuration, config.getOutputCodec()), CompressionCodec.class);
+      // block compression keeps sequence files splittable whatever the codec
+      configuration.set(FileOutputFormat.COMPRESS_TYPE, SequenceFile.CompressionType.BLOCK.name());
+    }
+    return configuration;
+  }
+
+  /**
+   * Resolves the codec alias, e.g. {@code gzip}, or the codec class name.
+   */
+  private static Class<? extends CompressionCodec> codec(Configuration configuration, String name) {
+    Class<? extends CompressionCodec> codec = new CompressionCodecFactory(configuration).getCodecClassByName(name);
+    if (codec == null) {
+      throw new IllegalArgumentException("MAPREDUCE_UNKNOWN_CODEC: " + name);
+    }
+    return codec;
+  }
 }
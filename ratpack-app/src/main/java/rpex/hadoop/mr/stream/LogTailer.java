@@ -0,0 +1,361 @@
+package rpex.hadoop.mr.stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tails the access log files of the local directories into the {@link SlidingWindowCounters}.
+ * <p>
+ * The directories and their subdirectories, e.g. day partitions, are watched by the NIO {@link WatchService};
+ * a changed file is read from the offset of its last complete line. The directories are also rescanned periodically
+ * and when the watch service overflows, so missed events only delay the lines. The offsets are kept by the file keys,
+ * not the paths, so a file renamed by the log rotation keeps its offset whatever the order the old and the new file
+ * are seen in. A truncated file is read from its start and files last modified before the window are skipped to their
+ * end. Hidden and compressed files are ignored.
+ * <p>
+ * The offsets and the window counters are checkpointed together, so a restart neither loses nor counts again the lines.
+ * All the methods except {@link #stop()} are called by the tailer thread.
+ */
+class LogTailer implements Runnable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LogTailer.class);
+
+  private static final int CHECKPOINT_MAGIC = 0x5354524d;
+  private static final long POLL_MILLIS = 1000;
+  private static final long RESCAN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  private static final long CHECKPOINT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  // maximal length of the line, longer lines are skipped
+  private static final int MAX_LINE_LENGTH = 64 * 1024;
+  private static final Set<String> COMPRESSED = Stream.of(".gz", ".bz2", ".deflate", ".snappy", ".lz4", ".zip")
+    .collect(Collectors.toSet());
+
+  private final List<Path> dirs;
+  private final SlidingWindowCounters counters;
+  private final Path checkpointFile;
+  private final long windowMillis;
+  // tailed files by their file keys
+  private final Map<String, TailedFile> files = new HashMap<>();
+  private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+  private final ByteBuffer buffer = ByteBuffer.allocate(MAX_LINE_LENGTH);
+  private final byte[] line = new byte[MAX_LINE_LENGTH];
+  private volatile boolean running = true;
+  private WatchService watchService;
+
+  /**
+   * Creates the tailer.
+   * @param dirs local directories of the access logs
+   * @param counters counters of the window
+   * @param checkpointFile a local checkpoint file or null if the tailer is not checkpointed
+   * @param windowMinutes a length of the window
+   */
+  LogTailer(List<Path> dirs, SlidingWindowCounters counters, Path checkpointFile, int windowMinutes) {
+    this.dirs = dirs;
+    this.counters = counters;
+    this.checkpointFile = checkpointFile;
+    this.windowMillis = TimeUnit.MINUTES.toMillis(windowMinutes);
+  }
+
+  @Override
+  public void run() {
+    LOGGER.debug("STARTING tailing of {}", dirs);
+    try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+      watchService = watcher;
+      restore();
+      for (Path dir : dirs) {
+        register(dir);
+      }
+      scan();
+      long lastScan = System.currentTimeMillis();
+      long lastCheckpoint = lastScan;
+      while (running) {
+        Set<Path> changed = new LinkedHashSet<>();
+        boolean rescan = poll(watcher, changed);
+        long now = System.currentTimeMillis();
+        if (rescan || now - lastScan >= RESCAN_MILLIS) {
+          scan();
+          lastScan = now;
+        } else {
+          for (Path path : changed) {
+            tail(path);
+          }
+        }
+        if (now - lastCheckpoint >= CHECKPOINT_MILLIS) {
+          checkpoint();
+          lastCheckpoint = now;
+        }
+      }
+    } catch (ClosedWatchServiceException ex) {
+      // stopped
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (Exception ex) {
+      LOGGER.warn("STREAM_TAILING_FAILED: {}", ex.getMessage());
+    }
+    checkpoint();
+    LOGGER.debug("END OF tailing of {}", dirs);
+  }
+
+  /**
+   * Stops the tailer, the tailer thread writes the final checkpoint.
+   */
+  void stop() {
+    running = false;
+  }
+
+  /**
+   * Waits for the watch events, collecting the changed files.
+   * @return true if the directories have to be rescanned
+   */
+  private boolean poll(WatchService watcher, Set<Path> changed) throws InterruptedException, IOException {
+    boolean rescan = false;
+    WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+    while (key != null) {
+      Path dir = watchedDirs.get(key);
+      for (WatchEvent<?> event : key.pollEvents()) {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+          rescan = true;
+          continue;
+        }
+        Path path = dir.resolve((Path) event.context());
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+          // e.g. a new day partition, its files may be created before it is registered
+          register(path);
+          rescan = true;
+        } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+          // rotated by rename or deleted
+          rescan = true;
+        } else {
+          changed.add(path);
+        }
+      }
+      if (!key.reset()) {
+        watchedDirs.remove(key);
+      }
+      key = watcher.poll();
+    }
+    return rescan;
+  }
+
+  private void register(Path dir) throws IOException {
+    if (!Files.isDirectory(dir)) {
+      LOGGER.warn("STREAM_DIR_NOT_FOUND: {}", dir);
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : paths.filter(Files::isDirectory).collect(Collectors.toList())) {
+        if (!watchedDirs.containsValue(path)) {
+          watchedDirs.put(path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), path);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tails all the files of the directories and forgets the removed ones.
+   */
+  void scan() throws IOException {
+    Set<String> existing = new HashSet<>();
+    for (Path dir : dirs) {
+      if (!Files.isDirectory(dir)) {
+        continue;
+      }
+      List<Path> paths;
+      try (Stream<Path> walk = Files.walk(dir)) {
+        paths = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+      } catch (UncheckedIOException ex) {
+        // a subdirectory removed during the walk, the directory is scanned again by the next scan
+        LOGGER.warn("STREAM_SCAN_FAILED: {}", ex.getMessage());
+        existing.addAll(files.keySet());
+        continue;
+      }
+      for (Path path : paths) {
+        String key = tail(path);
+        if (key != null) {
+          existing.add(key);
+        }
+      }
+    }
+    files.keySet().retainAll(existing);
+  }
+
+  /**
+   * Reads the new complete lines of the file.
+   * @return the file key or null if the file is not tailed
+   */
+  String tail(Path path) {
+    String name = path.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    if (name.startsWith(".") || name.startsWith("_") || (dot > 0 && COMPRESSED.contains(name.substring(dot)))) {
+      return null;
+    }
+    String key = null;
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      if (!attributes.isRegularFile()) {
+        return null;
+      }
+      key = String.valueOf(attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime());
+      TailedFile file = files.get(key);
+      if (file == null) {
+        // lines of the files not modified during the window cannot get into the window
+        boolean stale = attributes.lastModifiedTime().toMillis() < System.currentTimeMillis() - windowMillis;
+        file = new TailedFile(path, stale ? attributes.size() : 0);
+        files.put(key, file);
+      } else if (!file.path.equals(path)) {
+        LOGGER.debug("RENAMED {} to {}", file.path, path);
+        file.path = path;
+      }
+      if (attributes.size() < file.offset) {
+        LOGGER.debug("TRUNCATED {}", path);
+        file.offset = 0;
+      }
+      if (attributes.size() > file.offset) {
+        read(path, file);
+      }
+      return key;
+    } catch (NoSuchFileException ex) {
+      return null;
+    } catch (IOException ex) {
+      LOGGER.warn("STREAM_READ_FAILED: {}", ex.getMessage());
+      return key;
+    }
+  }
+
+  /**
+   * Counts the complete lines from the offset of the file, the offset is moved after the last complete line.
+   */
+  private void read(Path path, TailedFile file) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      channel.position(file.offset);
+      buffer.clear();
+      while (channel.read(buffer) > 0) {
+        byte[] bytes = buffer.array();
+        int end = buffer.position();
+        int start = 0;
+        for (int i = 0; i < end; i++) {
+          if (bytes[i] != '\n') {
+            continue;
+          }
+          if (file.skipping) {
+            file.skipping = false;
+          } else {
+            int length = i > start && bytes[i - 1] == '\r' ? i - 1 - start : i - start;
+            System.arraycopy(bytes, start, line, 0, length);
+            counters.add(line, length);
+          }
+          start = i + 1;
+        }
+        file.offset += start;
+        if (start == 0 && end == bytes.length) {
+          // the line does not fit the buffer, it is skipped up to its end
+          file.skipping = true;
+          file.offset += end;
+          buffer.clear();
+        } else {
+          buffer.position(end - start);
+          System.arraycopy(bytes, start, bytes, 0, end - start);
+        }
+      }
+    }
+  }
+
+  /**
+   * Restores the offsets and the counters of the checkpoint, both or none of them.
+   */
+  void restore() {
+    if (checkpointFile == null || !Files.exists(checkpointFile)) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointFile)))) {
+      if (in.readInt() != CHECKPOINT_MAGIC) {
+        throw new IOException("not a checkpoint: " + checkpointFile);
+      }
+      Map<String, TailedFile> restored = new HashMap<>();
+      int size = in.readInt();
+      for (int i = 0; i < size; i++) {
+        String key = in.readUTF();
+        TailedFile file = new TailedFile(Paths.get(in.readUTF()), in.readLong());
+        file.skipping = in.readBoolean();
+        restored.put(key, file);
+      }
+      counters.readFrom(in);
+      files.putAll(restored);
+      LOGGER.debug("RESTORED checkpoint of {} files, {} users", files.size(), counters.users());
+    } catch (IOException ex) {
+      // the files are read from their start or end as the new ones
+      LOGGER.warn("STREAM_CHECKPOINT_RESTORE_FAILED: {}", ex.getMessage());
+    }
+  }
+
+  /**
+   * Writes the offsets and the counters, the complete checkpoint replaces the previous one.
+   */
+  void checkpoint() {
+    if (checkpointFile == null) {
+      return;
+    }
+    Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(CHECKPOINT_MAGIC);
+        out.writeInt(files.size());
+        for (Map.Entry<String, TailedFile> entry : files.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeUTF(entry.getValue().path.toString());
+          out.writeLong(entry.getValue().offset);
+          out.writeBoolean(entry.getValue().skipping);
+        }
+        counters.writeTo(out);
+      }
+      Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException ex) {
+      LOGGER.warn("STREAM_CHECKPOINT_FAILED: {}", ex.getMessage());
+    }
+  }
+
+  /**
+   * A tailed file: its last seen path and the offset after its last complete line.
+   */
+  private static class TailedFile {
+    private Path path;
+    private long offset;
+    // true if the line at the offset is longer than the buffer
+    private boolean skipping;
+
+    TailedFile(Path path, long offset) {
+      this.path = path;
+      this.offset = offset;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package rpex.hadoop.mr.stream;
+
+/**
+ * Counters of the users in a single minute, by the ids of {@link UserDictionary}.
+ * <p>
+ * Counters are kept in the primitive open-addressing hash table, growing with the number of the users of the minute.
+ * The slots in use are listed, so iterating and clearing the bucket depend on its size, not its capacity.
+ * <p>
+ * The bucket is not thread safe.
+ */
+class MinuteBucket {
+  private static final int MIN_CAPACITY = 64;
+
+  /**
+   * Receives the counters of the bucket.
+   */
+  interface CounterConsumer {
+    /**
+     * Accepts the counter of the user.
+     * @param id an id of the user
+     * @param count a counter of the user in the minute
+     */
+    void accept(int id, int count);
+  }
+
+  private long minute = Long.MIN_VALUE;
+  private long lines;
+  // slot is empty if its counter is 0
+  private int[] ids = new int[MIN_CAPACITY];
+  private int[] counts = new int[MIN_CAPACITY];
+  private int[] used = new int[MIN_CAPACITY / 2];
+  private int size;
+
+  /**
+   * @return the epoch minute of the bucket, {@link Long#MIN_VALUE} if the bucket has not been used yet
+   */
+  long getMinute() {
+    return minute;
+  }
+
+  /**
+   * Removes all counters and reuses the bucket for the minute.
+   * @param minute an epoch minute
+   */
+  void reset(long minute) {
+    for (int i = 0; i < size; i++) {
+      counts[used[i]] = 0;
+    }
+    size = 0;
+    lines = 0;
+    this.minute = minute;
+  }
+
+  /**
+   * @return the number of lines counted in the bucket
+   */
+  long getLines() {
+    return lines;
+  }
+
+  /**
+   * Adds {@code delta} to the counter of the user.
+   * @param id an id of the user
+   * @param delta a value to add, positive
+   */
+  void increment(int id, int delta) {
+    lines += delta;
+    int slot = slot(id, ids.length - 1);
+    while (counts[slot] != 0) {
+      if (ids[slot] == id) {
+        counts[slot] += delta;
+        return;
+      }
+      slot = (slot + 1) & (ids.length - 1);
+    }
+    ids[slot] = id;
+    counts[slot] = delta;
+    used[size++] = slot;
+    if (size == used.length) {
+      rehash(ids.length << 1);
+    }
+  }
+
+  /**
+   * Iterates over the counters of the bucket.
+   * @param consumer a consumer of the counters
+   */
+  void forEach(CounterConsumer consumer) {
+    for (int i = 0; i < size; i++) {
+      consumer.accept(ids[used[i]], counts[used[i]]);
+    }
+  }
+
+  /**
+   * @return the number of users in the bucket
+   */
+  int size() {
+    return size;
+  }
+
+  private void rehash(int capacity) {
+    int[] oldIds = ids, oldCounts = counts, oldUsed = used;
+    int oldSize = size;
+    ids = new int[capacity];
+    counts = new int[capacity];
+    used = new int[capacity / 2];
+    size = 0;
+    for (int i = 0; i < oldSize; i++) {
+      int slot = slot(oldIds[oldUsed[i]], capacity - 1);
+      while (counts[slot] != 0) {
+        slot = (slot + 1) & (capacity - 1);
+      }
+      ids[slot] = oldIds[oldUsed[i]];
+      counts[slot] = oldCounts[oldUsed[i]];
+      used[size++] = slot;
+    }
+  }
+
+  private static int slot(int id, int mask) {
+    int h = id * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
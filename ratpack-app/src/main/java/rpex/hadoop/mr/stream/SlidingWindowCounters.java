@@ -0,0 +1,386 @@
+package rpex.hadoop.mr.stream;
+
+import com.google.common.collect.ImmutableList;
+import mr.func.topn.AccessLogParser;
+import rpex.hadoop.mr.topn.model.StreamingTopN;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Counts the users of the access log lines in a ring of one minute buckets, the newest minute of the logs is the end
+ * of the window.
+ * <p>
+ * Lines are parsed with the same {@link AccessLogParser} as in the map-reduce jobs. The totals of all buckets are kept
+ * in a primitive array by user id, updated when a line is added and when a bucket leaves the window, so the top-n of
+ * the whole window is selected by a single scan of the array, without merging the buckets. Shorter windows merge their
+ * buckets. Memory is bounded by the window length and the maximal number of users: lines of other users are dropped
+ * until the ids of inactive users are released.
+ * <p>
+ * The end of the window follows the logs only up to the wall clock plus the allowed clock skew, in the local time
+ * of the server. Later lines, e.g. of a skewed clock or with a wrong year, are counted as future lines and dropped,
+ * so a single line cannot move the window past the real lines and expire them.
+ * <p>
+ * The counters are thread safe: lines are added by the tailer thread and queried by the request threads.
+ */
+class SlidingWindowCounters {
+  private static final int CHECKPOINT_VERSION = 2;
+  private static final int MINUTES_PER_DAY = 24 * 60;
+
+  private final MinuteBucket[] buckets;
+  private final int maxClockSkewMinutes;
+  private final Clock clock;
+  private final UserDictionary dictionary;
+  // counters of all buckets, by user id
+  private final int[] totals;
+  // counters of shorter windows and their users
+  private final int[] scratch;
+  private final int[] touched;
+  private int touchedSize;
+  // min-heap of the top-n user ids
+  private int[] heap = new int[16];
+
+  private long head = Long.MIN_VALUE;
+  private long lateLines;
+  private long futureLines;
+  private long droppedLines;
+  private long malformedLines;
+
+  /**
+   * Creates the counters.
+   * @param minutes a length of the window in minutes
+   * @param maxUsers a maximal number of users in the window
+   * @param maxClockSkewMinutes a number of minutes the lines may be ahead of the clock
+   */
+  SlidingWindowCounters(int minutes, int maxUsers, int maxClockSkewMinutes) {
+    this(minutes, maxUsers, maxClockSkewMinutes, Clock.systemDefaultZone());
+  }
+
+  /**
+   * Creates the counters.
+   * @param minutes a length of the window in minutes
+   * @param maxUsers a maximal number of users in the window
+   * @param maxClockSkewMinutes a number of minutes the lines may be ahead of the clock
+   * @param clock a clock of the server, in the time zone of the logs
+   */
+  SlidingWindowCounters(int minutes, int maxUsers, int maxClockSkewMinutes, Clock clock) {
+    this.maxClockSkewMinutes = Math.max(0, maxClockSkewMinutes);
+    this.clock = clock;
+    this.buckets = new MinuteBucket[minutes];
+    for (int i = 0; i < minutes; i++) {
+      buckets[i] = new MinuteBucket();
+    }
+    this.dictionary = new UserDictionary(maxUsers);
+    this.totals = new int[maxUsers];
+    this.scratch = new int[maxUsers];
+    this.touched = new int[maxUsers];
+  }
+
+  /**
+   * Counts the user of the line.
+   * @param line a line bytes, from index 0, without the line terminator
+   * @param length a number of valid bytes in {@code line}
+   */
+  synchronized void add(byte[] line, int length) {
+    int day = AccessLogParser.parseDay(line, length);
+    int minuteOfDay = AccessLogParser.parseMinuteOfDay(line, length);
+    int username = AccessLogParser.findUsername(line, length);
+    if (day == AccessLogParser.NO_DAY || minuteOfDay == AccessLogParser.NO_MINUTE
+      || username == AccessLogParser.NO_USERNAME) {
+      malformedLines++;
+      return;
+    }
+    long minute = (long) day * MINUTES_PER_DAY + minuteOfDay;
+    if (minute > head) {
+      // the clock is read only when the window moves, at most once per minute of the logs
+      if (minute > maxMinute()) {
+        futureLines++;
+        return;
+      }
+      advance(minute);
+    } else if (minute <= head - buckets.length) {
+      lateLines++;
+      return;
+    }
+    int id = dictionary.add(UserDictionary.pack(line, username));
+    if (id == UserDictionary.NO_ID) {
+      droppedLines++;
+      return;
+    }
+    bucket(minute).increment(id, 1);
+    totals[id]++;
+  }
+
+  /**
+   * Selects the top-n users of the window ending at the newest minute.
+   * @param limit a number of users
+   * @param minutes a length of the window, at most the length of the ring
+   * @return the top-n users, from the most active one
+   */
+  synchronized StreamingTopN top(int limit, int minutes) {
+    if (head == Long.MIN_VALUE) {
+      return new StreamingTopN(null, null, 0, ImmutableList.of(), lateLines, futureLines, droppedLines, malformedLines);
+    }
+    int window = Math.max(1, Math.min(minutes, buckets.length));
+    long from = head - window + 1;
+    long lines = 0;
+    for (MinuteBucket bucket : buckets) {
+      if (bucket.getMinute() >= from) {
+        lines += bucket.getLines();
+      }
+    }
+    ImmutableList<UserActivityCounter> users;
+    if (window == buckets.length) {
+      users = select(totals, null, dictionary.idLimit(), limit);
+    } else {
+      for (MinuteBucket bucket : buckets) {
+        if (bucket.getMinute() >= from) {
+          bucket.forEach(this::accumulate);
+        }
+      }
+      users = select(scratch, touched, touchedSize, limit);
+      for (int i = 0; i < touchedSize; i++) {
+        scratch[touched[i]] = 0;
+      }
+      touchedSize = 0;
+    }
+    return new StreamingTopN(format(from), format(head), lines, users, lateLines, futureLines, droppedLines,
+      malformedLines);
+  }
+
+  /**
+   * @return the number of users in the window
+   */
+  synchronized int users() {
+    return dictionary.size();
+  }
+
+  /**
+   * Writes the counters of the window.
+   * @param out an output of the checkpoint
+   */
+  synchronized void writeTo(DataOutput out) throws IOException {
+    out.writeInt(CHECKPOINT_VERSION);
+    out.writeLong(head);
+    out.writeLong(lateLines);
+    out.writeLong(futureLines);
+    out.writeLong(droppedLines);
+    out.writeLong(malformedLines);
+    int used = 0;
+    for (MinuteBucket bucket : buckets) {
+      used += bucket.getMinute() == Long.MIN_VALUE ? 0 : 1;
+    }
+    out.writeInt(used);
+    for (MinuteBucket bucket : buckets) {
+      if (bucket.getMinute() == Long.MIN_VALUE) {
+        continue;
+      }
+      out.writeLong(bucket.getMinute());
+      out.writeInt(bucket.size());
+      IOException[] error = new IOException[1];
+      bucket.forEach((id, count) -> {
+        try {
+          out.writeLong(dictionary.username(id));
+          out.writeInt(count);
+        } catch (IOException ex) {
+          error[0] = ex;
+        }
+      });
+      if (error[0] != null) {
+        throw error[0];
+      }
+    }
+  }
+
+  /**
+   * Restores the counters written by {@link #writeTo(DataOutput)}. The counters must be empty. The whole checkpoint
+   * is read before it is applied, so the counters stay empty if it cannot be read.
+   * Buckets outside of the window, e.g. if it has been shortened, are skipped. The window of a checkpoint ending
+   * past the wall clock, written before the future lines were dropped, is not restored.
+   * @param in an input of the checkpoint
+   */
+  synchronized void readFrom(DataInput in) throws IOException {
+    int version = in.readInt();
+    if (version != CHECKPOINT_VERSION && version != 1) {
+      throw new IOException("unsupported checkpoint version: " + version);
+    }
+    long checkpointHead = in.readLong();
+    long checkpointLateLines = in.readLong();
+    long checkpointFutureLines = version == 1 ? 0 : in.readLong();
+    long checkpointDroppedLines = in.readLong();
+    long checkpointMalformedLines = in.readLong();
+    int used = in.readInt();
+    if (used < 0) {
+      throw new IOException("corrupted checkpoint, buckets: " + used);
+    }
+    long[] minutes = new long[used];
+    long[][] usernames = new long[used][];
+    int[][] counts = new int[used][];
+    for (int i = 0; i < used; i++) {
+      minutes[i] = in.readLong();
+      int size = in.readInt();
+      if (size < 0) {
+        throw new IOException("corrupted checkpoint, users: " + size);
+      }
+      usernames[i] = new long[size];
+      counts[i] = new int[usernames[i].length];
+      for (int j = 0; j < usernames[i].length; j++) {
+        usernames[i][j] = in.readLong();
+        counts[i][j] = in.readInt();
+      }
+    }
+
+    lateLines = checkpointLateLines;
+    futureLines = checkpointFutureLines;
+    droppedLines = checkpointDroppedLines;
+    malformedLines = checkpointMalformedLines;
+    if (checkpointHead == Long.MIN_VALUE || checkpointHead > maxMinute()) {
+      return;
+    }
+    advance(checkpointHead);
+    for (int i = 0; i < used; i++) {
+      if (minutes[i] <= head - buckets.length) {
+        continue;
+      }
+      for (int j = 0; j < usernames[i].length; j++) {
+        int id = dictionary.add(usernames[i][j]);
+        if (id != UserDictionary.NO_ID) {
+          bucket(minutes[i]).increment(id, counts[i][j]);
+          totals[id] += counts[i][j];
+        }
+      }
+    }
+  }
+
+  /**
+   * Moves the end of the window to the minute, the buckets leaving the window are cleared and their users
+   * are subtracted from the totals.
+   */
+  private void advance(long minute) {
+    long first = head == Long.MIN_VALUE ? minute : Math.max(head + 1, minute - buckets.length + 1);
+    for (long m = first; m <= minute; m++) {
+      bucket(m);
+    }
+    head = minute;
+  }
+
+  /**
+   * @return the latest minute of the lines which may move the end of the window
+   */
+  private long maxMinute() {
+    LocalDateTime now = LocalDateTime.now(clock);
+    return now.toLocalDate().toEpochDay() * MINUTES_PER_DAY + now.getHour() * 60 + now.getMinute() + maxClockSkewMinutes;
+  }
+
+  /**
+   * Gets the bucket of the minute within the window, reusing the bucket of the expired minute.
+   */
+  private MinuteBucket bucket(long minute) {
+    MinuteBucket bucket = buckets[(int) Math.floorMod(minute, (long) buckets.length)];
+    if (bucket.getMinute() != minute) {
+      bucket.forEach(this::expire);
+      bucket.reset(minute);
+    }
+    return bucket;
+  }
+
+  private void expire(int id, int count) {
+    totals[id] -= count;
+    if (totals[id] == 0) {
+      dictionary.release(id);
+    }
+  }
+
+  private void accumulate(int id, int count) {
+    if (scratch[id] == 0) {
+      touched[touchedSize++] = id;
+    }
+    scratch[id] += count;
+  }
+
+  /**
+   * Selects the top-n users by their counters with the bounded min-heap of ids, equal counters are ordered by username.
+   * @param counts counters by user id
+   * @param ids ids of the candidates or null if the candidates are the ids from 0
+   * @param size a number of the candidates
+   * @param limit a number of users to select
+   */
+  private ImmutableList<UserActivityCounter> select(int[] counts, int[] ids, int size, int limit) {
+    int capacity = Math.max(1, Math.min(limit, size));
+    if (heap.length < capacity) {
+      heap = new int[Integer.highestOneBit(capacity) << 1];
+    }
+    int heapSize = 0;
+    for (int i = 0; i < size; i++) {
+      int id = ids == null ? i : ids[i];
+      if (counts[id] == 0) {
+        continue;
+      }
+      if (heapSize < capacity) {
+        heap[heapSize] = id;
+        siftUp(counts, heapSize++);
+      } else if (less(counts, heap[0], id)) {
+        heap[0] = id;
+        siftDown(counts, heapSize);
+      }
+    }
+    UserActivityCounter[] users = new UserActivityCounter[heapSize];
+    for (int i = heapSize - 1; i >= 0; i--) {
+      int id = heap[0];
+      users[i] = new UserActivityCounter(UserDictionary.unpack(dictionary.username(id)), counts[id]);
+      heap[0] = heap[i];
+      siftDown(counts, i);
+    }
+    return ImmutableList.copyOf(users);
+  }
+
+  private void siftUp(int[] counts, int index) {
+    int id = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (!less(counts, id, heap[parent])) {
+        break;
+      }
+      heap[index] = heap[parent];
+      index = parent;
+    }
+    heap[index] = id;
+  }
+
+  private void siftDown(int[] counts, int size) {
+    int index = 0;
+    int id = heap[0];
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && less(counts, heap[child + 1], heap[child])) {
+        child++;
+      }
+      if (!less(counts, heap[child], id)) {
+        break;
+      }
+      heap[index] = heap[child];
+      index = child;
+    }
+    heap[index] = id;
+  }
+
+  // true if the user a ranks below the user b: lower counter or, on equal counters, greater username
+  private boolean less(int[] counts, int a, int b) {
+    if (counts[a] != counts[b]) {
+      return counts[a] < counts[b];
+    }
+    return dictionary.username(a) > dictionary.username(b);
+  }
+
+  private static String format(long minute) {
+    return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC).toString();
+  }
+}
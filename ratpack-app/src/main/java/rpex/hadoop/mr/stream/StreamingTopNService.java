@@ -0,0 +1,95 @@
+package rpex.hadoop.mr.stream;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.server.Service;
+import ratpack.server.StartEvent;
+import ratpack.server.StopEvent;
+import rpex.hadoop.mr.topn.model.StreamingTopN;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Real-time top-n of the users over a sliding window of the access logs tailed from the local directories.
+ * <p>
+ * Unlike the map-reduce top-n, the lines are counted as they are appended to the logs, see {@link LogTailer},
+ * and a query only selects the top-n from the in-memory counters of the window, see {@link SlidingWindowCounters}.
+ * The tailer is started and stopped with the server, the stopped tailer writes its checkpoint.
+ */
+public class StreamingTopNService implements Service {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StreamingTopNService.class);
+
+  private final List<Path> dirs;
+  private final int windowMinutes;
+  private final SlidingWindowCounters counters;
+  private final LogTailer tailer;
+  private Thread thread;
+
+  /**
+   * Creates the service.
+   * @param dirs local directories of the access logs, the service is disabled if empty
+   * @param windowMinutes a length of the window in minutes
+   * @param maxUsers a maximal number of users in the window
+   * @param maxClockSkewMinutes a number of minutes the lines may be ahead of the clock of the server
+   * @param checkpointFile a local checkpoint file or null if the service is not checkpointed
+   */
+  public StreamingTopNService(List<Path> dirs, int windowMinutes, int maxUsers, int maxClockSkewMinutes, Path checkpointFile) {
+    this.dirs = dirs;
+    this.windowMinutes = Math.max(1, windowMinutes);
+    this.counters = dirs.isEmpty() ? null : new SlidingWindowCounters(this.windowMinutes, Math.max(1, maxUsers),
+      maxClockSkewMinutes);
+    this.tailer = dirs.isEmpty() ? null : new LogTailer(dirs, counters, checkpointFile, this.windowMinutes);
+  }
+
+  @Override
+  public void onStart(StartEvent event) throws Exception {
+    if (!isEnabled() || event.isReload()) {
+      return;
+    }
+    LOGGER.debug("STARTING streaming top-n of {}", dirs);
+    thread = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("log-tailer-%d").build().newThread(tailer);
+    thread.start();
+  }
+
+  @Override
+  public void onStop(StopEvent event) throws Exception {
+    if (thread == null || event.isReload()) {
+      return;
+    }
+    tailer.stop();
+    // the tailer polls its watch service with the timeout, then writes the final checkpoint
+    thread.join(TimeUnit.SECONDS.toMillis(10));
+    LOGGER.debug("END OF streaming top-n of {}", dirs);
+  }
+
+  /**
+   * @return true if the access log directories are configured
+   */
+  public boolean isEnabled() {
+    return tailer != null;
+  }
+
+  /**
+   * @return the default and maximal length of the window in minutes
+   */
+  public int getWindowMinutes() {
+    return windowMinutes;
+  }
+
+  /**
+   * Selects the top-n users of the window ending at the newest minute of the logs. It takes microseconds,
+   * no map-reduce job is run.
+   * @param limit a number of users
+   * @param minutes a length of the window, at most {@link #getWindowMinutes()}
+   * @return the top-n users with the counters of the window
+   */
+  public StreamingTopN top(int limit, int minutes) {
+    if (!isEnabled()) {
+      throw new IllegalStateException("MAPREDUCE_STREAMING_DISABLED");
+    }
+    return counters.top(limit, minutes);
+  }
+}
@@ -0,0 +1,153 @@
+package rpex.hadoop.mr.stream;
+
+import mr.func.topn.AccessLogParser;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense {@code int} ids to the usernames, so the counters of the users are kept in primitive arrays.
+ * <p>
+ * A username of {@link AccessLogParser#USERNAME_LENGTH} ASCII characters is packed into a {@code long},
+ * the packed usernames compare as their bytes. The ids are kept in the open-addressing hash table allocated
+ * up front for the maximal number of users, released ids are reused.
+ * <p>
+ * The dictionary is not thread safe.
+ */
+class UserDictionary {
+  /**
+   * Returned by {@link #add(long)} when the dictionary is full.
+   */
+  static final int NO_ID = -1;
+
+  private final int maxUsers;
+  // hash table: packed username and its id, the slot is empty if its id is NO_ID
+  private final long[] keys;
+  private final int[] ids;
+  private final int mask;
+  // packed usernames by id
+  private final long[] usernames;
+  // released ids, reused before the new ones
+  private final int[] free;
+  private int freeSize;
+  private int nextId;
+
+  /**
+   * Creates the dictionary.
+   * @param maxUsers a maximal number of users
+   */
+  UserDictionary(int maxUsers) {
+    this.maxUsers = maxUsers;
+    int capacity = Integer.highestOneBit(Math.max(2, maxUsers) * 2 - 1) << 1;
+    this.keys = new long[capacity];
+    this.ids = new int[capacity];
+    Arrays.fill(ids, NO_ID);
+    this.mask = capacity - 1;
+    this.usernames = new long[maxUsers];
+    this.free = new int[maxUsers];
+  }
+
+  /**
+   * Gets the id of the username, assigning the new one if the username is not known.
+   * @param username a packed username, see {@link #pack(byte[], int)}
+   * @return the id or {@link #NO_ID} if the dictionary is full
+   */
+  int add(long username) {
+    int slot = slot(username);
+    while (ids[slot] != NO_ID) {
+      if (keys[slot] == username) {
+        return ids[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    int id;
+    if (freeSize > 0) {
+      id = free[--freeSize];
+    } else if (nextId < maxUsers) {
+      id = nextId++;
+    } else {
+      return NO_ID;
+    }
+    keys[slot] = username;
+    ids[slot] = id;
+    usernames[id] = username;
+    return id;
+  }
+
+  /**
+   * Releases the id of the user, the id may be assigned to another username.
+   * @param id an id of the user
+   */
+  void release(int id) {
+    int slot = slot(usernames[id]);
+    while (ids[slot] != id) {
+      slot = (slot + 1) & mask;
+    }
+    // backward shift deletion keeps the probe sequences of the other entries without tombstones
+    int next = (slot + 1) & mask;
+    while (ids[next] != NO_ID) {
+      int home = slot(keys[next]);
+      if (((next - home) & mask) >= ((next - slot) & mask)) {
+        keys[slot] = keys[next];
+        ids[slot] = ids[next];
+        slot = next;
+      }
+      next = (next + 1) & mask;
+    }
+    ids[slot] = NO_ID;
+    free[freeSize++] = id;
+  }
+
+  /**
+   * @param id an id of the user
+   * @return the packed username
+   */
+  long username(int id) {
+    return usernames[id];
+  }
+
+  /**
+   * @return the upper bound of the assigned ids, exclusive
+   */
+  int idLimit() {
+    return nextId;
+  }
+
+  /**
+   * @return the number of users with ids
+   */
+  int size() {
+    return nextId - freeSize;
+  }
+
+  /**
+   * Packs the username, big-endian, so packed usernames compare as their bytes.
+   * @param bytes a buffer with the username
+   * @param offset an offset of the {@link AccessLogParser#USERNAME_LENGTH} username bytes
+   * @return the packed username
+   */
+  static long pack(byte[] bytes, int offset) {
+    long packed = 0;
+    for (int i = offset; i < offset + AccessLogParser.USERNAME_LENGTH; i++) {
+      packed = (packed << 8) | (bytes[i] & 0xff);
+    }
+    return packed;
+  }
+
+  /**
+   * @param packed a packed username
+   * @return the username
+   */
+  static String unpack(long packed) {
+    char[] chars = new char[AccessLogParser.USERNAME_LENGTH];
+    for (int i = chars.length - 1; i >= 0; i--) {
+      chars[i] = (char) (packed & 0xff);
+      packed >>>= 8;
+    }
+    return new String(chars);
+  }
+
+  private int slot(long username) {
+    long h = username * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+}
@@ -1,12 +1,17 @@
 package rpex.hadoop.mr.topn;
 
+import org.reactivestreams.Publisher;
 import ratpack.exec.Promise;
 import ratpack.exec.Result;
+import rpex.hadoop.mr.JobProgress;
+import rpex.hadoop.mr.topn.model.ApproximateTopN;
 import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.MultiTopN;
 import rpex.hadoop.mr.topn.model.TimeInterval;
 import rpex.hadoop.mr.topn.model.UserActivityCounter;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Runner for the top-n mapreduce job.
@@ -20,7 +25,79 @@ public interface TopNService {
    * @param timeInterval a time interval for looking for the most active users
    * @param inputFS a hadoop file system where user activity logs are stored
    * @param outputFS a hadoop file system where calculation results are stored
+   * @param requestId an id of the request tagging the phase metrics, {@code null} if there is no request
    * @return the promise for the result of top-n map-reduce calculation
    */
-  Promise<Result<List<UserActivityCounter>>> apply(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS);
+  Promise<Result<List<UserActivityCounter>>> apply(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId);
+
+  /**
+   * Executes map-reduce for calculating top-n users by their activity and streams the results.
+   * <p>
+   * Results are read incrementally, in batches requested by the subscriber, from the most active user.
+   * The whole result is never kept in memory, so it suits large limits.
+   * @param limit a limit for the number of the most active users
+   * @param timeInterval a time interval for looking for the most active users
+   * @param inputFS a hadoop file system where user activity logs are stored
+   * @param outputFS a hadoop file system where calculation results are stored
+   * @param requestId an id of the request tagging the phase metrics, {@code null} if there is no request
+   * @return the promise for the publisher of the result batches
+   */
+  Promise<Result<Publisher<List<UserActivityCounter>>>> stream(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId);
+
+  /**
+   * Executes map-reduce for estimating top-n users by their activity, with the error bounded by the {@code capacity}.
+   * <p>
+   * Mappers send only small sketches of their splits to the single reducer, instead of the counters of all users.
+   * @param limit a limit for the number of the most active users
+   * @param capacity a number of users monitored by the sketches, not lower than the {@code limit}
+   * @param timeInterval a time interval for looking for the most active users
+   * @param inputFS a hadoop file system where user activity logs are stored
+   * @param outputFS a hadoop file system where calculation results are stored
+   * @param requestId an id of the request tagging the phase metrics, {@code null} if there is no request
+   * @return the promise for the approximate result with per user error bounds
+   */
+  Promise<Result<ApproximateTopN>> approximate(Limit limit, int capacity, TimeInterval timeInterval, String inputFS, String outputFS, String requestId);
+
+  /**
+   * Executes map-reduce for calculating top-n values of several dimensions of the access logs in a single scan.
+   * <p>
+   * Every line is read once, whatever the number of dimensions, and the result holds one ranking per dimension.
+   * @param limit a limit for the number of the most frequent values of every dimension
+   * @param dimensions names of the dimensions: {@code user}, {@code ip}, {@code path}, {@code status}.
+   *                   {@code null} or empty for all of them
+   * @param timeInterval a time interval for looking for the most frequent values
+   * @param inputFS a hadoop file system where user activity logs are stored
+   * @param outputFS a hadoop file system where calculation results are stored
+   * @param requestId an id of the request tagging the phase metrics, {@code null} if there is no request
+   * @return the promise for the rankings keyed by the dimension name
+   */
+  Promise<Result<MultiTopN>> multiDimension(Limit limit, List<String> dimensions, TimeInterval timeInterval, String inputFS, String outputFS, String requestId);
+
+  /**
+   * Submits map-reduce for calculating top-n users by their activity and returns without waiting for its completion.
+   * <p>
+   * The job results are written into the job's own subdirectory of {@code outputFS}.
+   * @param limit a limit for the number of the most active users
+   * @param timeInterval a time interval for looking for the most active users
+   * @param inputFS a hadoop file system where user activity logs are stored
+   * @param outputFS a hadoop file system where calculation results are stored
+   * @param requestId an id of the request tagging the phase metrics, {@code null} if there is no request
+   * @return the promise for the id of the submitted job
+   */
+  Promise<Result<String>> submit(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId);
+
+  /**
+   * Gets the progress of the job submitted with {@link #submit(Limit, TimeInterval, String, String, String)}.
+   * @param jobId an id of the submitted job
+   * @return the promise for the job progress, empty if the job is unknown or expired
+   */
+  Promise<Optional<JobProgress>> status(String jobId);
+
+  /**
+   * Gets the result of the job submitted with {@link #submit(Limit, TimeInterval, String, String, String)}.
+   * @param jobId an id of the submitted job
+   * @param requestId an id of the request tagging the phase metrics, {@code null} if there is no request
+   * @return the promise for the result of top-n map-reduce calculation, error if the job is not completed yet
+   */
+  Promise<Result<List<UserActivityCounter>>> result(String jobId, String requestId);
 }
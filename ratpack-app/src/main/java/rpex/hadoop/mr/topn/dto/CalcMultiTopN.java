@@ -0,0 +1,47 @@
+package rpex.hadoop.mr.topn.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import lombok.Getter;
+import lombok.ToString;
+import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.TimeInterval;
+
+import java.util.List;
+
+/**
+ * Parameters for executing multi-dimension top-n map reduce calculation.
+ * This is simple and immutable data transfer object.
+ */
+@Getter
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CalcMultiTopN {
+  private final Limit limit;
+  private final TimeInterval timeInterval;
+  private final List<String> dimensions;
+
+  private CalcMultiTopN(final Limit limit, final TimeInterval timeInterval, final List<String> dimensions) {
+    this.limit = limit;
+    this.timeInterval = timeInterval;
+    this.dimensions = dimensions;
+  }
+
+  /**
+   * Creates the data transform object for multi-dimension top-n calculation.
+   * <p>
+   * It is used as {@code JsonCreator} factory method used for deserialization from {@code JSON}.
+   * @param limit a limit for top-n of every dimension. It is {@code n} in top-n
+   * @param timeInterval a time interval with date from and date to. Optional
+   * @param dimensions names of the dimensions: {@code user}, {@code ip}, {@code path}, {@code status}.
+   *                   Optional, all dimensions by default
+   * @return the DTO for multi-dimension top-n calculation
+   */
+  @JsonCreator
+  public static CalcMultiTopN of(@JsonProperty("limit") int limit, @JsonProperty("timeInterval") TimeInterval timeInterval,
+                                 @JsonProperty("dimensions") List<String> dimensions) {
+    return new CalcMultiTopN(Limit.of(limit), timeInterval, dimensions == null ? null : ImmutableList.copyOf(dimensions));
+  }
+}
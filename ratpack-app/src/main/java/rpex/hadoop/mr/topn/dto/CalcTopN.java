@@ -20,10 +20,14 @@ import java.time.LocalDate;
 public class CalcTopN {
   private final Limit limit;
   private final TimeInterval timeInterval;
+  private final boolean approximate;
+  private final Integer capacity;
 
-  private CalcTopN(final Limit limit, final TimeInterval timeInterval) {
+  private CalcTopN(final Limit limit, final TimeInterval timeInterval, final boolean approximate, final Integer capacity) {
     this.limit = limit;
     this.timeInterval = timeInterval;
+    this.approximate = approximate;
+    this.capacity = capacity;
   }
 
   /**
@@ -32,23 +36,33 @@ public class CalcTopN {
    * @return the DTO for top-n calculation
    */
   public static CalcTopN of(int limit) {
-    return new CalcTopN(Limit.of(limit), null);
+    return new CalcTopN(Limit.of(limit), null, false, null);
   }
 
   /**
    * Creates the data transform object for top-n calculation with limit and optional time interval.
+   * @param limit a limit for top-n. It is {@code n} in top-n
+   * @param timeInterval a time interval with date from and date to
+   * @return the DTO for top-n calculation
+   */
+  public static CalcTopN of(int limit, TimeInterval timeInterval) {
+    return of(limit, timeInterval, null, null);
+  }
+
+  /**
+   * Creates the data transform object for exact or approximate top-n calculation.
    * <p>
    * It is used as {@code JsonCreator} factory method used for deserialization from {@code JSON}.
    * @param limit a limit for top-n. It is {@code n} in top-n
    * @param timeInterval a time interval with date from and date to
+   * @param approximate true for approximate calculation with the bounded error
+   * @param capacity a number of users monitored by the approximate calculation, the error is at most
+   *                 the number of requests divided by the capacity. Optional
    * @return the DTO for top-n calculation
    */
   @JsonCreator
-  public static CalcTopN of(@JsonProperty("limit")int limit, @JsonProperty("timeInterval") TimeInterval timeInterval) {
-    if (timeInterval == null) {
-      return new CalcTopN(Limit.of(limit), null);
-    } else {
-      return new CalcTopN(Limit.of(limit), timeInterval);
-    }
+  public static CalcTopN of(@JsonProperty("limit")int limit, @JsonProperty("timeInterval") TimeInterval timeInterval,
+                            @JsonProperty("approximate") Boolean approximate, @JsonProperty("capacity") Integer capacity) {
+    return new CalcTopN(Limit.of(limit), timeInterval, approximate != null && approximate, capacity);
   }
 }
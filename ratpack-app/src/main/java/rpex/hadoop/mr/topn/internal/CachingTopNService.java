@@ -0,0 +1,103 @@
+package rpex.hadoop.mr.topn.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.reactivestreams.Publisher;
+import ratpack.exec.Blocking;
+import ratpack.exec.Promise;
+import ratpack.exec.Result;
+import rpex.hadoop.mr.InputFingerprint;
+import rpex.hadoop.mr.JobProgress;
+import rpex.hadoop.mr.MapReduceService;
+import rpex.hadoop.mr.topn.TopNService;
+import rpex.hadoop.mr.topn.model.ApproximateTopN;
+import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.MultiTopN;
+import rpex.hadoop.mr.topn.model.TimeInterval;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Serves top-n results from the {@link TopNResultCache} and runs the delegate {@link TopNService} on cache miss only.
+ * The result is cached only if the fingerprint of the input is the same before and after the job.
+ * Approximate and streamed results are not cached.
+ */
+public class CachingTopNService implements TopNService {
+  private final Logger LOGGER = LoggerFactory.getLogger(CachingTopNService.class);
+
+  private final TopNService delegate;
+  private final MapReduceService mapReduceService;
+  private final TopNResultCache cache;
+
+  public CachingTopNService(TopNService delegate, MapReduceService mapReduceService, TopNResultCache cache) {
+    this.delegate = delegate;
+    this.mapReduceService = mapReduceService;
+    this.cache = cache;
+  }
+
+  @Override
+  public Promise<Result<List<UserActivityCounter>>> apply(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return mapReduceService.listFiles(inputFS, requestId)
+      .map(InputFingerprint::of)
+      .flatMap(fingerprint -> {
+        String key = cache.key(limit, timeInterval, inputFS, fingerprint);
+        return Blocking.get(() -> cache.get(inputFS, fingerprint, key))
+          .flatMap(cached -> {
+            if (cached != null) {
+              LOGGER.debug("TOPN CACHE HIT: {}", key);
+              return Promise.value(Result.success(cached));
+            }
+            LOGGER.debug("TOPN CACHE MISS: {}", key);
+            return delegate.apply(limit, timeInterval, inputFS, outputFS, requestId)
+              .flatMap(result -> {
+                if (!result.isSuccess()) {
+                  return Promise.value(result);
+                }
+                // the input may have changed while the job was running, its result is not cached then
+                return mapReduceService.listFiles(inputFS, requestId)
+                  .map(InputFingerprint::of)
+                  .flatMap(current -> Blocking.get(() -> {
+                    if (current.equals(fingerprint)) {
+                      cache.put(key, result.getValue());
+                    } else {
+                      LOGGER.debug("TOPN CACHE SKIPPED, INPUT CHANGED: {}", key);
+                    }
+                    return result;
+                  }));
+              });
+          });
+      });
+  }
+
+  @Override
+  public Promise<Result<Publisher<List<UserActivityCounter>>>> stream(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return delegate.stream(limit, timeInterval, inputFS, outputFS, requestId);
+  }
+
+  @Override
+  public Promise<Result<ApproximateTopN>> approximate(Limit limit, int capacity, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return delegate.approximate(limit, capacity, timeInterval, inputFS, outputFS, requestId);
+  }
+
+  @Override
+  public Promise<Result<MultiTopN>> multiDimension(Limit limit, List<String> dimensions, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return delegate.multiDimension(limit, dimensions, timeInterval, inputFS, outputFS, requestId);
+  }
+
+  @Override
+  public Promise<Result<String>> submit(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return delegate.submit(limit, timeInterval, inputFS, outputFS, requestId);
+  }
+
+  @Override
+  public Promise<Optional<JobProgress>> status(String jobId) {
+    return delegate.status(jobId);
+  }
+
+  @Override
+  public Promise<Result<List<UserActivityCounter>>> result(String jobId, String requestId) {
+    return delegate.result(jobId, requestId);
+  }
+}
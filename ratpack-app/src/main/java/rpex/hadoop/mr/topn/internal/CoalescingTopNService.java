@@ -0,0 +1,137 @@
+package rpex.hadoop.mr.topn.internal;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.exec.Promise;
+import ratpack.exec.Result;
+import rpex.hadoop.mr.JobProgress;
+import rpex.hadoop.mr.MapReduceMetrics;
+import rpex.hadoop.mr.topn.TopNService;
+import rpex.hadoop.mr.topn.model.ApproximateTopN;
+import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.MultiTopN;
+import rpex.hadoop.mr.topn.model.TimeInterval;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs at most one top-n job per time interval and input, requests arriving while the job is running
+ * wait for its result instead of starting their own jobs.
+ * <p>
+ * A running job with a larger limit serves the smaller limits, its result is truncated. Ties are ordered
+ * by username, so the truncated result equals the result of the smaller job. A request with a larger limit
+ * starts its own job at once, every job writes into its own output directory. The running job keeps serving
+ * the requests which joined it, new requests join the job with the larger limit.
+ * Only {@link #apply(Limit, TimeInterval, String, String, String)} is coalesced.
+ */
+public class CoalescingTopNService implements TopNService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingTopNService.class);
+
+  private final TopNService delegate;
+  private final MapReduceMetrics metrics;
+  // guarded by itself
+  private final Map<String, Flight> flights = new HashMap<>();
+
+  public CoalescingTopNService(TopNService delegate, MapReduceMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public Promise<Result<List<UserActivityCounter>>> apply(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    String key = key(timeInterval, inputFS);
+    Flight joined = null;
+    Flight leader = null;
+    synchronized (flights) {
+      Flight current = flights.get(key);
+      if (current != null && current.limit >= limit.getValue()) {
+        joined = current;
+      } else {
+        leader = new Flight(limit.getValue());
+        flights.put(key, leader);
+      }
+    }
+    metrics.recordTopNRequest(joined != null);
+    if (joined != null) {
+      LOGGER.debug("TOPN REQUEST COALESCED: {}, limit: {}, running limit: {}", key, limit.getValue(), joined.limit);
+      return promise(joined.result).map(result -> truncate(result, limit.getValue()));
+    }
+    Flight flight = leader;
+    return delegate.apply(limit, timeInterval, inputFS, outputFS, requestId)
+      .wiretap(result -> {
+        synchronized (flights) {
+          flights.remove(key, flight);
+        }
+        flight.result.complete(result.isError() ? Result.error(result.getThrowable()) : result.getValue());
+      });
+  }
+
+  @Override
+  public Promise<Result<Publisher<List<UserActivityCounter>>>> stream(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return delegate.stream(limit, timeInterval, inputFS, outputFS, requestId);
+  }
+
+  @Override
+  public Promise<Result<ApproximateTopN>> approximate(Limit limit, int capacity, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return delegate.approximate(limit, capacity, timeInterval, inputFS, outputFS, requestId);
+  }
+
+  @Override
+  public Promise<Result<MultiTopN>> multiDimension(Limit limit, List<String> dimensions, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return delegate.multiDimension(limit, dimensions, timeInterval, inputFS, outputFS, requestId);
+  }
+
+  @Override
+  public Promise<Result<String>> submit(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return delegate.submit(limit, timeInterval, inputFS, outputFS, requestId);
+  }
+
+  @Override
+  public Promise<Optional<JobProgress>> status(String jobId) {
+    return delegate.status(jobId);
+  }
+
+  @Override
+  public Promise<Result<List<UserActivityCounter>>> result(String jobId, String requestId) {
+    return delegate.result(jobId, requestId);
+  }
+
+  private static String key(TimeInterval timeInterval, String inputFS) {
+    return (Strings.isNullOrEmpty(inputFS) ? "input" : inputFS) + "|" + (timeInterval == null ? "" : timeInterval.getDateFrom() + "|" + timeInterval.getDateTo());
+  }
+
+  private static <T> Promise<T> promise(CompletableFuture<T> future) {
+    return Promise.of(downstream -> future.whenComplete((value, error) -> {
+      if (error != null) {
+        downstream.error(error);
+      } else {
+        downstream.success(value);
+      }
+    }));
+  }
+
+  private static Result<List<UserActivityCounter>> truncate(Result<List<UserActivityCounter>> result, int limit) {
+    if (result.isError() || result.getValue().size() <= limit) {
+      return result;
+    }
+    return Result.success(ImmutableList.copyOf(result.getValue().subList(0, limit)));
+  }
+
+  private static class Flight {
+    private final int limit;
+    // the promise of the leader is consumed by its own request, followers wait for this future
+    private final CompletableFuture<Result<List<UserActivityCounter>>> result = new CompletableFuture<>();
+
+    Flight(int limit) {
+      this.limit = limit;
+    }
+  }
+}
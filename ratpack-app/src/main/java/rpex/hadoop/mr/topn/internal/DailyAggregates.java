@@ -0,0 +1,321 @@
+package rpex.hadoop.mr.topn.internal;
+
+import com.google.common.collect.ImmutableList;
+import mr.func.ingest.DayPartitionFunc;
+import mr.func.topn.DailyUserCountFunc;
+import mr.func.topn.TopNFunc;
+import mr.func.topn.TopNHeap;
+import mr.func.topn.UserCounterTable;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.exec.Blocking;
+import ratpack.exec.Promise;
+import ratpack.exec.Result;
+import rpex.hadoop.mr.MapReduceJob;
+import rpex.hadoop.mr.MapReduceService;
+import rpex.hadoop.mr.ingest.DayPartitions;
+import rpex.hadoop.mr.ingest.LogInputs;
+import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.TimeInterval;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Materialized store of the (day, username, count) aggregates of the access logs.
+ * <p>
+ * Every {@link #update(String)} processes only input files not processed before and writes their daily counters
+ * into a new {@code run-*} directory of the store. The processed files are recorded, with their lengths,
+ * in the {@code _files} file of the run. The run is written into a hidden directory and committed by renaming it,
+ * so its counters and its processed files are committed together and an interrupted update is not counted twice.
+ * The manifest of the processed files is the union of the committed runs.
+ * <p>
+ * Top-n query merges the daily counters of the requested time interval, which are much fewer than the log lines.
+ * The store can answer the query only if all input files of the time interval were processed. Lines without
+ * a valid day are not aggregated, while the top-n job counts them when the query has no time interval,
+ * so only the queries with a time interval are answered. Processed files which were changed or removed since
+ * are still counted by the store, so the queries reading them are not answered either.
+ */
+public class DailyAggregates {
+  private static final Logger LOGGER = LoggerFactory.getLogger(DailyAggregates.class);
+
+  private static final String FILES = "_files";
+  private static final String RUN_PREFIX = "run-";
+  private static final String PENDING_PREFIX = "_" + RUN_PREFIX;
+
+  private final MapReduceService mapReduceService;
+  private final String aggregatesFS;
+
+  public DailyAggregates(MapReduceService mapReduceService, String aggregatesFS) {
+    this.mapReduceService = mapReduceService;
+    this.aggregatesFS = aggregatesFS;
+  }
+
+  /**
+   * Executes map-reduce counting users activity per day for the input files added since the last update.
+   * @param inputFS a hadoop file system where user activity logs are stored
+   * @param requestId an id of the request tagging the phase metrics, {@code null} if there is no request
+   * @return the promise for the number of newly processed files
+   */
+  public Promise<Result<Integer>> update(String inputFS, String requestId) {
+    return mapReduceService.provide("daily-user-counts", requestId)
+      .onNull(() -> Result.error(new IllegalArgumentException("MAPREDUCE_JOB_CREATION_FAILED")))
+      .flatMap(mrJob -> Blocking.get(() -> {
+        FileSystem fileSystem = mrJob.getFileSystem();
+        Path aggregatesPath = mrJob.getJobPath(aggregatesFS);
+        synchronized (this) {
+          deletePendingRuns(fileSystem, aggregatesPath);
+          Map<String, Long> manifest = readManifest(fileSystem, aggregatesPath);
+          Path inputPath = mrJob.getJobPath(inputFS);
+          Set<String> listed = new HashSet<>();
+          List<FileStatus> newFiles = new ArrayList<>();
+          for (FileStatus file : listFiles(fileSystem, inputPath)) {
+            String path = file.getPath().toUri().getPath();
+            listed.add(path);
+            if (!manifest.containsKey(path)) {
+              newFiles.add(file);
+            } else if (manifest.get(path) != file.getLen()) {
+              LOGGER.warn("PROCESSED FILE CHANGED, aggregates do not cover it: {}", path);
+            }
+          }
+          String inputDir = inputPath.toUri().getPath() + "/";
+          for (String path : manifest.keySet()) {
+            if (path.startsWith(inputDir) && !listed.contains(path)) {
+              LOGGER.warn("PROCESSED FILE REMOVED, aggregates do not cover it: {}", path);
+            }
+          }
+          if (newFiles.isEmpty()) {
+            return Result.success(0);
+          }
+
+          String runName = RUN_PREFIX + System.currentTimeMillis();
+          Path pendingPath = new Path(aggregatesPath, "_" + runName);
+          Job job = mrJob.getJob();
+          mrJob.setJarByClass(DailyUserCountFunc.class);
+          job.setMapperClass(DailyUserCountFunc.Mapper.class);
+          job.setCombinerClass(TopNFunc.Combiner.class);
+          job.setReducerClass(TopNFunc.Combiner.class);
+          job.setNumReduceTasks(Math.max(1, mrJob.getConfig().getReduceTasks()));
+          job.setOutputKeyClass(Text.class);
+          job.setOutputValueClass(IntWritable.class);
+          LogInputs.configure(job, mrJob.getConfig(), newFiles);
+          job.setOutputFormatClass(SequenceFileOutputFormat.class);
+          for (FileStatus file : newFiles) {
+            FileInputFormat.addInputPath(job, file.getPath());
+          }
+          FileOutputFormat.setOutputPath(job, pendingPath);
+
+          LOGGER.debug("STARTING daily aggregates update, new files: {}", newFiles.size());
+          mrJob.submit();
+          if (!job.waitForCompletion(false)) {
+            fileSystem.delete(pendingPath, true);
+            return Result.error(new RuntimeException("MAPREDUCE_AGGREGATES_UPDATE_FAILED"));
+          }
+          writeFiles(fileSystem, pendingPath, newFiles);
+          // the counters and the processed files are committed by the single rename
+          if (!fileSystem.rename(pendingPath, new Path(aggregatesPath, runName))) {
+            LOGGER.warn("AGGREGATES_COMMIT_FAILED: {}", pendingPath);
+            fileSystem.delete(pendingPath, true);
+            return Result.error(new RuntimeException("MAPREDUCE_AGGREGATES_COMMIT_FAILED"));
+          }
+          LOGGER.debug("END OF daily aggregates update");
+          return Result.success(newFiles.size());
+        }
+      }));
+  }
+
+  /**
+   * Verifies if all input files needed by the query between the dates were processed. It is blocking operation.
+   * @param mrJob a map-reduce infrastructure
+   * @param inputPath a path to the input directory
+   * @param timeInterval a time interval of the query, {@code null} for the whole input
+   * @return true if the query can be answered with {@link #topN(MapReduceJob, Limit, TimeInterval)},
+   *   false for the query without the time interval
+   */
+  public boolean covers(MapReduceJob mrJob, Path inputPath, TimeInterval timeInterval) throws IOException {
+    if (timeInterval == null) {
+      // the lines without a valid day are counted by the job, but not aggregated
+      return false;
+    }
+    FileSystem fileSystem = mrJob.getFileSystem();
+    Map<String, Long> manifest = readManifest(fileSystem, mrJob.getJobPath(aggregatesFS));
+    if (manifest.isEmpty()) {
+      return false;
+    }
+    List<Path> inputPaths = DayPartitions.select(fileSystem, inputPath, timeInterval.getDateFrom(), timeInterval.getDateTo());
+    Set<String> listed = new HashSet<>();
+    for (Path path : inputPaths) {
+      for (FileStatus file : listFiles(fileSystem, path)) {
+        String filePath = file.getPath().toUri().getPath();
+        Long length = manifest.get(filePath);
+        if (length == null || length != file.getLen()) {
+          return false;
+        }
+        listed.add(filePath);
+      }
+    }
+    // the counters of the removed files are still aggregated
+    String inputDir = inputPath.toUri().getPath() + "/";
+    for (String path : manifest.keySet()) {
+      if (path.startsWith(inputDir) && !listed.contains(path) && selected(path.substring(inputDir.length()), timeInterval)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Verifies if the file, relative to the input directory, would be selected by {@link DayPartitions#select}.
+   */
+  private static boolean selected(String relativePath, TimeInterval timeInterval) {
+    int separator = relativePath.indexOf('/');
+    if (separator < 0) {
+      return true;
+    }
+    String name = relativePath.substring(0, separator);
+    if (name.startsWith("_") || name.startsWith(".")) {
+      return false;
+    }
+    if (!name.startsWith(DayPartitionFunc.PARTITION_PREFIX)) {
+      return true;
+    }
+    LocalDate date = DayPartitions.dateOf(name);
+    return date != null && !date.isBefore(timeInterval.getDateFrom()) && !date.isAfter(timeInterval.getDateTo());
+  }
+
+  /**
+   * Calculates top-n users by merging the daily counters of the time interval. It is blocking operation.
+   * @param mrJob a map-reduce infrastructure
+   * @param limit a limit for the number of the most active users
+   * @param timeInterval a time interval, both dates inclusive
+   * @return the most active users, from the most active one
+   */
+  public List<UserActivityCounter> topN(MapReduceJob mrJob, Limit limit, TimeInterval timeInterval) throws Exception {
+    FileSystem fileSystem = mrJob.getFileSystem();
+    long dayFrom = timeInterval.getDateFrom().toEpochDay();
+    long dayTo = timeInterval.getDateTo().toEpochDay();
+
+    UserCounterTable counters = new UserCounterTable(Integer.MAX_VALUE);
+    Text key = new Text();
+    IntWritable count = new IntWritable();
+    for (Path runPath : committedRuns(fileSystem, mrJob.getJobPath(aggregatesFS))) {
+      for (FileStatus file : fileSystem.listStatus(runPath, path -> path.getName().startsWith("part"))) {
+        try (SequenceFile.Reader reader = new SequenceFile.Reader(fileSystem.getConf(), SequenceFile.Reader.file(file.getPath()))) {
+          while (reader.next(key, count)) {
+            int day = DailyUserCountFunc.day(key);
+            if (day >= dayFrom && day <= dayTo) {
+              // the username follows the 4 bytes of the day
+              counters.increment(key.getBytes(), 4, key.getLength() - 4, count.get());
+            }
+          }
+        }
+      }
+    }
+
+    TopNHeap topN = new TopNHeap(limit.getValue());
+    counters.forEach(topN::offer);
+    ImmutableList.Builder<UserActivityCounter> result = ImmutableList.builder();
+    topN.drainDescending((bytes, offset, length, counter) ->
+      result.add(new UserActivityCounter(new String(bytes, offset, length, StandardCharsets.UTF_8), counter)));
+    return result.build();
+  }
+
+  private static List<FileStatus> listFiles(FileSystem fileSystem, Path path) throws IOException {
+    List<FileStatus> files = new ArrayList<>();
+    if (!fileSystem.exists(path)) {
+      return files;
+    }
+    RemoteIterator<LocatedFileStatus> iterator = fileSystem.listFiles(path, true);
+    while (iterator.hasNext()) {
+      LocatedFileStatus file = iterator.next();
+      // files of the hidden directories, e.g. running ingestion, are not the input
+      if (!file.getPath().toUri().getPath().contains("/_") && !file.getPath().getName().startsWith(".")) {
+        files.add(file);
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Lists the committed runs, the ones with the processed files. Runs of the older stores without them are not read.
+   */
+  private static List<Path> committedRuns(FileSystem fileSystem, Path aggregatesPath) throws IOException {
+    List<Path> runs = new ArrayList<>();
+    if (!fileSystem.exists(aggregatesPath)) {
+      return runs;
+    }
+    for (FileStatus run : fileSystem.listStatus(aggregatesPath, path -> path.getName().startsWith(RUN_PREFIX))) {
+      if (run.isDirectory() && fileSystem.exists(new Path(run.getPath(), FILES))) {
+        runs.add(run.getPath());
+      }
+    }
+    return runs;
+  }
+
+  /**
+   * Deletes the runs left by the interrupted updates.
+   */
+  private static void deletePendingRuns(FileSystem fileSystem, Path aggregatesPath) throws IOException {
+    if (!fileSystem.exists(aggregatesPath)) {
+      return;
+    }
+    for (FileStatus run : fileSystem.listStatus(aggregatesPath, path -> path.getName().startsWith(PENDING_PREFIX))) {
+      LOGGER.debug("DELETING interrupted aggregates run: {}", run.getPath());
+      fileSystem.delete(run.getPath(), true);
+    }
+  }
+
+  /**
+   * Reads the processed files of all committed runs, with their lengths.
+   */
+  private static Map<String, Long> readManifest(FileSystem fileSystem, Path aggregatesPath) throws IOException {
+    Map<String, Long> manifest = new HashMap<>();
+    for (Path runPath : committedRuns(fileSystem, aggregatesPath)) {
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(fileSystem.open(new Path(runPath, FILES)),
+        StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          int separator = line.lastIndexOf('\t');
+          if (separator > 0) {
+            manifest.put(line.substring(0, separator), Long.parseLong(line.substring(separator + 1)));
+          }
+        }
+      }
+    }
+    return manifest;
+  }
+
+  private static void writeFiles(FileSystem fileSystem, Path runPath, List<FileStatus> files) throws IOException {
+    try (FSDataOutputStream out = fileSystem.create(new Path(runPath, FILES), false);
+         Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      for (FileStatus file : files) {
+        writer.write(file.getPath().toUri().getPath() + "\t" + file.getLen() + "\n");
+      }
+    }
+  }
+}
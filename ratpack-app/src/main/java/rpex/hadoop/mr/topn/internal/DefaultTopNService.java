@@ -3,31 +3,59 @@ package rpex.hadoop.mr.topn.internal;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import mr.func.topn.ApproxTopNFunc;
+import mr.func.topn.Dimension;
+import mr.func.topn.MultiTopNFunc;
+import mr.func.topn.SpaceSavingSketch;
+import mr.func.topn.TopNCounter;
 import mr.func.topn.TopNFunc;
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Counters;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.util.ClassUtil;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ratpack.exec.Blocking;
+import ratpack.exec.Execution;
 import ratpack.exec.Promise;
 import ratpack.exec.Result;
+import ratpack.stream.Streams;
+import rpex.hadoop.mr.JobProgress;
+import rpex.hadoop.mr.JobRegistry;
+import rpex.hadoop.mr.MapReduceJob;
+import rpex.hadoop.mr.MapReduceMetrics;
 import rpex.hadoop.mr.MapReduceService;
+import rpex.hadoop.mr.SubmittedJob;
+import rpex.hadoop.mr.ingest.DayPartitions;
+import rpex.hadoop.mr.ingest.LogInputs;
 import rpex.hadoop.mr.topn.TopNService;
+import rpex.hadoop.mr.topn.model.ApproximateTopN;
+import rpex.hadoop.mr.topn.model.ApproximateUserActivityCounter;
+import rpex.hadoop.mr.topn.model.DimensionCounter;
 import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.MultiTopN;
 import rpex.hadoop.mr.topn.model.TimeInterval;
 import rpex.hadoop.mr.topn.model.UserActivityCounter;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 /**
  * Executes top-n map-reduce.
@@ -36,68 +64,384 @@ public class DefaultTopNService implements TopNService {
   private final Logger LOGGER = LoggerFactory.getLogger(DefaultTopNService.class);
 
   private final MapReduceService mapReduceService;
+  private final JobRegistry jobRegistry;
+  private final DailyAggregates dailyAggregates;
+  private final MapReduceMetrics metrics;
 
-  public DefaultTopNService(MapReduceService mapReduceService) {
+  /**
+   * Creates the service.
+   * @param mapReduceService a map reduce service providing map-reduce infrastructure
+   * @param jobRegistry a registry of asynchronously submitted jobs
+   * @param dailyAggregates a store of daily aggregates used instead of the map-reduce when it covers the query,
+   *                        {@code null} to always run the map-reduce
+   * @param metrics a registry of the phase latencies and job counters
+   */
+  public DefaultTopNService(MapReduceService mapReduceService, JobRegistry jobRegistry, DailyAggregates dailyAggregates,
+                            MapReduceMetrics metrics) {
     this.mapReduceService = mapReduceService;
+    this.jobRegistry = jobRegistry;
+    this.dailyAggregates = dailyAggregates;
+    this.metrics = metrics;
   }
 
   @Override
-  public Promise<Result<List<UserActivityCounter>>> apply(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS) {
-    return mapReduceService.provide("top-n-users")
+  public Promise<Result<List<UserActivityCounter>>> apply(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return mapReduceService.provide("top-n-users", requestId)
       .onNull(() -> Result.error(new IllegalArgumentException("MAPREDUCE_JOB_CREATION_FAILED")))
       .flatMap(mrJob -> Blocking.get(() -> {
         LOGGER.debug("STARTING job execution, limit={}", limit.getValue());
-        mrJob.getJob().setJarByClass(TopNFunc.class);
-        LOGGER.debug("FUNC JAR: {}", ClassUtil.findContainingJar(TopNFunc.class));
-        mrJob.getJob().setMapperClass(TopNFunc.Mapper.class);
-        mrJob.getJob().setCombinerClass(TopNFunc.Combiner.class);
-        mrJob.getJob().setReducerClass(TopNFunc.Reducer.class);
+        if (dailyAggregates != null && dailyAggregates.covers(mrJob, inputPath(mrJob, inputFS), timeInterval)) {
+          LOGGER.debug("DAILY AGGREGATES cover the query");
+          return Result.success(dailyAggregates.topN(mrJob, limit, timeInterval));
+        }
+        List<Path> inputPaths = selectInput(mrJob, timeInterval, inputFS);
+        if (inputPaths.isEmpty()) {
+          return Result.success(ImmutableList.of());
+        }
+        Path outputPath = outputPath(mrJob, outputFS);
+        try {
+          metrics.time(MapReduceMetrics.SUBMIT, requestId, () -> {
+            configure(mrJob, limit, timeInterval, inputPaths, outputPath);
+            mrJob.submit();
+            return null;
+          });
 
-        mrJob.getJob().setOutputKeyClass(Text.class);
-        mrJob.getJob().setOutputValueClass(IntWritable.class);
+          if (!run(mrJob, requestId)) {
+            return Result.error(new RuntimeException("MAPREDUCE_TIMEOUT"));
+          }
 
-        Path inputPath = mrJob.getJobPath(Strings.isNullOrEmpty(inputFS) ? inputFS : "input"),
-              outputPath = mrJob.getJobPath(Strings.isNullOrEmpty(outputFS) ? outputFS : "output");
+          List<UserActivityCounter> userActivityCounters = read(mrJob, outputPath, limit, requestId);
+          LOGGER.debug("END OF job execution");
+          return Result.success(userActivityCounters);
+        } finally {
+          mrJob.getFileSystem().delete(outputPath, true);
+        }
+      }));
+  }
 
-        // delete output path
-        mrJob.getFileSystem().delete(outputPath, true);
+  @Override
+  public Promise<Result<Publisher<List<UserActivityCounter>>>> stream(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    Executor blockingExecutor = Execution.current().getController().getBlockingExecutor();
+    return mapReduceService.provide("top-n-users", requestId)
+      .onNull(() -> Result.error(new IllegalArgumentException("MAPREDUCE_JOB_CREATION_FAILED")))
+      .flatMap(mrJob -> Blocking.get(() -> {
+        LOGGER.debug("STARTING streamed job execution, limit={}", limit.getValue());
+        if (dailyAggregates != null && dailyAggregates.covers(mrJob, inputPath(mrJob, inputFS), timeInterval)) {
+          LOGGER.debug("DAILY AGGREGATES cover the query");
+          return Result.success(Streams.publish(
+            Lists.partition(dailyAggregates.topN(mrJob, limit, timeInterval), TopNResultPublisher.DEFAULT_BATCH_SIZE)));
+        }
+        List<Path> inputPaths = selectInput(mrJob, timeInterval, inputFS);
+        if (inputPaths.isEmpty()) {
+          return Result.success(Streams.<List<UserActivityCounter>>publish(ImmutableList.of()));
+        }
+        Path outputPath = outputPath(mrJob, outputFS);
+        boolean streamed = false;
+        try {
+          metrics.time(MapReduceMetrics.SUBMIT, requestId, () -> {
+            configure(mrJob, limit, timeInterval, inputPaths, outputPath);
+            mrJob.submit();
+            return null;
+          });
 
-        FileInputFormat.addInputPath(mrJob.getJob(), inputPath);
-        FileOutputFormat.setOutputPath(mrJob.getJob(), outputPath);
+          if (!run(mrJob, requestId)) {
+            return Result.error(new RuntimeException("MAPREDUCE_TIMEOUT"));
+          }
 
-        // set custom parameters
-        mrJob.getJob().getConfiguration().set("limit", limit.getValue().toString());
-        mrJob.getJob().getConfiguration().set("dateFrom", timeInterval.getDateFrom().toString());
-        mrJob.getJob().getConfiguration().set("dateTo", timeInterval.getDateTo().toString());
+          // reducers outputs are sorted from the most active user, so they are merged while streamed
+          // the output is deleted when the cursor is closed
+          TopNResultReader.Cursor cursor = metrics.time(MapReduceMetrics.LIST, requestId,
+            () -> new TopNResultReader(mrJob.getFileSystem()).open(outputPath, limit.getValue(), true));
+          streamed = true;
+          LOGGER.debug("END OF streamed job execution");
+          return Result.success(new TopNResultPublisher(cursor, TopNResultPublisher.DEFAULT_BATCH_SIZE, blockingExecutor));
+        } finally {
+          if (!streamed) {
+            mrJob.getFileSystem().delete(outputPath, true);
+          }
+        }
+      }));
+  }
 
-        if (!mrJob.getJob().waitForCompletion(false)) {
-          return Result.error(new RuntimeException("MAPREDUCE_TIMEOUT"));
+  @Override
+  public Promise<Result<ApproximateTopN>> approximate(Limit limit, int capacity, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return mapReduceService.provide("approximate-top-n-users", requestId)
+      .onNull(() -> Result.error(new IllegalArgumentException("MAPREDUCE_JOB_CREATION_FAILED")))
+      .flatMap(mrJob -> Blocking.get(() -> {
+        LOGGER.debug("STARTING approximate job execution, limit={}, capacity={}", limit.getValue(), capacity);
+        List<Path> inputPaths = selectInput(mrJob, timeInterval, inputFS);
+        if (inputPaths.isEmpty()) {
+          return Result.success(new ApproximateTopN(Math.max(capacity, limit.getValue()), 0, ImmutableList.of()));
         }
+        Path outputPath = outputPath(mrJob, outputFS);
+        try {
+          metrics.time(MapReduceMetrics.SUBMIT, requestId, () -> {
+            mrJob.setJarByClass(ApproxTopNFunc.class);
+            mrJob.getJob().setMapperClass(ApproxTopNFunc.Mapper.class);
+            mrJob.getJob().setReducerClass(ApproxTopNFunc.Reducer.class);
+            // the sketches are merged by the single reducer
+            mrJob.getJob().setNumReduceTasks(1);
+            mrJob.getJob().setOutputKeyClass(NullWritable.class);
+            mrJob.getJob().setOutputValueClass(SpaceSavingSketch.class);
+            mrJob.getJob().setOutputFormatClass(SequenceFileOutputFormat.class);
+            configureInput(mrJob, timeInterval, inputPaths, outputPath);
+            mrJob.getJob().getConfiguration().setInt(ApproxTopNFunc.CAPACITY, Math.max(capacity, limit.getValue()));
+            mrJob.submit();
+            return null;
+          });
 
-        FileStatus[] status = mrJob.getFileSystem().listStatus(outputPath, new PathFilter() {
-          @Override
-          public boolean accept(Path path) {
-            return path.getName().startsWith("part");
+          if (!run(mrJob, requestId)) {
+            return Result.error(new RuntimeException("MAPREDUCE_TIMEOUT"));
           }
-        });
 
-        ArrayList<UserActivityCounter> userActivityCounters = Lists.newArrayList();
-        for (int i = 0; i < status.length; i++) {
-          FSDataInputStream is = mrJob.getFileSystem().open(status[i].getPath());
-          BufferedReader br = new BufferedReader(new InputStreamReader(is));
-          String line = br.readLine();
-          while(line != null) {
-            String[] parts = line.split("\\s+");
-            if (parts != null && parts.length >= 2) {
-              LOGGER.debug("RESULT: {} {}", parts[0], parts[1]);
-              userActivityCounters.add(new UserActivityCounter(parts[0], Integer.valueOf(parts[1])));
-            }
-            line = br.readLine();
+          ApproximateTopN approximateTopN = metrics.time(MapReduceMetrics.PARSE, requestId, () -> readSketch(mrJob, outputPath, limit));
+          LOGGER.debug("END OF approximate job execution");
+          return Result.success(approximateTopN);
+        } finally {
+          mrJob.getFileSystem().delete(outputPath, true);
+        }
+      }));
+  }
+
+  @Override
+  public Promise<Result<MultiTopN>> multiDimension(Limit limit, List<String> dimensions, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    List<Dimension> selected = new ArrayList<>();
+    for (String name : dimensions == null || dimensions.isEmpty() ? ImmutableList.<String>of() : dimensions) {
+      Dimension dimension = Dimension.ofOutputName(name);
+      if (dimension == null) {
+        return Promise.value(Result.error(new IllegalArgumentException("MAPREDUCE_UNKNOWN_DIMENSION")));
+      }
+      if (!selected.contains(dimension)) {
+        selected.add(dimension);
+      }
+    }
+    if (selected.isEmpty()) {
+      selected.addAll(Arrays.asList(Dimension.values()));
+    }
+    return mapReduceService.provide("multi-dimension-top-n", requestId)
+      .onNull(() -> Result.error(new IllegalArgumentException("MAPREDUCE_JOB_CREATION_FAILED")))
+      .flatMap(mrJob -> Blocking.get(() -> {
+        LOGGER.debug("STARTING multi-dimension job execution, limit={}, dimensions={}", limit.getValue(), selected);
+        List<Path> inputPaths = selectInput(mrJob, timeInterval, inputFS);
+        if (inputPaths.isEmpty()) {
+          Map<String, List<DimensionCounter>> empty = new LinkedHashMap<>();
+          selected.forEach(dimension -> empty.put(dimension.getOutputName(), ImmutableList.of()));
+          return Result.success(new MultiTopN(empty));
+        }
+        Path outputPath = outputPath(mrJob, outputFS);
+        try {
+          metrics.time(MapReduceMetrics.SUBMIT, requestId, () -> {
+            mrJob.setJarByClass(MultiTopNFunc.class);
+            mrJob.getJob().setMapperClass(MultiTopNFunc.Mapper.class);
+            mrJob.getJob().setReducerClass(MultiTopNFunc.Reducer.class);
+            mrJob.getJob().setNumReduceTasks(Math.max(1, mrJob.getConfig().getReduceTasks()));
+            mrJob.getJob().setOutputKeyClass(Text.class);
+            mrJob.getJob().setOutputValueClass(IntWritable.class);
+            // the rankings are written only into the named outputs of the dimensions
+            LazyOutputFormat.setOutputFormatClass(mrJob.getJob(), SequenceFileOutputFormat.class);
+            MultiTopNFunc.addNamedOutputs(mrJob.getJob());
+            configureInput(mrJob, timeInterval, inputPaths, outputPath);
+            mrJob.getJob().getConfiguration().set("limit", limit.getValue().toString());
+            mrJob.getJob().getConfiguration().set(MultiTopNFunc.DIMENSIONS,
+              selected.stream().map(Dimension::getOutputName).collect(Collectors.joining(",")));
+            mrJob.submit();
+            return null;
+          });
+
+          if (!run(mrJob, requestId)) {
+            return Result.error(new RuntimeException("MAPREDUCE_TIMEOUT"));
           }
-          is.close();
+
+          TopNResultReader reader = new TopNResultReader(mrJob.getFileSystem());
+          Map<String, List<DimensionCounter>> rankings = metrics.time(MapReduceMetrics.PARSE, requestId, () -> {
+            Map<String, List<DimensionCounter>> merged = new LinkedHashMap<>();
+            for (Dimension dimension : selected) {
+              merged.put(dimension.getOutputName(), merge(reader.read(reader.listParts(outputPath, dimension.getOutputName())), limit)
+                .stream()
+                .map(counter -> new DimensionCounter(counter.getUsername(), counter.getCounter()))
+                .collect(Collectors.collectingAndThen(Collectors.toList(), ImmutableList::copyOf)));
+            }
+            return merged;
+          });
+          LOGGER.debug("END OF multi-dimension job execution");
+          return Result.success(new MultiTopN(rankings));
+        } finally {
+          mrJob.getFileSystem().delete(outputPath, true);
+        }
+      }));
+  }
+
+  @Override
+  public Promise<Result<String>> submit(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return mapReduceService.provide("top-n-users", requestId)
+      .onNull(() -> Result.error(new IllegalArgumentException("MAPREDUCE_JOB_CREATION_FAILED")))
+      .flatMap(mrJob -> Blocking.get(() -> {
+        // every submitted job writes to its own directory, so concurrent jobs do not overwrite their results
+        String jobId = jobRegistry.newId();
+        List<Path> inputPaths = selectInput(mrJob, timeInterval, inputFS);
+        if (inputPaths.isEmpty()) {
+          // nothing to calculate, the job is registered as completed with the empty result
+          return Result.success(jobRegistry.register(jobId, null, null).getId());
         }
-        LOGGER.debug("END OF job execution");
-        return Result.success(ImmutableList.copyOf(userActivityCounters));
+        Path outputPath = mrJob.getJobPath((Strings.isNullOrEmpty(outputFS) ? "output" : outputFS) + "/" + jobId);
+        metrics.time(MapReduceMetrics.SUBMIT, requestId, () -> {
+          configure(mrJob, limit, timeInterval, inputPaths, outputPath);
+          mrJob.submit();
+          return null;
+        });
+        SubmittedJob submittedJob = jobRegistry.register(jobId, mrJob, outputPath);
+        LOGGER.debug("SUBMITTED job: {}, hadoop job: {}", submittedJob.getId(), mrJob.getJob().getJobID());
+        return Result.success(submittedJob.getId());
       }));
   }
+
+  @Override
+  public Promise<Optional<JobProgress>> status(String jobId) {
+    Optional<SubmittedJob> submittedJob = jobRegistry.get(jobId);
+    if (!submittedJob.isPresent()) {
+      return Promise.value(Optional.empty());
+    }
+    return Blocking.get(() -> Optional.of(JobProgress.of(submittedJob.get())));
+  }
+
+  @Override
+  public Promise<Result<List<UserActivityCounter>>> result(String jobId, String requestId) {
+    Optional<SubmittedJob> submittedJob = jobRegistry.get(jobId);
+    if (!submittedJob.isPresent()) {
+      return Promise.value(Result.error(new IllegalArgumentException("MAPREDUCE_JOB_NOT_FOUND")));
+    }
+    return Blocking.get(() -> {
+      if (submittedJob.get().isEmpty()) {
+        return Result.success(ImmutableList.of());
+      }
+      MapReduceJob mrJob = submittedJob.get().getMrJob();
+      if (!mrJob.getJob().isComplete()) {
+        return Result.error(new IllegalStateException("MAPREDUCE_JOB_NOT_COMPLETED"));
+      }
+      if (!mrJob.getJob().isSuccessful()) {
+        return Result.error(new IllegalStateException("MAPREDUCE_JOB_FAILED"));
+      }
+      Limit limit = Limit.of(mrJob.getJob().getConfiguration().getInt("limit", 10));
+      return Result.success(read(mrJob, submittedJob.get().getOutputPath(), limit, requestId));
+    });
+  }
+
+  /**
+   * Configures the top-n job. It is blocking operation.
+   */
+  private void configure(MapReduceJob mrJob, Limit limit, TimeInterval timeInterval, List<Path> inputPaths, Path outputPath) throws Exception {
+    mrJob.setJarByClass(TopNFunc.class);
+    LOGGER.debug("FUNC JAR: {}", ClassUtil.findContainingJar(TopNFunc.class));
+    // the same job as the warm-up runs, see MapReduceWarmUp
+    TopNFunc.configure(mrJob.getJob(), limit.getValue());
+    mrJob.getJob().setNumReduceTasks(Math.max(1, mrJob.getConfig().getReduceTasks()));
+    configureInput(mrJob, timeInterval, inputPaths, outputPath);
+  }
+
+  /**
+   * Selects the input paths of the query, only the day partitions overlapping the time interval are read.
+   * It is blocking operation.
+   * @return the input paths, empty if the time interval covers no day partition and the result is empty
+   */
+  private List<Path> selectInput(MapReduceJob mrJob, TimeInterval timeInterval, String inputFS) throws Exception {
+    List<Path> inputPaths = DayPartitions.select(mrJob.getFileSystem(), inputPath(mrJob, inputFS),
+      timeInterval == null ? null : timeInterval.getDateFrom(), timeInterval == null ? null : timeInterval.getDateTo());
+    LOGGER.debug("INPUT PATHS: {}", inputPaths);
+    return inputPaths;
+  }
+
+  /**
+   * Configures input and output paths and the date filter of the job. It is blocking operation.
+   * @param inputPaths non empty input paths selected by {@link #selectInput(MapReduceJob, TimeInterval, String)}
+   */
+  private void configureInput(MapReduceJob mrJob, TimeInterval timeInterval, List<Path> inputPaths, Path outputPath) throws Exception {
+    // delete output path
+    mrJob.getFileSystem().delete(outputPath, true);
+
+    for (Path path : inputPaths) {
+      FileInputFormat.addInputPath(mrJob.getJob(), path);
+    }
+    FileInputFormat.setInputDirRecursive(mrJob.getJob(), true);
+    // plain, compressed and re-packed log files, small files packed into combined splits
+    LogInputs.configure(mrJob.getJob(), mrJob.getConfig(), mrJob.getFileSystem(), inputPaths);
+    FileOutputFormat.setOutputPath(mrJob.getJob(), outputPath);
+
+    if (timeInterval != null) {
+      mrJob.getJob().getConfiguration().set("dateFrom", timeInterval.getDateFrom().toString());
+      mrJob.getJob().getConfiguration().set("dateTo", timeInterval.getDateTo().toString());
+    }
+  }
+
+  /**
+   * Gets the output directory of the synchronous job. Every job writes to its own directory, so the concurrent jobs
+   * do not overwrite their results, and the directory is deleted when its results are read.
+   */
+  private Path outputPath(MapReduceJob mrJob, String outputFS) {
+    return mrJob.getJobPath((Strings.isNullOrEmpty(outputFS) ? "output" : outputFS) + "/" + jobRegistry.newId());
+  }
+
+  private static Path inputPath(MapReduceJob mrJob, String inputFS) {
+    return mrJob.getJobPath(Strings.isNullOrEmpty(inputFS) ? "input" : inputFS);
+  }
+
+  /**
+   * Waits for the completion of the submitted job and adds its counters to the metrics. It is blocking operation.
+   * @return true if the job succeeded
+   */
+  private boolean run(MapReduceJob mrJob, String requestId) throws Exception {
+    boolean successful = metrics.time(MapReduceMetrics.RUN, requestId, () -> mrJob.getJob().waitForCompletion(false));
+    // the counters are fetched once, every call asks the cluster
+    Counters counters = mrJob.getJob().getCounters();
+    metrics.addJobCounters(TopNCounter.class.getName(), counters);
+    if (counters != null) {
+      LOGGER.debug("MAP OUTPUT RECORDS SAVED BY IN-MAPPER COMBINING: {}",
+        counters.findCounter(TopNCounter.MAP_OUTPUT_RECORDS_SAVED).getValue());
+    }
+    return successful;
+  }
+
+  /**
+   * Reads the results of the completed top-n job. It is blocking operation.
+   */
+  private List<UserActivityCounter> read(MapReduceJob mrJob, Path outputPath, Limit limit, String requestId) throws Exception {
+    TopNResultReader reader = new TopNResultReader(mrJob.getFileSystem());
+    FileStatus[] parts = metrics.time(MapReduceMetrics.LIST, requestId, () -> reader.listParts(outputPath));
+    List<UserActivityCounter> userActivityCounters = metrics.time(MapReduceMetrics.PARSE, requestId,
+      () -> merge(reader.read(parts), limit));
+    return userActivityCounters;
+  }
+
+  /**
+   * Reads the merged sketch of the completed approximate top-n job and selects the top-n users. It is blocking operation.
+   */
+  private ApproximateTopN readSketch(MapReduceJob mrJob, Path outputPath, Limit limit) throws Exception {
+    SpaceSavingSketch sketch = new SpaceSavingSketch();
+    TopNResultReader reader = new TopNResultReader(mrJob.getFileSystem());
+    for (FileStatus part : reader.listParts(outputPath)) {
+      try (SequenceFile.Reader in = new SequenceFile.Reader(mrJob.getFileSystem().getConf(), SequenceFile.Reader.file(part.getPath()))) {
+        in.next(NullWritable.get(), sketch);
+      }
+    }
+    ImmutableList.Builder<ApproximateUserActivityCounter> users = ImmutableList.builder();
+    int[] remaining = {limit.getValue()};
+    sketch.forEachDescending((bytes, offset, length, count, error) -> {
+      if (remaining[0]-- > 0) {
+        users.add(new ApproximateUserActivityCounter(new String(bytes, offset, length, StandardCharsets.UTF_8), count, error));
+      }
+    });
+    return new ApproximateTopN(sketch.capacity(), sketch.totalCount(), users.build());
+  }
+
+  /**
+   * Merges top-n results of all reducers into the global top-n.
+   * <p>
+   * Every reducer writes at most {@code limit} users of its partition, so at most {@code limit * reducers} users are sorted.
+   */
+  private static List<UserActivityCounter> merge(List<UserActivityCounter> userActivityCounters, Limit limit) {
+    return userActivityCounters
+      .stream()
+      .sorted(Comparator.comparingInt(UserActivityCounter::getCounter).reversed().thenComparing(UserActivityCounter::getUsername))
+      .limit(limit.getValue())
+      .collect(Collectors.collectingAndThen(Collectors.toList(), ImmutableList::copyOf));
+  }
 }
@@ -0,0 +1,483 @@
+package rpex.hadoop.mr.topn.internal;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import mr.func.ingest.AccessLogInputFormat;
+import mr.func.topn.AccessLogParser;
+import mr.func.topn.TopNHeap;
+import mr.func.topn.UserCounterTable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.exec.Blocking;
+import ratpack.exec.Promise;
+import ratpack.exec.Result;
+import ratpack.server.Service;
+import ratpack.server.StopEvent;
+import ratpack.stream.Streams;
+import rpex.hadoop.mr.JobProgress;
+import rpex.hadoop.mr.ingest.DayPartitions;
+import rpex.hadoop.mr.topn.TopNService;
+import rpex.hadoop.mr.topn.model.ApproximateTopN;
+import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.MultiTopN;
+import rpex.hadoop.mr.topn.model.TimeInterval;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Calculates top-n users in-process, for local and single-node deployments, without hadoop's job runner.
+ * <p>
+ * Input log files are memory-mapped and split at line boundaries into segments counted on all cores by
+ * fork-join tasks. Every task counts users in its own {@link UserCounterTable}, the tables are merged when
+ * the tasks join and the result is selected with the {@link TopNHeap}. Lines are parsed with the same
+ * {@link AccessLogParser} as in the map-reduce job, so the results are the same. Lines end at {@code \n},
+ * {@code \r\n} or a lone {@code \r}, as in hadoop's {@code LineReader}. Lines longer than the buffer
+ * are read again from the file. Compressed and sequence files, see {@link AccessLogInputFormat}, are not mapped,
+ * they are read by hadoop's readers, one task per file.
+ * <p>
+ * Asynchronous, approximate and multi-dimension jobs are delegated to the map-reduce implementation.
+ * <p>
+ * The fork-join pool is created by the first query and shut down with the server.
+ */
+public class LocalTopNService implements TopNService, Service {
+  private final Logger LOGGER = LoggerFactory.getLogger(LocalTopNService.class);
+
+  /**
+   * Default size of the segment counted by a single task.
+   */
+  public static final long DEFAULT_SEGMENT_SIZE = 16L * 1024 * 1024;
+  /**
+   * Default maximal length of the line in the buffer, longer lines are read again from the file.
+   */
+  public static final int DEFAULT_MAX_LINE_LENGTH = 64 * 1024;
+
+  private final Path localDataDir;
+  private final TopNService delegate;
+  private final long segmentSize;
+  private final int maxLineLength;
+  // created by the first query, guarded by this
+  private ForkJoinPool pool;
+  private boolean stopped;
+  private final Configuration conf = new Configuration();
+  private final CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+
+  /**
+   * Creates the service.
+   * @param localDataDir a local directory resolving the {@code inputFS} names
+   * @param delegate a map-reduce implementation executing asynchronous jobs
+   */
+  public LocalTopNService(Path localDataDir, TopNService delegate) {
+    this(localDataDir, delegate, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_LINE_LENGTH);
+  }
+
+  /**
+   * Creates the service.
+   * @param localDataDir a local directory resolving the {@code inputFS} names
+   * @param delegate a map-reduce implementation executing asynchronous jobs
+   * @param segmentSize a size of the file segment counted by a single task, larger segments are split
+   * @param maxLineLength a maximal length of the line in the buffer, longer lines are read again from the file
+   */
+  public LocalTopNService(Path localDataDir, TopNService delegate, long segmentSize, int maxLineLength) {
+    this.localDataDir = localDataDir;
+    this.delegate = delegate;
+    this.segmentSize = Math.max(1, segmentSize);
+    this.maxLineLength = Math.max(1, maxLineLength);
+  }
+
+  @Override
+  public void onStop(StopEvent event) throws Exception {
+    if (event.isReload()) {
+      return;
+    }
+    ForkJoinPool stoppedPool;
+    synchronized (this) {
+      stopped = true;
+      stoppedPool = pool;
+      pool = null;
+    }
+    if (stoppedPool != null) {
+      // the running queries complete, the idle workers terminate
+      stoppedPool.shutdown();
+      LOGGER.debug("END OF local top-n pool");
+    }
+  }
+
+  @Override
+  public Promise<Result<List<UserActivityCounter>>> apply(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return Blocking.get(() -> {
+      LOGGER.debug("STARTING local execution, limit={}", limit.getValue());
+      List<Path> files = inputFiles(localDataDir.resolve(Strings.isNullOrEmpty(inputFS) ? "input" : inputFS), timeInterval);
+      long dayFrom = timeInterval == null ? Long.MIN_VALUE : timeInterval.getDateFrom().toEpochDay();
+      long dayTo = timeInterval == null ? Long.MAX_VALUE : timeInterval.getDateTo().toEpochDay();
+
+      List<RecursiveTask<UserCounterTable>> tasks = new ArrayList<>();
+      for (Path file : files) {
+        long size = Files.size(file);
+        if (size == 0) {
+          continue;
+        }
+        org.apache.hadoop.fs.Path hadoopFile = new org.apache.hadoop.fs.Path(file.toUri());
+        CompressionCodec codec = codecs.getCodec(hadoopFile);
+        if (codec != null || AccessLogInputFormat.isSequenceFile(hadoopFile, conf, codecs)) {
+          tasks.add(new ReadTask(hadoopFile, codec, conf, dayFrom, dayTo));
+        } else {
+          tasks.add(new CountTask(file, 0, size, size, dayFrom, dayTo));
+        }
+      }
+      UserCounterTable counters = pool().invoke(new MergeTask(tasks));
+
+      TopNHeap topN = new TopNHeap(limit.getValue());
+      counters.forEach(topN::offer);
+      ImmutableList.Builder<UserActivityCounter> result = ImmutableList.builder();
+      topN.drainDescending((bytes, offset, length, count) ->
+        result.add(new UserActivityCounter(new String(bytes, offset, length, StandardCharsets.UTF_8), count)));
+      LOGGER.debug("END OF local execution, files: {}", files.size());
+      return Result.success(result.build());
+    });
+  }
+
+  @Override
+  public Promise<Result<Publisher<List<UserActivityCounter>>>> stream(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    // the counting tables are in memory anyway, the result is published in batches
+    return apply(limit, timeInterval, inputFS, outputFS, requestId)
+      .map(result -> result.isSuccess()
+        ? Result.success(Streams.publish(Lists.partition(result.getValue(), TopNResultPublisher.DEFAULT_BATCH_SIZE)))
+        : Result.error(result.getThrowable()));
+  }
+
+  @Override
+  public Promise<Result<ApproximateTopN>> approximate(Limit limit, int capacity, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return delegate.approximate(limit, capacity, timeInterval, inputFS, outputFS, requestId);
+  }
+
+  @Override
+  public Promise<Result<MultiTopN>> multiDimension(Limit limit, List<String> dimensions, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return delegate.multiDimension(limit, dimensions, timeInterval, inputFS, outputFS, requestId);
+  }
+
+  @Override
+  public Promise<Result<String>> submit(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+    return delegate.submit(limit, timeInterval, inputFS, outputFS, requestId);
+  }
+
+  @Override
+  public Promise<Optional<JobProgress>> status(String jobId) {
+    return delegate.status(jobId);
+  }
+
+  @Override
+  public Promise<Result<List<UserActivityCounter>>> result(String jobId, String requestId) {
+    return delegate.result(jobId, requestId);
+  }
+
+  private synchronized ForkJoinPool pool() {
+    if (stopped) {
+      throw new IllegalStateException("MAPREDUCE_LOCAL_ENGINE_STOPPED");
+    }
+    if (pool == null) {
+      pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+    return pool;
+  }
+
+  /**
+   * Lists input files, reading only the day partitions of the time interval if the input is partitioned.
+   */
+  private static List<Path> inputFiles(Path input, TimeInterval timeInterval) throws IOException {
+    if (!Files.isDirectory(input)) {
+      return Files.isRegularFile(input) ? ImmutableList.of(input) : ImmutableList.of();
+    }
+    try (Stream<Path> paths = Files.walk(input)) {
+      return paths
+        .filter(Files::isRegularFile)
+        .filter(path -> !isHidden(input.relativize(path)))
+        .filter(path -> {
+          if (timeInterval == null || path.getParent().equals(input)) {
+            return true;
+          }
+          LocalDate date = DayPartitions.dateOf(path.getParent().getFileName().toString());
+          return date == null || (!date.isBefore(timeInterval.getDateFrom()) && !date.isAfter(timeInterval.getDateTo()));
+        })
+        .collect(Collectors.toList());
+    }
+  }
+
+  private static boolean isHidden(Path relative) {
+    for (Path name : relative) {
+      if (name.toString().startsWith("_") || name.toString().startsWith(".")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Runs counting tasks of all files and merges their tables.
+   */
+  private static class MergeTask extends RecursiveTask<UserCounterTable> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<RecursiveTask<UserCounterTable>> tasks;
+
+    MergeTask(List<RecursiveTask<UserCounterTable>> tasks) {
+      this.tasks = tasks;
+    }
+
+    @Override
+    protected UserCounterTable compute() {
+      invokeAll(tasks);
+      UserCounterTable merged = new UserCounterTable(Integer.MAX_VALUE);
+      for (RecursiveTask<UserCounterTable> task : tasks) {
+        merge(merged, task.join());
+      }
+      return merged;
+    }
+  }
+
+  /**
+   * Counts users of the lines starting within {@code [start, end)} of the file.
+   * Segments larger than the {@code segmentSize} are split in halves.
+   */
+  private class CountTask extends RecursiveTask<UserCounterTable> {
+    private static final long serialVersionUID = 1L;
+
+    private final Path file;
+    private final long start;
+    private final long end;
+    private final long fileSize;
+    private final long dayFrom;
+    private final long dayTo;
+
+    CountTask(Path file, long start, long end, long fileSize, long dayFrom, long dayTo) {
+      this.file = file;
+      this.start = start;
+      this.end = end;
+      this.fileSize = fileSize;
+      this.dayFrom = dayFrom;
+      this.dayTo = dayTo;
+    }
+
+    @Override
+    protected UserCounterTable compute() {
+      if (end - start > segmentSize) {
+        long middle = start + (end - start) / 2;
+        CountTask left = new CountTask(file, start, middle, fileSize, dayFrom, dayTo);
+        CountTask right = new CountTask(file, middle, end, fileSize, dayFrom, dayTo);
+        right.fork();
+        UserCounterTable counters = left.compute();
+        merge(counters, right.join());
+        return counters;
+      }
+      try {
+        return count();
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+
+    private UserCounterTable count() throws IOException {
+      UserCounterTable counters = new UserCounterTable(Integer.MAX_VALUE);
+      // the segment starts one byte earlier to find out if its first line starts exactly at start,
+      // and ends later to read the whole line started before the end
+      long mapStart = Math.max(0, start - 1);
+      long mapEnd = Math.min(fileSize, end + maxLineLength);
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int limit = buffer.limit();
+        int segmentEnd = (int) (end - mapStart);
+        int pos = 0;
+        if (start > 0) {
+          // skip the line started in the previous segment
+          while (pos < limit && !isTerminator(buffer.get(pos))) {
+            pos++;
+          }
+          pos = nextLine(buffer, pos, limit);
+        }
+        byte[] line = new byte[maxLineLength];
+        while (pos < segmentEnd && pos < limit) {
+          int length = 0;
+          int i = pos;
+          for (; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (isTerminator(b)) {
+              break;
+            }
+            if (length < maxLineLength) {
+              line[length++] = b;
+            }
+          }
+          if (i - pos > maxLineLength || (i == limit && mapEnd < fileSize)) {
+            // the line does not fit into the buffer or the mapped region, the map-reduce job counts it too
+            byte[] longLine = readLine(channel, mapStart + pos);
+            length = longLine.length;
+            while (length > 0 && isTerminator(longLine[length - 1])) {
+              length--;
+            }
+            countLine(counters, longLine, length, dayFrom, dayTo);
+            if (mapStart + pos + longLine.length >= end) {
+              break;
+            }
+            pos += longLine.length;
+            continue;
+          }
+          countLine(counters, line, length, dayFrom, dayTo);
+          pos = nextLine(buffer, i, limit);
+        }
+      }
+      return counters;
+    }
+
+    /**
+     * Reads the line starting at the offset of the file, with its terminator.
+     */
+    private byte[] readLine(FileChannel channel, long offset) throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream(2 * maxLineLength);
+      ByteBuffer buffer = ByteBuffer.allocate(maxLineLength);
+      boolean carriageReturn = false;
+      int read;
+      while ((read = channel.read(buffer, offset)) > 0) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          byte b = buffer.get();
+          if (carriageReturn) {
+            if (b == '\n') {
+              line.write(b);
+            }
+            return line.toByteArray();
+          }
+          line.write(b);
+          if (b == '\n') {
+            return line.toByteArray();
+          }
+          carriageReturn = b == '\r';
+        }
+        offset += read;
+        buffer.clear();
+      }
+      return line.toByteArray();
+    }
+  }
+
+  private static boolean isTerminator(byte b) {
+    return b == '\n' || b == '\r';
+  }
+
+  /**
+   * Gets the start of the line following the terminator at the position, {@code \r\n} is a single terminator.
+   */
+  private static int nextLine(MappedByteBuffer buffer, int pos, int limit) {
+    if (pos + 1 < limit && buffer.get(pos) == '\r' && buffer.get(pos + 1) == '\n') {
+      return pos + 2;
+    }
+    return pos + 1;
+  }
+
+  /**
+   * Counts users of the compressed text file or the sequence file of log lines, read from the start to the end
+   * by hadoop's readers as in {@link AccessLogInputFormat}.
+   */
+  private static class ReadTask extends RecursiveTask<UserCounterTable> {
+    private static final long serialVersionUID = 1L;
+
+    private final org.apache.hadoop.fs.Path file;
+    private final CompressionCodec codec;
+    private final Configuration conf;
+    private final long dayFrom;
+    private final long dayTo;
+
+    ReadTask(org.apache.hadoop.fs.Path file, CompressionCodec codec, Configuration conf, long dayFrom, long dayTo) {
+      this.file = file;
+      this.codec = codec;
+      this.conf = conf;
+      this.dayFrom = dayFrom;
+      this.dayTo = dayTo;
+    }
+
+    @Override
+    protected UserCounterTable compute() {
+      try {
+        return codec == null ? readSequenceFile() : readCompressed();
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+
+    private UserCounterTable readCompressed() throws IOException {
+      UserCounterTable counters = new UserCounterTable(Integer.MAX_VALUE);
+      FileSystem fileSystem = file.getFileSystem(conf);
+      try (FSDataInputStream raw = fileSystem.open(file);
+           InputStream in = codec.createInputStream(raw)) {
+        LineReader reader = new LineReader(in, conf);
+        Text line = new Text();
+        while (reader.readLine(line) > 0) {
+          countLine(counters, line.getBytes(), line.getLength(), dayFrom, dayTo);
+        }
+      }
+      return counters;
+    }
+
+    private UserCounterTable readSequenceFile() throws IOException {
+      UserCounterTable counters = new UserCounterTable(Integer.MAX_VALUE);
+      try (SequenceFile.Reader reader = new SequenceFile.Reader(conf, SequenceFile.Reader.file(file))) {
+        Writable key = (Writable) ReflectionUtils.newInstance(reader.getKeyClass(), conf);
+        Text line = new Text();
+        while (reader.next(key, line)) {
+          countLine(counters, line.getBytes(), line.getLength(), dayFrom, dayTo);
+        }
+      }
+      return counters;
+    }
+  }
+
+  private static void countLine(UserCounterTable counters, byte[] line, int length, long dayFrom, long dayTo) {
+    if (dayFrom != Long.MIN_VALUE) {
+      int day = AccessLogParser.parseDay(line, length);
+      if (day == AccessLogParser.NO_DAY || day < dayFrom || day > dayTo) {
+        return;
+      }
+    }
+    int username = AccessLogParser.findUsername(line, length);
+    if (username != AccessLogParser.NO_USERNAME) {
+      counters.increment(line, username, AccessLogParser.USERNAME_LENGTH, 1);
+    }
+  }
+
+  private static void merge(UserCounterTable target, UserCounterTable source) {
+    try {
+      source.forEach(target::increment);
+    } catch (IOException | InterruptedException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
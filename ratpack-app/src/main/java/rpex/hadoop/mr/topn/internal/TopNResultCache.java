@@ -0,0 +1,257 @@
+package rpex.hadoop.mr.topn.internal;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rpex.hadoop.mr.InputFingerprint;
+import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.TimeInterval;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache of the top-n results: bounded in-memory LRU tier and optional local disk tier that survives restarts.
+ * <p>
+ * The cache key contains the query and the {@link InputFingerprint} of the input directory, so results calculated
+ * for older input are never returned. When a new fingerprint of the input is seen, all entries of the input
+ * are invalidated in both tiers.
+ * <p>
+ * Disk operations are blocking and have to be executed on the blocking threads.
+ */
+public class TopNResultCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TopNResultCache.class);
+
+  private static final int FILE_FORMAT_VERSION = 1;
+  private static final String FILE_SUFFIX = ".topn";
+
+  private final Cache<String, List<UserActivityCounter>> memory;
+  private final Path diskDir;
+  private final int diskMaxEntries;
+  private final Map<String, InputFingerprint> fingerprints = new ConcurrentHashMap<>();
+
+  private final AtomicLong memoryHits = new AtomicLong();
+  private final AtomicLong diskHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong memoryEvictions = new AtomicLong();
+  private final AtomicLong diskEvictions = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  /**
+   * Creates the cache.
+   * @param memoryMaxEntries a maximal number of results kept in memory
+   * @param diskDir a local directory for the disk tier, {@code null} disables the disk tier
+   * @param diskMaxEntries a maximal number of results kept on disk
+   */
+  public TopNResultCache(int memoryMaxEntries, Path diskDir, int diskMaxEntries) {
+    this.memory = CacheBuilder.newBuilder()
+      .maximumSize(memoryMaxEntries)
+      .removalListener(notification -> {
+        if (notification.getCause() == RemovalCause.SIZE) {
+          memoryEvictions.incrementAndGet();
+        }
+      })
+      .build();
+    this.diskDir = diskDir;
+    this.diskMaxEntries = diskMaxEntries;
+    if (diskDir != null) {
+      try {
+        Files.createDirectories(diskDir);
+      } catch (IOException ex) {
+        throw new IllegalStateException("TOPN_CACHE_DIR_NOT_AVAILABLE: " + diskDir, ex);
+      }
+    }
+  }
+
+  /**
+   * Creates the cache key for the query on the input.
+   * @param limit a limit for the number of the most active users
+   * @param timeInterval a time interval, may be {@code null}
+   * @param inputFS a hadoop file system where user activity logs are stored
+   * @param fingerprint a fingerprint of the {@code inputFS}
+   * @return the cache key
+   */
+  public String key(Limit limit, TimeInterval timeInterval, String inputFS, InputFingerprint fingerprint) {
+    return inputPrefix(inputFS) + "-" + Hashing.sha1().hashString(
+      inputFS + "|" + fingerprint.asKey() + "|" + limit.getValue() + "|"
+        + (timeInterval == null ? "" : timeInterval.getDateFrom() + "|" + timeInterval.getDateTo()),
+      StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Gets cached result, looking into memory tier first and then into disk tier.
+   * <p>
+   * Invalidates all entries of the {@code inputFS} if its fingerprint has changed.
+   * @param inputFS a hadoop file system where user activity logs are stored
+   * @param fingerprint a current fingerprint of the {@code inputFS}
+   * @param key a cache key created by {@link #key(Limit, TimeInterval, String, InputFingerprint)}
+   * @return the cached result or {@code null}
+   */
+  public List<UserActivityCounter> get(String inputFS, InputFingerprint fingerprint, String key) {
+    InputFingerprint previous = fingerprints.put(inputFS, fingerprint);
+    if (previous != null && !previous.equals(fingerprint)) {
+      LOGGER.debug("INPUT CHANGED: {}, {} -> {}", inputFS, previous, fingerprint);
+      invalidate(inputFS);
+    }
+
+    List<UserActivityCounter> result = memory.getIfPresent(key);
+    if (result != null) {
+      memoryHits.incrementAndGet();
+      return result;
+    }
+    result = readFromDisk(key);
+    if (result != null) {
+      diskHits.incrementAndGet();
+      memory.put(key, result);
+      return result;
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Puts the result into both tiers.
+   * @param key a cache key created by {@link #key(Limit, TimeInterval, String, InputFingerprint)}
+   * @param result a top-n result
+   */
+  public void put(String key, List<UserActivityCounter> result) {
+    List<UserActivityCounter> value = ImmutableList.copyOf(result);
+    memory.put(key, value);
+    writeToDisk(key, value);
+  }
+
+  /**
+   * Removes all entries calculated for the {@code inputFS}.
+   * @param inputFS a hadoop file system where user activity logs are stored
+   */
+  public void invalidate(String inputFS) {
+    invalidations.incrementAndGet();
+    String prefix = inputPrefix(inputFS) + "-";
+    memory.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    if (diskDir == null) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDir, prefix + "*" + FILE_SUFFIX)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException ex) {
+      LOGGER.warn("TOPN_CACHE_INVALIDATION_FAILED: {}", ex.getMessage());
+    }
+  }
+
+  /**
+   * @return the snapshot of cache statistics
+   */
+  public Stats stats() {
+    return new Stats(memory.size(), memoryHits.get(), diskHits.get(), misses.get(), memoryEvictions.get(),
+      diskEvictions.get(), invalidations.get());
+  }
+
+  private List<UserActivityCounter> readFromDisk(String key) {
+    if (diskDir == null) {
+      return null;
+    }
+    Path file = diskDir.resolve(key + FILE_SUFFIX);
+    if (!Files.exists(file)) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != FILE_FORMAT_VERSION) {
+        return null;
+      }
+      int size = in.readInt();
+      ImmutableList.Builder<UserActivityCounter> result = ImmutableList.builder();
+      for (int i = 0; i < size; i++) {
+        result.add(new UserActivityCounter(in.readUTF(), in.readInt()));
+      }
+      // the last modification time is used as the last access time by the disk eviction
+      Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      return result.build();
+    } catch (IOException ex) {
+      LOGGER.warn("TOPN_CACHE_READ_FAILED: {}, {}", file, ex.getMessage());
+      return null;
+    }
+  }
+
+  private void writeToDisk(String key, List<UserActivityCounter> result) {
+    if (diskDir == null) {
+      return;
+    }
+    Path file = diskDir.resolve(key + FILE_SUFFIX);
+    try {
+      Path tmp = Files.createTempFile(diskDir, key, ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(FILE_FORMAT_VERSION);
+        out.writeInt(result.size());
+        for (UserActivityCounter counter : result) {
+          out.writeUTF(counter.getUsername());
+          out.writeInt(counter.getCounter());
+        }
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      evictFromDisk();
+    } catch (IOException ex) {
+      LOGGER.warn("TOPN_CACHE_WRITE_FAILED: {}, {}", file, ex.getMessage());
+    }
+  }
+
+  private synchronized void evictFromDisk() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(diskDir, "*" + FILE_SUFFIX)) {
+      stream.forEach(files::add);
+    }
+    if (files.size() <= diskMaxEntries) {
+      return;
+    }
+    files.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+    for (Path file : files.subList(0, files.size() - diskMaxEntries)) {
+      if (Files.deleteIfExists(file)) {
+        diskEvictions.incrementAndGet();
+      }
+    }
+  }
+
+  private static String inputPrefix(String inputFS) {
+    return Hashing.sha1().hashString(inputFS, StandardCharsets.UTF_8).toString().substring(0, 16);
+  }
+
+  /**
+   * Statistics of the cache.
+   */
+  @Getter
+  @AllArgsConstructor
+  @ToString
+  public static class Stats {
+    private final long memoryEntries;
+    private final long memoryHits;
+    private final long diskHits;
+    private final long misses;
+    private final long memoryEvictions;
+    private final long diskEvictions;
+    private final long invalidations;
+  }
+}
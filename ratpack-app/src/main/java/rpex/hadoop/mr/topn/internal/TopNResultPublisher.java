@@ -0,0 +1,168 @@
+package rpex.hadoop.mr.topn.internal;
+
+import com.google.common.collect.ImmutableList;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes top-n results read by the {@link TopNResultReader.Cursor} in batches, as the subscriber requests them.
+ * <p>
+ * Reading is blocking, so the batches are read and emitted on the {@code executor}. Only the requested batches
+ * are read, so a slow client holds at most one batch in memory. The cursor is closed when the results end,
+ * on error and on cancel. A publisher which is never subscribed, e.g. when the client has gone before the response,
+ * has to be closed with {@link #close()}.
+ * <p>
+ * The publisher supports a single subscriber.
+ */
+public class TopNResultPublisher implements Publisher<List<UserActivityCounter>>, Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TopNResultPublisher.class);
+
+  /**
+   * Default number of counters in one published batch.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 512;
+
+  private final TopNResultReader.Cursor cursor;
+  private final int batchSize;
+  private final Executor executor;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  /**
+   * Creates the publisher.
+   * @param cursor a cursor over the job results, owned by the publisher
+   * @param batchSize a maximal number of counters in one published batch
+   * @param executor an executor for blocking reads
+   */
+  public TopNResultPublisher(TopNResultReader.Cursor cursor, int batchSize, Executor executor) {
+    this.cursor = cursor;
+    this.batchSize = batchSize;
+    this.executor = executor;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super List<UserActivityCounter>> subscriber) {
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("TOPN_STREAM_ALREADY_SUBSCRIBED"));
+      return;
+    }
+    subscriber.onSubscribe(new CursorSubscription(subscriber));
+  }
+
+  /**
+   * Closes the cursor on the {@code executor} if the publisher has not been subscribed yet, later subscribers get an error.
+   * The subscribed publisher closes the cursor itself, so closing it does nothing.
+   */
+  @Override
+  public void close() {
+    if (subscribed.compareAndSet(false, true)) {
+      executor.execute(this::closeCursor);
+    }
+  }
+
+  private class CursorSubscription implements Subscription {
+    private final Subscriber<? super List<UserActivityCounter>> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    // number of drain requests, the drain loop runs on one thread at a time
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile boolean done;
+    // error of an invalid request, signalled by the drain loop
+    private volatile Throwable error;
+
+    CursorSubscription(Subscriber<? super List<UserActivityCounter>> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        error = new IllegalArgumentException("non-positive request: " + n);
+        drain();
+        return;
+      }
+      demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      done = true;
+      drain();
+    }
+
+    private void drain() {
+      if (wip.getAndIncrement() == 0) {
+        executor.execute(this::drainLoop);
+      }
+    }
+
+    private void drainLoop() {
+      int missed = 1;
+      do {
+        while (!done && error == null && demand.get() > 0) {
+          try {
+            List<UserActivityCounter> batch = nextBatch();
+            if (batch.isEmpty()) {
+              done = true;
+              closeCursor();
+              subscriber.onComplete();
+              return;
+            }
+            demand.decrementAndGet();
+            subscriber.onNext(batch);
+          } catch (Exception ex) {
+            error = ex;
+          }
+        }
+        if (!done && error != null) {
+          done = true;
+          closeCursor();
+          subscriber.onError(error);
+          return;
+        }
+        if (done) {
+          closeCursor();
+          return;
+        }
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private List<UserActivityCounter> nextBatch() throws IOException {
+      ImmutableList.Builder<UserActivityCounter> batch = ImmutableList.builder();
+      UserActivityCounter userActivityCounter;
+      for (int i = 0; i < batchSize && (userActivityCounter = cursor.next()) != null; i++) {
+        batch.add(userActivityCounter);
+      }
+      return batch.build();
+    }
+  }
+
+  private void closeCursor() {
+    try {
+      cursor.close();
+    } catch (IOException ex) {
+      LOGGER.warn("TOPN_STREAM_CLOSE_FAILED: {}", ex.getMessage());
+    }
+  }
+}
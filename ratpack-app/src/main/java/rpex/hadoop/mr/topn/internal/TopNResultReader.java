@@ -0,0 +1,207 @@
+package rpex.hadoop.mr.topn.internal;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Reads results of the top-n map-reduce job.
+ * <p>
+ * The job writes (username, counter) pairs into {@link SequenceFile}s, one {@code part-*} file per reducer.
+ * The part files are read one by one on the calling, blocking thread and decoded directly into
+ * {@link UserActivityCounter}s, or incrementally merged by the {@link Cursor}. They are not read on the common
+ * fork-join pool, a blocking read of a slow data node would stall its other tasks.
+ */
+public class TopNResultReader {
+  private final FileSystem fileSystem;
+
+  public TopNResultReader(FileSystem fileSystem) {
+    this.fileSystem = fileSystem;
+  }
+
+  /**
+   * Lists the reducers output files.
+   * @param outputPath a path to the job output directory
+   * @return the {@code part-*} files
+   */
+  public FileStatus[] listParts(Path outputPath) throws IOException {
+    return fileSystem.listStatus(outputPath, path -> path.getName().startsWith("part"));
+  }
+
+  /**
+   * Lists the reducers files of the named output, written with {@code MultipleOutputs}.
+   * @param outputPath a path to the job output directory
+   * @param namedOutput a name of the output
+   * @return the {@code <namedOutput>-r-*} files
+   */
+  public FileStatus[] listParts(Path outputPath, String namedOutput) throws IOException {
+    return fileSystem.listStatus(outputPath, path -> path.getName().startsWith(namedOutput + "-"));
+  }
+
+  /**
+   * Reads all reducers output files from the job output directory.
+   * @param outputPath a path to the job output directory
+   * @return the user activity counters of all reducers, in no particular order between the reducers
+   */
+  public List<UserActivityCounter> read(Path outputPath) throws IOException {
+    return read(listParts(outputPath));
+  }
+
+  /**
+   * Reads the reducers output files.
+   * @param parts the {@code part-*} files listed with {@link #listParts(Path)}
+   * @return the user activity counters of all reducers, in no particular order between the reducers
+   */
+  public List<UserActivityCounter> read(FileStatus[] parts) throws IOException {
+    List<UserActivityCounter> userActivityCounters = new ArrayList<>();
+    for (FileStatus part : parts) {
+      userActivityCounters.addAll(readPart(part.getPath()));
+    }
+    return userActivityCounters;
+  }
+
+  /**
+   * Reads single reducer output file.
+   * @param part a path to the {@code part-*} file
+   * @return the user activity counters in the order written by the reducer
+   */
+  public List<UserActivityCounter> readPart(Path part) throws IOException {
+    List<UserActivityCounter> userActivityCounters = new ArrayList<>();
+    try (SequenceFile.Reader reader = new SequenceFile.Reader(fileSystem.getConf(), SequenceFile.Reader.file(part))) {
+      Text username = new Text();
+      IntWritable counter = new IntWritable();
+      while (reader.next(username, counter)) {
+        userActivityCounters.add(new UserActivityCounter(username.toString(), counter.get()));
+      }
+    }
+    return userActivityCounters;
+  }
+
+  /**
+   * Opens the cursor merging all reducers output files of the job output directory.
+   * @param outputPath a path to the job output directory
+   * @param limit a maximal number of counters returned by the cursor
+   * @return the cursor, it has to be closed
+   */
+  public Cursor open(Path outputPath, int limit) throws IOException {
+    return open(outputPath, limit, false);
+  }
+
+  /**
+   * Opens the cursor merging all reducers output files of the job output directory.
+   * @param outputPath a path to the job output directory
+   * @param limit a maximal number of counters returned by the cursor
+   * @param deleteOnClose true if the output directory is deleted when the cursor is closed
+   * @return the cursor, it has to be closed
+   */
+  public Cursor open(Path outputPath, int limit, boolean deleteOnClose) throws IOException {
+    Cursor cursor = new Cursor(limit, deleteOnClose ? fileSystem : null, outputPath);
+    try {
+      for (FileStatus part : listParts(outputPath)) {
+        cursor.add(new SequenceFile.Reader(fileSystem.getConf(), SequenceFile.Reader.file(part.getPath())));
+      }
+    } catch (IOException ex) {
+      cursor.close();
+      throw ex;
+    }
+    return cursor;
+  }
+
+  /**
+   * Merges the part files sorted from the most active user, reading one counter per file ahead.
+   * Returns the counters from the most active user, as {@code DefaultTopNService} sorts the merged results.
+   * <p>
+   * The cursor is not thread safe.
+   */
+  public static class Cursor implements Closeable {
+    private static final Comparator<Head> ORDER = Comparator
+      .comparingInt((Head head) -> head.counter.get()).reversed()
+      .thenComparing(head -> head.username);
+
+    private final PriorityQueue<Head> heads = new PriorityQueue<>(ORDER);
+    private final List<SequenceFile.Reader> readers = new ArrayList<>();
+    // the file system of the output directory deleted on close, or null
+    private final FileSystem fileSystem;
+    private final Path outputPath;
+    private int remaining;
+
+    private Cursor(int limit, FileSystem fileSystem, Path outputPath) {
+      this.remaining = limit;
+      this.fileSystem = fileSystem;
+      this.outputPath = outputPath;
+    }
+
+    private void add(SequenceFile.Reader reader) throws IOException {
+      readers.add(reader);
+      Head head = new Head(reader);
+      if (head.advance()) {
+        heads.add(head);
+      }
+    }
+
+    /**
+     * @return the next counter or {@code null} if there are no more counters
+     */
+    public UserActivityCounter next() throws IOException {
+      if (remaining <= 0 || heads.isEmpty()) {
+        return null;
+      }
+      Head head = heads.poll();
+      UserActivityCounter userActivityCounter = new UserActivityCounter(head.username.toString(), head.counter.get());
+      if (head.advance()) {
+        heads.add(head);
+      }
+      remaining--;
+      return userActivityCounter;
+    }
+
+    @Override
+    public void close() throws IOException {
+      IOException failure = null;
+      for (SequenceFile.Reader reader : readers) {
+        try {
+          reader.close();
+        } catch (IOException ex) {
+          failure = ex;
+        }
+      }
+      readers.clear();
+      heads.clear();
+      if (fileSystem != null) {
+        try {
+          fileSystem.delete(outputPath, true);
+        } catch (IOException ex) {
+          failure = ex;
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  private static class Head {
+    private final SequenceFile.Reader reader;
+    private final Text username = new Text();
+    private final IntWritable counter = new IntWritable();
+
+    private Head(SequenceFile.Reader reader) {
+      this.reader = reader;
+    }
+
+    private boolean advance() throws IOException {
+      return reader.next(username, counter);
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package rpex.hadoop.mr.topn.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Approximate top-n result, calculated with sketches monitoring at most {@code capacity} users.
+ * <p>
+ * Every user more active than {@code totalCount / capacity} is found. Counters overestimate the activity
+ * by at most their errors.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class ApproximateTopN {
+  private final int capacity;
+  private final long totalCount;
+  private final List<ApproximateUserActivityCounter> users;
+
+  /**
+   * @return always true, marks the result as approximate
+   */
+  public boolean isApproximate() {
+    return true;
+  }
+}
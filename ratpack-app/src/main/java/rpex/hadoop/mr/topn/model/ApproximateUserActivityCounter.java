@@ -0,0 +1,20 @@
+package rpex.hadoop.mr.topn.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Estimated user activity counter. The true number of requests sent by the user is between
+ * {@code counter - error} and {@code counter}.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class ApproximateUserActivityCounter {
+  private final String username;
+  private final long counter;
+  private final long error;
+}
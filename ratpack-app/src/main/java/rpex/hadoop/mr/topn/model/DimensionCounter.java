@@ -0,0 +1,18 @@
+package rpex.hadoop.mr.topn.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Counter of the access log lines with the same value of a dimension, e.g. the same client IP.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+@EqualsAndHashCode
+public class DimensionCounter {
+  private final String value;
+  private final int counter;
+}
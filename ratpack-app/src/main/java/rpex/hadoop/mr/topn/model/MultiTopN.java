@@ -0,0 +1,21 @@
+package rpex.hadoop.mr.topn.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Top-n rankings of several dimensions calculated in a single scan of the access logs.
+ * <p>
+ * Rankings are keyed by the dimension name, e.g. {@code user}, {@code ip}, {@code path} or {@code status},
+ * and sorted from the most frequent value.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class MultiTopN {
+  private final Map<String, List<DimensionCounter>> rankings;
+}
@@ -0,0 +1,32 @@
+package rpex.hadoop.mr.topn.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Top-n users of the sliding window of the tailed access logs.
+ * <p>
+ * The window ends at the latest minute of the logs, in the local time of their timestamps.
+ * <p>
+ * Immutable value object.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class StreamingTopN {
+  // first and last minute of the window, e.g. 2015-07-13T07:57, null if no lines have been read yet
+  private final String windowFrom;
+  private final String windowTo;
+  // number of lines counted in the window
+  private final long lines;
+  private final List<UserActivityCounter> users;
+  // since the start: lines older than the window, lines ahead of the clock of the server, lines of users over the limit
+  // and unparsable lines
+  private final long lateLines;
+  private final long futureLines;
+  private final long droppedLines;
+  private final long malformedLines;
+}
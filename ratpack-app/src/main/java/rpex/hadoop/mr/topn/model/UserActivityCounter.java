@@ -14,5 +14,5 @@ import lombok.ToString;
 @EqualsAndHashCode
 public class UserActivityCounter {
   private final String username;
-  private final Integer counter;
+  private final int counter;
 }
@@ -0,0 +1,84 @@
+package rpex.hadoop.perf;
+
+import mr.loggen.GroundTruth;
+import mr.loggen.LogGenerator;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Reproducible access logs, one {@code dt=yyyy-MM-dd} partition per day, with the expected counters of the users.
+ * <p>
+ * Every partition is generated by {@link LogGenerator}, users activity follows its Zipf distribution.
+ * The ground truth of every day lists all its users, so the counters of any interval are known.
+ * The same seed generates the same logs.
+ */
+class AccessLogDataset {
+  static final LocalDate FIRST_DAY = LocalDate.of(2015, 7, 1);
+  static final int DAYS = 30;
+
+  // ground truth per day
+  private final GroundTruth[] days = new GroundTruth[DAYS];
+
+  private AccessLogDataset() {
+  }
+
+  /**
+   * Generates the logs into {@code dt=yyyy-MM-dd} partitions of the input directory. It is blocking operation.
+   * @param fileSystem a hadoop file system
+   * @param inputPath an input directory of the application
+   * @param lines a number of lines
+   * @param users a number of distinct users
+   * @param seed a seed of the random generator
+   * @return the dataset with the expected counters
+   */
+  static AccessLogDataset generate(FileSystem fileSystem, Path inputPath, int lines, int users, long seed)
+    throws IOException, InterruptedException {
+    AccessLogDataset dataset = new AccessLogDataset();
+    for (int day = 0; day < DAYS; day++) {
+      LocalDate date = FIRST_DAY.plusDays(day);
+      Configuration conf = new Configuration(fileSystem.getConf());
+      conf.setInt(LogGenerator.USERS, users);
+      conf.set(LogGenerator.DATE_FROM, date.toString());
+      conf.set(LogGenerator.DATE_TO, date.toString());
+      conf.setLong(LogGenerator.LINES, lines / DAYS);
+      // the partition is the output directory, the ground truth file is skipped by the input formats
+      conf.setBoolean(LogGenerator.PARTITIONED, false);
+      conf.setInt(LogGenerator.TOP_N, users);
+      conf.setInt(LogGenerator.THREADS, 1);
+      conf.setLong(LogGenerator.SEED, seed + day);
+      dataset.days[day] = LogGenerator.generate(conf, fileSystem.makeQualified(new Path(inputPath, "dt=" + date)));
+    }
+    return dataset;
+  }
+
+  /**
+   * Gets the expected counters of the top-n users, from the highest one.
+   * @param limit a number of the users
+   * @param dateFrom a first day, inclusive
+   * @param dateTo a last day, inclusive
+   * @return the counters of the most active users
+   */
+  List<Integer> topCounters(int limit, LocalDate dateFrom, LocalDate dateTo) {
+    Map<String, Long> totals = new HashMap<>();
+    for (int day = 0; day < DAYS; day++) {
+      LocalDate date = FIRST_DAY.plusDays(day);
+      if (date.isBefore(dateFrom) || date.isAfter(dateTo)) {
+        continue;
+      }
+      for (GroundTruth.UserCount user : days[day].getTop()) {
+        totals.merge(user.getUsername(), user.getCount(), Long::sum);
+      }
+    }
+    return totals.values().stream()
+      .sorted(Comparator.reverseOrder()).limit(limit).map(Long::intValue).collect(Collectors.toList());
+  }
+}
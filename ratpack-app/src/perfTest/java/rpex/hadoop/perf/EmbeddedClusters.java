@@ -0,0 +1,82 @@
+package rpex.hadoop.perf;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.mapreduce.v2.MiniMRYarnCluster;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Embedded HDFS cluster with a single data node and, optionally, an embedded YARN cluster with a single node manager.
+ * <p>
+ * Without YARN the jobs are executed by the local runner, in the JVM of the application.
+ */
+class EmbeddedClusters implements AutoCloseable {
+  private final MiniDFSCluster dfsCluster;
+  private final MiniMRYarnCluster yarnCluster;
+
+  /**
+   * Starts the clusters.
+   * @param workDir a directory of the cluster data
+   * @param yarn true if the jobs are executed by YARN
+   */
+  EmbeddedClusters(File workDir, boolean yarn) throws IOException {
+    Configuration conf = new Configuration();
+    conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, new File(workDir, "dfs").getAbsolutePath());
+    dfsCluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).format(true).build();
+    dfsCluster.waitActive();
+    if (yarn) {
+      Configuration yarnConf = new Configuration(dfsCluster.getConfiguration(0));
+      yarnConf.set(YarnConfiguration.NM_LOCAL_DIRS, new File(workDir, "yarn-local").getAbsolutePath());
+      yarnConf.set(YarnConfiguration.NM_LOG_DIRS, new File(workDir, "yarn-logs").getAbsolutePath());
+      yarnCluster = new MiniMRYarnCluster("perf-test", 1);
+      yarnCluster.init(yarnConf);
+      yarnCluster.start();
+    } else {
+      yarnCluster = null;
+    }
+  }
+
+  /**
+   * @return the file system of the HDFS cluster
+   */
+  FileSystem getFileSystem() throws IOException {
+    return dfsCluster.getFileSystem();
+  }
+
+  /**
+   * @param user a hadoop user of the application
+   * @return the application properties pointing to the clusters
+   */
+  Map<String, String> appProperties(String user) {
+    ImmutableMap.Builder<String, String> props = ImmutableMap.<String, String>builder()
+      .put("hadoop.user", user)
+      .put("hadoop.fileSystemHost", "localhost")
+      .put("hadoop.fileSystemPort", String.valueOf(dfsCluster.getNameNodePort()));
+    if (yarnCluster == null) {
+      return props.put("hadoop.mapReduceType", "local").build();
+    }
+    String[] rm = yarnCluster.getConfig().get(YarnConfiguration.RM_ADDRESS).split(":");
+    String[] scheduler = yarnCluster.getConfig().get(YarnConfiguration.RM_SCHEDULER_ADDRESS).split(":");
+    return props
+      .put("hadoop.mapReduceType", "yarn")
+      .put("hadoop.yarnRMHost", rm[0])
+      .put("hadoop.yarnRMPort", rm[1])
+      .put("hadoop.yarnRMSchedulerHost", scheduler[0])
+      .put("hadoop.yarnRMSchedulerPort", scheduler[1])
+      .build();
+  }
+
+  @Override
+  public void close() {
+    if (yarnCluster != null) {
+      yarnCluster.stop();
+    }
+    dfsCluster.shutdown();
+  }
+}
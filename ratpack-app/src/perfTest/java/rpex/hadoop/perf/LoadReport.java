@@ -0,0 +1,130 @@
+package rpex.hadoop.perf;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency percentiles of a load scenario, compared with the stored baseline.
+ * <p>
+ * The baseline and the results are properties files with {@code <scenario>.<metric>} keys, e.g. {@code all.p95Millis}.
+ * A metric missing in the baseline is a regression, the baseline has to be recorded for every scenario.
+ */
+class LoadReport {
+  private final String scenario;
+  private final long[] latencies;
+  private final double throughput;
+
+  /**
+   * Creates the report.
+   * @param scenario a name of the scenario
+   * @param latenciesNanos the latencies of the measured requests in nanoseconds
+   * @param elapsedNanos the wall time of the measured requests in nanoseconds
+   */
+  LoadReport(String scenario, long[] latenciesNanos, long elapsedNanos) {
+    this.scenario = scenario;
+    this.latencies = latenciesNanos.clone();
+    Arrays.sort(this.latencies);
+    this.throughput = latenciesNanos.length / (elapsedNanos / 1e9);
+  }
+
+  /**
+   * Gets the latency percentile, the nearest rank.
+   * @param percentile a percentile, between 0 and 100
+   * @return the latency in milliseconds
+   */
+  double percentileMillis(double percentile) {
+    int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+    return latencies[Math.max(0, rank - 1)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  /**
+   * @return the metrics of the scenario: throughput in requests per second and the p50, p95, p99 latencies
+   */
+  Properties metrics() {
+    Properties metrics = new Properties();
+    metrics.setProperty(scenario + ".throughput", format(throughput));
+    metrics.setProperty(scenario + ".p50Millis", format(percentileMillis(50)));
+    metrics.setProperty(scenario + ".p95Millis", format(percentileMillis(95)));
+    metrics.setProperty(scenario + ".p99Millis", format(percentileMillis(99)));
+    return metrics;
+  }
+
+  /**
+   * Compares the metrics with the baseline. Latencies may be higher and the throughput lower by the tolerance.
+   * @param baseline the baseline metrics
+   * @param tolerance an allowed relative regression, e.g. {@code 0.25}
+   * @return the descriptions of the regressed metrics, empty if there are none
+   */
+  List<String> regressions(Properties baseline, double tolerance) {
+    List<String> regressions = new ArrayList<>();
+    Properties metrics = metrics();
+    for (String key : metrics.stringPropertyNames()) {
+      String expected = baseline.getProperty(key);
+      if (expected == null) {
+        regressions.add(key + " = " + metrics.getProperty(key) + ", missing in the baseline");
+        continue;
+      }
+      double value = Double.parseDouble(metrics.getProperty(key));
+      double limit = key.endsWith(".throughput")
+        ? Double.parseDouble(expected) * (1 - tolerance) : Double.parseDouble(expected) * (1 + tolerance);
+      if (key.endsWith(".throughput") ? value < limit : value > limit) {
+        regressions.add(key + " = " + metrics.getProperty(key) + ", baseline " + expected + ", limit " + format(limit));
+      }
+    }
+    return regressions;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "%s: %d requests, %.2f req/s, p50 %.0f ms, p95 %.0f ms, p99 %.0f ms",
+      scenario, latencies.length, throughput, percentileMillis(50), percentileMillis(95), percentileMillis(99));
+  }
+
+  /**
+   * Loads the metrics file.
+   * @param file a properties file
+   * @return the metrics, empty if the file does not exist
+   */
+  static Properties load(File file) throws IOException {
+    Properties properties = new Properties();
+    if (file.exists()) {
+      try (Reader in = new FileReader(file)) {
+        properties.load(in);
+      }
+    }
+    return properties;
+  }
+
+  /**
+   * Stores the metrics file, sorted by the keys.
+   * @param file a properties file
+   * @param metrics the metrics
+   * @param comments the lines of the header comment
+   */
+  static void store(File file, Properties metrics, String... comments) throws IOException {
+    file.getParentFile().mkdirs();
+    try (Writer out = new FileWriter(file)) {
+      for (String comment : comments) {
+        out.write("# " + comment + "\n");
+      }
+      for (String key : new TreeMap<>(metrics).keySet().toArray(new String[0])) {
+        out.write(key + "=" + metrics.getProperty(key) + "\n");
+      }
+    }
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ROOT, "%.2f", value);
+  }
+}
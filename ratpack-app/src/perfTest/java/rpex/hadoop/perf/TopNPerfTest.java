@@ -0,0 +1,258 @@
+package rpex.hadoop.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import org.apache.hadoop.fs.Path;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ratpack.server.RatpackServer;
+import rpex.hadoop.Main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * End-to-end performance regression test of {@code POST /v1/mr/top/:n}.
+ * <p>
+ * The application runs against the embedded HDFS cluster and, with {@code -Dperf.yarn=true}, the embedded YARN cluster.
+ * Every scenario sends the requests with the configured concurrency, checks the top-n counters of the first
+ * response against the generated dataset and compares throughput and latency percentiles with the baseline.
+ * The result cache and the daily aggregates are disabled and the concurrent requests query distinct time intervals
+ * of the same number of days, so they are not coalesced and every request runs its own map-reduce job.
+ * The job completion is polled every 50 ms, so the latencies are not rounded up to hadoop's poll interval.
+ * A metric missing in a recorded baseline fails the check, unless the baseline is being recorded.
+ * <p>
+ * No baseline is committed. The latencies and the throughput are comparable only with the ones recorded on the same
+ * machine, so the baseline is recorded with {@code -Dperf.updateBaseline=true} on the first run on the reference
+ * machine, the tests are skipped until then. The baseline header describes the machine which recorded it.
+ * <p>
+ * System properties: {@code perf.lines}, {@code perf.users}, {@code perf.seed} of the dataset,
+ * {@code perf.concurrency}, {@code perf.requests}, {@code perf.warmUpRequests}, {@code perf.limit} of the load,
+ * {@code perf.tolerance} of the regression check, {@code perf.baseline}, {@code perf.results}, {@code perf.workDir}
+ * and {@code perf.updateBaseline} to store the measured metrics as the new baseline.
+ */
+public class TopNPerfTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TopNPerfTest.class);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final LocalDate WEEK_FROM = AccessLogDataset.FIRST_DAY.plusDays(7);
+  // number of the weeks from WEEK_FROM to the last day of the dataset, more than the concurrent requests
+  private static final int WEEKS = AccessLogDataset.DAYS - 7 - 6;
+
+  private static final int CONCURRENCY = Integer.getInteger("perf.concurrency", 4);
+  private static final int REQUESTS = Integer.getInteger("perf.requests", 40);
+  private static final int WARM_UP_REQUESTS = Integer.getInteger("perf.warmUpRequests", 4);
+  private static final int LIMIT = Integer.getInteger("perf.limit", 10);
+  private static final double TOLERANCE = Double.parseDouble(System.getProperty("perf.tolerance", "0.25"));
+  private static final boolean UPDATE_BASELINE = Boolean.getBoolean("perf.updateBaseline");
+
+  private static final Properties results = new Properties();
+  private static EmbeddedClusters clusters;
+  private static AccessLogDataset dataset;
+  private static RatpackServer server;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Assume.assumeTrue("no performance baseline in " + baselineFile()
+      + ", record it on the reference machine with -Dperf.updateBaseline=true",
+      UPDATE_BASELINE || !LoadReport.load(baselineFile()).isEmpty());
+    File workDir = new File(System.getProperty("perf.workDir", "build/perf/work"));
+    clusters = new EmbeddedClusters(workDir, Boolean.getBoolean("perf.yarn"));
+
+    String user = System.getProperty("user.name");
+    long start = System.nanoTime();
+    dataset = AccessLogDataset.generate(clusters.getFileSystem(), new Path("/user/" + user + "/input"),
+      Integer.getInteger("perf.lines", 200000), Integer.getInteger("perf.users", 20000), Long.getLong("perf.seed", 42L));
+    LOGGER.info("DATASET GENERATED in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+    ImmutableMap<String, String> props = ImmutableMap.<String, String>builder()
+      .putAll(clusters.appProperties(user))
+      .put("hadoop.topNCacheMaxEntries", "0")
+      .put("hadoop.useDailyAggregates", "false")
+      .put("hadoop.topNEngine", "mapreduce")
+      // the latency of the short jobs is measured, not hadoop's default 5 seconds completion poll
+      .put("hadoop.jobCompletionPollMillis", "50")
+      .build();
+    server = RatpackServer.of(Main.serverSpec(config -> config.port(0).props(props)));
+    server.start();
+    awaitReady(TimeUnit.MINUTES.toMillis(2));
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    try {
+      if (!results.isEmpty()) {
+        LoadReport.store(new File(System.getProperty("perf.results", "build/perf/results.properties")), results,
+          "measured top-n performance");
+        if (UPDATE_BASELINE) {
+          LoadReport.store(baselineFile(), results, "top-n performance baseline, see TopNPerfTest",
+            "recorded on " + machine(),
+            "the latencies and the throughput are comparable only with the runs on the same machine");
+        }
+      }
+    } finally {
+      if (server != null) {
+        server.stop();
+      }
+      if (clusters != null) {
+        clusters.close();
+      }
+    }
+  }
+
+  @Test
+  public void topNOfAllDays() throws Exception {
+    // every request starts a day earlier, before the first day of the dataset, so all the days are read
+    LocalDate lastDay = AccessLogDataset.FIRST_DAY.plusDays(AccessLogDataset.DAYS - 1);
+    run("all", i -> body(AccessLogDataset.FIRST_DAY.minusDays(i), lastDay),
+      dataset.topCounters(LIMIT, AccessLogDataset.FIRST_DAY, lastDay));
+  }
+
+  @Test
+  public void topNOfWeek() throws Exception {
+    // every request reads a week, the weeks of the concurrent requests differ
+    run("week", i -> body(WEEK_FROM.plusDays(i % WEEKS), WEEK_FROM.plusDays(i % WEEKS + 6)),
+      dataset.topCounters(LIMIT, WEEK_FROM, WEEK_FROM.plusDays(6)));
+  }
+
+  /**
+   * Runs the scenario.
+   * @param bodies the bodies of the requests by their indexes, the first one is checked against the expected counters
+   * @param expectedCounters the top-n counters of the first body
+   */
+  private void run(String scenario, IntFunction<String> bodies, List<Integer> expectedCounters) throws Exception {
+    assertEquals(scenario + " top-n counters", expectedCounters, counters(post(bodies.apply(0))));
+
+    ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+    try {
+      load(executor, bodies, 1, WARM_UP_REQUESTS);
+      long start = System.nanoTime();
+      long[] latencies = load(executor, bodies, 1 + WARM_UP_REQUESTS, REQUESTS);
+      LoadReport report = new LoadReport(scenario, latencies, System.nanoTime() - start);
+      LOGGER.info("PERFORMANCE {}", report);
+      results.putAll(report.metrics());
+
+      if (!UPDATE_BASELINE) {
+        List<String> regressions = report.regressions(LoadReport.load(baselineFile()), TOLERANCE);
+        assertTrue("performance regression: " + regressions, regressions.isEmpty());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Sends the requests by the threads of the executor.
+   * @param first an index of the first request body
+   * @return the latencies of the requests in nanoseconds
+   */
+  private static long[] load(ExecutorService executor, IntFunction<String> bodies, int first, int requests) throws Exception {
+    List<Future<Long>> futures = new ArrayList<>(requests);
+    for (int i = 0; i < requests; i++) {
+      String body = bodies.apply(first + i);
+      futures.add(executor.submit(() -> {
+        long start = System.nanoTime();
+        post(body);
+        return System.nanoTime() - start;
+      }));
+    }
+    long[] latencies = new long[requests];
+    for (int i = 0; i < requests; i++) {
+      latencies[i] = futures.get(i).get();
+    }
+    return latencies;
+  }
+
+  private static String body(LocalDate dateFrom, LocalDate dateTo) {
+    return "{\"limit\":" + LIMIT + ",\"timeInterval\":{\"dateFrom\":\"" + dateFrom + "\",\"dateTo\":\"" + dateTo + "\"}}";
+  }
+
+  private static JsonNode post(String body) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url("/v1/mr/top/" + LIMIT).openConnection();
+    connection.setRequestMethod("POST");
+    connection.setRequestProperty("Content-Type", "application/json");
+    connection.setDoOutput(true);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    assertEquals("top-n status", 200, connection.getResponseCode());
+    try (InputStream in = connection.getInputStream()) {
+      return MAPPER.readTree(ByteStreams.toByteArray(in));
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static List<Integer> counters(JsonNode response) {
+    assertTrue("top-n failed: " + response, response.path("success").asBoolean());
+    List<Integer> counters = new ArrayList<>();
+    for (JsonNode counter : response.path("value")) {
+      counters.add(counter.path("counter").asInt());
+    }
+    return counters;
+  }
+
+  private static void awaitReady(long timeoutMillis) throws Exception {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (System.currentTimeMillis() < deadline) {
+      HttpURLConnection connection = (HttpURLConnection) url("/v1/ready").openConnection();
+      try {
+        if (connection.getResponseCode() == 200) {
+          return;
+        }
+      } finally {
+        connection.disconnect();
+      }
+      Thread.sleep(200);
+    }
+    throw new IllegalStateException("server not ready in " + timeoutMillis + " ms");
+  }
+
+  private static URL url(String path) throws IOException {
+    return new URL("http://localhost:" + server.getBindPort() + path);
+  }
+
+  /**
+   * Describes the machine and the load of the measured run.
+   */
+  private static String machine() {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException ex) {
+      host = "unknown host";
+    }
+    return host + ", " + Runtime.getRuntime().availableProcessors() + " cores, " + System.getProperty("os.name")
+      + " " + System.getProperty("os.arch") + ", java " + System.getProperty("java.version")
+      + ", yarn " + Boolean.getBoolean("perf.yarn") + ", concurrency " + CONCURRENCY;
+  }
+
+  private static File baselineFile() {
+    return new File(System.getProperty("perf.baseline", "src/perfTest/resources/perf-baseline.properties"));
+  }
+}
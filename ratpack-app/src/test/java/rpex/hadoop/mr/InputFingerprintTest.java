@@ -0,0 +1,38 @@
+package rpex.hadoop.mr;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class InputFingerprintTest {
+  private static final FileStatus A = file("a.log", 100, 1000);
+  private static final FileStatus B = file("b.log", 200, 3000);
+
+  @Test
+  public void testSameFilesHaveSameFingerprint() {
+    InputFingerprint fingerprint = InputFingerprint.of(Arrays.asList(A, B));
+    assertEquals(fingerprint, InputFingerprint.of(Arrays.asList(B, file("a.log", 100, 1000))));
+    assertEquals("2-300-3000", fingerprint.asKey());
+    assertEquals("0-0-0", InputFingerprint.of(Collections.emptyList()).asKey());
+  }
+
+  @Test
+  public void testFingerprintChangesWithFiles() {
+    InputFingerprint fingerprint = InputFingerprint.of(Arrays.asList(A, B));
+    // added, removed, appended and rewritten file
+    assertNotEquals(fingerprint, InputFingerprint.of(Arrays.asList(A, B, file("c.log", 0, 0))));
+    assertNotEquals(fingerprint, InputFingerprint.of(Collections.singletonList(B)));
+    assertNotEquals(fingerprint, InputFingerprint.of(Arrays.asList(A, file("b.log", 250, 4000))));
+    assertNotEquals(fingerprint, InputFingerprint.of(Arrays.asList(A, file("b.log", 200, 4000))));
+  }
+
+  private static FileStatus file(String name, long length, long modificationTime) {
+    return new FileStatus(length, false, 1, 128, modificationTime, new Path("/user/test/input/" + name));
+  }
+}
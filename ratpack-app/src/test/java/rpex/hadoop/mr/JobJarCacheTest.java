@@ -0,0 +1,105 @@
+package rpex.hadoop.mr;
+
+import mr.func.topn.TopNFunc;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class JobJarCacheTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private MiniDFSCluster cluster;
+  private FileSystem fileSystem;
+  private Path cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, folder.newFolder("dfs").getAbsolutePath());
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).format(true).build();
+    cluster.waitActive();
+    fileSystem = cluster.getFileSystem();
+    cacheDir = new Path("/user/test/lib");
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test
+  public void testJarUploadedOnceAndReusedByHash() throws Exception {
+    Job first = newJob(), second = newJob();
+    new JobJarCache(cacheDir).setJarByClass(first, fileSystem, TopNFunc.class);
+    FileStatus cached = cachedJar();
+    // a jar named by its hash is reused by other instances as well
+    new JobJarCache(cacheDir).setJarByClass(second, fileSystem, TopNFunc.class);
+
+    assertEquals(cached.getModificationTime(), cachedJar().getModificationTime());
+    assertTrue(cached.getPath().getName().matches(".*-[0-9a-f]{40}\\.jar"));
+    assertEquals(cached.getPath().toString(), classPathFile(first));
+    assertEquals(cached.getPath().toString(), classPathFile(second));
+  }
+
+  @Test
+  public void testDeletedJarUploadedAgainAfterVerifyInterval() throws Exception {
+    JobJarCache cache = new JobJarCache(cacheDir, 0);
+    cache.setJarByClass(newJob(), fileSystem, TopNFunc.class);
+    fileSystem.delete(cacheDir, true);
+
+    Job job = newJob();
+    cache.setJarByClass(job, fileSystem, TopNFunc.class);
+
+    assertEquals(cachedJar().getPath().toString(), classPathFile(job));
+  }
+
+  @Test
+  public void testDeletedJarUploadedAgainAfterEviction() throws Exception {
+    JobJarCache cache = new JobJarCache(cacheDir, Long.MAX_VALUE);
+    cache.setJarByClass(newJob(), fileSystem, TopNFunc.class);
+    fileSystem.delete(cacheDir, true);
+
+    // not verified within the interval, the job would fail to submit
+    cache.setJarByClass(newJob(), fileSystem, TopNFunc.class);
+    assertFalse(fileSystem.exists(cacheDir));
+
+    cache.evictMissing(fileSystem);
+    Job job = newJob();
+    cache.setJarByClass(job, fileSystem, TopNFunc.class);
+
+    assertEquals(cachedJar().getPath().toString(), classPathFile(job));
+  }
+
+  private Job newJob() throws Exception {
+    return Job.getInstance(new Configuration(fileSystem.getConf()));
+  }
+
+  private FileStatus cachedJar() throws Exception {
+    FileStatus[] jars = fileSystem.listStatus(cacheDir, path -> path.getName().endsWith(".jar") && !path.getName().startsWith("."));
+    assertEquals(1, jars.length);
+    return jars[0];
+  }
+
+  private static String classPathFile(Job job) {
+    String files = job.getConfiguration().get(MRJobConfig.CLASSPATH_FILES);
+    assertNotNull(files);
+    return files;
+  }
+}
@@ -0,0 +1,154 @@
+package rpex.hadoop.mr;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JobProgressBroadcasterTest {
+  private JobRegistry registry;
+  private JobProgressBroadcaster broadcaster;
+  private StubJob job;
+  private String jobId;
+
+  @Before
+  public void setUp() throws Exception {
+    registry = new JobRegistry(1, TimeUnit.HOURS);
+    // the poller never fires, the test polls
+    broadcaster = new JobProgressBroadcaster(registry, 1, TimeUnit.HOURS);
+    job = new StubJob();
+    jobId = registry.newId();
+    registry.register(jobId, new MapReduceJob(new MapReduceConfig(), job, FileSystem.getLocal(new Configuration()), null),
+      new Path("unused"));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    broadcaster.stop();
+    registry.stop();
+  }
+
+  @Test
+  public void testUnknownJob() {
+    assertFalse(broadcaster.events("unknown").isPresent());
+  }
+
+  @Test
+  public void testDemandAndLatestEvent() {
+    RecordingSubscriber subscriber = subscribe();
+    broadcaster.poll();
+    job.mapProgress = 0.5f;
+    broadcaster.poll();
+    // nothing is pushed without demand
+    assertTrue(subscriber.events.isEmpty());
+
+    subscriber.subscription.request(1);
+    assertEquals(1, subscriber.events.size());
+    assertEquals(0.5f, subscriber.events.get(0).getProgress().getMapProgress(), 0);
+
+    subscriber.subscription.request(2);
+    job.mapProgress = 1f;
+    broadcaster.poll();
+    job.reduceProgress = 0.5f;
+    broadcaster.poll();
+    job.reduceProgress = 1f;
+    broadcaster.poll();
+    assertEquals(3, subscriber.events.size());
+    assertEquals(0.5f, subscriber.events.get(2).getProgress().getReduceProgress(), 0);
+    assertFalse(subscriber.completed);
+  }
+
+  @Test
+  public void testCompletionAfterFinalEvent() {
+    RecordingSubscriber subscriber = subscribe();
+    broadcaster.poll();
+    job.complete = true;
+    broadcaster.poll();
+    assertEquals(0, broadcaster.watchedJobs());
+    // the final event waits for the demand, the stream completes after it
+    assertFalse(subscriber.completed);
+
+    subscriber.subscription.request(1);
+    assertEquals(1, subscriber.events.size());
+    assertTrue(subscriber.events.get(0).getProgress().isComplete());
+    assertTrue(subscriber.completed);
+
+    RecordingSubscriber unbounded = subscribe();
+    unbounded.subscription.request(Long.MAX_VALUE);
+    broadcaster.poll();
+    assertEquals(1, unbounded.events.size());
+    assertTrue(unbounded.completed);
+  }
+
+  @Test
+  public void testRemovedJobCompletes() {
+    RecordingSubscriber subscriber = subscribe();
+    subscriber.subscription.request(1);
+    registry.remove(jobId);
+    broadcaster.poll();
+    assertTrue(subscriber.events.isEmpty());
+    assertTrue(subscriber.completed);
+  }
+
+  @Test
+  public void testCancel() {
+    RecordingSubscriber subscriber = subscribe();
+    subscriber.subscription.request(1);
+    assertEquals(1, broadcaster.watchedJobs());
+    subscriber.subscription.cancel();
+    broadcaster.poll();
+    assertTrue(subscriber.events.isEmpty());
+    assertEquals(0, broadcaster.watchedJobs());
+
+    RecordingSubscriber invalid = subscribe();
+    invalid.subscription.request(0);
+    assertTrue(invalid.error instanceof IllegalArgumentException);
+  }
+
+  private RecordingSubscriber subscribe() {
+    Publisher<JobProgressEvent> publisher = broadcaster.events(jobId).get();
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    return subscriber;
+  }
+
+  private static class RecordingSubscriber implements Subscriber<JobProgressEvent> {
+    private final List<JobProgressEvent> events = new ArrayList<>();
+    private Subscription subscription;
+    private Throwable error;
+    private boolean completed;
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(JobProgressEvent event) {
+      events.add(event);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      this.error = error;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+}
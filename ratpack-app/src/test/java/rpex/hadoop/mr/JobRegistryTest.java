@@ -0,0 +1,90 @@
+package rpex.hadoop.mr;
+
+import com.google.common.base.Ticker;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JobRegistryTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return nanos.get();
+    }
+  };
+
+  private FileSystem fileSystem;
+  private JobRegistry registry;
+
+  @Before
+  public void setUp() throws Exception {
+    fileSystem = FileSystem.getLocal(new Configuration());
+    registry = new JobRegistry(10, TimeUnit.MINUTES, ticker);
+  }
+
+  @Test
+  public void testExpiredRunningJobIsKilled() throws Exception {
+    StubJob job = new StubJob();
+    Path output = output("running");
+    String id = registry.newId();
+    registry.register(id, mrJob(job), output);
+
+    nanos.addAndGet(TimeUnit.MINUTES.toNanos(5));
+    assertTrue(registry.get(id).isPresent());
+    // the access extends the time-to-live
+    nanos.addAndGet(TimeUnit.MINUTES.toNanos(9));
+    registry.cleanUp();
+    assertTrue(registry.get(id).isPresent());
+
+    nanos.addAndGet(TimeUnit.MINUTES.toNanos(11));
+    assertFalse(registry.get(id).isPresent());
+    registry.cleanUp();
+    // waits for the cleanup of the removed job
+    registry.stop();
+    assertTrue(job.killed);
+    assertFalse(fileSystem.exists(output));
+  }
+
+  @Test
+  public void testRemovedCompleteJobIsNotKilled() throws Exception {
+    StubJob job = new StubJob();
+    job.complete = true;
+    Path output = output("complete");
+    String id = registry.newId();
+    registry.register(id, mrJob(job), output);
+    // the job without input has nothing to clean up
+    String emptyId = registry.newId();
+    registry.register(emptyId, null, null);
+
+    registry.remove(id);
+    registry.remove(emptyId);
+    registry.stop();
+    assertFalse(registry.get(id).isPresent());
+    assertFalse(job.killed);
+    assertFalse(fileSystem.exists(output));
+  }
+
+  private Path output(String name) throws Exception {
+    Path output = new Path(folder.newFolder(name).toURI());
+    fileSystem.create(new Path(output, "part-r-00000")).close();
+    return output;
+  }
+
+  private MapReduceJob mrJob(StubJob job) {
+    return new MapReduceJob(new MapReduceConfig(), job, fileSystem, null);
+  }
+}
@@ -0,0 +1,121 @@
+package rpex.hadoop.mr;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.Test;
+import ratpack.exec.Blocking;
+import ratpack.exec.Promise;
+import ratpack.guice.Guice;
+import ratpack.http.client.ReceivedResponse;
+import ratpack.jackson.Jackson;
+import ratpack.test.embed.EmbeddedApp;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MapReduceWarmUpTest {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  public void testReadyAfterWarmUp() throws Exception {
+    StubMapReduceService mapReduceService = new StubMapReduceService(null);
+    JsonNode readiness = awaitReady(new MapReduceWarmUp(mapReduceService, new MapReduceMetrics(), true), mapReduceService);
+    assertTrue(readiness.get("warmUpMillis").isNumber());
+    assertTrue(readiness.get("warmUpError").isNull());
+  }
+
+  @Test
+  public void testReadyAfterFailedWarmUp() throws Exception {
+    StubMapReduceService mapReduceService = new StubMapReduceService(new IllegalStateException("HDFS_UNAVAILABLE"));
+    JsonNode readiness = awaitReady(new MapReduceWarmUp(mapReduceService, new MapReduceMetrics(), true), mapReduceService);
+    assertEquals("HDFS_UNAVAILABLE", readiness.get("warmUpError").asText());
+  }
+
+  @Test
+  public void testReadyWithoutWarmUp() throws Exception {
+    StubMapReduceService mapReduceService = new StubMapReduceService(null);
+    EmbeddedApp app = app(new MapReduceWarmUp(mapReduceService, new MapReduceMetrics(), false));
+    try {
+      assertEquals(200, app.getHttpClient().get("v1/ready").getStatusCode());
+      assertEquals(1, mapReduceService.release.getCount());
+    } finally {
+      app.close();
+    }
+  }
+
+  /**
+   * Checks the server is not ready while the warm-up is blocked, releases the warm-up and waits until the server is ready.
+   * @return the readiness of the ready server
+   */
+  private JsonNode awaitReady(MapReduceWarmUp warmUp, StubMapReduceService mapReduceService) throws Exception {
+    EmbeddedApp app = app(warmUp);
+    try {
+      ReceivedResponse response = app.getHttpClient().get("v1/ready");
+      assertEquals(503, response.getStatusCode());
+      assertTrue(objectMapper.readTree(response.getBody().getText()).get("warmUpMillis").isNull());
+
+      mapReduceService.release.countDown();
+      long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+      while (response.getStatusCode() == 503 && System.nanoTime() < deadline) {
+        Thread.sleep(50);
+        response = app.getHttpClient().get("v1/ready");
+      }
+      assertEquals(200, response.getStatusCode());
+      JsonNode readiness = objectMapper.readTree(response.getBody().getText());
+      assertTrue(readiness.get("ready").asBoolean());
+      return readiness;
+    } finally {
+      mapReduceService.release.countDown();
+      app.close();
+    }
+  }
+
+  private EmbeddedApp app(MapReduceWarmUp warmUp) {
+    return EmbeddedApp.of(spec -> spec
+      .registry(Guice.registry(bindingsSpec -> {
+        bindingsSpec.bindInstance(MapReduceWarmUp.class, warmUp);
+        Jackson.Init.register(bindingsSpec, objectMapper, objectMapper.writer());
+      }))
+      .handlers(chain -> chain.get("v1/ready", new ReadinessHandler())));
+  }
+
+  /**
+   * Provides jobs on the local file system, blocked until released.
+   */
+  private static class StubMapReduceService implements MapReduceService {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final Exception failure;
+
+    StubMapReduceService(Exception failure) {
+      this.failure = failure;
+    }
+
+    @Override
+    public Promise<MapReduceJob> provide(String jobName, String requestId) {
+      return Blocking.get(() -> {
+        release.await();
+        if (failure != null) {
+          throw failure;
+        }
+        Configuration conf = new Configuration();
+        conf.set("mapreduce.framework.name", "local");
+        conf.set("fs.defaultFS", "file:///");
+        return new MapReduceJob(new MapReduceConfig(), Job.getInstance(conf, jobName), FileSystem.getLocal(conf), null);
+      });
+    }
+
+    @Override
+    public Promise<List<FileStatus>> listFiles(String fsName, String requestId) {
+      return Promise.value(Collections.emptyList());
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package rpex.hadoop.mr;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.JobStatus;
+
+import java.io.IOException;
+
+/**
+ * Job with the progress set by the test, it is never submitted.
+ */
+class StubJob extends Job {
+  volatile float mapProgress;
+  volatile float reduceProgress;
+  volatile boolean complete;
+  volatile boolean killed;
+
+  @SuppressWarnings("deprecation")
+  StubJob() throws IOException {
+    super(new Configuration(false));
+  }
+
+  @Override
+  public JobID getJobID() {
+    // no counters are read without the hadoop job id
+    return null;
+  }
+
+  @Override
+  public JobStatus.State getJobState() {
+    return killed ? JobStatus.State.KILLED : complete ? JobStatus.State.SUCCEEDED : JobStatus.State.RUNNING;
+  }
+
+  @Override
+  public float mapProgress() {
+    return mapProgress;
+  }
+
+  @Override
+  public float reduceProgress() {
+    return reduceProgress;
+  }
+
+  @Override
+  public boolean isComplete() {
+    return complete || killed;
+  }
+
+  @Override
+  public boolean isSuccessful() {
+    return complete && !killed;
+  }
+
+  @Override
+  public void killJob() {
+    killed = true;
+  }
+}
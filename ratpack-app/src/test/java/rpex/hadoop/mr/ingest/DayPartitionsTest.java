@@ -0,0 +1,74 @@
+package rpex.hadoop.mr.ingest;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DayPartitionsTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FileSystem fileSystem;
+  private Path input;
+
+  @Before
+  public void setUp() throws Exception {
+    fileSystem = FileSystem.getLocal(new Configuration());
+    input = new Path(folder.getRoot().toURI());
+  }
+
+  @Test
+  public void testSelectOverlappingPartitions() throws Exception {
+    fileSystem.mkdirs(new Path(input, "dt=2015-07-12"));
+    fileSystem.mkdirs(new Path(input, "dt=2015-07-13"));
+    fileSystem.mkdirs(new Path(input, "dt=2015-07-14"));
+    fileSystem.create(new Path(input, "_SUCCESS")).close();
+    List<Path> paths = DayPartitions.select(fileSystem, input, LocalDate.of(2015, 7, 13), LocalDate.of(2015, 7, 14));
+    assertEquals(new HashSet<>(Arrays.asList("dt=2015-07-13", "dt=2015-07-14")), names(paths));
+  }
+
+  @Test
+  public void testSelectNoPartitionInRange() throws Exception {
+    fileSystem.mkdirs(new Path(input, "dt=2015-07-12"));
+    fileSystem.mkdirs(new Path(input, "dt=2015-07-13"));
+    List<Path> paths = DayPartitions.select(fileSystem, input, LocalDate.of(2016, 1, 1), LocalDate.of(2016, 1, 31));
+    assertTrue(paths.isEmpty());
+  }
+
+  @Test
+  public void testSelectNotPartitionedFiles() throws Exception {
+    fileSystem.mkdirs(new Path(input, "dt=2015-07-12"));
+    fileSystem.create(new Path(input, "access.log")).close();
+    List<Path> paths = DayPartitions.select(fileSystem, input, LocalDate.of(2016, 1, 1), LocalDate.of(2016, 1, 31));
+    assertEquals(Collections.singleton("access.log"), names(paths));
+  }
+
+  @Test
+  public void testSelectWholeNotPartitionedInput() throws Exception {
+    fileSystem.create(new Path(input, "access.log")).close();
+    assertEquals(Collections.singletonList(input),
+      DayPartitions.select(fileSystem, input, LocalDate.of(2016, 1, 1), LocalDate.of(2016, 1, 31)));
+    assertEquals(Collections.singletonList(input), DayPartitions.select(fileSystem, input, null, null));
+  }
+
+  private static HashSet<String> names(List<Path> paths) {
+    HashSet<String> names = new HashSet<>();
+    for (Path path : paths) {
+      names.add(path.getName());
+    }
+    return names;
+  }
+}
@@ -0,0 +1,84 @@
+package rpex.hadoop.mr.internal;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.mapreduce.Job;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ratpack.test.exec.ExecHarness;
+import rpex.hadoop.mr.MapReduceConfig;
+import rpex.hadoop.mr.MapReduceMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class DefaultMapReduceServiceTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private MiniDFSCluster cluster;
+  private DefaultMapReduceService service;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(MiniDFSCluster.HDFS_MINIDFS_BASEDIR, folder.newFolder("dfs").getAbsolutePath());
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).format(true).build();
+    cluster.waitActive();
+    MapReduceConfig config = new MapReduceConfig()
+      .yarnRMHost("localhost")
+      .yarnRMSchedulerHost("localhost")
+      .mapReduceType("local")
+      .fileSystemHost("localhost")
+      .fileSystemPort(String.valueOf(cluster.getNameNodePort()))
+      .jobPoolSize(2);
+    service = new DefaultMapReduceService(config, new MapReduceMetrics());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    service.stop();
+    cluster.shutdown();
+  }
+
+  @Test
+  public void testJobsHaveOwnConfiguration() throws Exception {
+    // more jobs than the pool holds, the rest is created on demand
+    List<Job> jobs = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      String jobName = "job" + i;
+      jobs.add(ExecHarness.yieldSingle(execution -> service.provide(jobName, null)).getValue().getJob());
+    }
+    jobs.get(0).getConfiguration().set("test.property", "job0");
+    jobs.get(0).getConfiguration().set("mapreduce.framework.name", "yarn");
+    for (int i = 0; i < jobs.size(); i++) {
+      Job job = jobs.get(i);
+      assertEquals("job" + i, job.getJobName());
+      for (int j = i + 1; j < jobs.size(); j++) {
+        assertNotSame(job.getConfiguration(), jobs.get(j).getConfiguration());
+      }
+      if (i > 0) {
+        // the changes of a job do not leak to the template
+        assertNull(job.getConfiguration().get("test.property"));
+        assertEquals("local", job.getConfiguration().get("mapreduce.framework.name"));
+      }
+    }
+    Job next = ExecHarness.yieldSingle(execution -> service.provide("next", null)).getValue().getJob();
+    assertNull(next.getConfiguration().get("test.property"));
+    assertEquals("local", next.getConfiguration().get("mapreduce.framework.name"));
+  }
+
+  @Test
+  public void testProvidesJobAfterStop() throws Exception {
+    service.stop();
+    Job job = ExecHarness.yieldSingle(execution -> service.provide("stopped", null)).getValue().getJob();
+    assertEquals("local", job.getConfiguration().get("mapreduce.framework.name"));
+  }
+}
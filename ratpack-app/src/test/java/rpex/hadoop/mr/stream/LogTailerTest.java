@@ -0,0 +1,125 @@
+package rpex.hadoop.mr.stream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static rpex.hadoop.mr.stream.SlidingWindowCountersTest.counters;
+import static rpex.hadoop.mr.stream.SlidingWindowCountersTest.line;
+
+public class LogTailerTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path dir;
+  private Path checkpointFile;
+  private SlidingWindowCounters counters;
+  private LogTailer tailer;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = folder.newFolder("logs").toPath();
+    checkpointFile = folder.getRoot().toPath().resolve("stream.checkpoint");
+    counters = new SlidingWindowCounters(60, 100, 5);
+    tailer = new LogTailer(Collections.singletonList(dir), counters, checkpointFile, 60);
+  }
+
+  @Test
+  public void testTailCompleteLines() throws Exception {
+    Path log = dir.resolve("dt=2015-07-13").resolve("access.log");
+    Files.createDirectories(log.getParent());
+    append(log, line(7, 0, "U0000001") + "\n" + line(7, 1, "U0000001") + "\r\n" + line(7, 2, "U0000002"));
+    tailer.scan();
+    assertEquals(Arrays.asList("U0000001=2"), counters(counters.top(10, 60)));
+    // the incomplete line is counted when it is completed
+    append(log, "\n" + line(7, 3, "U0000002") + "\n");
+    tailer.scan();
+    assertEquals(Arrays.asList("U0000001=2", "U0000002=2"), counters(counters.top(10, 60)));
+  }
+
+  @Test
+  public void testSkipHiddenAndCompressedFiles() throws Exception {
+    append(dir.resolve(".access.log"), line(7, 0, "U0000001") + "\n");
+    append(dir.resolve("_access.log"), line(7, 0, "U0000001") + "\n");
+    append(dir.resolve("access.log.gz"), line(7, 0, "U0000001") + "\n");
+    append(dir.resolve("access.log"), line(7, 0, "U0000002") + "\n");
+    tailer.scan();
+    assertEquals(Arrays.asList("U0000002=1"), counters(counters.top(10, 60)));
+  }
+
+  @Test
+  public void testRotationByRename() throws Exception {
+    // the rotated file is listed after the new one
+    assertRotation("a.log", "z.log");
+  }
+
+  @Test
+  public void testRotationByRenameToSuffix() throws Exception {
+    assertRotation("access.log", "access.log.1");
+  }
+
+  private void assertRotation(String name, String rotatedName) throws Exception {
+    Path log = dir.resolve(name);
+    append(log, line(7, 0, "U0000001") + "\n" + line(7, 1, "U0000001") + "\n" + line(7, 2, "U0000001") + "\n");
+    tailer.scan();
+    Files.move(log, dir.resolve(rotatedName));
+    append(log, line(7, 3, "U0000001") + "\n");
+    tailer.scan();
+    assertEquals(Arrays.asList("U0000001=4"), counters(counters.top(10, 60)));
+  }
+
+  @Test
+  public void testTruncation() throws Exception {
+    Path log = dir.resolve("access.log");
+    append(log, line(7, 0, "U0000001") + "\n" + line(7, 1, "U0000001") + "\n");
+    tailer.scan();
+    Files.write(log, (line(7, 2, "U0000002") + "\n").getBytes(StandardCharsets.US_ASCII));
+    tailer.scan();
+    assertEquals(Arrays.asList("U0000001=2", "U0000002=1"), counters(counters.top(10, 60)));
+  }
+
+  @Test
+  public void testRestart() throws Exception {
+    Path log = dir.resolve("access.log");
+    append(log, line(7, 0, "U0000001") + "\n" + line(7, 1, "U0000002"));
+    tailer.scan();
+    tailer.checkpoint();
+
+    append(log, "\n" + line(7, 2, "U0000002") + "\n");
+    SlidingWindowCounters restarted = new SlidingWindowCounters(60, 100, 5);
+    LogTailer restartedTailer = new LogTailer(Collections.singletonList(dir), restarted, checkpointFile, 60);
+    restartedTailer.restore();
+    restartedTailer.scan();
+    assertEquals(Arrays.asList("U0000002=2", "U0000001=1"), counters(restarted.top(10, 60)));
+  }
+
+  @Test
+  public void testCorruptedCheckpoint() throws Exception {
+    Path log = dir.resolve("access.log");
+    append(log, line(7, 0, "U0000001") + "\n");
+    tailer.scan();
+    tailer.checkpoint();
+    byte[] checkpoint = Files.readAllBytes(checkpointFile);
+    Files.write(checkpointFile, Arrays.copyOf(checkpoint, checkpoint.length - 6));
+
+    // neither the offsets nor the counters are restored, the file is read again from its start
+    SlidingWindowCounters restarted = new SlidingWindowCounters(60, 100, 5);
+    LogTailer restartedTailer = new LogTailer(Collections.singletonList(dir), restarted, checkpointFile, 60);
+    restartedTailer.restore();
+    restartedTailer.scan();
+    assertEquals(Arrays.asList("U0000001=1"), counters(restarted.top(10, 60)));
+  }
+
+  private static void append(Path file, String text) throws Exception {
+    Files.write(file, text.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+}
@@ -0,0 +1,66 @@
+package rpex.hadoop.mr.stream;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MinuteBucketTest {
+  @Test
+  public void testIncrement() {
+    MinuteBucket bucket = new MinuteBucket();
+    bucket.reset(10);
+    bucket.increment(3, 1);
+    bucket.increment(3, 2);
+    bucket.increment(5, 1);
+    assertEquals(10, bucket.getMinute());
+    assertEquals(4, bucket.getLines());
+    assertEquals(2, bucket.size());
+    Map<Integer, Integer> counts = counts(bucket);
+    assertEquals(3, counts.get(3).intValue());
+    assertEquals(1, counts.get(5).intValue());
+  }
+
+  @Test
+  public void testRehash() {
+    MinuteBucket bucket = new MinuteBucket();
+    bucket.reset(10);
+    // far more users than the initial capacity
+    for (int i = 0; i < 10000; i++) {
+      for (int j = 0; j <= i % 3; j++) {
+        bucket.increment(i * 7, 1);
+      }
+    }
+    assertEquals(10000, bucket.size());
+    assertEquals(19999, bucket.getLines());
+    Map<Integer, Integer> counts = counts(bucket);
+    for (int i = 0; i < 10000; i++) {
+      assertEquals(i % 3 + 1, counts.get(i * 7).intValue());
+    }
+  }
+
+  @Test
+  public void testReset() {
+    MinuteBucket bucket = new MinuteBucket();
+    assertEquals(Long.MIN_VALUE, bucket.getMinute());
+    bucket.reset(10);
+    for (int i = 0; i < 100; i++) {
+      bucket.increment(i, 1);
+    }
+    bucket.reset(11);
+    assertEquals(11, bucket.getMinute());
+    assertEquals(0, bucket.getLines());
+    assertTrue(counts(bucket).isEmpty());
+    bucket.increment(42, 1);
+    assertEquals(1, counts(bucket).get(42).intValue());
+  }
+
+  private static Map<Integer, Integer> counts(MinuteBucket bucket) {
+    Map<Integer, Integer> counts = new HashMap<>();
+    bucket.forEach(counts::put);
+    return counts;
+  }
+}
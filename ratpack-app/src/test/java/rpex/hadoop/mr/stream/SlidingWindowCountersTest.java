@@ -0,0 +1,168 @@
+package rpex.hadoop.mr.stream;
+
+import org.junit.Test;
+import rpex.hadoop.mr.topn.model.StreamingTopN;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SlidingWindowCountersTest {
+  static String line(int hour, int minute, String username) {
+    return String.format("[13/Jul/2015:%02d:%02d:03 +0200] GET /nmo 127.0.0.1 127.0.0.1 stat=200 "
+      + "usr=User{id=1, username='%s'} time=1", hour, minute, username);
+  }
+
+  @Test
+  public void testTop() {
+    SlidingWindowCounters counters = new SlidingWindowCounters(5, 10, 5);
+    add(counters, line(7, 0, "U0000003"), line(7, 0, "U0000001"), line(7, 1, "U0000001"), line(7, 1, "U0000002"),
+      line(7, 2, "U0000002"), line(7, 2, "U0000003"), line(7, 2, "U0000001"), line(7, 2, "U0000004"));
+    StreamingTopN top = counters.top(3, 5);
+    assertEquals("2015-07-13T06:58", top.getWindowFrom());
+    assertEquals("2015-07-13T07:02", top.getWindowTo());
+    assertEquals(8, top.getLines());
+    // equal counters are ordered by username
+    assertEquals(Arrays.asList("U0000001=3", "U0000002=2", "U0000003=2"), counters(top));
+    assertEquals(Arrays.asList("U0000001=1", "U0000002=1", "U0000003=1", "U0000004=1"), counters(counters.top(10, 1)));
+    assertEquals(Arrays.asList("U0000001=2", "U0000002=2"), counters(counters.top(2, 2)));
+  }
+
+  @Test
+  public void testEmpty() {
+    StreamingTopN top = new SlidingWindowCounters(5, 10, 5).top(10, 5);
+    assertNull(top.getWindowTo());
+    assertTrue(top.getUsers().isEmpty());
+  }
+
+  @Test
+  public void testExpiry() {
+    SlidingWindowCounters counters = new SlidingWindowCounters(3, 10, 5);
+    add(counters, line(7, 0, "U0000001"), line(7, 0, "U0000001"), line(7, 1, "U0000002"), line(7, 2, "U0000003"));
+    assertEquals(3, counters.users());
+    // minute 0 leaves the window, its only user is released
+    add(counters, line(7, 3, "U0000003"));
+    assertEquals(2, counters.users());
+    assertEquals(Arrays.asList("U0000003=2", "U0000002=1"), counters(counters.top(10, 3)));
+    // the whole window is replaced
+    add(counters, line(8, 0, "U0000004"));
+    assertEquals(1, counters.users());
+    StreamingTopN top = counters.top(10, 3);
+    assertEquals(1, top.getLines());
+    assertEquals(Arrays.asList("U0000004=1"), counters(top));
+  }
+
+  @Test
+  public void testLateMalformedAndDroppedLines() {
+    SlidingWindowCounters counters = new SlidingWindowCounters(3, 2, 5);
+    add(counters, line(7, 5, "U0000001"), line(7, 3, "U0000002"), line(7, 2, "U0000003"), line(7, 5, "U0000004"),
+      "[13/Jul/2015:07:05:03 +0200] GET /nmo", "garbage");
+    StreamingTopN top = counters.top(10, 3);
+    assertEquals(Arrays.asList("U0000001=1", "U0000002=1"), counters(top));
+    assertEquals(1, top.getLateLines());
+    assertEquals(1, top.getDroppedLines());
+    assertEquals(2, top.getMalformedLines());
+  }
+
+  @Test
+  public void testFutureLines() throws Exception {
+    Clock clock = Clock.fixed(Instant.parse("2015-07-13T07:03:30Z"), ZoneOffset.UTC);
+    SlidingWindowCounters counters = new SlidingWindowCounters(5, 10, 5, clock);
+    add(counters, line(7, 0, "U0000001"), line(7, 1, "U0000002"), line(7, 3, "U0000001"));
+    // a line of a skewed clock or of a wrong year is dropped and does not expire the window
+    add(counters, "[13/Jul/2016:07:04:03 +0200] GET /nmo 127.0.0.1 127.0.0.1 stat=200 "
+      + "usr=User{id=1, username='U0000009'} time=1", line(9, 0, "U0000009"));
+    add(counters, line(7, 3, "U0000002"));
+    StreamingTopN top = counters.top(10, 5);
+    assertEquals("2015-07-13T07:03", top.getWindowTo());
+    assertEquals(Arrays.asList("U0000001=2", "U0000002=2"), counters(top));
+    assertEquals(2, top.getFutureLines());
+    assertEquals(0, top.getLateLines());
+    // lines within the allowed clock skew move the window
+    add(counters, line(7, 8, "U0000003"));
+    assertEquals("2015-07-13T07:08", counters.top(10, 5).getWindowTo());
+    assertEquals(2, counters.top(10, 5).getFutureLines());
+
+    // the window of a checkpoint ending in the future is not restored
+    SlidingWindowCounters future = new SlidingWindowCounters(5, 10, 5);
+    add(future, line(9, 0, "U0000001"));
+    SlidingWindowCounters restored = new SlidingWindowCounters(5, 10, 5, clock);
+    restored.readFrom(new DataInputStream(new ByteArrayInputStream(checkpoint(future))));
+    assertNull(restored.top(10, 5).getWindowTo());
+    add(restored, line(7, 2, "U0000002"));
+    assertEquals(Arrays.asList("U0000002=1"), counters(restored.top(10, 5)));
+  }
+
+  @Test
+  public void testCheckpoint() throws Exception {
+    SlidingWindowCounters counters = new SlidingWindowCounters(5, 10, 5);
+    add(counters, line(7, 0, "U0000001"), line(7, 1, "U0000001"), line(7, 1, "U0000002"), line(7, 4, "U0000003"),
+      "garbage");
+    byte[] checkpoint = checkpoint(counters);
+
+    SlidingWindowCounters restored = new SlidingWindowCounters(5, 10, 5);
+    restored.readFrom(new DataInputStream(new ByteArrayInputStream(checkpoint)));
+    assertEquals(counters(counters.top(10, 5)), counters(restored.top(10, 5)));
+    assertEquals(counters.top(10, 5).toString(), restored.top(10, 5).toString());
+    // the restored window keeps expiring
+    add(restored, line(7, 5, "U0000003"));
+    assertEquals(Arrays.asList("U0000003=2", "U0000001=1", "U0000002=1"), counters(restored.top(10, 5)));
+
+    // a shorter window skips the older buckets
+    SlidingWindowCounters shorter = new SlidingWindowCounters(2, 10, 5);
+    shorter.readFrom(new DataInputStream(new ByteArrayInputStream(checkpoint)));
+    assertEquals(Arrays.asList("U0000003=1"), counters(shorter.top(10, 2)));
+  }
+
+  @Test
+  public void testTruncatedCheckpoint() throws Exception {
+    SlidingWindowCounters counters = new SlidingWindowCounters(5, 10, 5);
+    add(counters, line(7, 0, "U0000001"), line(7, 1, "U0000002"), line(7, 2, "U0000003"));
+    byte[] checkpoint = checkpoint(counters);
+
+    SlidingWindowCounters restored = new SlidingWindowCounters(5, 10, 5);
+    try {
+      restored.readFrom(new DataInputStream(new ByteArrayInputStream(Arrays.copyOf(checkpoint, checkpoint.length - 6))));
+      fail();
+    } catch (EOFException ex) {
+      // the counters are not restored partially
+    }
+    assertEquals(0, restored.users());
+    assertTrue(restored.top(10, 5).getUsers().isEmpty());
+  }
+
+  static void add(SlidingWindowCounters counters, String... lines) {
+    for (String line : lines) {
+      byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+      counters.add(bytes, bytes.length);
+    }
+  }
+
+  static List<String> counters(StreamingTopN top) {
+    return top.getUsers().stream()
+      .map(counter -> counter.getUsername() + "=" + counter.getCounter())
+      .collect(Collectors.toList());
+  }
+
+  private static byte[] checkpoint(SlidingWindowCounters counters) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      counters.writeTo(out);
+    }
+    return bytes.toByteArray();
+  }
+}
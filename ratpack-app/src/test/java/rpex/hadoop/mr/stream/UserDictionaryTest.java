@@ -0,0 +1,80 @@
+package rpex.hadoop.mr.stream;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UserDictionaryTest {
+  @Test
+  public void testAddKnownUsername() {
+    UserDictionary dictionary = new UserDictionary(4);
+    int id = dictionary.add(UserDictionary.pack(bytes("U0000001"), 0));
+    assertEquals(id, dictionary.add(UserDictionary.pack(bytes("U0000001"), 0)));
+    assertNotEquals(id, dictionary.add(UserDictionary.pack(bytes("U0000002"), 0)));
+    assertEquals(2, dictionary.size());
+    assertEquals("U0000001", UserDictionary.unpack(dictionary.username(id)));
+  }
+
+  @Test
+  public void testFullDictionary() {
+    UserDictionary dictionary = new UserDictionary(2);
+    dictionary.add(1);
+    int id = dictionary.add(2);
+    assertEquals(UserDictionary.NO_ID, dictionary.add(3));
+    dictionary.release(id);
+    // the released id is reused by the next user
+    assertEquals(id, dictionary.add(3));
+    assertEquals(UserDictionary.NO_ID, dictionary.add(2));
+    assertEquals(2, dictionary.size());
+    assertEquals(2, dictionary.idLimit());
+  }
+
+  @Test
+  public void testReleaseKeepsOtherUsers() {
+    // the table of the small dictionary is crowded, released slots are refilled by the backward shift
+    UserDictionary dictionary = new UserDictionary(64);
+    Map<Long, Integer> expected = new HashMap<>();
+    Random random = new Random(7);
+    for (int i = 0; i < 100000; i++) {
+      long username = random.nextInt(256);
+      Integer id = expected.get(username);
+      if (id != null && random.nextBoolean()) {
+        dictionary.release(expected.remove(username));
+      } else if (id != null) {
+        assertEquals(id.intValue(), dictionary.add(username));
+      } else {
+        id = dictionary.add(username);
+        if (expected.size() < 64) {
+          assertTrue(id != UserDictionary.NO_ID);
+          expected.put(username, id);
+        } else {
+          assertEquals(UserDictionary.NO_ID, id.intValue());
+        }
+      }
+    }
+    assertEquals(expected.size(), dictionary.size());
+    assertEquals(expected.size(), new HashSet<>(expected.values()).size());
+    for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+      assertEquals(entry.getKey().longValue(), dictionary.username(entry.getValue()));
+    }
+  }
+
+  @Test
+  public void testPackedUsernamesCompareAsBytes() {
+    assertTrue(UserDictionary.pack(bytes("U0000001"), 0) < UserDictionary.pack(bytes("U0000002"), 0));
+    assertTrue(UserDictionary.pack(bytes("A9999999"), 0) < UserDictionary.pack(bytes("U0000000"), 0));
+    assertEquals("N1408201", UserDictionary.unpack(UserDictionary.pack(bytes("'N1408201'"), 1)));
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+}
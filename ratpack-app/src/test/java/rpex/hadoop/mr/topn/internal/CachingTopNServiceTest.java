@@ -0,0 +1,164 @@
+package rpex.hadoop.mr.topn.internal;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import ratpack.exec.Promise;
+import ratpack.exec.Result;
+import ratpack.test.exec.ExecHarness;
+import rpex.hadoop.mr.JobProgress;
+import rpex.hadoop.mr.MapReduceJob;
+import rpex.hadoop.mr.MapReduceService;
+import rpex.hadoop.mr.topn.TopNService;
+import rpex.hadoop.mr.topn.model.ApproximateTopN;
+import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.MultiTopN;
+import rpex.hadoop.mr.topn.model.TimeInterval;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CachingTopNServiceTest {
+  private final StubMapReduceService mapReduceService = new StubMapReduceService();
+  private final StubTopNService delegate = new StubTopNService();
+  private final TopNResultCache cache = new TopNResultCache(10, null, 0);
+  private final CachingTopNService service = new CachingTopNService(delegate, mapReduceService, cache);
+
+  @Test
+  public void testRunsJobOnMissOnly() throws Exception {
+    mapReduceService.files = files(100, 1000);
+    assertEquals(counters(5), apply(5).getValue());
+    assertEquals(counters(5), apply(5).getValue());
+    assertEquals(1, delegate.calls.get());
+    assertEquals(1, cache.stats().getMisses());
+    assertEquals(1, cache.stats().getMemoryHits());
+
+    // other limit is other query
+    assertEquals(counters(3), apply(3).getValue());
+    assertEquals(2, delegate.calls.get());
+  }
+
+  @Test
+  public void testRunsJobAgainWhenInputChanges() throws Exception {
+    mapReduceService.files = files(100, 1000);
+    apply(5);
+    mapReduceService.files = files(150, 2000);
+    apply(5);
+    assertEquals(2, delegate.calls.get());
+    assertEquals(1, cache.stats().getInvalidations());
+  }
+
+  @Test
+  public void testSkipsCachingWhenInputChangesDuringJob() throws Exception {
+    mapReduceService.files = files(100, 1000);
+    // the input is appended while the job is running
+    delegate.onApply = () -> mapReduceService.files = files(150, 2000);
+    assertEquals(counters(5), apply(5).getValue());
+    assertEquals(0, cache.stats().getMemoryEntries());
+
+    delegate.onApply = null;
+    apply(5);
+    apply(5);
+    assertEquals(2, delegate.calls.get());
+    assertEquals(1, cache.stats().getMemoryHits());
+  }
+
+  @Test
+  public void testSkipsCachingOfErrors() throws Exception {
+    mapReduceService.files = files(100, 1000);
+    delegate.error = new RuntimeException("MAPREDUCE_JOB_FAILED");
+    assertTrue(apply(5).isError());
+    delegate.error = null;
+    assertEquals(counters(5), apply(5).getValue());
+    assertEquals(2, delegate.calls.get());
+  }
+
+  private Result<List<UserActivityCounter>> apply(int limit) throws Exception {
+    return ExecHarness.yieldSingle(execution -> service.apply(Limit.of(limit), null, "input", null, null)).getValue();
+  }
+
+  private static List<FileStatus> files(long length, long modificationTime) {
+    return Collections.singletonList(new FileStatus(length, false, 1, 128, modificationTime, new Path("/user/test/input/a.log")));
+  }
+
+  private static List<UserActivityCounter> counters(int limit) {
+    List<UserActivityCounter> counters = new ArrayList<>();
+    for (int i = 0; i < limit; i++) {
+      counters.add(new UserActivityCounter(String.format("N%07d", i), 100 - i));
+    }
+    return counters;
+  }
+
+  /**
+   * Lists the current files of every input.
+   */
+  private static class StubMapReduceService implements MapReduceService {
+    private volatile List<FileStatus> files;
+
+    @Override
+    public Promise<MapReduceJob> provide(String jobName, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Promise<List<FileStatus>> listFiles(String fsName, String requestId) {
+      return Promise.value(files);
+    }
+  }
+
+  /**
+   * Answers {@code apply} with the counters of the requested limit, or with the error if set.
+   */
+  private static class StubTopNService implements TopNService {
+    private final AtomicInteger calls = new AtomicInteger();
+    private volatile Exception error;
+    private volatile Runnable onApply;
+
+    @Override
+    public Promise<Result<List<UserActivityCounter>>> apply(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+      calls.incrementAndGet();
+      if (onApply != null) {
+        onApply.run();
+      }
+      return Promise.value(error != null ? Result.<List<UserActivityCounter>>error(error) : Result.success(counters(limit.getValue())));
+    }
+
+    @Override
+    public Promise<Result<Publisher<List<UserActivityCounter>>>> stream(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Promise<Result<ApproximateTopN>> approximate(Limit limit, int capacity, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Promise<Result<MultiTopN>> multiDimension(Limit limit, List<String> dimensions, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Promise<Result<String>> submit(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Promise<Optional<JobProgress>> status(String jobId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Promise<Result<List<UserActivityCounter>>> result(String jobId, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
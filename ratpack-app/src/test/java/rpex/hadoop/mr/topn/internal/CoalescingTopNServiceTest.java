@@ -0,0 +1,138 @@
+package rpex.hadoop.mr.topn.internal;
+
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import ratpack.exec.Promise;
+import ratpack.exec.Result;
+import ratpack.test.exec.ExecHarness;
+import rpex.hadoop.mr.JobProgress;
+import rpex.hadoop.mr.MapReduceMetrics;
+import rpex.hadoop.mr.topn.TopNService;
+import rpex.hadoop.mr.topn.model.ApproximateTopN;
+import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.MultiTopN;
+import rpex.hadoop.mr.topn.model.TimeInterval;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CoalescingTopNServiceTest {
+  private final StubTopNService delegate = new StubTopNService();
+  private final CoalescingTopNService service = new CoalescingTopNService(delegate, new MapReduceMetrics());
+
+  @Test
+  public void testCoalescesRequestsOfTheSameInput() throws Exception {
+    List<Result<List<UserActivityCounter>>> results = ExecHarness.yieldSingle(execution -> {
+      Promise<Result<List<UserActivityCounter>>> leader = service.apply(Limit.of(10), null, null, null, null);
+      Promise<Result<List<UserActivityCounter>>> follower = service.apply(Limit.of(10), null, "input", null, null);
+      return leader.flatMap(first -> follower.map(second -> Arrays.asList(first, second)));
+    }).getValue();
+
+    assertEquals(1, delegate.calls.get());
+    assertEquals(counters(10), results.get(0).getValue());
+    assertEquals(counters(10), results.get(1).getValue());
+  }
+
+  @Test
+  public void testTruncatesLargerResultToSmallerLimit() throws Exception {
+    List<Result<List<UserActivityCounter>>> results = ExecHarness.yieldSingle(execution -> {
+      Promise<Result<List<UserActivityCounter>>> leader = service.apply(Limit.of(10), null, "input", null, null);
+      Promise<Result<List<UserActivityCounter>>> follower = service.apply(Limit.of(3), null, "input", null, null);
+      return leader.flatMap(first -> follower.map(second -> Arrays.asList(first, second)));
+    }).getValue();
+
+    assertEquals(1, delegate.calls.get());
+    assertEquals(counters(10), results.get(0).getValue());
+    assertEquals(counters(3), results.get(1).getValue());
+  }
+
+  @Test(timeout = 10000)
+  public void testLargerLimitDoesNotWaitForRunningJob() throws Exception {
+    Result<List<UserActivityCounter>> result = ExecHarness.yieldSingle(execution -> {
+      // the job of the smaller limit is never subscribed, so it never completes
+      service.apply(Limit.of(3), null, "input", null, null);
+      return service.apply(Limit.of(10), null, "input", null, null);
+    }).getValue();
+
+    assertEquals(2, delegate.calls.get());
+    assertEquals(counters(10), result.getValue());
+  }
+
+  @Test
+  public void testPassesErrorToEveryWaiter() throws Exception {
+    delegate.error = new RuntimeException("MAPREDUCE_JOB_FAILED");
+    List<Result<List<UserActivityCounter>>> results = ExecHarness.yieldSingle(execution -> {
+      Promise<Result<List<UserActivityCounter>>> leader = service.apply(Limit.of(10), null, "input", null, null);
+      Promise<Result<List<UserActivityCounter>>> first = service.apply(Limit.of(10), null, "input", null, null);
+      Promise<Result<List<UserActivityCounter>>> second = service.apply(Limit.of(5), null, "input", null, null);
+      return leader.flatMap(r0 -> first.flatMap(r1 -> second.map(r2 -> Arrays.asList(r0, r1, r2))));
+    }).getValue();
+
+    assertEquals(1, delegate.calls.get());
+    for (Result<List<UserActivityCounter>> result : results) {
+      assertTrue(result.isError());
+      assertSame(delegate.error, result.getThrowable());
+    }
+  }
+
+  private static List<UserActivityCounter> counters(int limit) {
+    List<UserActivityCounter> counters = new ArrayList<>();
+    for (int i = 0; i < limit; i++) {
+      counters.add(new UserActivityCounter(String.format("N%07d", i), 100 - i));
+    }
+    return counters;
+  }
+
+  /**
+   * Answers {@code apply} with the counters of the requested limit, or with the error if set.
+   */
+  private static class StubTopNService implements TopNService {
+    private final AtomicInteger calls = new AtomicInteger();
+    private volatile Exception error;
+
+    @Override
+    public Promise<Result<List<UserActivityCounter>>> apply(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+      calls.incrementAndGet();
+      return Promise.of(downstream ->
+        downstream.success(error != null ? Result.<List<UserActivityCounter>>error(error) : Result.success(counters(limit.getValue()))));
+    }
+
+    @Override
+    public Promise<Result<Publisher<List<UserActivityCounter>>>> stream(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Promise<Result<ApproximateTopN>> approximate(Limit limit, int capacity, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Promise<Result<MultiTopN>> multiDimension(Limit limit, List<String> dimensions, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Promise<Result<String>> submit(Limit limit, TimeInterval timeInterval, String inputFS, String outputFS, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Promise<Optional<JobProgress>> status(String jobId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Promise<Result<List<UserActivityCounter>>> result(String jobId, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package rpex.hadoop.mr.topn.internal;
+
+import mr.func.ingest.AccessLogInputFormat;
+import mr.func.topn.TopNFunc;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ratpack.exec.Blocking;
+import ratpack.exec.Promise;
+import ratpack.test.exec.ExecHarness;
+import rpex.hadoop.mr.MapReduceConfig;
+import rpex.hadoop.mr.MapReduceJob;
+import rpex.hadoop.mr.MapReduceService;
+import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.TimeInterval;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Updates the daily aggregates of the partitioned input on the local file system with the local job runner.
+ */
+public class DailyAggregatesTest {
+  private static final TimeInterval JUL_12_13 = TimeInterval.of("2015-07-12", "2015-07-13");
+  private static final TimeInterval JUL_13_14 = TimeInterval.of("2015-07-13", "2015-07-14");
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Configuration conf;
+  private FileSystem fileSystem;
+  private Path root;
+  private DailyAggregates aggregates;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new Configuration();
+    conf.set("mapreduce.framework.name", "local");
+    conf.set("fs.defaultFS", "file:///");
+    fileSystem = FileSystem.getLocal(conf);
+    root = new Path(folder.getRoot().toURI());
+    aggregates = new DailyAggregates(new LocalMapReduceService(), "aggregates");
+  }
+
+  @Test
+  public void testUpdateProcessesOnlyNewFiles() throws Exception {
+    write("dt=2015-07-12/a.log", 12, 10);
+    write("dt=2015-07-13/a.log", 13, 20);
+    assertEquals(2, update());
+    assertEquals(0, update());
+
+    write("dt=2015-07-13/b.log", 13, 5);
+    assertEquals(1, update());
+    assertEquals(0, update());
+    assertEquals(2, runs("run-").size());
+    // the files are counted once
+    assertEquals(topNFunc(JUL_12_13), counters(aggregates.topN(job(), Limit.of(100), JUL_12_13)));
+  }
+
+  @Test
+  public void testUpdateDeletesInterruptedRun() throws Exception {
+    write("dt=2015-07-13/a.log", 13, 10);
+    Path pending = new Path(root, "aggregates/_run-1");
+    write(new Path(pending, "part-r-00000"), 13, 3);
+    assertEquals(1, update());
+
+    assertFalse(fileSystem.exists(pending));
+    assertEquals(0, runs("_run-").size());
+    assertEquals(topNFunc(JUL_12_13), counters(aggregates.topN(job(), Limit.of(100), JUL_12_13)));
+  }
+
+  @Test
+  public void testCovers() throws Exception {
+    write("dt=2015-07-12/a.log", 12, 10);
+    write("dt=2015-07-13/a.log", 13, 20);
+    write("dt=2015-07-14/a.log", 14, 30);
+    assertFalse(aggregates.covers(job(), input(), JUL_12_13));
+    update();
+
+    assertTrue(aggregates.covers(job(), input(), JUL_12_13));
+    // the lines without a valid day are counted by the query without the time interval
+    assertFalse(aggregates.covers(job(), input(), null));
+
+    // a file added and not processed yet
+    write("dt=2015-07-14/b.log", 14, 5);
+    assertTrue(aggregates.covers(job(), input(), JUL_12_13));
+    assertFalse(aggregates.covers(job(), input(), JUL_13_14));
+    update();
+    assertTrue(aggregates.covers(job(), input(), JUL_13_14));
+
+    // a removed file is still counted by the aggregates
+    fileSystem.delete(new Path(input(), "dt=2015-07-14/b.log"), false);
+    assertTrue(aggregates.covers(job(), input(), JUL_12_13));
+    assertFalse(aggregates.covers(job(), input(), JUL_13_14));
+
+    // an appended file is counted partially
+    append("dt=2015-07-12/a.log", 12, 1);
+    assertFalse(aggregates.covers(job(), input(), JUL_12_13));
+  }
+
+  @Test
+  public void testTopNEqualsTopNFunc() throws Exception {
+    write("dt=2015-07-12/a.log", 12, 40);
+    write("dt=2015-07-13/a.log", 13, 70);
+    write("dt=2015-07-13/b.log", 13, 25);
+    write("dt=2015-07-14/a.log", 14, 90);
+    update();
+
+    assertEquals(topNFunc(JUL_12_13), counters(aggregates.topN(job(), Limit.of(100), JUL_12_13)));
+    assertEquals(topNFunc(JUL_13_14), counters(aggregates.topN(job(), Limit.of(100), JUL_13_14)));
+    List<UserActivityCounter> top3 = aggregates.topN(job(), Limit.of(3), JUL_13_14);
+    assertEquals(3, top3.size());
+    for (int i = 1; i < top3.size(); i++) {
+      assertTrue(top3.get(i - 1).getCounter() >= top3.get(i).getCounter());
+    }
+  }
+
+  private int update() throws Exception {
+    return ExecHarness.yieldSingle(execution -> aggregates.update("input", null)).getValue().getValue();
+  }
+
+  /**
+   * Runs the top-n job on the whole input with the date filter of the time interval.
+   */
+  private Map<String, Integer> topNFunc(TimeInterval timeInterval) throws Exception {
+    Job job = Job.getInstance(new Configuration(conf));
+    TopNFunc.configure(job, 100);
+    job.setInputFormatClass(AccessLogInputFormat.class);
+    job.getConfiguration().set("dateFrom", timeInterval.getDateFrom().toString());
+    job.getConfiguration().set("dateTo", timeInterval.getDateTo().toString());
+    FileInputFormat.addInputPath(job, input());
+    FileInputFormat.setInputDirRecursive(job, true);
+    Path output = new Path(root, "output-" + System.nanoTime());
+    FileOutputFormat.setOutputPath(job, output);
+    assertTrue(job.waitForCompletion(false));
+    return counters(new TopNResultReader(fileSystem).read(output));
+  }
+
+  private MapReduceJob job() throws Exception {
+    return new LocalMapReduceJob(Job.getInstance(new Configuration(conf)));
+  }
+
+  private Path input() {
+    return new Path(root, "input");
+  }
+
+  private List<Path> runs(String prefix) throws Exception {
+    List<Path> runs = new ArrayList<>();
+    for (FileStatus run : fileSystem.listStatus(new Path(root, "aggregates"))) {
+      if (run.getPath().getName().startsWith(prefix)) {
+        runs.add(run.getPath());
+      }
+    }
+    return runs;
+  }
+
+  private void write(String name, int day, int lines) throws Exception {
+    write(new Path(input(), name), day, lines);
+  }
+
+  private void write(Path file, int day, int lines) throws Exception {
+    java.nio.file.Path path = Paths.get(file.toUri());
+    Files.createDirectories(path.getParent());
+    Files.write(path, lines(day, lines).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void append(String name, int day, int lines) throws Exception {
+    Files.write(Paths.get(new Path(input(), name).toUri()), lines(day, lines).getBytes(StandardCharsets.UTF_8),
+      StandardOpenOption.APPEND);
+  }
+
+  // the users are unevenly active and their activity differs by day
+  private static String lines(int day, int count) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      text.append(String.format("[%02d/Jul/2015:07:57:03 +0200] GET /api?page=%d usr=User{id=%d, username='N%07d'} time=1\n",
+        day, i, i, (i * i + day) % 11));
+    }
+    return text.toString();
+  }
+
+  private static Map<String, Integer> counters(List<UserActivityCounter> counters) {
+    Map<String, Integer> result = new TreeMap<>();
+    for (UserActivityCounter counter : counters) {
+      result.put(counter.getUsername(), counter.getCounter());
+    }
+    return result;
+  }
+
+  /**
+   * Provides jobs run by the local job runner on the local file system.
+   */
+  private class LocalMapReduceService implements MapReduceService {
+    @Override
+    public Promise<MapReduceJob> provide(String jobName, String requestId) {
+      return Blocking.get(DailyAggregatesTest.this::job);
+    }
+
+    @Override
+    public Promise<List<FileStatus>> listFiles(String fsName, String requestId) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * Resolves the job paths in the temporary folder instead of the user directory of the hadoop file system.
+   */
+  private class LocalMapReduceJob extends MapReduceJob {
+    LocalMapReduceJob(Job job) {
+      super(new MapReduceConfig(), job, fileSystem, null);
+    }
+
+    @Override
+    public Path getJobPath(String fsName) {
+      return new Path(root, fsName);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package rpex.hadoop.mr.topn.internal;
+
+import mr.func.ingest.AccessLogInputFormat;
+import mr.func.topn.TopNFunc;
+import mr.func.topn.UsernameKey;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ratpack.test.exec.ExecHarness;
+import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the local top-n with the top-n job run by hadoop's local job runner on the same files.
+ * Small segments and line buffers put the lines across the segment boundaries and over the buffer length.
+ */
+public class LocalTopNServiceTest {
+  private static final long SEGMENT_SIZE = 64;
+  private static final int MAX_LINE_LENGTH = 48;
+  // lines of the job are split as the segments of the local service
+  private static final long SPLIT_SIZE = 64;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path input;
+
+  @Before
+  public void setUp() throws Exception {
+    input = folder.newFolder("data", "input").toPath();
+  }
+
+  @Test
+  public void testLinesAcrossSegmentBoundaries() throws Exception {
+    write("a.log", lines(40, "\n", true));
+    assertSameAsMapReduce(40);
+  }
+
+  @Test
+  public void testLinesLongerThanBuffer() throws Exception {
+    // the username follows the padding longer than the buffer and the mapped region
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 12; i++) {
+      text.append(line(i, i % 3 == 0 ? 200 : 0)).append('\n');
+    }
+    write("a.log", text.toString());
+    assertSameAsMapReduce(12);
+  }
+
+  @Test
+  public void testCrLfLines() throws Exception {
+    write("a.log", lines(30, "\r\n", true));
+    assertSameAsMapReduce(30);
+  }
+
+  @Test
+  public void testLoneCarriageReturnLines() throws Exception {
+    write("a.log", lines(30, "\r", true));
+    assertSameAsMapReduce(30);
+  }
+
+  @Test
+  public void testNoFinalNewline() throws Exception {
+    write("a.log", lines(25, "\n", false));
+    assertSameAsMapReduce(25);
+  }
+
+  @Test
+  public void testGzipInput() throws Exception {
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(input.resolve("a.log.gz")))) {
+      out.write(lines(30, "\r\n", true).getBytes(StandardCharsets.UTF_8));
+    }
+    assertSameAsMapReduce(30);
+  }
+
+  @Test
+  public void testSequenceFileInput() throws Exception {
+    Configuration conf = new Configuration();
+    org.apache.hadoop.fs.Path file = new org.apache.hadoop.fs.Path(input.resolve("part-m-00000").toUri());
+    try (SequenceFile.Writer writer = SequenceFile.createWriter(conf, SequenceFile.Writer.file(file),
+      SequenceFile.Writer.keyClass(NullWritable.class), SequenceFile.Writer.valueClass(Text.class))) {
+      for (int i = 0; i < 30; i++) {
+        writer.append(NullWritable.get(), new Text(line(i, 0)));
+      }
+    }
+    assertSameAsMapReduce(30);
+  }
+
+  private void assertSameAsMapReduce(int lines) throws Exception {
+    LocalTopNService service = new LocalTopNService(input.getParent(), null, SEGMENT_SIZE, MAX_LINE_LENGTH);
+    List<UserActivityCounter> local = ExecHarness.yieldSingle(execution ->
+      service.apply(Limit.of(100), null, "input", null, null)).getValue().getValue();
+    Map<String, Integer> expected = mapReduce();
+
+    assertEquals(expected, counters(local));
+    assertEquals(lines, expected.values().stream().mapToInt(Integer::intValue).sum());
+    for (int i = 1; i < local.size(); i++) {
+      assertTrue(local.get(i - 1).getCounter() >= local.get(i).getCounter());
+    }
+  }
+
+  /**
+   * Runs the top-n job on the input with the local job runner.
+   */
+  private Map<String, Integer> mapReduce() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set("mapreduce.framework.name", "local");
+    conf.set("fs.defaultFS", "file:///");
+    conf.set("limit", "100");
+    Job job = Job.getInstance(conf);
+    job.setMapperClass(TopNFunc.Mapper.class);
+    job.setCombinerClass(TopNFunc.Combiner.class);
+    job.setReducerClass(TopNFunc.Reducer.class);
+    job.setPartitionerClass(UsernameKey.Partitioner.class);
+    job.setMapOutputKeyClass(UsernameKey.class);
+    job.setMapOutputValueClass(IntWritable.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(IntWritable.class);
+    job.setInputFormatClass(AccessLogInputFormat.class);
+    job.setOutputFormatClass(SequenceFileOutputFormat.class);
+    FileInputFormat.addInputPath(job, new org.apache.hadoop.fs.Path(input.toUri()));
+    FileInputFormat.setMaxInputSplitSize(job, SPLIT_SIZE);
+    org.apache.hadoop.fs.Path output = new org.apache.hadoop.fs.Path(folder.getRoot().toPath().resolve("output").toUri());
+    FileOutputFormat.setOutputPath(job, output);
+    assertTrue(job.waitForCompletion(false));
+    return counters(new TopNResultReader(FileSystem.getLocal(conf)).read(output));
+  }
+
+  private void write(String name, String text) throws Exception {
+    Files.write(input.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String lines(int count, String terminator, boolean finalTerminator) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      text.append(line(i, 0));
+      if (i < count - 1 || finalTerminator) {
+        text.append(terminator);
+      }
+    }
+    return text.toString();
+  }
+
+  private static String line(int i, int padding) {
+    StringBuilder pad = new StringBuilder();
+    for (int j = 0; j < padding; j++) {
+      pad.append('x');
+    }
+    return String.format("[13/Jul/2015:07:57:03 +0200] GET /api?page=%d%s usr=User{id=%d, username='N%07d'} time=1",
+      i, pad, i, i % 7);
+  }
+
+  private static Map<String, Integer> counters(List<UserActivityCounter> counters) {
+    Map<String, Integer> result = new TreeMap<>();
+    for (UserActivityCounter counter : counters) {
+      result.put(counter.getUsername(), counter.getCounter());
+    }
+    return result;
+  }
+}
@@ -0,0 +1,140 @@
+package rpex.hadoop.mr.topn.internal;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rpex.hadoop.mr.InputFingerprint;
+import rpex.hadoop.mr.topn.model.Limit;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TopNResultCacheTest {
+  private static final String INPUT = "input";
+  private static final InputFingerprint FINGERPRINT = fingerprint(100, 1000);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testMemoryTierEvictsLeastRecentlyUsed() {
+    TopNResultCache cache = new TopNResultCache(2, null, 0);
+    String a = key(cache, 1), b = key(cache, 2), c = key(cache, 3);
+    cache.put(a, counters("a"));
+    cache.put(b, counters("b"));
+    // a is used after b, so b is the least recently used
+    assertEquals(counters("a"), cache.get(INPUT, FINGERPRINT, a));
+    cache.put(c, counters("c"));
+
+    assertNull(cache.get(INPUT, FINGERPRINT, b));
+    assertEquals(counters("a"), cache.get(INPUT, FINGERPRINT, a));
+    assertEquals(counters("c"), cache.get(INPUT, FINGERPRINT, c));
+    TopNResultCache.Stats stats = cache.stats();
+    assertEquals(2, stats.getMemoryEntries());
+    assertEquals(3, stats.getMemoryHits());
+    assertEquals(1, stats.getMisses());
+    assertEquals(1, stats.getMemoryEvictions());
+    assertEquals(0, stats.getDiskHits());
+  }
+
+  @Test
+  public void testDiskTierSurvivesRestart() throws Exception {
+    Path dir = folder.newFolder("cache").toPath();
+    TopNResultCache cache = new TopNResultCache(10, dir, 10);
+    String key = key(cache, 10);
+    cache.put(key, counters("a", "b"));
+    // the file is written aside and moved in place, no temporary file is left
+    assertEquals(Collections.singletonList(key + ".topn"), files(dir));
+
+    TopNResultCache restarted = new TopNResultCache(10, dir, 10);
+    assertEquals(counters("a", "b"), restarted.get(INPUT, FINGERPRINT, key));
+    assertEquals(counters("a", "b"), restarted.get(INPUT, FINGERPRINT, key));
+    TopNResultCache.Stats stats = restarted.stats();
+    assertEquals(1, stats.getDiskHits());
+    assertEquals(1, stats.getMemoryHits());
+    assertEquals(0, stats.getMisses());
+  }
+
+  @Test
+  public void testDiskTierEvictsLeastRecentlyRead() throws Exception {
+    Path dir = folder.newFolder("cache").toPath();
+    TopNResultCache cache = new TopNResultCache(10, dir, 2);
+    String a = key(cache, 1), b = key(cache, 2), c = key(cache, 3);
+    cache.put(a, counters("a"));
+    cache.put(b, counters("b"));
+    Files.setLastModifiedTime(dir.resolve(a + ".topn"), FileTime.fromMillis(1000));
+    Files.setLastModifiedTime(dir.resolve(b + ".topn"), FileTime.fromMillis(2000));
+    // reading from the disk tier marks the file as used
+    assertEquals(counters("a"), new TopNResultCache(10, dir, 2).get(INPUT, FINGERPRINT, a));
+    cache.put(c, counters("c"));
+
+    List<String> kept = Arrays.asList(a + ".topn", c + ".topn");
+    Collections.sort(kept);
+    assertEquals(kept, files(dir));
+    assertEquals(1, cache.stats().getDiskEvictions());
+    assertNull(new TopNResultCache(10, dir, 2).get(INPUT, FINGERPRINT, b));
+  }
+
+  @Test
+  public void testInvalidatesInputWhenFingerprintChanges() throws Exception {
+    Path dir = folder.newFolder("cache").toPath();
+    TopNResultCache cache = new TopNResultCache(10, dir, 10);
+    String key = key(cache, 10);
+    String other = cache.key(Limit.of(10), null, "other", FINGERPRINT);
+    assertNull(cache.get(INPUT, FINGERPRINT, key));
+    assertNull(cache.get("other", FINGERPRINT, other));
+    cache.put(key, counters("a"));
+    cache.put(other, counters("b"));
+    assertEquals(counters("a"), cache.get(INPUT, FINGERPRINT, key));
+
+    InputFingerprint appended = fingerprint(150, 2000);
+    String current = cache.key(Limit.of(10), null, INPUT, appended);
+    assertFalse(key.equals(current));
+    assertNull(cache.get(INPUT, appended, current));
+    // the entries of the older input are removed from both tiers, the entries of other inputs are kept
+    assertFalse(Files.exists(dir.resolve(key + ".topn")));
+    assertNull(cache.get(INPUT, appended, key));
+    assertEquals(counters("b"), cache.get("other", FINGERPRINT, other));
+    assertTrue(Files.exists(dir.resolve(other + ".topn")));
+    assertEquals(1, cache.stats().getInvalidations());
+  }
+
+  private static String key(TopNResultCache cache, int limit) {
+    return cache.key(Limit.of(limit), null, INPUT, FINGERPRINT);
+  }
+
+  private static List<UserActivityCounter> counters(String... usernames) {
+    List<UserActivityCounter> counters = new ArrayList<>();
+    for (int i = 0; i < usernames.length; i++) {
+      counters.add(new UserActivityCounter(usernames[i], usernames.length - i));
+    }
+    return counters;
+  }
+
+  private static List<String> files(Path dir) throws Exception {
+    List<String> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      stream.forEach(file -> files.add(file.getFileName().toString()));
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  static InputFingerprint fingerprint(long length, long modificationTime) {
+    return InputFingerprint.of(Collections.singletonList(
+      new FileStatus(length, false, 1, 128, modificationTime, new org.apache.hadoop.fs.Path("/user/test/input/a.log"))));
+  }
+}
@@ -0,0 +1,150 @@
+package rpex.hadoop.mr.topn.internal;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static rpex.hadoop.mr.topn.internal.TopNResultReaderTest.counter;
+import static rpex.hadoop.mr.topn.internal.TopNResultReaderTest.writePart;
+
+public class TopNResultPublisherTest {
+  // runs the drain loop on the calling thread, so the signals are checked right after the requests
+  private static final Executor EXECUTOR = Runnable::run;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FileSystem fileSystem;
+  private Path output;
+  private TopNResultPublisher publisher;
+
+  @Before
+  public void setUp() throws Exception {
+    fileSystem = FileSystem.getLocal(new Configuration());
+    output = new Path(folder.newFolder("output").toURI());
+    writePart(output, "part-r-00000", counter("a", 9), counter("c", 5), counter("e", 1));
+    writePart(output, "part-r-00001", counter("b", 7), counter("d", 3));
+    publisher = new TopNResultPublisher(new TopNResultReader(fileSystem).open(output, 10, true), 2, EXECUTOR);
+  }
+
+  @Test
+  public void testPublishesOnlyRequestedBatches() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+
+    subscriber.subscription.request(1);
+    assertEquals(Arrays.asList(Arrays.asList(counter("a", 9), counter("b", 7))), subscriber.batches);
+    assertFalse(subscriber.completed);
+    assertTrue(fileSystem.exists(output));
+
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertEquals(Arrays.asList(
+      Arrays.asList(counter("a", 9), counter("b", 7)),
+      Arrays.asList(counter("c", 5), counter("d", 3)),
+      Arrays.asList(counter("e", 1))), subscriber.batches);
+    assertTrue(subscriber.completed);
+    assertFalse(fileSystem.exists(output));
+  }
+
+  @Test
+  public void testCancelClosesCursor() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+
+    subscriber.subscription.request(1);
+    subscriber.subscription.cancel();
+    subscriber.subscription.request(1);
+
+    assertEquals(1, subscriber.batches.size());
+    assertFalse(subscriber.completed);
+    assertEquals(null, subscriber.error);
+    assertFalse(fileSystem.exists(output));
+  }
+
+  @Test
+  public void testNonPositiveRequestSignalsError() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+
+    subscriber.subscription.request(0);
+    subscriber.subscription.request(1);
+
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+    assertTrue(subscriber.batches.isEmpty());
+    assertFalse(fileSystem.exists(output));
+  }
+
+  @Test
+  public void testCloseReleasesUnsubscribedPublisher() throws Exception {
+    publisher.close();
+    assertFalse(fileSystem.exists(output));
+
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    assertTrue(subscriber.error instanceof IllegalStateException);
+  }
+
+  @Test
+  public void testCloseKeepsSubscribedPublisher() throws Exception {
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    publisher.subscribe(subscriber);
+    publisher.close();
+    assertTrue(fileSystem.exists(output));
+
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertEquals(3, subscriber.batches.size());
+    assertTrue(subscriber.completed);
+  }
+
+  @Test
+  public void testRejectsSecondSubscriber() throws Exception {
+    publisher.subscribe(new RecordingSubscriber());
+    RecordingSubscriber second = new RecordingSubscriber();
+    publisher.subscribe(second);
+
+    assertTrue(second.error instanceof IllegalStateException);
+    assertTrue(fileSystem.exists(output));
+  }
+
+  private static class RecordingSubscriber implements Subscriber<List<UserActivityCounter>> {
+    private final List<List<UserActivityCounter>> batches = new ArrayList<>();
+    private Subscription subscription;
+    private boolean completed;
+    private Throwable error;
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(List<UserActivityCounter> batch) {
+      batches.add(batch);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package rpex.hadoop.mr.topn.internal;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rpex.hadoop.mr.topn.model.UserActivityCounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TopNResultReaderTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private FileSystem fileSystem;
+  private Path output;
+  private TopNResultReader reader;
+
+  @Before
+  public void setUp() throws Exception {
+    fileSystem = FileSystem.getLocal(new Configuration());
+    output = new Path(folder.newFolder("output").toURI());
+    reader = new TopNResultReader(fileSystem);
+  }
+
+  @Test
+  public void testCursorMergesPartsFromMostActiveUser() throws Exception {
+    writePart(output, "part-r-00000", counter("a", 9), counter("d", 5), counter("f", 1));
+    writePart(output, "part-r-00001", counter("b", 7), counter("c", 5), counter("g", 1));
+    writePart(output, "part-r-00002");
+    writePart(output, "part-r-00003", counter("e", 8));
+
+    try (TopNResultReader.Cursor cursor = reader.open(output, 10)) {
+      assertEquals(Arrays.asList(counter("a", 9), counter("e", 8), counter("b", 7), counter("c", 5), counter("d", 5),
+        counter("f", 1), counter("g", 1)), drain(cursor));
+      assertNull(cursor.next());
+    }
+  }
+
+  @Test
+  public void testCursorStopsAtLimit() throws Exception {
+    writePart(output, "part-r-00000", counter("a", 9), counter("d", 5));
+    writePart(output, "part-r-00001", counter("b", 7), counter("c", 6));
+
+    try (TopNResultReader.Cursor cursor = reader.open(output, 3)) {
+      assertEquals(Arrays.asList(counter("a", 9), counter("b", 7), counter("c", 6)), drain(cursor));
+    }
+  }
+
+  @Test
+  public void testCursorDeletesOutputOnClose() throws Exception {
+    writePart(output, "part-r-00000", counter("a", 9));
+
+    TopNResultReader.Cursor kept = reader.open(output, 10);
+    kept.close();
+    assertTrue(fileSystem.exists(output));
+
+    TopNResultReader.Cursor deleted = reader.open(output, 10, true);
+    deleted.close();
+    assertFalse(fileSystem.exists(output));
+  }
+
+  static List<UserActivityCounter> drain(TopNResultReader.Cursor cursor) throws Exception {
+    List<UserActivityCounter> counters = new ArrayList<>();
+    UserActivityCounter userActivityCounter;
+    while ((userActivityCounter = cursor.next()) != null) {
+      counters.add(userActivityCounter);
+    }
+    return counters;
+  }
+
+  static void writePart(Path output, String name, UserActivityCounter... counters) throws Exception {
+    try (SequenceFile.Writer writer = SequenceFile.createWriter(new Configuration(),
+      SequenceFile.Writer.file(new Path(output, name)),
+      SequenceFile.Writer.keyClass(Text.class), SequenceFile.Writer.valueClass(IntWritable.class))) {
+      for (UserActivityCounter counter : counters) {
+        writer.append(new Text(counter.getUsername()), new IntWritable(counter.getCounter()));
+      }
+    }
+  }
+
+  static UserActivityCounter counter(String username, int counter) {
+    return new UserActivityCounter(username, counter);
+  }
+}